@@ -0,0 +1,344 @@
+package com.bean.engine;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Caps the frame rate of a loop by waiting at the end of each frame until the next one is due, and measures how
+ * evenly frames were paced.
+ * <p>
+ * Frames are due at a fixed interval from each other rather than after the previous frame ended, so waits absorb
+ * the varying frame work without drift. A frame ending more than one interval late starts a new schedule instead of
+ * being followed by a burst of short frames. Waiting is done according to a {@link Mode}. Parked threads wake up
+ * late by up to the resolution of the OS timer, so the hybrid mode parks until a spin margin before the deadline
+ * and spins the rest. The margin is the 90th percentile of the overshoots of the last parks, first measured by
+ * {@link #calibrate()}, and follows the timer as it improves or degrades.
+ * <p>
+ * Over the last frames the pacer keeps the error of each frame time against the target and the CPU time of the thread
+ * calling {@link #sync()}, including the frame work, from which it reports the frame time spread and CPU usage.
+ */
+public class FramePacer {
+
+    /**
+     * How a frame waits for its deadline.
+     */
+    public enum Mode {
+        /**
+         * No waiting, frames run as fast as possible or as vSync allows.
+         */
+        UNLIMITED,
+        /**
+         * Parks until the deadline: little CPU, but frames run late by the timer resolution.
+         */
+        SLEEP,
+        /**
+         * Busy waits until the deadline: precise, but one core stays busy.
+         */
+        SPIN,
+        /**
+         * Parks until the spin margin before the deadline, then busy waits.
+         */
+        HYBRID
+    }
+
+    /**
+     * Time source and ways to wait of a pacer, replaced in tests to pace frames deterministically.
+     */
+    public interface Clock {
+
+        Clock SYSTEM = new Clock() {
+
+            private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+            private final boolean cpuTimeSupported = threads.isCurrentThreadCpuTimeSupported();
+
+            @Override
+            public long nanoTime() {
+                return System.nanoTime();
+            }
+
+            @Override
+            public void parkNanos(long nanos) {
+                LockSupport.parkNanos(nanos);
+            }
+
+            @Override
+            public void onSpinWait() {
+                Thread.onSpinWait();
+            }
+
+            @Override
+            public long getThreadCpuTime() {
+                return cpuTimeSupported ? threads.getCurrentThreadCpuTime() : -1;
+            }
+        };
+
+        long nanoTime();
+
+        /**
+         * Parks the calling thread for about the given time, possibly waking up later.
+         */
+        void parkNanos(long nanos);
+
+        /**
+         * Called at each iteration of a busy wait.
+         */
+        void onSpinWait();
+
+        /**
+         * CPU time of the calling thread in nanoseconds, or -1 if it is not measured.
+         */
+        long getThreadCpuTime();
+    }
+
+    public static final int DEFAULT_HISTORY = 240;
+
+    private static final int OVERSHOOT_HISTORY = 32;
+
+    /**
+     * Rank of the overshoot taken as spin margin, so a few outliers such as preemptions do not make every frame spin.
+     */
+    private static final int MARGIN_RANK = OVERSHOOT_HISTORY * 9 / 10;
+
+    private static final long CALIBRATION_PARK_NANOS = 1_000_000;
+
+    private final Clock clock;
+
+    private Mode mode;
+
+    private int targetFps;
+
+    private long frameNanos;
+
+    private long deadline;
+
+    private long lastFrame;
+
+    private long lastCpu;
+
+    /**
+     * Frame time minus the target, per frame.
+     */
+    private final long[] errors;
+
+    private final long[] cpuTimes;
+
+    private int frames;
+
+    private int nextFrame;
+
+    private final long[] overshoots = new long[OVERSHOOT_HISTORY];
+
+    private int nextOvershoot;
+
+    private boolean calibrated;
+
+    private final boolean cpuTimeSupported;
+
+    public FramePacer(Mode mode, int targetFps) {
+        this(mode, targetFps, DEFAULT_HISTORY);
+    }
+
+    /**
+     * @param historySize number of frames the statistics are computed over
+     */
+    public FramePacer(Mode mode, int targetFps, int historySize) {
+        this(mode, targetFps, historySize, Clock.SYSTEM);
+    }
+
+    public FramePacer(Mode mode, int targetFps, int historySize, Clock clock) {
+        this.clock = clock;
+        cpuTimeSupported = clock.getThreadCpuTime() >= 0;
+        errors = new long[historySize];
+        cpuTimes = new long[historySize];
+        this.mode = mode;
+        setTargetFps(targetFps);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Changes the waiting mode, restarting the statistics.
+     */
+    public void setMode(Mode mode) {
+        this.mode = mode;
+        reset();
+    }
+
+    public int getTargetFps() {
+        return targetFps;
+    }
+
+    /**
+     * Changes the frame rate, restarting the schedule and the statistics.
+     */
+    public void setTargetFps(int targetFps) {
+        if (targetFps <= 0) {
+            throw new IllegalArgumentException("Target FPS must be positive: " + targetFps);
+        }
+        this.targetFps = targetFps;
+        frameNanos = 1_000_000_000L / targetFps;
+        deadline = 0;
+        reset();
+    }
+
+    /**
+     * Forgets the frames recorded so far.
+     */
+    public void reset() {
+        frames = 0;
+        nextFrame = 0;
+        lastFrame = 0;
+    }
+
+    /**
+     * Measures how late parked threads wake up, to start the spin margin from. Called by the first hybrid
+     * {@link #sync()} if not called before.
+     */
+    public void calibrate() {
+        for (int i = 0; i < OVERSHOOT_HISTORY; i++) {
+            long start = clock.nanoTime();
+            clock.parkNanos(CALIBRATION_PARK_NANOS);
+            overshoots[i] = Math.max(0, clock.nanoTime() - start - CALIBRATION_PARK_NANOS);
+        }
+        calibrated = true;
+    }
+
+    /**
+     * Ends a frame: waits until it is due, according to the mode, and records its time.
+     */
+    public void sync() {
+        if (mode == Mode.HYBRID && !calibrated) {
+            // Calibrating takes a few frames, which are neither recorded nor caught up with
+            calibrate();
+            reset();
+            deadline = 0;
+        }
+        if (mode != Mode.UNLIMITED && deadline != 0) {
+            waitUntil(deadline);
+        }
+        long now = clock.nanoTime();
+        long cpu = cpuTimeSupported ? clock.getThreadCpuTime() : 0;
+        if (lastFrame != 0) {
+            errors[nextFrame] = now - lastFrame - frameNanos;
+            cpuTimes[nextFrame] = cpu - lastCpu;
+            nextFrame = (nextFrame + 1) % errors.length;
+            frames = Math.min(frames + 1, errors.length);
+        }
+        lastFrame = now;
+        lastCpu = cpu;
+        deadline = (deadline == 0 || now - deadline > frameNanos ? now : deadline) + frameNanos;
+    }
+
+    private void waitUntil(long due) {
+        if (mode == Mode.SLEEP || mode == Mode.HYBRID) {
+            long margin = mode == Mode.HYBRID ? getSpinMarginNanos() : 0;
+            for (long now = clock.nanoTime(); due - now > margin; ) {
+                long park = due - now - margin;
+                clock.parkNanos(park);
+                long woke = clock.nanoTime();
+                overshoots[nextOvershoot] = Math.max(0, woke - now - park);
+                nextOvershoot = (nextOvershoot + 1) % OVERSHOOT_HISTORY;
+                now = woke;
+            }
+        }
+        if (mode != Mode.SLEEP) {
+            while (clock.nanoTime() - due < 0) {
+                clock.onSpinWait();
+            }
+        }
+    }
+
+    /**
+     * Time the hybrid mode spins before each deadline.
+     */
+    public long getSpinMarginNanos() {
+        long[] sorted = overshoots.clone();
+        Arrays.sort(sorted);
+        return sorted[MARGIN_RANK];
+    }
+
+    /**
+     * Number of frames the statistics cover.
+     */
+    public int getFrames() {
+        return frames;
+    }
+
+    /**
+     * Frame time minus the target of a recorded frame, 0 being the last one.
+     */
+    public float getErrorMillis(int framesAgo) {
+        if (framesAgo < 0 || framesAgo >= frames) {
+            throw new IndexOutOfBoundsException("Frame " + framesAgo + " out of " + frames + " recorded");
+        }
+        return errors[Math.floorMod(nextFrame - 1 - framesAgo, errors.length)] / 1e6f;
+    }
+
+    public double getMeanFrameMillis() {
+        return frameNanos / 1e6 + getMeanErrorMillis();
+    }
+
+    public double getMeanErrorMillis() {
+        if (frames == 0) {
+            return Double.NaN;
+        }
+        double sum = 0;
+        for (int i = 0; i < frames; i++) {
+            sum += errors[i];
+        }
+        return sum / frames / 1e6;
+    }
+
+    /**
+     * Variance of the frame times, in square milliseconds.
+     */
+    public double getFrameTimeVariance() {
+        double mean = getMeanErrorMillis();
+        double sum = 0;
+        for (int i = 0; i < frames; i++) {
+            double deviation = errors[i] / 1e6 - mean;
+            sum += deviation * deviation;
+        }
+        return frames == 0 ? Double.NaN : sum / frames;
+    }
+
+    public double getFrameTimeStdDevMillis() {
+        return Math.sqrt(getFrameTimeVariance());
+    }
+
+    public double getMaxErrorMillis() {
+        long max = 0;
+        for (int i = 0; i < frames; i++) {
+            max = Math.max(max, Math.abs(errors[i]));
+        }
+        return frames == 0 ? Double.NaN : max / 1e6;
+    }
+
+    /**
+     * CPU time of the calling thread over the frame time, 1 meaning a core was busy all along. NaN if the JVM does
+     * not measure thread CPU time.
+     */
+    public double getCpuUsage() {
+        if (!cpuTimeSupported || frames == 0) {
+            return Double.NaN;
+        }
+        long cpu = 0;
+        long wall = 0;
+        for (int i = 0; i < frames; i++) {
+            cpu += cpuTimes[i];
+            wall += frameNanos + errors[i];
+        }
+        return (double) cpu / wall;
+    }
+
+    public String report() {
+        return String.format("pacing %-9s %4d fps target %7.3f ms avg %7.3f ms std dev %7.3f ms max error "
+                        + "%5.1f%% cpu %6.3f ms spin margin", mode, targetFps, getMeanFrameMillis(),
+                getFrameTimeStdDevMillis(), getMaxErrorMillis(), getCpuUsage() * 100, getSpinMarginNanos() / 1e6);
+    }
+}
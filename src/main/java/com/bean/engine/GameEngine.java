@@ -1,21 +1,107 @@
 package com.bean.engine;
 
+import java.util.concurrent.locks.LockSupport;
+
+import com.bean.engine.mesh.TransformSnapshot;
+import com.bean.engine.util.SnapshotExchange;
+
 public class GameEngine implements Runnable {
 
     public static final int TARGET_UPS = 30;
 
+    public static final int TARGET_FPS = 60;
+
+    /**
+     * Ticks the simulation thread may fall behind before it drops them instead of catching up.
+     */
+    private static final int MAX_TICKS_BEHIND = 5;
+
     private final Thread gameLoopThread; // game loop will be run inside a separate thread
 
     private GameLogic gameLogic;
     private Window window;
     private Timer timer;
     private MouseInput mouseInput;
+    private final FramePacer framePacer;
+
+    private final Profiler profiler;
+    private final Profiler.Scope inputScope;
+    private final Profiler.Scope updateScope;
+    private final Profiler.Scope renderScope;
+    private final Profiler.Scope swapScope;
+    private final Profiler.Scope pacingScope;
+    private final Profiler.Scope simulationScope;
+    private final Profiler.Scope snapshotLatencyScope;
+
+    private boolean simulationThreaded;
+    private volatile boolean simulationRunning;
+    private volatile Throwable simulationError;
+    private SnapshotExchange<TransformSnapshot> snapshots;
+    private long lastReceivedTick;
 
     public GameEngine(String windowTitle, int width, int height, boolean vsSync, GameLogic gameLogic) throws Exception {
+        this(windowTitle, width, height, vsSync, gameLogic, new Profiler());
+    }
+
+    /**
+     * @param profiler profiler the engine records its passes in and ends the frames of, may be shared with the game
+     */
+    public GameEngine(String windowTitle, int width, int height, boolean vsSync, GameLogic gameLogic,
+                      Profiler profiler) throws Exception {
         gameLoopThread = new Thread(this, "GAME_LOOP_THREAD");
         window = new Window(windowTitle, width, height, vsSync);
         mouseInput = new MouseInput();
+        // With vSync the swap already waits for the display
+        framePacer = new FramePacer(vsSync ? FramePacer.Mode.UNLIMITED : FramePacer.Mode.HYBRID, TARGET_FPS);
         this.gameLogic = gameLogic;
+        this.profiler = profiler;
+        inputScope = profiler.scope("input");
+        updateScope = profiler.scope("update");
+        renderScope = profiler.scope("render");
+        swapScope = profiler.scope("swap");
+        pacingScope = profiler.scope("pacing");
+        simulationScope = profiler.scope("simulation");
+        snapshotLatencyScope = profiler.scope("latency");
+    }
+
+    public Profiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * Paces the frames, its mode and target FPS can be changed while the game runs from the game loop thread.
+     */
+    public FramePacer getFramePacer() {
+        return framePacer;
+    }
+
+    public boolean isSimulationThreaded() {
+        return simulationThreaded;
+    }
+
+    /**
+     * Runs the fixed step updates on their own thread, decoupled from rendering, instead of between frames. The game
+     * then hands its state to the render thread through {@link GameLogic#writeSnapshot(TransformSnapshot)} and draws
+     * it with {@link GameLogic#render(Window, TransformSnapshot, TransformSnapshot, float)}. Input is still polled on
+     * the render thread, every frame, so the game must hand what {@link GameLogic#input} collects to its updates
+     * itself, for example through a {@link SnapshotExchange}. Must be set before {@link #start()}.
+     */
+    public void setSimulationThreaded(boolean simulationThreaded) {
+        this.simulationThreaded = simulationThreaded;
+    }
+
+    /**
+     * Snapshots published by the simulation thread, or 0 when it is not used.
+     */
+    public long getPublishedSnapshots() {
+        return snapshots != null ? snapshots.getPublished() : 0;
+    }
+
+    /**
+     * Snapshots the render thread received, the others were replaced by newer ones before a frame could draw them.
+     */
+    public long getReceivedSnapshots() {
+        return snapshots != null ? snapshots.getReceived() : 0;
     }
 
     /**
@@ -30,7 +116,11 @@ public class GameEngine implements Runnable {
     public void run() {
         try {
             init();
-            gameLoop();
+            if (simulationThreaded) {
+                threadedGameLoop();
+            } else {
+                gameLoop();
+            }
         } catch (Exception excp) {
             excp.printStackTrace();
         } finally {
@@ -62,26 +152,133 @@ public class GameEngine implements Runnable {
 
 
             render();
-            // Sync is probably needed for target VSync, dont want to hard-code FPS atm though
+            sync();
+            timer.update();
+            if (profiler.endFrame()) {
+                System.out.println("FPS " + timer.getFPS() + ", UPS " + timer.getUPS() + "\n" + profiler.report()
+                        + framePacer.report());
+            }
+        }
+    }
+
+    /**
+     * Renders as fast as the window allows while the simulation thread ticks at {@link #TARGET_UPS}. Each frame draws
+     * the two latest snapshots, interpolated by the time elapsed since the latest was published, which keeps motion
+     * smooth one tick behind the simulation.
+     */
+    protected void threadedGameLoop() throws Exception {
+        snapshots = new SnapshotExchange<>(TransformSnapshot::new);
+        simulationRunning = true;
+        Thread simulationThread = new Thread(this::simulationLoop, "SIMULATION_THREAD");
+        simulationThread.start();
+        float intervalNanos = 1e9f / TARGET_UPS;
+        try {
+            while (!window.windowShouldClose() && simulationError == null) {
+                // Only advances the second the FPS and UPS are counted over, ticks run on the simulation thread
+                timer.getDelta();
+                input();
+
+                if (snapshots.receive()) {
+                    TransformSnapshot latest = snapshots.getLatest();
+                    simulationScope.addNanos(latest.getUpdateNanos());
+                    timer.updateUPS((int) (latest.getTick() - lastReceivedTick));
+                    lastReceivedTick = latest.getTick();
+                }
+                TransformSnapshot latest = snapshots.getLatest();
+                long age = System.nanoTime() - latest.getPublishedNanos();
+                float alpha = latest.getTick() == 0 ? 1 : Math.min(1, age / intervalNanos);
+                snapshotLatencyScope.addNanos(latest.getTick() == 0 ? 0 : age);
+
+                renderScope.begin();
+                gameLogic.render(window, snapshots.getPrevious(), latest, alpha);
+                renderScope.end();
+                swapScope.begin();
+                window.update();
+                swapScope.end();
+                timer.updateFPS();
+                sync();
+
+                timer.update();
+                if (profiler.endFrame()) {
+                    System.out.println("FPS " + timer.getFPS() + ", UPS " + timer.getUPS() + ", snapshots "
+                            + snapshots.getReceived() + " of " + snapshots.getPublished() + " drawn\n"
+                            + profiler.report() + framePacer.report());
+                }
+            }
+        } finally {
+            simulationRunning = false;
+            simulationThread.join();
+        }
+        if (simulationError != null) {
+            throw new Exception("Simulation thread failed", simulationError);
+        }
+    }
+
+    /**
+     * Runs on the simulation thread: updates the game every tick, publishes a snapshot after each update, and sleeps
+     * until the next tick is due.
+     */
+    private void simulationLoop() {
+        long intervalNanos = 1_000_000_000L / TARGET_UPS;
+        float interval = 1f / TARGET_UPS;
+        long tick = 0;
+        long nextTick = System.nanoTime();
+        try {
+            while (simulationRunning) {
+                long start = System.nanoTime();
+                gameLogic.update(interval, mouseInput);
+                TransformSnapshot snapshot = snapshots.getWriteSlot();
+                gameLogic.writeSnapshot(snapshot);
+                snapshot.stamp(++tick, System.nanoTime() - start);
+                snapshots.publish();
+
+                nextTick += intervalNanos;
+                long now = System.nanoTime();
+                if (now - nextTick > MAX_TICKS_BEHIND * intervalNanos) {
+                    nextTick = now;
+                }
+                while (simulationRunning && (now = System.nanoTime()) < nextTick) {
+                    LockSupport.parkNanos(nextTick - now);
+                }
+            }
+        } catch (Throwable excp) {
+            simulationError = excp;
         }
     }
 
     protected void input() {
+        inputScope.begin();
         mouseInput.input(window);
         gameLogic.input(window, mouseInput);
+        inputScope.end();
     }
 
     protected void update(float interval) {
+        updateScope.begin();
         gameLogic.update(interval, mouseInput);
+        updateScope.end();
+        timer.updateUPS();
     }
 
     protected void render() {
+        renderScope.begin();
         gameLogic.render(window);
+        renderScope.end();
+        swapScope.begin();
         window.update();
+        swapScope.end();
+        timer.updateFPS();
+    }
+
+    protected void sync() {
+        pacingScope.begin();
+        framePacer.sync();
+        pacingScope.end();
     }
 
     protected void cleanup() {
         gameLogic.cleanup();
+        profiler.cleanup();
     }
 
 }
@@ -1,15 +1,38 @@
 package com.bean.engine;
 
+import com.bean.engine.mesh.TransformSnapshot;
+
 public interface GameLogic {
 
     void init(Window window) throws Exception;
 
     void input(Window window, MouseInput mouseInput);
 
+    /**
+     * Advances the simulation by one tick. When the engine runs the simulation on its own thread,
+     * <code>mouseInput</code> is written by the render thread meanwhile and must not be read: the input collected
+     * by {@link #input} has to be handed over by the game.
+     */
     void update(float interval, MouseInput mouseInput);
 
     void render(Window window);
 
+    /**
+     * Copies the state the renderer reads into <code>snapshot</code>. Called on the simulation thread after each
+     * update when the engine runs the simulation on its own thread.
+     */
+    default void writeSnapshot(TransformSnapshot snapshot) {
+    }
+
+    /**
+     * Draws the state between the two latest snapshots, <code>alpha</code> being the fraction of a tick elapsed
+     * since <code>latest</code> was published. Called on the render thread instead of {@link #render(Window)} when
+     * the engine runs the simulation on its own thread, so it must not read what {@link #update} changes.
+     */
+    default void render(Window window, TransformSnapshot previous, TransformSnapshot latest, float alpha) {
+        render(window);
+    }
+
     void cleanup();
 
 }
@@ -0,0 +1,379 @@
+package com.bean.engine;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.lwjgl.opengl.GL15.GL_QUERY_RESULT;
+import static org.lwjgl.opengl.GL15.GL_QUERY_RESULT_AVAILABLE;
+import static org.lwjgl.opengl.GL15.glBeginQuery;
+import static org.lwjgl.opengl.GL15.glDeleteQueries;
+import static org.lwjgl.opengl.GL15.glEndQuery;
+import static org.lwjgl.opengl.GL15.glGenQueries;
+import static org.lwjgl.opengl.GL15.glGetQueryObjecti;
+import static org.lwjgl.opengl.GL33.GL_TIME_ELAPSED;
+import static org.lwjgl.opengl.GL33.glGetQueryObjectui64;
+
+/**
+ * Frame profiler made of named scopes, each keeping the time spent in it over the last frames.
+ * <p>
+ * CPU time is measured with {@link System#nanoTime()}, summed over every entry into the scope during a frame.
+ * Scopes created with {@link #gpuScope(String)} also measure the GPU time of the commands issued inside them with a
+ * <code>GL_TIME_ELAPSED</code> query. Each GPU scope alternates between two queries and reads the result of the
+ * previous frame's query at the end of the next frame, if available, so the CPU never waits for the GPU. GPU times
+ * therefore arrive one frame late, and are missing (NaN) when the GPU is more than a frame behind. Time elapsed
+ * queries cannot nest, so GPU scopes must not be entered inside each other, and only the first entry of a frame is
+ * timed on the GPU.
+ */
+public class Profiler {
+
+    public static final int DEFAULT_HISTORY = 300;
+
+    private static final int GPU_QUERIES = 2;
+
+    private final int historySize;
+
+    private final Map<String, Scope> scopes = new LinkedHashMap<>();
+
+    /**
+     * Number of frames ended so far, also the index of the current frame.
+     */
+    private long frame;
+
+    private Scope openGpuScope;
+
+    private long reportIntervalNanos;
+
+    private long lastReportNanos = System.nanoTime();
+
+    private Path csvFile;
+
+    private long csvFrame;
+
+    public Profiler() {
+        this(DEFAULT_HISTORY);
+    }
+
+    /**
+     * @param historySize number of frames kept per scope
+     */
+    public Profiler(int historySize) {
+        this.historySize = historySize;
+    }
+
+    /**
+     * Returns the CPU scope with this name, creating it the first time.
+     */
+    public Scope scope(String name) {
+        return scopes.computeIfAbsent(name, key -> new Scope(key, false));
+    }
+
+    /**
+     * Returns the CPU and GPU scope with this name, creating it the first time. Must be entered on the GL thread.
+     */
+    public Scope gpuScope(String name) {
+        return scopes.computeIfAbsent(name, key -> new Scope(key, true));
+    }
+
+    public List<Scope> getScopes() {
+        return Collections.unmodifiableList(new ArrayList<>(scopes.values()));
+    }
+
+    public int getHistorySize() {
+        return historySize;
+    }
+
+    /**
+     * Number of frames ended so far.
+     */
+    public long getFrame() {
+        return frame;
+    }
+
+    /**
+     * Enables the periodic report returned by {@link #endFrame()}, and appends the frames profiled since the last
+     * report to <code>csvFile</code> if it is not null.
+     */
+    public void setReport(double intervalSeconds, Path csvFile) {
+        this.reportIntervalNanos = (long) (intervalSeconds * 1e9);
+        this.csvFile = csvFile;
+        this.csvFrame = frame;
+    }
+
+    /**
+     * Records the time of every scope for the current frame and collects the GPU times that became available.
+     * Returns whether a report is due, in which case the CSV file has already been appended to and
+     * {@link #report()} can be logged.
+     */
+    public boolean endFrame() {
+        for (Scope scope : scopes.values()) {
+            scope.endFrame();
+        }
+        frame++;
+        if (reportIntervalNanos <= 0 || System.nanoTime() - lastReportNanos < reportIntervalNanos) {
+            return false;
+        }
+        lastReportNanos = System.nanoTime();
+        if (csvFile != null) {
+            try {
+                appendCsv();
+            } catch (IOException excp) {
+                System.err.println("Could not write profile to '" + csvFile + "': " + excp.getMessage());
+                csvFile = null;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * One line per scope with its average and maximum CPU and GPU time over the history, in milliseconds.
+     */
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        for (Scope scope : scopes.values()) {
+            report.append(String.format("%-12s cpu %7.3f ms avg %7.3f ms max", scope.name,
+                    scope.getAverageCpuMillis(), scope.getMaxCpuMillis()));
+            if (scope.gpu) {
+                report.append(String.format(" | gpu %7.3f ms avg %7.3f ms max", scope.getAverageGpuMillis(),
+                        scope.getMaxGpuMillis()));
+            }
+            report.append('\n');
+        }
+        return report.toString();
+    }
+
+    /**
+     * Writes the whole history, one row per frame and a CPU and GPU column per scope.
+     */
+    public void writeCsv(Path file) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writeCsvHeader(writer);
+            writeCsvRows(writer, Math.max(0, frame - historySize), frame);
+        }
+    }
+
+    /**
+     * Appends the frames since the last append, except the last one whose GPU times are not known yet.
+     */
+    private void appendCsv() throws IOException {
+        long from = Math.max(csvFrame, frame - historySize);
+        long to = frame - 1;
+        boolean header = !Files.exists(csvFile);
+        try (Writer writer = Files.newBufferedWriter(csvFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            if (header) {
+                writeCsvHeader(writer);
+            }
+            writeCsvRows(writer, from, to);
+        }
+        csvFrame = Math.max(csvFrame, to);
+    }
+
+    private void writeCsvHeader(Writer writer) throws IOException {
+        writer.write("frame");
+        for (Scope scope : scopes.values()) {
+            writer.write("," + scope.name + "_cpu_ms," + scope.name + "_gpu_ms");
+        }
+        writer.write('\n');
+    }
+
+    private void writeCsvRows(Writer writer, long from, long to) throws IOException {
+        for (long f = from; f < to; f++) {
+            StringBuilder row = new StringBuilder().append(f);
+            for (Scope scope : scopes.values()) {
+                float gpuMillis = scope.getGpuMillis(f);
+                row.append(',').append(scope.getCpuMillis(f)).append(',');
+                if (!Float.isNaN(gpuMillis)) {
+                    row.append(gpuMillis);
+                }
+            }
+            writer.write(row.append('\n').toString());
+        }
+    }
+
+    /**
+     * Deletes the GPU queries, must be called on the GL thread.
+     */
+    public void cleanup() {
+        for (Scope scope : scopes.values()) {
+            if (scope.queries != null) {
+                glDeleteQueries(scope.queries);
+                scope.queries = null;
+            }
+        }
+    }
+
+    /**
+     * A named section of the frame, entered with {@link #begin()} and left with {@link #end()}.
+     */
+    public class Scope {
+
+        private final String name;
+
+        private final boolean gpu;
+
+        private final float[] cpuMillis = new float[historySize];
+
+        private final float[] gpuMillis = new float[historySize];
+
+        private long beginNanos;
+
+        private long frameNanos;
+
+        private int[] queries;
+
+        private final long[] queryFrames = new long[GPU_QUERIES];
+
+        private final boolean[] queryPending = new boolean[GPU_QUERIES];
+
+        private long queryFrame = -1;
+
+        private int droppedQueries;
+
+        private Scope(String name, boolean gpu) {
+            this.name = name;
+            this.gpu = gpu;
+            Arrays.fill(gpuMillis, Float.NaN);
+        }
+
+        public void begin() {
+            beginNanos = System.nanoTime();
+            if (gpu && queryFrame != frame) {
+                if (openGpuScope != null) {
+                    throw new IllegalStateException("GPU scope '" + name + "' entered inside '"
+                            + openGpuScope.name + "'");
+                }
+                if (queries == null) {
+                    queries = new int[GPU_QUERIES];
+                    glGenQueries(queries);
+                }
+                int slot = (int) (frame % GPU_QUERIES);
+                if (queryPending[slot]) {
+                    // Still not available after a whole frame, reuse the query rather than wait for it
+                    droppedQueries++;
+                }
+                glBeginQuery(GL_TIME_ELAPSED, queries[slot]);
+                queryFrames[slot] = frame;
+                queryPending[slot] = true;
+                queryFrame = frame;
+                openGpuScope = this;
+            }
+        }
+
+        public void end() {
+            frameNanos += System.nanoTime() - beginNanos;
+            if (openGpuScope == this) {
+                glEndQuery(GL_TIME_ELAPSED);
+                openGpuScope = null;
+            }
+        }
+
+        /**
+         * Adds time measured elsewhere, such as on another thread, to the current frame.
+         */
+        public void addNanos(long nanos) {
+            frameNanos += nanos;
+        }
+
+        private void endFrame() {
+            int index = (int) (frame % historySize);
+            cpuMillis[index] = frameNanos / 1e6f;
+            gpuMillis[index] = Float.NaN;
+            frameNanos = 0;
+            if (queries == null) {
+                return;
+            }
+            // The query of the previous frame, the current one was only just issued
+            int slot = (int) ((frame + 1) % GPU_QUERIES);
+            if (queryPending[slot] && glGetQueryObjecti(queries[slot], GL_QUERY_RESULT_AVAILABLE) != 0) {
+                long nanos = glGetQueryObjectui64(queries[slot], GL_QUERY_RESULT);
+                if (frame - queryFrames[slot] < historySize) {
+                    gpuMillis[(int) (queryFrames[slot] % historySize)] = nanos / 1e6f;
+                }
+                queryPending[slot] = false;
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isGpu() {
+            return gpu;
+        }
+
+        /**
+         * CPU time spent in the scope during the given frame, 0 once it left the history.
+         */
+        public float getCpuMillis(long frame) {
+            return inHistory(frame) ? cpuMillis[(int) (frame % historySize)] : 0;
+        }
+
+        /**
+         * GPU time of the scope during the given frame, NaN if not measured or not known yet.
+         */
+        public float getGpuMillis(long frame) {
+            return inHistory(frame) ? gpuMillis[(int) (frame % historySize)] : Float.NaN;
+        }
+
+        private boolean inHistory(long f) {
+            return f >= 0 && f < Profiler.this.frame && Profiler.this.frame - f <= historySize;
+        }
+
+        public float getAverageCpuMillis() {
+            return average(cpuMillis);
+        }
+
+        public float getMaxCpuMillis() {
+            return max(cpuMillis);
+        }
+
+        public float getAverageGpuMillis() {
+            return average(gpuMillis);
+        }
+
+        public float getMaxGpuMillis() {
+            return max(gpuMillis);
+        }
+
+        /**
+         * GPU queries overwritten before their result was read.
+         */
+        public int getDroppedQueries() {
+            return droppedQueries;
+        }
+
+        private float average(float[] history) {
+            float sum = 0;
+            int count = 0;
+            for (long f = Math.max(0, frame - historySize); f < frame; f++) {
+                float value = history[(int) (f % historySize)];
+                if (!Float.isNaN(value)) {
+                    sum += value;
+                    count++;
+                }
+            }
+            return count > 0 ? sum / count : Float.NaN;
+        }
+
+        private float max(float[] history) {
+            float max = Float.NaN;
+            for (long f = Math.max(0, frame - historySize); f < frame; f++) {
+                float value = history[(int) (f % historySize)];
+                if (!Float.isNaN(value) && !(value <= max)) {
+                    max = value;
+                }
+            }
+            return max;
+        }
+    }
+}
@@ -36,6 +36,13 @@ public class Timer {
         upsCount++;
     }
 
+    /**
+     * Counts updates run elsewhere, such as on a simulation thread.
+     */
+    public void updateUPS(int updates) {
+        upsCount += updates;
+    }
+
     /**
      * Updates FPS and UPS if a whole second has passed.
      */
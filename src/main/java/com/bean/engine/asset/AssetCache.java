@@ -0,0 +1,143 @@
+package com.bean.engine.asset;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Central cache of loaded assets keyed by asset path and load parameters. Repeated loads of the same key share one
+ * reference counted {@link AssetHandle}. Once the loaded assets exceed the memory budget, unreferenced ones are
+ * destroyed in least recently used order.
+ * <p>
+ * Not thread safe, it is meant to be used from the GL thread only.
+ */
+public class AssetCache {
+
+    // Access ordered, so iteration starts with the least recently used entry
+    private final LinkedHashMap<String, AssetHandle<?>> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+    private long budgetBytes;
+
+    private long usedBytes;
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    public AssetCache(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * Returns the cached handle for the key with one more reference, or null if the key is not cached.
+     */
+    @SuppressWarnings("unchecked")
+    <T> AssetHandle<T> acquire(String key) {
+        AssetHandle<T> handle = (AssetHandle<T>) entries.get(key);
+        if (handle == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        handle.retain();
+        return handle;
+    }
+
+    /**
+     * Adds a handle that is still loading, holding the reference of the caller that requested it.
+     */
+    void add(AssetHandle<?> handle) {
+        handle.setCache(this);
+        handle.retain();
+        entries.put(handle.getKey(), handle);
+    }
+
+    /**
+     * Accounts for the memory of an asset that finished uploading.
+     */
+    void loaded(AssetHandle<?> handle, long byteSize) {
+        handle.setByteSize(byteSize);
+        usedBytes += byteSize;
+        evict();
+    }
+
+    /**
+     * Forgets a handle whose load failed, so the next request tries again.
+     */
+    void failed(AssetHandle<?> handle) {
+        entries.remove(handle.getKey(), handle);
+    }
+
+    void released(AssetHandle<?> handle) {
+        if (handle.getRefCount() == 0) {
+            evict();
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, AssetHandle<?>>> iterator = entries.entrySet().iterator();
+        while (usedBytes > budgetBytes && iterator.hasNext()) {
+            AssetHandle<?> handle = iterator.next().getValue();
+            if (handle.getRefCount() > 0 || !handle.isReady()) {
+                continue;
+            }
+            iterator.remove();
+            usedBytes -= handle.getByteSize();
+            evictions++;
+            handle.destroy();
+        }
+    }
+
+    /**
+     * Destroys every loaded asset, referenced or not.
+     */
+    public void clear() {
+        for (AssetHandle<?> handle : entries.values()) {
+            handle.destroy();
+        }
+        entries.clear();
+        usedBytes = 0;
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    public void setBudgetBytes(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+        evict();
+    }
+
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public int getEntryCount() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public double getHitRatio() {
+        long requests = hits + misses;
+        return requests > 0 ? (double) hits / requests : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AssetCache[%d entries, %.1f/%.1f MB, %d hits, %d misses, %d evictions]",
+                entries.size(), usedBytes / (1024.0 * 1024.0), budgetBytes / (1024.0 * 1024.0), hits, misses, evictions);
+    }
+}
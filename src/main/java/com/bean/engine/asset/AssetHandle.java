@@ -0,0 +1,122 @@
+package com.bean.engine.asset;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Shared, reference counted handle to an asset loaded by {@link AssetLoader}. The asset becomes available once it
+ * has been uploaded on the GL thread, callbacks registered with {@link #thenAccept(Consumer)} run on that thread.
+ * Every load call that returned a handle must be paired with one {@link #release()}.
+ */
+public class AssetHandle<T> {
+
+    private final String path;
+
+    private final String key;
+
+    private final CompletableFuture<T> future;
+
+    private final Consumer<T> destroyer;
+
+    private AssetCache cache;
+
+    private int refCount;
+
+    private long byteSize;
+
+    AssetHandle(String path, String key, Consumer<T> destroyer) {
+        this.path = path;
+        this.key = key;
+        this.destroyer = destroyer;
+        this.future = new CompletableFuture<>();
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public boolean isReady() {
+        return future.isDone() && !future.isCompletedExceptionally();
+    }
+
+    public boolean isFailed() {
+        return future.isCompletedExceptionally();
+    }
+
+    /**
+     * Returns the asset, or null if it is not ready yet.
+     */
+    public T get() {
+        return isReady() ? future.join() : null;
+    }
+
+    /**
+     * Runs the action with the asset once it is ready. If it is ready already the action runs immediately.
+     */
+    public AssetHandle<T> thenAccept(Consumer<? super T> action) {
+        future.thenAccept(action);
+        return this;
+    }
+
+    public CompletableFuture<T> getFuture() {
+        return future;
+    }
+
+    public int getRefCount() {
+        return refCount;
+    }
+
+    /**
+     * Approximate GPU memory used by the asset, known once it has been uploaded.
+     */
+    public long getByteSize() {
+        return byteSize;
+    }
+
+    /**
+     * Drops one reference. Unreferenced assets stay cached until the cache needs their memory.
+     */
+    public void release() {
+        if (refCount <= 0) {
+            throw new IllegalStateException("Asset [" + key + "] released more often than acquired");
+        }
+        refCount--;
+        if (cache != null) {
+            cache.released(this);
+        }
+    }
+
+    void retain() {
+        refCount++;
+    }
+
+    void setCache(AssetCache cache) {
+        this.cache = cache;
+    }
+
+    void setByteSize(long byteSize) {
+        this.byteSize = byteSize;
+    }
+
+    void complete(T asset) {
+        future.complete(asset);
+    }
+
+    void fail(Throwable cause) {
+        future.completeExceptionally(cause);
+    }
+
+    /**
+     * Deletes the GPU resources of the asset, if it was loaded.
+     */
+    void destroy() {
+        T asset = get();
+        if (asset != null && destroyer != null) {
+            destroyer.accept(asset);
+        }
+    }
+}
@@ -0,0 +1,354 @@
+package com.bean.engine.asset;
+
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import com.bean.engine.graph.GeometryPool;
+import com.bean.engine.graph.OBJLoader;
+import com.bean.engine.graph.Texture;
+import com.bean.engine.graph.TextureData;
+import com.bean.engine.mesh.Mesh;
+import com.bean.engine.mesh.VertexFormat;
+
+/**
+ * Loads assets in two stages: file I/O, decoding and parsing run on background worker threads, then the
+ * OpenGL upload is queued and drained on the GL thread by {@link #processUploads()} under a per-frame budget,
+ * so scenes appear progressively instead of blocking the game loop.
+ * <p>
+ * Loads go through an {@link AssetCache}, so requesting an asset that is already loaded or loading returns the
+ * shared handle. Load requests and {@link #processUploads()} must both come from the GL thread.
+ */
+public class AssetLoader {
+
+    /**
+     * Time {@link #cleanup()} waits for decodes in flight.
+     */
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 1000;
+
+    private final ExecutorService workers;
+
+    private volatile boolean stopped;
+
+    private final AssetCache cache;
+
+    private final Queue<PendingUpload<?, ?>> uploadQueue = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger pendingLoads = new AtomicInteger();
+
+    private final AtomicInteger pendingUploads = new AtomicInteger();
+
+    private long uploadBudgetBytes;
+
+    private long uploadBudgetNanos;
+
+    private VertexFormat vertexFormat = Mesh.DEFAULT_VERTEX_FORMAT;
+
+    private GeometryPool geometryPool;
+
+    private int completedUploads;
+
+    private long totalUploadLatencyNanos;
+
+    private long maxUploadLatencyNanos;
+
+    private long lastFrameUploadBytes;
+
+    private long lastFrameUploadNanos;
+
+    /**
+     * @param workerCount       number of background loading threads
+     * @param uploadBudgetBytes bytes uploaded per call to {@link #processUploads()}, 0 for no limit
+     * @param uploadBudgetNanos time spent uploading per call to {@link #processUploads()}, 0 for no limit
+     * @param cache             cache sharing loaded assets between requests
+     */
+    public AssetLoader(int workerCount, long uploadBudgetBytes, long uploadBudgetNanos, AssetCache cache) {
+        AtomicInteger threadCount = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "ASSET_LOADER_" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.uploadBudgetBytes = uploadBudgetBytes;
+        this.uploadBudgetNanos = uploadBudgetNanos;
+        this.cache = cache;
+    }
+
+    public AssetHandle<Mesh> loadMesh(String fileName) {
+        return loadMesh(fileName, false);
+    }
+
+    /**
+     * @param optimize reorder triangles and vertices for GPU cache locality,
+     *                 see {@link OBJLoader#prepareMesh(String, boolean)}
+     */
+    public AssetHandle<Mesh> loadMesh(String fileName, boolean optimize) {
+        return loadMesh(fileName, optimize, 1);
+    }
+
+    /**
+     * @param lodCount number of detail levels to build, see {@link OBJLoader#prepareMesh(String, boolean, int)}
+     */
+    public AssetHandle<Mesh> loadMesh(String fileName, boolean optimize, int lodCount) {
+        VertexFormat format = vertexFormat;
+        GeometryPool pool = geometryPool;
+        return load("mesh:" + fileName + (optimize ? "?optimize" : "") + (lodCount > 1 ? "?lods=" + lodCount : "")
+                        + (pool != null ? "?pooled" : "?format=" + format),
+                fileName,
+                () -> OBJLoader.prepareMesh(fileName, optimize, lodCount),
+                OBJLoader.PreparedMesh::getByteSize,
+                preparedMesh -> preparedMesh.upload(format, pool),
+                null,
+                Mesh::cleanUp);
+    }
+
+    public AssetHandle<Texture> loadTexture(String fileName) {
+        return load("texture:" + fileName, fileName,
+                () -> Texture.load(fileName),
+                textureData -> (long) textureData.getByteSize(),
+                Texture::new,
+                TextureData::free,
+                Texture::cleanup);
+    }
+
+    /**
+     * Loads an asset decoded by <code>decoder</code> on a worker thread and turned into the asset by
+     * <code>uploader</code> on the GL thread. <code>release</code>, if not null, frees the decoded data once it was
+     * uploaded or discarded.
+     */
+    <D, T> AssetHandle<T> load(String key, String path, Callable<D> decoder, Function<D, Long> byteSize,
+                               Function<D, T> uploader, Consumer<D> release, Consumer<T> destroyer) {
+        AssetHandle<T> cached = cache.acquire(key);
+        if (cached != null) {
+            return cached;
+        }
+        AssetHandle<T> handle = new AssetHandle<>(path, key, destroyer);
+        cache.add(handle);
+
+        long requestTime = System.nanoTime();
+        pendingLoads.incrementAndGet();
+        workers.execute(() -> {
+            PendingUpload<D, T> upload;
+            try {
+                D decoded = decoder.call();
+                upload = new PendingUpload<>(handle, decoded, byteSize.apply(decoded), uploader, release, requestTime, null);
+            } catch (Throwable excp) {
+                System.err.println("Error loading asset [" + path + "]: " + excp);
+                // Failures are also reported on the GL thread, which owns the cache
+                upload = new PendingUpload<>(handle, null, 0, uploader, release, requestTime, excp);
+            }
+            pendingUploads.incrementAndGet();
+            uploadQueue.add(upload);
+            pendingLoads.decrementAndGet();
+            if (stopped) {
+                // cleanup() may have drained the queue before this upload was added
+                discardUploads();
+            }
+        });
+        return handle;
+    }
+
+    /**
+     * Uploads queued assets until the byte or time budget of this frame is spent. At least one upload is done
+     * per call so that an asset larger than the budget still makes progress. Must be called on the GL thread.
+     */
+    public void processUploads() {
+        long start = System.nanoTime();
+        long uploadedBytes = 0;
+        PendingUpload<?, ?> upload;
+        while ((upload = uploadQueue.peek()) != null) {
+            boolean firstUpload = uploadedBytes == 0;
+            if (!firstUpload && uploadBudgetBytes > 0 && uploadedBytes + upload.byteSize > uploadBudgetBytes) {
+                break;
+            }
+            if (!firstUpload && uploadBudgetNanos > 0 && System.nanoTime() - start >= uploadBudgetNanos) {
+                break;
+            }
+            uploadQueue.poll();
+            pendingUploads.decrementAndGet();
+            uploadedBytes += Math.max(1, upload.byteSize);
+            if (upload.run()) {
+                cache.loaded(upload.handle, upload.byteSize);
+            } else {
+                cache.failed(upload.handle);
+            }
+
+            long latency = System.nanoTime() - upload.requestTime;
+            completedUploads++;
+            totalUploadLatencyNanos += latency;
+            maxUploadLatencyNanos = Math.max(maxUploadLatencyNanos, latency);
+        }
+        lastFrameUploadBytes = uploadedBytes;
+        lastFrameUploadNanos = System.nanoTime() - start;
+    }
+
+    public boolean isIdle() {
+        return pendingLoads.get() == 0 && pendingUploads.get() == 0;
+    }
+
+    /**
+     * Number of assets still being read or decoded on the worker threads.
+     */
+    public int getPendingLoads() {
+        return pendingLoads.get();
+    }
+
+    /**
+     * Number of decoded assets waiting for their GPU upload.
+     */
+    public int getPendingUploads() {
+        return pendingUploads.get();
+    }
+
+    public int getCompletedUploads() {
+        return completedUploads;
+    }
+
+    /**
+     * Average time from the load request until the asset was uploaded, in milliseconds.
+     */
+    public double getAverageUploadLatencyMillis() {
+        return completedUploads > 0 ? totalUploadLatencyNanos / (completedUploads * 1_000_000.0) : 0;
+    }
+
+    public double getMaxUploadLatencyMillis() {
+        return maxUploadLatencyNanos / 1_000_000.0;
+    }
+
+    public long getLastFrameUploadBytes() {
+        return lastFrameUploadBytes;
+    }
+
+    public double getLastFrameUploadMillis() {
+        return lastFrameUploadNanos / 1_000_000.0;
+    }
+
+    public long getUploadBudgetBytes() {
+        return uploadBudgetBytes;
+    }
+
+    public void setUploadBudgetBytes(long uploadBudgetBytes) {
+        this.uploadBudgetBytes = uploadBudgetBytes;
+    }
+
+    public long getUploadBudgetNanos() {
+        return uploadBudgetNanos;
+    }
+
+    public void setUploadBudgetNanos(long uploadBudgetNanos) {
+        this.uploadBudgetNanos = uploadBudgetNanos;
+    }
+
+    public VertexFormat getVertexFormat() {
+        return vertexFormat;
+    }
+
+    /**
+     * Sets the vertex format of meshes requested from now on.
+     */
+    public void setVertexFormat(VertexFormat vertexFormat) {
+        this.vertexFormat = vertexFormat;
+    }
+
+    public GeometryPool getGeometryPool() {
+        return geometryPool;
+    }
+
+    /**
+     * Stores meshes requested from now on in the shared buffers of <code>geometryPool</code>, in its vertex format,
+     * or in buffers of their own when null.
+     */
+    public void setGeometryPool(GeometryPool geometryPool) {
+        this.geometryPool = geometryPool;
+    }
+
+    public AssetCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Stops the workers, releases decoded data that was never uploaded and destroys all cached assets. Decodes in
+     * flight are waited for, up to a second; data they decode later is released by their worker.
+     */
+    public void cleanup() {
+        stopped = true;
+        workers.shutdownNow();
+        try {
+            workers.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+        discardUploads();
+        cache.clear();
+    }
+
+    private void discardUploads() {
+        PendingUpload<?, ?> upload;
+        while ((upload = uploadQueue.poll()) != null) {
+            pendingUploads.decrementAndGet();
+            upload.discard();
+        }
+    }
+
+    private static class PendingUpload<D, T> {
+
+        private final AssetHandle<T> handle;
+
+        private final D decoded;
+
+        private final long byteSize;
+
+        private final Function<D, T> uploader;
+
+        private final Consumer<D> release;
+
+        private final long requestTime;
+
+        private final Throwable error;
+
+        PendingUpload(AssetHandle<T> handle, D decoded, long byteSize, Function<D, T> uploader,
+                      Consumer<D> release, long requestTime, Throwable error) {
+            this.handle = handle;
+            this.decoded = decoded;
+            this.byteSize = byteSize;
+            this.uploader = uploader;
+            this.release = release;
+            this.requestTime = requestTime;
+            this.error = error;
+        }
+
+        boolean run() {
+            if (error != null) {
+                handle.fail(error);
+                return false;
+            }
+            T asset;
+            try {
+                asset = uploader.apply(decoded);
+            } catch (RuntimeException excp) {
+                System.err.println("Error uploading asset [" + handle.getPath() + "]: " + excp);
+                handle.fail(excp);
+                return false;
+            } finally {
+                if (release != null) {
+                    release.accept(decoded);
+                }
+            }
+            handle.complete(asset);
+            return true;
+        }
+
+        void discard() {
+            if (release != null && decoded != null) {
+                release.accept(decoded);
+            }
+            handle.fail(new IllegalStateException("Asset loader stopped before [" + handle.getPath() + "] was uploaded"));
+        }
+    }
+}
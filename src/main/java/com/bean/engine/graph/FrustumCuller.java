@@ -0,0 +1,127 @@
+package com.bean.engine.graph;
+
+import java.util.List;
+
+import com.bean.engine.mesh.Bounds;
+import com.bean.engine.mesh.EntityStore;
+import com.bean.engine.mesh.GameItem;
+import com.bean.engine.mesh.GameItemIndex;
+import com.bean.engine.mesh.Mesh;
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+/**
+ * Rejects items outside the view frustum on the CPU, before any of their uniforms or draw calls are issued.
+ * <p>
+ * The bounding sphere of the mesh is tested first. Spheres crossing a frustum plane get a second, tighter test
+ * with the box enclosing the transformed mesh bounding box. Both tests are conservative: an item may be kept
+ * while not visible, but never culled while visible. No OpenGL context is needed.
+ */
+public class FrustumCuller {
+
+    private final FrustumIntersection frustum = new FrustumIntersection();
+
+    private final Matrix4f projectionViewMatrix = new Matrix4f();
+
+    private final Transformation transformation = new Transformation();
+
+    private final Matrix4f modelMatrix = new Matrix4f();
+
+    private final Vector3f worldCenter = new Vector3f();
+
+    private final Vector3f worldScale = new Vector3f();
+
+    private final Vector3f worldMin = new Vector3f();
+
+    private final Vector3f worldMax = new Vector3f();
+
+    private int lastVisible;
+
+    private int lastCulled;
+
+    /**
+     * Extracts the frustum planes of the camera, to be called once per frame before culling.
+     */
+    public void update(Matrix4f projectionMatrix, Matrix4f viewMatrix) {
+        frustum.set(projectionMatrix.mul(viewMatrix, projectionViewMatrix));
+    }
+
+    /**
+     * Returns whether the model space bounds, placed in the world by <code>modelMatrix</code>, may be visible.
+     */
+    public boolean isVisible(Bounds bounds, Matrix4f modelMatrix) {
+        modelMatrix.transformPosition(bounds.getCenter(), worldCenter);
+        modelMatrix.getScale(worldScale);
+        float radius = bounds.getRadius() * Math.max(worldScale.x, Math.max(worldScale.y, worldScale.z));
+        int result = frustum.intersectSphere(worldCenter, radius);
+        if (result == FrustumIntersection.OUTSIDE) {
+            return false;
+        }
+        if (result == FrustumIntersection.INSIDE) {
+            return true;
+        }
+        modelMatrix.transformAab(bounds.getMin(), bounds.getMax(), worldMin, worldMax);
+        return frustum.testAab(worldMin, worldMax);
+    }
+
+    public boolean isVisible(GameItem gameItem) {
+        return isVisible(gameItem.getMesh().getBounds(), transformation.getModelMatrix(gameItem));
+    }
+
+    /**
+     * Replaces the content of <code>visibleItems</code> with the items that may be visible, in their original order.
+     */
+    public void cull(List<GameItem> gameItems, List<GameItem> visibleItems) {
+        visibleItems.clear();
+        for (GameItem gameItem : gameItems) {
+            if (isVisible(gameItem)) {
+                visibleItems.add(gameItem);
+            }
+        }
+        lastVisible = visibleItems.size();
+        lastCulled = gameItems.size() - visibleItems.size();
+    }
+
+    /**
+     * Replaces the content of <code>visibleItems</code> with the entities of the store that may be visible, in dense
+     * order, streaming over the store's transform arrays.
+     */
+    public void cull(EntityStore store, List<GameItem> visibleItems) {
+        visibleItems.clear();
+        List<Mesh> meshes = store.getMeshes();
+        int[] meshIds = store.getMeshIds();
+        for (int i = 0; i < store.size(); i++) {
+            if (isVisible(meshes.get(meshIds[i]).getBounds(), store.getModelMatrix(i, modelMatrix))) {
+                visibleItems.add(store.getItem(i));
+            }
+        }
+        lastVisible = visibleItems.size();
+        lastCulled = store.size() - visibleItems.size();
+    }
+
+    /**
+     * Replaces the content of <code>visibleItems</code> with the indexed items whose box may be visible, walking the
+     * index instead of testing every item.
+     */
+    public void cull(GameItemIndex index, List<GameItem> visibleItems) {
+        visibleItems.clear();
+        index.queryFrustum(frustum, visibleItems);
+        lastVisible = visibleItems.size();
+        lastCulled = index.size() - visibleItems.size();
+    }
+
+    /**
+     * Items kept by the last {@link #cull(List, List)}.
+     */
+    public int getLastVisible() {
+        return lastVisible;
+    }
+
+    /**
+     * Items rejected by the last {@link #cull(List, List)}.
+     */
+    public int getLastCulled() {
+        return lastCulled;
+    }
+}
@@ -0,0 +1,307 @@
+package com.bean.engine.graph;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import com.bean.engine.mesh.VertexFormat;
+import org.lwjgl.system.MemoryUtil;
+
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_INT;
+import static org.lwjgl.opengl.GL15.GL_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL15.GL_ELEMENT_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL15.GL_STATIC_DRAW;
+import static org.lwjgl.opengl.GL15.glBindBuffer;
+import static org.lwjgl.opengl.GL15.glBufferData;
+import static org.lwjgl.opengl.GL15.glBufferSubData;
+import static org.lwjgl.opengl.GL15.glDeleteBuffers;
+import static org.lwjgl.opengl.GL15.glGenBuffers;
+import static org.lwjgl.opengl.GL20.glEnableVertexAttribArray;
+import static org.lwjgl.opengl.GL20.glVertexAttribPointer;
+import static org.lwjgl.opengl.GL30.glBindVertexArray;
+import static org.lwjgl.opengl.GL30.glDeleteVertexArrays;
+import static org.lwjgl.opengl.GL30.glGenVertexArrays;
+import static org.lwjgl.opengl.GL31.GL_COPY_READ_BUFFER;
+import static org.lwjgl.opengl.GL31.GL_COPY_WRITE_BUFFER;
+import static org.lwjgl.opengl.GL31.glCopyBufferSubData;
+
+/**
+ * Shared vertex and index buffers that static meshes are sub-allocated from, so that all of them are drawn with the
+ * same vertex array and can be submitted together with multi-draw indirect.
+ * <p>
+ * Vertices are stored in {@link #VERTEX_FORMAT}, which needs no per mesh dequantization, and indices as unsigned
+ * ints relative to the first vertex of their mesh. When a mesh does not fit, the pool compacts its live ranges to
+ * the start of new buffers, doubling them if the free space is too small. Releasing meshes also compacts once the
+ * free space is fragmented beyond {@link #MAX_FRAGMENTATION}.
+ */
+public class GeometryPool {
+
+    public static final VertexFormat VERTEX_FORMAT = VertexFormat.COMPACT;
+
+    public static final int INDEX_TYPE = GL_UNSIGNED_INT;
+
+    public static final float MAX_FRAGMENTATION = 0.5f;
+
+    private final int vaoId;
+
+    private int vboId;
+
+    private int iboId;
+
+    private final RangeAllocator vertices;
+
+    private final RangeAllocator indices;
+
+    private final List<Allocation> allocations = new ArrayList<>();
+
+    private int compactions;
+
+    public GeometryPool(int vertexCapacity, int indexCapacity) {
+        vertices = new RangeAllocator(vertexCapacity);
+        indices = new RangeAllocator(indexCapacity);
+        vaoId = glGenVertexArrays();
+        vboId = createBuffer(GL_ARRAY_BUFFER, (long) vertexCapacity * VERTEX_FORMAT.getBytesPerVertex());
+        iboId = createBuffer(GL_ELEMENT_ARRAY_BUFFER, (long) indexCapacity * Integer.BYTES);
+        attachBuffers();
+    }
+
+    private static int createBuffer(int target, long size) {
+        int bufferId = glGenBuffers();
+        glBindBuffer(target, bufferId);
+        glBufferData(target, size, GL_STATIC_DRAW);
+        glBindBuffer(target, 0);
+        return bufferId;
+    }
+
+    private void attachBuffers() {
+        glBindVertexArray(vaoId);
+        glBindBuffer(GL_ARRAY_BUFFER, vboId);
+        for (int[] attribute : VERTEX_FORMAT.getAttributes()) {
+            glEnableVertexAttribArray(attribute[0]);
+            glVertexAttribPointer(attribute[0], attribute[1], attribute[2], attribute[3] != 0,
+                    VERTEX_FORMAT.getBytesPerVertex(), attribute[4]);
+        }
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, iboId);
+        glBindVertexArray(0);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+    }
+
+    /**
+     * Copies a mesh into the pool. The source buffers are only read.
+     */
+    public Allocation add(FloatBuffer positions, FloatBuffer textCoords, FloatBuffer normals, IntBuffer indexData) {
+        int vertexCount = positions.remaining() / 3;
+        int indexCount = indexData.remaining();
+        int baseVertex = vertices.allocate(vertexCount);
+        int firstIndex = indices.allocate(indexCount);
+        if (baseVertex < 0 || firstIndex < 0) {
+            if (baseVertex >= 0) {
+                vertices.release(baseVertex, vertexCount);
+            }
+            if (firstIndex >= 0) {
+                indices.release(firstIndex, indexCount);
+            }
+            rebuild(grow(vertices, vertexCount), grow(indices, indexCount));
+            baseVertex = vertices.allocate(vertexCount);
+            firstIndex = indices.allocate(indexCount);
+        }
+        Allocation allocation = new Allocation(this, baseVertex, vertexCount, firstIndex, indexCount);
+        allocations.add(allocation);
+
+        int stride = VERTEX_FORMAT.getBytesPerVertex();
+        ByteBuffer vertexBuffer = null;
+        ByteBuffer indexBuffer = null;
+        try {
+            vertexBuffer = MemoryUtil.memAlloc(vertexCount * stride);
+            VERTEX_FORMAT.encodeVertices(positions, textCoords, normals,
+                    VERTEX_FORMAT.getDequantization(positions), vertexBuffer);
+            indexBuffer = MemoryUtil.memAlloc(indexCount * Integer.BYTES);
+            VertexFormat.encodeIndices(indexData, INDEX_TYPE, indexBuffer);
+
+            glBindBuffer(GL_ARRAY_BUFFER, vboId);
+            glBufferSubData(GL_ARRAY_BUFFER, (long) baseVertex * stride, vertexBuffer);
+            glBindBuffer(GL_ARRAY_BUFFER, 0);
+            // Bind through the copy target, binding the element array buffer would change the bound VAO
+            glBindBuffer(GL_COPY_WRITE_BUFFER, iboId);
+            glBufferSubData(GL_COPY_WRITE_BUFFER, (long) firstIndex * Integer.BYTES, indexBuffer);
+            glBindBuffer(GL_COPY_WRITE_BUFFER, 0);
+        } finally {
+            if (vertexBuffer != null) {
+                MemoryUtil.memFree(vertexBuffer);
+            }
+            if (indexBuffer != null) {
+                MemoryUtil.memFree(indexBuffer);
+            }
+        }
+        return allocation;
+    }
+
+    /**
+     * Capacity after compaction that fits <code>size</code> more elements: the current one if the free space is
+     * only fragmented, doubled until large enough otherwise.
+     */
+    private static int grow(RangeAllocator allocator, int size) {
+        int capacity = allocator.getCapacity();
+        int used = capacity - allocator.getFreeSpace();
+        while (capacity - used < size) {
+            capacity *= 2;
+        }
+        return capacity;
+    }
+
+    private void remove(Allocation allocation) {
+        if (!allocations.remove(allocation)) {
+            return;
+        }
+        vertices.release(allocation.baseVertex, allocation.vertexCount);
+        indices.release(allocation.firstIndex, allocation.indexCount);
+        if (vertices.getFragmentation() > MAX_FRAGMENTATION || indices.getFragmentation() > MAX_FRAGMENTATION) {
+            compact();
+        }
+    }
+
+    /**
+     * Moves all live meshes to the start of the buffers, leaving the free space in one range.
+     */
+    public void compact() {
+        rebuild(vertices.getCapacity(), indices.getCapacity());
+    }
+
+    /**
+     * Copies the live ranges, in order, to the start of new buffers of the given capacities. The copies are done by
+     * the GPU, draws already submitted keep reading the old buffers until they are deleted.
+     */
+    private void rebuild(int vertexCapacity, int indexCapacity) {
+        int stride = VERTEX_FORMAT.getBytesPerVertex();
+        int newVboId = createBuffer(GL_ARRAY_BUFFER, (long) vertexCapacity * stride);
+        int newIboId = createBuffer(GL_ARRAY_BUFFER, (long) indexCapacity * Integer.BYTES);
+
+        int vertexEnd = 0;
+        glBindBuffer(GL_COPY_READ_BUFFER, vboId);
+        glBindBuffer(GL_COPY_WRITE_BUFFER, newVboId);
+        allocations.sort(Comparator.comparingInt(Allocation::getBaseVertex));
+        for (Allocation allocation : allocations) {
+            glCopyBufferSubData(GL_COPY_READ_BUFFER, GL_COPY_WRITE_BUFFER, (long) allocation.baseVertex * stride,
+                    (long) vertexEnd * stride, (long) allocation.vertexCount * stride);
+            allocation.baseVertex = vertexEnd;
+            vertexEnd += allocation.vertexCount;
+        }
+
+        int indexEnd = 0;
+        glBindBuffer(GL_COPY_READ_BUFFER, iboId);
+        glBindBuffer(GL_COPY_WRITE_BUFFER, newIboId);
+        allocations.sort(Comparator.comparingInt(Allocation::getFirstIndex));
+        for (Allocation allocation : allocations) {
+            glCopyBufferSubData(GL_COPY_READ_BUFFER, GL_COPY_WRITE_BUFFER, (long) allocation.firstIndex * Integer.BYTES,
+                    (long) indexEnd * Integer.BYTES, (long) allocation.indexCount * Integer.BYTES);
+            allocation.firstIndex = indexEnd;
+            indexEnd += allocation.indexCount;
+        }
+        glBindBuffer(GL_COPY_READ_BUFFER, 0);
+        glBindBuffer(GL_COPY_WRITE_BUFFER, 0);
+
+        glDeleteBuffers(vboId);
+        glDeleteBuffers(iboId);
+        vboId = newVboId;
+        iboId = newIboId;
+        attachBuffers();
+        vertices.reset(vertexEnd, vertexCapacity);
+        indices.reset(indexEnd, indexCapacity);
+        compactions++;
+    }
+
+    public int getVaoId() {
+        return vaoId;
+    }
+
+    public int getMeshCount() {
+        return allocations.size();
+    }
+
+    /**
+     * Number of times the live meshes were moved to close gaps or grow the buffers.
+     */
+    public int getCompactions() {
+        return compactions;
+    }
+
+    public int getVertexCapacity() {
+        return vertices.getCapacity();
+    }
+
+    public int getIndexCapacity() {
+        return indices.getCapacity();
+    }
+
+    public float getFragmentation() {
+        return Math.max(vertices.getFragmentation(), indices.getFragmentation());
+    }
+
+    public void cleanup() {
+        glDeleteBuffers(vboId);
+        glDeleteBuffers(iboId);
+        glDeleteVertexArrays(vaoId);
+        allocations.clear();
+    }
+
+    /**
+     * The ranges of one mesh in the pool. They move when the pool compacts, so they must be read at draw time.
+     */
+    public static class Allocation {
+
+        private final GeometryPool pool;
+
+        private int baseVertex;
+
+        private final int vertexCount;
+
+        private int firstIndex;
+
+        private final int indexCount;
+
+        private Allocation(GeometryPool pool, int baseVertex, int vertexCount, int firstIndex, int indexCount) {
+            this.pool = pool;
+            this.baseVertex = baseVertex;
+            this.vertexCount = vertexCount;
+            this.firstIndex = firstIndex;
+            this.indexCount = indexCount;
+        }
+
+        public GeometryPool getPool() {
+            return pool;
+        }
+
+        public int getBaseVertex() {
+            return baseVertex;
+        }
+
+        public int getVertexCount() {
+            return vertexCount;
+        }
+
+        public int getFirstIndex() {
+            return firstIndex;
+        }
+
+        public int getIndexCount() {
+            return indexCount;
+        }
+
+        /**
+         * GPU memory used by the ranges.
+         */
+        public int getByteSize() {
+            return vertexCount * VERTEX_FORMAT.getBytesPerVertex() + indexCount * Integer.BYTES;
+        }
+
+        /**
+         * Returns the ranges to the pool.
+         */
+        public void release() {
+            pool.remove(this);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.bean.engine.graph;
+
+import java.nio.ByteBuffer;
+
+import org.joml.Matrix4f;
+import org.joml.Vector4fc;
+
+import static org.lwjgl.opengl.GL11.GL_FLOAT;
+import static org.lwjgl.opengl.GL15.GL_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL15.glBindBuffer;
+import static org.lwjgl.opengl.GL20.glDisableVertexAttribArray;
+import static org.lwjgl.opengl.GL20.glEnableVertexAttribArray;
+import static org.lwjgl.opengl.GL20.glVertexAttribPointer;
+import static org.lwjgl.opengl.GL33.glVertexAttribDivisor;
+
+/**
+ * Per-instance attributes for instanced draws: a model matrix at locations 3 to 6, a tint colour at location 7 and
+ * the material index at location 8, so instances of one multi-draw can use different materials.
+ * <p>
+ * The attributes of every instance drawn in a frame are written with {@link #put} straight into a range of a
+ * {@link StreamBuffer}, made visible to the GPU by {@link #upload()}, then each draw points the attributes of its
+ * mesh VAO at its own instances with {@link #bind(int)}.
+ */
+public class InstanceBuffer {
+
+    public static final int MODEL_MATRIX_LOCATION = 3;
+
+    public static final int TINT_LOCATION = 7;
+
+    public static final int MATERIAL_LOCATION = 8;
+
+    private static final int FLOATS_PER_INSTANCE = 16 + 4 + 1;
+
+    private static final int INSTANCE_BYTES = FLOATS_PER_INSTANCE * Float.BYTES;
+
+    /**
+     * Alignment of the instance range in the stream buffer, enough for float attributes.
+     */
+    private static final int ALIGNMENT = 16;
+
+    private final StreamBuffer streamBuffer;
+
+    private int baseOffset;
+
+    private int writeOffset;
+
+    private int capacity;
+
+    public InstanceBuffer(StreamBuffer streamBuffer) {
+        this.streamBuffer = streamBuffer;
+    }
+
+    /**
+     * Reserves room for <code>instanceCount</code> instances in the stream buffer for this frame.
+     */
+    public void begin(int instanceCount) {
+        capacity = instanceCount;
+        baseOffset = instanceCount > 0 ? streamBuffer.allocate(instanceCount * INSTANCE_BYTES, ALIGNMENT) : 0;
+        writeOffset = baseOffset;
+    }
+
+    /**
+     * @param materialIndex slot of the material in the materials uniform block
+     */
+    public void put(Matrix4f modelMatrix, Vector4fc tint, int materialIndex) {
+        if (size() == capacity) {
+            throw new IllegalStateException("Instance buffer holds " + capacity + " instances");
+        }
+        ByteBuffer data = streamBuffer.getData();
+        modelMatrix.get(writeOffset, data);
+        data.putFloat(writeOffset + 64, tint.x()).putFloat(writeOffset + 68, tint.y())
+                .putFloat(writeOffset + 72, tint.z()).putFloat(writeOffset + 76, tint.w());
+        data.putFloat(writeOffset + 80, materialIndex);
+        writeOffset += INSTANCE_BYTES;
+    }
+
+    /**
+     * Number of instances written since {@link #begin(int)}.
+     */
+    public int size() {
+        return (writeOffset - baseOffset) / INSTANCE_BYTES;
+    }
+
+    /**
+     * Makes the instances written since {@link #begin(int)} visible to the GPU.
+     */
+    public void upload() {
+        streamBuffer.flush();
+    }
+
+    /**
+     * Points the instance attributes of the bound VAO at the instances starting at <code>firstInstance</code>.
+     */
+    public void bind(int firstInstance) {
+        glBindBuffer(GL_ARRAY_BUFFER, streamBuffer.getBufferId());
+        long offset = baseOffset + (long) firstInstance * INSTANCE_BYTES;
+        for (int column = 0; column < 4; column++) {
+            int location = MODEL_MATRIX_LOCATION + column;
+            glEnableVertexAttribArray(location);
+            glVertexAttribPointer(location, 4, GL_FLOAT, false, INSTANCE_BYTES, offset + column * 4L * Float.BYTES);
+            glVertexAttribDivisor(location, 1);
+        }
+        glEnableVertexAttribArray(TINT_LOCATION);
+        glVertexAttribPointer(TINT_LOCATION, 4, GL_FLOAT, false, INSTANCE_BYTES, offset + 16L * Float.BYTES);
+        glVertexAttribDivisor(TINT_LOCATION, 1);
+        glEnableVertexAttribArray(MATERIAL_LOCATION);
+        glVertexAttribPointer(MATERIAL_LOCATION, 1, GL_FLOAT, false, INSTANCE_BYTES, offset + 20L * Float.BYTES);
+        glVertexAttribDivisor(MATERIAL_LOCATION, 1);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+    }
+
+    /**
+     * Disables the instance attributes of the bound VAO again, so non instanced draws read the constant tint.
+     */
+    public void unbind() {
+        for (int location = MODEL_MATRIX_LOCATION; location <= MATERIAL_LOCATION; location++) {
+            glDisableVertexAttribArray(location);
+        }
+    }
+}
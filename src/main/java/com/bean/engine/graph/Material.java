@@ -1,31 +1,38 @@
 package com.bean.engine.graph;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.joml.Vector4f;
+import org.joml.Vector4fc;
 
 public class Material {
 
+    private static final AtomicInteger NEXT_ID = new AtomicInteger(1);
+
+    /**
+     * Small unique number of the material, used to sort draws by material.
+     */
+    private final int id = NEXT_ID.getAndIncrement();
 
-    private static final Vector4f DEFAULT_COLOUR = new Vector4f(1.0f, 1.0f, 1.0f, 1.0f);
+    private static final Vector4fc DEFAULT_COLOUR = new Vector4f(1.0f, 1.0f, 1.0f, 1.0f);
 
-    private Vector4f ambientColour;
+    private final Vector4f ambientColour = new Vector4f();
 
-    private Vector4f diffuseColour;
+    private final Vector4f diffuseColour = new Vector4f();
 
-    private Vector4f specularColour;
+    private final Vector4f specularColour = new Vector4f();
 
     private float reflectance;
 
     private Texture texture;
 
+    private int version;
+
     public Material() {
-        this.ambientColour = DEFAULT_COLOUR;
-        this.diffuseColour = DEFAULT_COLOUR;
-        this.specularColour = DEFAULT_COLOUR;
-        this.texture = null;
-        this.reflectance = 0;
+        this(DEFAULT_COLOUR, DEFAULT_COLOUR, DEFAULT_COLOUR, null, 0);
     }
 
-    public Material(Vector4f colour, float reflectance) {
+    public Material(Vector4fc colour, float reflectance) {
         this(colour, colour, colour, null, reflectance);
     }
 
@@ -37,36 +44,54 @@ public class Material {
         this(DEFAULT_COLOUR, DEFAULT_COLOUR, DEFAULT_COLOUR, texture, reflectance);
     }
 
-    public Material(Vector4f ambientColour, Vector4f diffuseColour, Vector4f specularColour, Texture texture, float reflectance) {
-        this.ambientColour = ambientColour;
-        this.diffuseColour = diffuseColour;
-        this.specularColour = specularColour;
+    /**
+     * The colours are copied, so the vectors passed may be reused or modified afterwards.
+     */
+    public Material(Vector4fc ambientColour, Vector4fc diffuseColour, Vector4fc specularColour, Texture texture, float reflectance) {
+        this.ambientColour.set(ambientColour);
+        this.diffuseColour.set(diffuseColour);
+        this.specularColour.set(specularColour);
         this.texture = texture;
         this.reflectance = reflectance;
     }
 
-    public Vector4f getAmbientColour() {
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Incremented by every setter, so copies of the material on the GPU know when to refresh. The colours can only
+     * be changed through the setters, which copy them.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    public Vector4fc getAmbientColour() {
         return ambientColour;
     }
 
-    public void setAmbientColour(Vector4f ambientColour) {
-        this.ambientColour = ambientColour;
+    public void setAmbientColour(Vector4fc ambientColour) {
+        this.ambientColour.set(ambientColour);
+        version++;
     }
 
-    public Vector4f getDiffuseColour() {
+    public Vector4fc getDiffuseColour() {
         return diffuseColour;
     }
 
-    public void setDiffuseColour(Vector4f diffuseColour) {
-        this.diffuseColour = diffuseColour;
+    public void setDiffuseColour(Vector4fc diffuseColour) {
+        this.diffuseColour.set(diffuseColour);
+        version++;
     }
 
-    public Vector4f getSpecularColour() {
+    public Vector4fc getSpecularColour() {
         return specularColour;
     }
 
-    public void setSpecularColour(Vector4f specularColour) {
-        this.specularColour = specularColour;
+    public void setSpecularColour(Vector4fc specularColour) {
+        this.specularColour.set(specularColour);
+        version++;
     }
 
     public float getReflectance() {
@@ -75,6 +100,14 @@ public class Material {
 
     public void setReflectance(float reflectance) {
         this.reflectance = reflectance;
+        version++;
+    }
+
+    /**
+     * Whether the material needs blending, that is when its diffuse colour is not fully opaque.
+     */
+    public boolean isTransparent() {
+        return diffuseColour.w < 1;
     }
 
     public boolean isTextured() {
@@ -87,6 +120,7 @@ public class Material {
 
     public void setTexture(Texture texture) {
         this.texture = texture;
+        version++;
     }
 
 }
@@ -0,0 +1,60 @@
+package com.bean.engine.graph;
+
+/**
+ * Keeps the materials being drawn in the Materials uniform block, so that a draw only sets the index of its
+ * material. A material is written to its slot when first used and again whenever its version changes. Slots are
+ * indexed by material id: a released material, or one not drawn for a while when the block is full, gives its slot
+ * to the next new material.
+ */
+public class MaterialBuffer {
+
+    private final UniformBuffer uniformBuffer;
+
+    private final MaterialSlots slots = new MaterialSlots(UniformBlocks.MAX_MATERIALS);
+
+    public MaterialBuffer() {
+        uniformBuffer = new UniformBuffer(UniformBlocks.MATERIALS_BINDING,
+                UniformBlocks.MAX_MATERIALS * UniformBlocks.MATERIAL_SIZE);
+    }
+
+    /**
+     * Returns the index of the material in the block, uploading it first if it is new or was modified.
+     *
+     * @throws IllegalStateException if more materials than the block holds are drawn in the same frame
+     */
+    public int getIndex(Material material) {
+        int slot = slots.acquire(material.getId());
+        if (slots.update(slot, material.getVersion())) {
+            int offset = slot * UniformBlocks.MATERIAL_SIZE;
+            UniformBlocks.writeMaterial(uniformBuffer.getData(), offset, material);
+            uniformBuffer.upload(offset, UniformBlocks.MATERIAL_SIZE);
+        }
+        return slot;
+    }
+
+    /**
+     * Frees the slot of a material that will not be drawn anymore.
+     */
+    public void release(Material material) {
+        slots.release(material.getId());
+    }
+
+    /**
+     * Called once per frame, before the first draw: materials drawn in earlier frames may lose their slot.
+     */
+    public void nextFrame() {
+        slots.nextFrame();
+    }
+
+    public int getMaterialCount() {
+        return slots.size();
+    }
+
+    public int getUploads() {
+        return uniformBuffer.getUploads();
+    }
+
+    public void cleanup() {
+        uniformBuffer.cleanup();
+    }
+}
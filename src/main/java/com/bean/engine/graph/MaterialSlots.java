@@ -0,0 +1,120 @@
+package com.bean.engine.graph;
+
+import java.util.Arrays;
+
+/**
+ * Assigns a fixed number of slots to material ids and remembers the version last written to each slot.
+ * <p>
+ * Slots are released explicitly or, once all of them are taken, reclaimed from the material least recently used, so
+ * materials that are destroyed or no longer drawn do not keep their slot. Only the materials used during the current
+ * frame are never reclaimed.
+ */
+class MaterialSlots {
+
+    private static final int NO_VERSION = -1;
+
+    /**
+     * Slot plus one of each material id, 0 when it has none.
+     */
+    private int[] slotsById = new int[64];
+
+    private final int[] ids;
+
+    private final int[] versions;
+
+    private final long[] lastUsed;
+
+    private final int[] freeSlots;
+
+    private int freeCount;
+
+    private long frame = 1;
+
+    private int reclaims;
+
+    MaterialSlots(int capacity) {
+        ids = new int[capacity];
+        versions = new int[capacity];
+        lastUsed = new long[capacity];
+        freeSlots = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            // Taken from the end, so slots are handed out in increasing order
+            freeSlots[i] = capacity - 1 - i;
+        }
+        freeCount = capacity;
+    }
+
+    /**
+     * Returns the slot of the material id, assigning one if it has none.
+     *
+     * @throws IllegalStateException if every slot is used by another material during this frame
+     */
+    int acquire(int id) {
+        int slot = id < slotsById.length ? slotsById[id] - 1 : -1;
+        if (slot < 0) {
+            slot = freeCount > 0 ? freeSlots[--freeCount] : reclaim();
+            if (id >= slotsById.length) {
+                slotsById = Arrays.copyOf(slotsById, Math.max(id + 1, slotsById.length * 2));
+            }
+            slotsById[id] = slot + 1;
+            ids[slot] = id;
+            versions[slot] = NO_VERSION;
+        }
+        lastUsed[slot] = frame;
+        return slot;
+    }
+
+    private int reclaim() {
+        int oldest = 0;
+        for (int slot = 1; slot < ids.length; slot++) {
+            if (lastUsed[slot] < lastUsed[oldest]) {
+                oldest = slot;
+            }
+        }
+        if (lastUsed[oldest] == frame) {
+            throw new IllegalStateException("More than " + ids.length + " materials in use");
+        }
+        slotsById[ids[oldest]] = 0;
+        reclaims++;
+        return oldest;
+    }
+
+    /**
+     * Records the version written to the slot, returning whether it differs from the one written before.
+     */
+    boolean update(int slot, int version) {
+        if (versions[slot] == version) {
+            return false;
+        }
+        versions[slot] = version;
+        return true;
+    }
+
+    /**
+     * Frees the slot of the material id, if it has one.
+     */
+    void release(int id) {
+        if (id < slotsById.length && slotsById[id] != 0) {
+            freeSlots[freeCount++] = slotsById[id] - 1;
+            slotsById[id] = 0;
+        }
+    }
+
+    /**
+     * Starts a new frame: the slots used so far may be reclaimed.
+     */
+    void nextFrame() {
+        frame++;
+    }
+
+    int size() {
+        return ids.length - freeCount;
+    }
+
+    /**
+     * Number of slots taken from a material not released.
+     */
+    int getReclaims() {
+        return reclaims;
+    }
+}
@@ -0,0 +1,291 @@
+package com.bean.engine.graph;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Logger;
+
+import com.bean.engine.mesh.MeshData;
+import com.bean.engine.util.FileHash;
+
+import static org.lwjgl.opengl.GL11.GL_FLOAT;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_INT;
+
+/**
+ * Binary cache of loaded meshes, stored next to the source model as <code>&lt;model&gt;.bmesh</code>.
+ * <p>
+ * Layout (native byte order):
+ * <pre>
+ *   int   magic, format version, byte order marker
+ *   int   attribute count, then (location, components, GL type) per attribute
+ *   int   vertex count, index count
+ *   long  source size, source CRC32C
+ *   int   processing flags, see {@link #FLAG_OPTIMIZED}
+ *   ...   padding up to {@link #DATA_OFFSET}
+ *   float positions[vertexCount * 3], textCoords[vertexCount * 2], normals[vertexCount * 3]
+ *   int   indices[indexCount]
+ * </pre>
+ * A cache whose version, byte order or source hash does not match is treated as missing and rebuilt. The simplified
+ * levels of a mesh are cached in the same layout, next to it, see {@link #getLodCachePath(String, int, int)}.
+ */
+public class MeshCache {
+
+    public static final String EXTENSION = ".bmesh";
+
+    private static final Logger LOGGER = Logger.getLogger(MeshCache.class.getName());
+
+    /**
+     * Bump whenever the layout or the loader output for the same source changes.
+     */
+    public static final int FORMAT_VERSION = 3;
+
+    /**
+     * The mesh went through {@link com.bean.engine.mesh.MeshOptimizer}.
+     */
+    public static final int FLAG_OPTIMIZED = 1;
+
+    private static final int MAGIC = 0x48534D42; // "BMSH"
+
+    private static final int BYTE_ORDER_MARKER = 0x01020304;
+
+    private static final int[][] ATTRIBUTES = {
+            // location, components, type
+            {0, 3, GL_FLOAT},
+            {1, 2, GL_FLOAT},
+            {2, 3, GL_FLOAT},
+            {-1, 1, GL_UNSIGNED_INT}
+    };
+
+    private static final int DATA_OFFSET = 96;
+
+    private MeshCache() {
+    }
+
+    public static Path getCachePath(String sourceFile) {
+        return Path.of(sourceFile + EXTENSION);
+    }
+
+    /**
+     * Path of the cache of one simplified level of a model, such as <code>bunny.obj.lod1of4.bmesh</code>. Chains of
+     * different lengths are cached separately, as their levels may differ.
+     */
+    public static Path getLodCachePath(String sourceFile, int lodCount, int level) {
+        return Path.of(sourceFile + ".lod" + level + "of" + lodCount + EXTENSION);
+    }
+
+    /**
+     * Memory maps the cache of a model. Returns null if there is no cache, if it is stale or if it was
+     * built with different processing flags.
+     */
+    public static CachedMesh read(String sourceFile, int flags) throws IOException {
+        return read(SourceStamp.of(sourceFile), getCachePath(sourceFile), flags);
+    }
+
+    /**
+     * Memory maps a cache derived from a model, such as one of its levels of detail, given the stamp of the model
+     * so reading several caches of the same model hashes it once.
+     *
+     * @param source stamp of the model, null if it does not exist
+     */
+    public static CachedMesh read(SourceStamp source, Path cachePath, int flags) throws IOException {
+        if (!Files.exists(cachePath)) {
+            return null;
+        }
+        long start = System.nanoTime();
+        ByteBuffer buffer;
+        int vertexCount;
+        int indexCount;
+        try (FileChannel channel = FileChannel.open(cachePath, StandardOpenOption.READ)) {
+            if (channel.size() < DATA_OFFSET || channel.size() > Integer.MAX_VALUE) {
+                return null;
+            }
+            // The header is checked before mapping: a stale cache left mapped could not be replaced on Windows
+            ByteBuffer header = ByteBuffer.allocate(DATA_OFFSET).order(ByteOrder.nativeOrder());
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) {
+                    return null;
+                }
+            }
+            if (header.getInt(0) != MAGIC || header.getInt(4) != FORMAT_VERSION
+                    || header.getInt(8) != BYTE_ORDER_MARKER) {
+                return null;
+            }
+            int offset = 12;
+            if (header.getInt(offset) != ATTRIBUTES.length) {
+                return null;
+            }
+            offset += 4;
+            for (int[] attribute : ATTRIBUTES) {
+                for (int value : attribute) {
+                    if (header.getInt(offset) != value) {
+                        return null;
+                    }
+                    offset += 4;
+                }
+            }
+            vertexCount = header.getInt(offset);
+            indexCount = header.getInt(offset + 4);
+            long sourceSize = header.getLong(offset + 8);
+            long sourceHash = header.getLong(offset + 16);
+            if (header.getInt(offset + 24) != flags) {
+                return null;
+            }
+
+            long expectedSize = DATA_OFFSET + (long) vertexCount * 8 * Float.BYTES + (long) indexCount * Integer.BYTES;
+            if (channel.size() != expectedSize) {
+                return null;
+            }
+            if (source == null || source.size != sourceSize || source.hash != sourceHash) {
+                LOGGER.info(() -> "Mesh cache [" + cachePath + "] is stale, rebuilding");
+                return null;
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.nativeOrder());
+        }
+
+        int dataOffset = DATA_OFFSET;
+        FloatBuffer positions = slice(buffer, dataOffset, vertexCount * 3 * Float.BYTES).asFloatBuffer();
+        dataOffset += vertexCount * 3 * Float.BYTES;
+        FloatBuffer textCoords = slice(buffer, dataOffset, vertexCount * 2 * Float.BYTES).asFloatBuffer();
+        dataOffset += vertexCount * 2 * Float.BYTES;
+        FloatBuffer normals = slice(buffer, dataOffset, vertexCount * 3 * Float.BYTES).asFloatBuffer();
+        dataOffset += vertexCount * 3 * Float.BYTES;
+        IntBuffer indices = slice(buffer, dataOffset, indexCount * Integer.BYTES).asIntBuffer();
+
+        long nanos = System.nanoTime() - start;
+        LOGGER.fine(() -> String.format("Mapped mesh cache [%s]: %d vertices, %d indices in %.1f ms",
+                cachePath, vertexCount, indexCount, nanos / 1_000_000.0));
+        return new CachedMesh(positions, textCoords, normals, indices);
+    }
+
+    /**
+     * Writes the cache of a model. The file is written to a temporary file first and then moved in place,
+     * so a crash never leaves a truncated cache behind.
+     */
+    public static void write(String sourceFile, MeshData meshData, int flags) throws IOException {
+        SourceStamp source = SourceStamp.of(sourceFile);
+        if (source == null) {
+            throw new IOException("Mesh source [" + sourceFile + "] does not exist");
+        }
+        write(source, getCachePath(sourceFile), meshData, flags);
+    }
+
+    public static void write(SourceStamp source, Path cachePath, MeshData meshData, int flags) throws IOException {
+
+        float[] positions = meshData.getPositions();
+        float[] textCoords = meshData.getTextCoords();
+        float[] normals = meshData.getNormals();
+        int[] indices = meshData.getIndices();
+        int vertexCount = meshData.getVertexCount();
+
+        ByteBuffer buffer = ByteBuffer.allocate(DATA_OFFSET
+                + (positions.length + textCoords.length + normals.length) * Float.BYTES
+                + indices.length * Integer.BYTES).order(ByteOrder.nativeOrder());
+        buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(BYTE_ORDER_MARKER);
+        buffer.putInt(ATTRIBUTES.length);
+        for (int[] attribute : ATTRIBUTES) {
+            for (int value : attribute) {
+                buffer.putInt(value);
+            }
+        }
+        buffer.putInt(vertexCount).putInt(indices.length);
+        buffer.putLong(source.size).putLong(source.hash);
+        buffer.putInt(flags);
+
+        buffer.position(DATA_OFFSET);
+        buffer.asFloatBuffer().put(positions).put(textCoords).put(normals);
+        buffer.position(DATA_OFFSET + (positions.length + textCoords.length + normals.length) * Float.BYTES);
+        buffer.asIntBuffer().put(indices);
+        buffer.rewind();
+
+        Path tmpPath = cachePath.resolveSibling(cachePath.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmpPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        Files.move(tmpPath, cachePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        return buffer.duplicate().position(offset).limit(offset + length).slice().order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Size and hash of the source of a cache, which the cache must have been built from to be used.
+     */
+    public static class SourceStamp {
+
+        private final long size;
+
+        private final long hash;
+
+        public SourceStamp(long size, long hash) {
+            this.size = size;
+            this.hash = hash;
+        }
+
+        /**
+         * Reads and hashes the whole file. Returns null if it does not exist.
+         */
+        public static SourceStamp of(String sourceFile) throws IOException {
+            Path sourcePath = Path.of(sourceFile);
+            if (!Files.exists(sourcePath)) {
+                return null;
+            }
+            return new SourceStamp(Files.size(sourcePath), FileHash.crc32c(sourcePath));
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getHash() {
+            return hash;
+        }
+    }
+
+    /**
+     * Direct buffers over the mapped cache file, to be handed straight to {@link com.bean.engine.mesh.Mesh}.
+     */
+    public static class CachedMesh {
+
+        private final FloatBuffer positions;
+
+        private final FloatBuffer textCoords;
+
+        private final FloatBuffer normals;
+
+        private final IntBuffer indices;
+
+        public CachedMesh(FloatBuffer positions, FloatBuffer textCoords, FloatBuffer normals, IntBuffer indices) {
+            this.positions = positions;
+            this.textCoords = textCoords;
+            this.normals = normals;
+            this.indices = indices;
+        }
+
+        public FloatBuffer getPositions() {
+            return positions;
+        }
+
+        public FloatBuffer getTextCoords() {
+            return textCoords;
+        }
+
+        public FloatBuffer getNormals() {
+            return normals;
+        }
+
+        public IntBuffer getIndices() {
+            return indices;
+        }
+    }
+}
@@ -1,176 +1,711 @@
 package com.bean.engine.graph;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.io.InputStreamReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import com.bean.engine.mesh.Mesh;
-import org.joml.Vector2f;
-import org.joml.Vector3f;
+import com.bean.engine.mesh.MeshData;
+import com.bean.engine.mesh.MeshOptimizer;
+import com.bean.engine.mesh.MeshSimplifier;
+import com.bean.engine.mesh.VertexFormat;
+import com.bean.engine.util.FloatList;
+import com.bean.engine.util.IntList;
+import com.bean.engine.util.IntTripleIndexMap;
 
+/**
+ * Loads OBJ meshes. Parse throughput and the time spent optimizing and simplifying meshes are logged at
+ * {@link Level#FINE}.
+ */
 public class OBJLoader {
 
+    public static final int NO_VALUE = -1;
+
+    private static final Logger LOGGER = Logger.getLogger(OBJLoader.class.getName());
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private static final int MAX_MANTISSA_DIGITS = 18;
+
+    /**
+     * Files smaller than this are parsed sequentially, splitting them is not worth the merge.
+     */
+    public static final int PARALLEL_THRESHOLD_BYTES = 4 * 1024 * 1024;
+
+    private static final int MIN_CHUNK_BYTES = 1024 * 1024;
+
+    /**
+     * Loads a mesh through its binary {@link MeshCache}, parsing the OBJ and writing the cache
+     * the first time or whenever the source file has changed.
+     */
     public static Mesh loadMesh(String fileName) throws Exception {
-        List<String> lines = readAllLines(fileName);
+        return prepareMesh(fileName, false).upload();
+    }
 
-        List<Vector3f> vertices = new ArrayList<>();
-        List<Vector2f> textures = new ArrayList<>();
-        List<Vector3f> normals = new ArrayList<>();
-        List<Face> faces = new ArrayList<>();
+    /**
+     * @param optimize reorder triangles and vertices with {@link MeshOptimizer} before caching the mesh
+     */
+    public static Mesh loadMesh(String fileName, boolean optimize) throws Exception {
+        return prepareMesh(fileName, optimize).upload();
+    }
 
-        for (String line : lines) {
-            String[] tokens = line.split("\\s+");
-            switch (tokens[0]) {
-                case "v":
-                    // Geometric vertex
-                    Vector3f vec3f = new Vector3f(
-                            Float.parseFloat(tokens[1]),
-                            Float.parseFloat(tokens[2]),
-                            Float.parseFloat(tokens[3]));
-                    vertices.add(vec3f);
-                    break;
-                case "vt":
-                    // Texture coordinate
-                    Vector2f vec2f = new Vector2f(
-                            Float.parseFloat(tokens[1]),
-                            Float.parseFloat(tokens[2]));
-                    textures.add(vec2f);
-                    break;
-                case "vn":
-                    // Vertex normal
-                    Vector3f vec3fNorm = new Vector3f(
-                            Float.parseFloat(tokens[1]),
-                            Float.parseFloat(tokens[2]),
-                            Float.parseFloat(tokens[3]));
-                    normals.add(vec3fNorm);
-                    break;
-                case "f":
-                    Face face = new Face(tokens[1], tokens[2], tokens[3]);
-                    faces.add(face);
-                    break;
-                default:
-                    // Ignore other lines
-                    break;
+    /**
+     * @param lodCount number of detail levels to build with {@link MeshSimplifier}, 1 for the full mesh only
+     */
+    public static Mesh loadMesh(String fileName, boolean optimize, int lodCount) throws Exception {
+        return prepareMesh(fileName, optimize, lodCount).upload();
+    }
+
+    public static PreparedMesh prepareMesh(String fileName, boolean optimize) throws IOException {
+        return prepareMesh(fileName, optimize, 1);
+    }
+
+    /**
+     * Does all the file I/O and parsing of {@link #loadMesh(String, boolean, int)} without touching OpenGL,
+     * so it can run on a worker thread. The returned mesh still has to be uploaded on the GL thread.
+     */
+    public static PreparedMesh prepareMesh(String fileName, boolean optimize, int lodCount) throws IOException {
+        int flags = optimize ? MeshCache.FLAG_OPTIMIZED : 0;
+        // Hashed once for the mesh and all its levels
+        MeshCache.SourceStamp source = MeshCache.SourceStamp.of(fileName);
+        MeshCache.CachedMesh cachedMesh = MeshCache.read(source, MeshCache.getCachePath(fileName), flags);
+        if (cachedMesh != null) {
+            List<MeshCache.CachedMesh> cachedLods = readLods(fileName, source, flags, lodCount);
+            if (cachedLods != null) {
+                return new PreparedMesh(cachedMesh, null, cachedLods, List.of());
             }
+            List<MeshData> lods = buildLods(fileName, toMeshData(cachedMesh), optimize, lodCount);
+            writeLods(fileName, source, flags, lodCount, lods);
+            return new PreparedMesh(cachedMesh, null, List.of(), lods);
         }
-        return reorderLists(vertices, textures, normals, faces);
+
+        MeshData meshData = loadMeshData(fileName);
+        if (optimize) {
+            meshData = optimize(fileName, meshData);
+        }
+        try {
+            MeshCache.write(source, MeshCache.getCachePath(fileName), meshData, flags);
+        } catch (IOException excp) {
+            System.err.println("Warning writing mesh cache for [" + fileName + "]: " + excp.getMessage());
+        }
+        List<MeshData> lods = lodCount > 1 ? buildLods(fileName, meshData, optimize, lodCount) : List.of();
+        writeLods(fileName, source, flags, lodCount, lods);
+        return new PreparedMesh(null, meshData, List.of(), lods);
     }
 
-    public static List<String> readAllLines(String fileName) throws Exception {
-        List<String> list = new ArrayList<>();
-        try (BufferedReader br = new BufferedReader(new FileReader(fileName))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                list.add(line);
+    /**
+     * Maps the cached simplified levels of a mesh, without level 0. Returns null unless all of them are cached.
+     */
+    private static List<MeshCache.CachedMesh> readLods(String fileName, MeshCache.SourceStamp source, int flags,
+                                                       int lodCount) throws IOException {
+        List<MeshCache.CachedMesh> lods = new ArrayList<>();
+        for (int level = 1; level < lodCount; level++) {
+            MeshCache.CachedMesh lod = MeshCache.read(source, MeshCache.getLodCachePath(fileName, lodCount, level),
+                    flags);
+            if (lod == null) {
+                return null;
             }
+            lods.add(lod);
         }
-        return list;
+        return lods;
     }
 
-    private static Mesh reorderLists(List<Vector3f> posList, List<Vector2f> textCoordList,
-                                     List<Vector3f> normList, List<Face> facesList) {
+    private static void writeLods(String fileName, MeshCache.SourceStamp source, int flags, int lodCount,
+                                  List<MeshData> lods) {
+        try {
+            for (int i = 0; i < lods.size(); i++) {
+                MeshCache.write(source, MeshCache.getLodCachePath(fileName, lodCount, i + 1), lods.get(i), flags);
+            }
+        } catch (IOException excp) {
+            System.err.println("Warning writing LOD cache for [" + fileName + "]: " + excp.getMessage());
+        }
+    }
 
-        List<Integer> indices = new ArrayList<>();
-        // Create position array in the order it has been declared
-        float[] posArr = new float[posList.size() * 3];
-        int i = 0;
-        for (Vector3f pos : posList) {
-            posArr[i * 3] = pos.x;
-            posArr[i * 3 + 1] = pos.y;
-            posArr[i * 3 + 2] = pos.z;
-            i++;
+    /**
+     * Returns the simplified levels of a mesh, without level 0.
+     */
+    private static List<MeshData> buildLods(String fileName, MeshData meshData, boolean optimize, int lodCount) {
+        long start = System.nanoTime();
+        List<MeshData> chain = MeshSimplifier.buildLodChain(meshData, lodCount);
+        List<MeshData> lods = new ArrayList<>();
+        StringBuilder triangles = new StringBuilder().append(meshData.getTriangleCount());
+        for (MeshData lod : chain.subList(1, chain.size())) {
+            lods.add(optimize ? MeshOptimizer.optimize(lod) : lod);
+            triangles.append(" -> ").append(lod.getTriangleCount());
         }
-        float[] textCoordArr = new float[posList.size() * 2];
-        float[] normArr = new float[posList.size() * 3];
+        long nanos = System.nanoTime() - start;
+        LOGGER.fine(() -> String.format("Built %d LOD levels for [%s] in %.1f ms, triangles %s",
+                chain.size(), fileName, nanos / 1_000_000.0, triangles));
+        return lods;
+    }
+
+    private static MeshData toMeshData(MeshCache.CachedMesh cachedMesh) {
+        float[] positions = new float[cachedMesh.getPositions().remaining()];
+        cachedMesh.getPositions().duplicate().get(positions);
+        float[] textCoords = new float[cachedMesh.getTextCoords().remaining()];
+        cachedMesh.getTextCoords().duplicate().get(textCoords);
+        float[] normals = new float[cachedMesh.getNormals().remaining()];
+        cachedMesh.getNormals().duplicate().get(normals);
+        int[] indices = new int[cachedMesh.getIndices().remaining()];
+        cachedMesh.getIndices().duplicate().get(indices);
+        return new MeshData(positions, textCoords, normals, indices);
+    }
+
+    private static MeshData optimize(String fileName, MeshData meshData) {
+        long start = System.nanoTime();
+        MeshOptimizer.CacheStatistics before = MeshOptimizer.analyzeVertexCache(meshData.getIndices(),
+                meshData.getVertexCount(), MeshOptimizer.DEFAULT_CACHE_SIZE);
+        MeshData optimized = MeshOptimizer.optimize(meshData);
+        MeshOptimizer.CacheStatistics after = MeshOptimizer.analyzeVertexCache(optimized.getIndices(),
+                optimized.getVertexCount(), MeshOptimizer.DEFAULT_CACHE_SIZE);
+        long nanos = System.nanoTime() - start;
+        LOGGER.fine(() -> String.format("Optimized mesh [%s] in %.1f ms: %s -> %s",
+                fileName, nanos / 1_000_000.0, before, after));
+        return optimized;
+    }
 
-        for (Face face : facesList) {
-            IdxGroup[] faceVertexIndices = face.getFaceVertexIndices();
-            for (IdxGroup indValue : faceVertexIndices) {
-                processFaceVertex(indValue, textCoordList, normList,
-                        indices, textCoordArr, normArr);
+    public static MeshData loadMeshData(String fileName) throws IOException {
+        return loadMeshData(fileName, true);
+    }
+
+    /**
+     * Parses an OBJ file into vertex and index arrays without touching OpenGL.
+     * The file is memory mapped and tokenized byte by byte straight into primitive arrays,
+     * so no per-line Strings or per-vertex objects are created.
+     *
+     * @param parallel split files bigger than {@link #PARALLEL_THRESHOLD_BYTES} into chunks parsed on the
+     *                 common ForkJoinPool. The result is identical to the sequential parse.
+     */
+    public static MeshData loadMeshData(String fileName, boolean parallel) throws IOException {
+        long start = System.nanoTime();
+        MeshData meshData;
+        long fileSize;
+        try (FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.READ)) {
+            fileSize = channel.size();
+            if (fileSize > Integer.MAX_VALUE) {
+                throw new IOException("OBJ file [" + fileName + "] is too large to be mapped: " + fileSize + " bytes");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            if (parallel && fileSize >= PARALLEL_THRESHOLD_BYTES) {
+                int chunkSize = Math.max(MIN_CHUNK_BYTES, (int) (fileSize / (ForkJoinPool.getCommonPoolParallelism() * 4L)));
+                meshData = parse(buffer, (int) fileSize, chunkSize);
+            } else {
+                meshData = parse(buffer, (int) fileSize, (int) fileSize);
             }
         }
-        int[] indicesArr = new int[indices.size()];
-        indicesArr = indices.stream().mapToInt((Integer v) -> v).toArray();
-        Mesh mesh = new Mesh(posArr, textCoordArr, normArr, indicesArr);
-        return mesh;
+        reportThroughput(fileName, fileSize, System.nanoTime() - start, meshData);
+        return meshData;
     }
 
-    private static void processFaceVertex(IdxGroup indices, List<Vector2f> textCoordList,
-                                          List<Vector3f> normList, List<Integer> indicesList,
-                                          float[] texCoordArr, float[] normArr) {
+    /**
+     * Parses the first <code>size</code> bytes of the buffer in chunks of roughly <code>chunkSize</code> bytes,
+     * cut at line boundaries. A single chunk is parsed on the calling thread.
+     */
+    static MeshData parse(ByteBuffer buffer, int size, int chunkSize) {
+        if (size <= chunkSize) {
+            return reorderLists(new OBJParser(buffer, 0, size).parse());
+        }
 
-        // Set index for vertex coordinates
-        int posIndex = indices.idxPos;
-        indicesList.add(posIndex);
+        List<ForkJoinTask<OBJData>> tasks = new ArrayList<>();
+        int chunkStart = 0;
+        while (chunkStart < size) {
+            int chunkEnd = Math.min(size, chunkStart + chunkSize);
+            while (chunkEnd < size && buffer.get(chunkEnd - 1) != '\n') {
+                chunkEnd++;
+            }
+            OBJParser parser = new OBJParser(buffer, chunkStart, chunkEnd);
+            tasks.add(ForkJoinPool.commonPool().submit(parser::parse));
+            chunkStart = chunkEnd;
+        }
 
-        // Reorder texture coordinates
-        if (indices.idxTextCoord >= 0) {
-            Vector2f textCoord = textCoordList.get(indices.idxTextCoord);
-            texCoordArr[posIndex * 2] = textCoord.x;
-            texCoordArr[posIndex * 2 + 1] = 1 - textCoord.y;
+        List<OBJData> chunks = new ArrayList<>(tasks.size());
+        for (ForkJoinTask<OBJData> task : tasks) {
+            try {
+                chunks.add(task.join());
+            } catch (NumberFormatException excp) {
+                // A chunk failing on another thread is rethrown as a copy without the message, caused by the original
+                throw excp.getCause() instanceof NumberFormatException ? (NumberFormatException) excp.getCause() : excp;
+            }
         }
-        if (indices.idxVecNormal >= 0) {
-            // Reorder vectornormals
-            Vector3f vecNorm = normList.get(indices.idxVecNormal);
-            normArr[posIndex * 3] = vecNorm.x;
-            normArr[posIndex * 3 + 1] = vecNorm.y;
-            normArr[posIndex * 3 + 2] = vecNorm.z;
+        return reorderLists(merge(chunks));
+    }
+
+    /**
+     * Concatenates chunk results in file order. Absolute OBJ indices are already global, only the
+     * relative (negative) ones recorded by each chunk need the prefix sum of the preceding chunks' element counts.
+     */
+    private static OBJData merge(List<OBJData> chunks) {
+        int positionsSize = 0;
+        int textCoordsSize = 0;
+        int normalsSize = 0;
+        int facesSize = 0;
+        for (OBJData chunk : chunks) {
+            positionsSize += chunk.positions.size();
+            textCoordsSize += chunk.textCoords.size();
+            normalsSize += chunk.normals.size();
+            facesSize += chunk.faces.size();
+        }
+
+        OBJData merged = new OBJData(positionsSize, textCoordsSize, normalsSize, facesSize);
+        for (OBJData chunk : chunks) {
+            int[] offsets = {
+                    merged.positions.size() / 3,
+                    merged.textCoords.size() / 2,
+                    merged.normals.size() / 3
+            };
+            int faceOffset = merged.faces.size();
+
+            merged.positions.addAll(chunk.positions.elements(), 0, chunk.positions.size());
+            merged.textCoords.addAll(chunk.textCoords.elements(), 0, chunk.textCoords.size());
+            merged.normals.addAll(chunk.normals.elements(), 0, chunk.normals.size());
+            merged.faces.addAll(chunk.faces.elements(), 0, chunk.faces.size());
+
+            for (int i = 0; i < chunk.relativeIndices.size(); i++) {
+                int slot = chunk.relativeIndices.get(i);
+                int mergedSlot = faceOffset + slot;
+                merged.faces.set(mergedSlot, merged.faces.get(mergedSlot) + offsets[slot % 3]);
+            }
+        }
+        return merged;
+    }
+
+    private static void reportThroughput(String fileName, long fileSize, long parseNanos, MeshData meshData) {
+        if (!LOGGER.isLoggable(Level.FINE)) {
+            return;
+        }
+        double megaBytes = fileSize / (1024.0 * 1024.0);
+        double millis = parseNanos / 1_000_000.0;
+        double megaBytesPerSecond = millis > 0 ? megaBytes / (millis / 1000.0) : 0;
+        int faceVertices = meshData.getIndices().length;
+        int uniqueVertices = meshData.getVertexCount();
+        LOGGER.fine(String.format("Parsed OBJ [%s]: %.2f MB in %.1f ms (%.1f MB/s), %d face vertices -> %d unique (%.2fx)",
+                fileName, megaBytes, millis, megaBytesPerSecond, faceVertices, uniqueVertices,
+                uniqueVertices > 0 ? (double) faceVertices / uniqueVertices : 0));
+    }
+
+    /**
+     * Builds one output vertex per distinct (position, texture coordinate, normal) triple referenced by the faces,
+     * in order of first use, so shared positions keep their own attributes on UV seams and hard edges.
+     */
+    private static MeshData reorderLists(OBJData objData) {
+        float[] posList = objData.positions.elements();
+        int posCount = objData.positions.size() / 3;
+        float[] textCoordList = objData.textCoords.elements();
+        int textCoordCount = objData.textCoords.size() / 2;
+        float[] normList = objData.normals.elements();
+        int normCount = objData.normals.size() / 3;
+
+        int[] faces = objData.faces.elements();
+        int[] indicesArr = new int[objData.faces.size() / 3];
+        IntTripleIndexMap vertexMap = new IntTripleIndexMap(Math.min(indicesArr.length, posCount * 2));
+        float[] posArr = new float[indicesArr.length * 3];
+        float[] textCoordArr = new float[indicesArr.length * 2];
+        float[] normArr = new float[indicesArr.length * 3];
+        int vertexCount = 0;
+
+        for (int i = 0; i < indicesArr.length; i++) {
+            int posIndex = faces[i * 3];
+            int textCoordIndex = faces[i * 3 + 1];
+            int normIndex = faces[i * 3 + 2];
+
+            int vertexIndex = vertexMap.getOrPut(posIndex, textCoordIndex, normIndex, vertexCount);
+            indicesArr[i] = vertexIndex;
+            if (vertexIndex < vertexCount) {
+                continue;
+            }
+            vertexCount++;
+
+            checkIndex(posIndex, posCount, "vertex");
+            posArr[vertexIndex * 3] = posList[posIndex * 3];
+            posArr[vertexIndex * 3 + 1] = posList[posIndex * 3 + 1];
+            posArr[vertexIndex * 3 + 2] = posList[posIndex * 3 + 2];
+            if (textCoordIndex != NO_VALUE) {
+                checkIndex(textCoordIndex, textCoordCount, "texture coordinate");
+                textCoordArr[vertexIndex * 2] = textCoordList[textCoordIndex * 2];
+                textCoordArr[vertexIndex * 2 + 1] = 1 - textCoordList[textCoordIndex * 2 + 1];
+            }
+            if (normIndex != NO_VALUE) {
+                checkIndex(normIndex, normCount, "normal");
+                normArr[vertexIndex * 3] = normList[normIndex * 3];
+                normArr[vertexIndex * 3 + 1] = normList[normIndex * 3 + 1];
+                normArr[vertexIndex * 3 + 2] = normList[normIndex * 3 + 2];
+            }
+        }
+        return new MeshData(Arrays.copyOf(posArr, vertexCount * 3), Arrays.copyOf(textCoordArr, vertexCount * 2),
+                Arrays.copyOf(normArr, vertexCount * 3), indicesArr);
+    }
+
+    private static void checkIndex(int index, int count, String type) {
+        if (index < 0 || index >= count) {
+            throw new IllegalStateException("Face references " + type + " " + (index + 1) + " but only " + count + " are defined");
         }
     }
 
-    protected static class Face {
+    /**
+     * A loaded mesh waiting for its GPU upload, backed either by a mapped cache or by freshly parsed arrays. Its
+     * simplified levels are likewise mapped from their caches or freshly built.
+     */
+    public static class PreparedMesh {
+
+        private final MeshCache.CachedMesh cachedMesh;
+
+        private final MeshData meshData;
+
+        private final List<MeshCache.CachedMesh> cachedLods;
+
+        private final List<MeshData> lods;
+
+        private PreparedMesh(MeshCache.CachedMesh cachedMesh, MeshData meshData, List<MeshCache.CachedMesh> cachedLods,
+                             List<MeshData> lods) {
+            this.cachedMesh = cachedMesh;
+            this.meshData = meshData;
+            this.cachedLods = cachedLods;
+            this.lods = lods;
+        }
+
+        public long getByteSize() {
+            long byteSize = cachedMesh != null ? getByteSize(cachedMesh) : getByteSize(meshData);
+            for (MeshCache.CachedMesh lod : cachedLods) {
+                byteSize += getByteSize(lod);
+            }
+            for (MeshData lod : lods) {
+                byteSize += getByteSize(lod);
+            }
+            return byteSize;
+        }
 
         /**
-         * List of idxGroup groups for a face triangle (3 vertices per face).
+         * Number of simplified levels, without level 0.
          */
-        private IdxGroup[] idxGroups = new IdxGroup[3];
+        public int getLodCount() {
+            return cachedLods.size() + lods.size();
+        }
 
-        public Face(String v1, String v2, String v3) {
-            idxGroups = new IdxGroup[3];
-            // Parse the lines
-            idxGroups[0] = parseLine(v1);
-            idxGroups[1] = parseLine(v2);
-            idxGroups[2] = parseLine(v3);
+        /**
+         * Whether the simplified levels were mapped from their caches rather than built.
+         */
+        public boolean hasCachedLods() {
+            return !cachedLods.isEmpty();
         }
 
-        private IdxGroup parseLine(String line) {
-            IdxGroup idxGroup = new IdxGroup();
+        private static long getByteSize(MeshCache.CachedMesh cachedMesh) {
+            return (long) (cachedMesh.getPositions().remaining() + cachedMesh.getTextCoords().remaining()
+                    + cachedMesh.getNormals().remaining()) * Float.BYTES
+                    + (long) cachedMesh.getIndices().remaining() * Integer.BYTES;
+        }
 
-            String[] lineTokens = line.split("/");
-            int length = lineTokens.length;
-            idxGroup.idxPos = Integer.parseInt(lineTokens[0]) - 1;
-            if (length > 1) {
-                // It can be empty if the obj does not define text coords
-                String textCoord = lineTokens[1];
-                idxGroup.idxTextCoord = textCoord.length() > 0 ? Integer.parseInt(textCoord) - 1 : IdxGroup.NO_VALUE;
-                if (length > 2) {
-                    idxGroup.idxVecNormal = Integer.parseInt(lineTokens[2]) - 1;
+        private static long getByteSize(MeshData meshData) {
+            return (long) (meshData.getPositions().length + meshData.getTextCoords().length
+                    + meshData.getNormals().length) * Float.BYTES + (long) meshData.getIndices().length * Integer.BYTES;
+        }
+
+        public Mesh upload() {
+            return upload(Mesh.DEFAULT_VERTEX_FORMAT);
+        }
+
+        /**
+         * Creates the OpenGL buffers, must be called on the GL thread.
+         */
+        public Mesh upload(VertexFormat vertexFormat) {
+            return upload(vertexFormat, null);
+        }
+
+        /**
+         * Creates the mesh and its LODs in the shared buffers of <code>pool</code>, in the pool's vertex format,
+         * or in buffers of their own in <code>vertexFormat</code> when the pool is null. Must be called on the GL
+         * thread.
+         */
+        public Mesh upload(VertexFormat vertexFormat, GeometryPool pool) {
+            Mesh mesh = cachedMesh != null ? upload(cachedMesh, vertexFormat, pool)
+                    : pool != null ? new Mesh(meshData, pool) : new Mesh(meshData, vertexFormat);
+            if (getLodCount() > 0) {
+                Mesh[] lodMeshes = new Mesh[getLodCount()];
+                for (int i = 0; i < cachedLods.size(); i++) {
+                    lodMeshes[i] = upload(cachedLods.get(i), vertexFormat, pool);
+                }
+                for (int i = 0; i < lods.size(); i++) {
+                    lodMeshes[cachedLods.size() + i] = pool != null ? new Mesh(lods.get(i), pool)
+                            : new Mesh(lods.get(i), vertexFormat);
                 }
+                mesh.setLods(lodMeshes);
             }
+            return mesh;
+        }
 
-            return idxGroup;
+        private static Mesh upload(MeshCache.CachedMesh cachedMesh, VertexFormat vertexFormat, GeometryPool pool) {
+            if (pool != null) {
+                return new Mesh(cachedMesh.getPositions(), cachedMesh.getTextCoords(), cachedMesh.getNormals(),
+                        cachedMesh.getIndices(), pool);
+            }
+            return new Mesh(cachedMesh.getPositions(), cachedMesh.getTextCoords(), cachedMesh.getNormals(),
+                    cachedMesh.getIndices(), vertexFormat);
         }
+    }
+
+    /**
+     * Raw OBJ records. Faces hold three ints per corner (position, texture coordinate and normal index),
+     * zero based, with {@link #NO_VALUE} for missing attributes.
+     * Relative indices are resolved against the elements of the parsed range only, the face slots holding them
+     * are listed in <code>relativeIndices</code> so they can be shifted when chunks are merged.
+     */
+    static class OBJData {
+
+        final FloatList positions;
 
-        public IdxGroup[] getFaceVertexIndices() {
-            return idxGroups;
+        final FloatList textCoords;
+
+        final FloatList normals;
+
+        final IntList faces;
+
+        final IntList relativeIndices = new IntList(4);
+
+        OBJData() {
+            this(1024, 1024, 1024, 4096);
+        }
+
+        OBJData(int positionsCapacity, int textCoordsCapacity, int normalsCapacity, int facesCapacity) {
+            positions = new FloatList(positionsCapacity);
+            textCoords = new FloatList(textCoordsCapacity);
+            normals = new FloatList(normalsCapacity);
+            faces = new IntList(facesCapacity);
         }
     }
 
-    protected static class IdxGroup {
+    /**
+     * Tokenizes the bytes of an OBJ file in the range [start, end).
+     */
+    static class OBJParser {
+
+        private final ByteBuffer buffer;
+
+        private final int end;
 
-        public static final int NO_VALUE = -1;
+        private int pos;
+
+        OBJParser(ByteBuffer buffer, int start, int end) {
+            this.buffer = buffer;
+            this.pos = start;
+            this.end = end;
+        }
+
+        OBJData parse() {
+            OBJData objData = new OBJData();
+            while (pos < end) {
+                skipBlanks();
+                if (pos >= end) {
+                    break;
+                }
+                byte first = buffer.get(pos);
+                byte second = pos + 1 < end ? buffer.get(pos + 1) : (byte) ' ';
+                if (first == 'v' && isBlank(second)) {
+                    // Geometric vertex
+                    pos++;
+                    objData.positions.add(parseFloat());
+                    objData.positions.add(parseFloat());
+                    objData.positions.add(parseFloat());
+                } else if (first == 'v' && second == 't' && isBlankAt(pos + 2)) {
+                    // Texture coordinate
+                    pos += 2;
+                    objData.textCoords.add(parseFloat());
+                    objData.textCoords.add(parseFloat());
+                } else if (first == 'v' && second == 'n' && isBlankAt(pos + 2)) {
+                    // Vertex normal
+                    pos += 2;
+                    objData.normals.add(parseFloat());
+                    objData.normals.add(parseFloat());
+                    objData.normals.add(parseFloat());
+                } else if (first == 'f' && isBlank(second)) {
+                    // Triangle face, 3 vertices per face
+                    pos++;
+                    for (int i = 0; i < 3; i++) {
+                        parseFaceVertex(objData);
+                    }
+                }
+                // Ignore other lines and anything left on the current one
+                skipLine();
+            }
+            return objData;
+        }
+
+        private void parseFaceVertex(OBJData objData) {
+            skipBlanks();
+            int slot = objData.faces.size();
+            int idxPos = resolveIndex(parseInt(), objData.positions.size() / 3, slot, objData);
+            int idxTextCoord = NO_VALUE;
+            int idxVecNormal = NO_VALUE;
+            if (pos < end && buffer.get(pos) == '/') {
+                pos++;
+                // It can be empty if the obj does not define text coords
+                if (pos < end && buffer.get(pos) != '/') {
+                    idxTextCoord = resolveIndex(parseInt(), objData.textCoords.size() / 2, slot + 1, objData);
+                }
+                if (pos < end && buffer.get(pos) == '/') {
+                    pos++;
+                    idxVecNormal = resolveIndex(parseInt(), objData.normals.size() / 3, slot + 2, objData);
+                }
+            }
+            objData.faces.add(idxPos);
+            objData.faces.add(idxTextCoord);
+            objData.faces.add(idxVecNormal);
+        }
+
+        /**
+         * OBJ indices start at 1, negative indices are relative to the elements defined so far.
+         */
+        private int resolveIndex(int objIndex, int definedCount, int slot, OBJData objData) {
+            if (objIndex < 0) {
+                objData.relativeIndices.add(slot);
+                return definedCount + objIndex;
+            }
+            return objIndex - 1;
+        }
 
-        public int idxPos;
-        public int idxTextCoord;
-        public int idxVecNormal;
+        private int parseInt() {
+            boolean negative = false;
+            if (pos < end && buffer.get(pos) == '-') {
+                negative = true;
+                pos++;
+            }
+            int value = parseDigits("index");
+            return negative ? -value : value;
+        }
+
+        /**
+         * Parses an unsigned decimal integer.
+         */
+        private int parseDigits(String what) {
+            int digitsStart = pos;
+            int value = 0;
+            while (pos < end) {
+                int digit = buffer.get(pos) - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+                value = value * 10 + digit;
+                pos++;
+            }
+            if (pos == digitsStart) {
+                throw new NumberFormatException("Invalid " + what + " in OBJ file at line " + lineAt(pos));
+            }
+            return value;
+        }
+
+        private float parseFloat() {
+            skipBlanks();
+            boolean negative = false;
+            if (pos < end) {
+                byte sign = buffer.get(pos);
+                if (sign == '-' || sign == '+') {
+                    negative = sign == '-';
+                    pos++;
+                }
+            }
+
+            long mantissa = 0;
+            int significantDigits = 0;
+            int exponent = 0;
+            int digitsStart = pos;
+            boolean fraction = false;
+            while (pos < end) {
+                byte b = buffer.get(pos);
+                if (b == '.' && !fraction) {
+                    fraction = true;
+                    pos++;
+                    continue;
+                }
+                int digit = b - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+                if (significantDigits < MAX_MANTISSA_DIGITS) {
+                    if (mantissa != 0 || digit != 0) {
+                        significantDigits++;
+                    }
+                    mantissa = mantissa * 10 + digit;
+                    if (fraction) {
+                        exponent--;
+                    }
+                } else if (!fraction) {
+                    // Digits beyond the mantissa precision only scale the integer part
+                    exponent++;
+                }
+                pos++;
+            }
+            if (pos == digitsStart) {
+                throw new NumberFormatException("Invalid number in OBJ file at line " + lineAt(pos));
+            }
+            if (pos < end && (buffer.get(pos) == 'e' || buffer.get(pos) == 'E')) {
+                pos++;
+                boolean negativeExponent = false;
+                if (pos < end) {
+                    byte sign = buffer.get(pos);
+                    if (sign == '-' || sign == '+') {
+                        negativeExponent = sign == '-';
+                        pos++;
+                    }
+                }
+                int exponentDigits = parseDigits("exponent");
+                exponent += negativeExponent ? -exponentDigits : exponentDigits;
+            }
+
+            double value = mantissa;
+            if (exponent < 0) {
+                value = -exponent < POWERS_OF_TEN.length ? value / POWERS_OF_TEN[-exponent] : value / Math.pow(10, -exponent);
+            } else if (exponent > 0) {
+                value = exponent < POWERS_OF_TEN.length ? value * POWERS_OF_TEN[exponent] : value * Math.pow(10, exponent);
+            }
+            return (float) (negative ? -value : value);
+        }
+
+        private void skipBlanks() {
+            while (pos < end && isBlank(buffer.get(pos)) && buffer.get(pos) != '\n') {
+                pos++;
+            }
+        }
+
+        private void skipLine() {
+            while (pos < end && buffer.get(pos) != '\n') {
+                pos++;
+            }
+            if (pos < end) {
+                pos++;
+            }
+        }
+
+        /**
+         * Line number in the whole file of the byte at <code>index</code>, counted from the start of the buffer
+         * rather than of the chunk. Only used to report errors, so the scan does not slow down parsing.
+         */
+        private int lineAt(int index) {
+            int line = 1;
+            for (int i = 0; i < index; i++) {
+                if (buffer.get(i) == '\n') {
+                    line++;
+                }
+            }
+            return line;
+        }
+
+        private boolean isBlankAt(int index) {
+            return index >= end || isBlank(buffer.get(index));
+        }
 
-        public IdxGroup() {
-            idxPos = NO_VALUE;
-            idxTextCoord = NO_VALUE;
-            idxVecNormal = NO_VALUE;
+        private static boolean isBlank(byte b) {
+            return b == ' ' || b == '\t' || b == '\r' || b == '\n';
         }
     }
 }
@@ -0,0 +1,476 @@
+package com.bean.engine.graph;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import com.bean.engine.mesh.Bounds;
+import com.bean.engine.mesh.GameItem;
+import com.bean.engine.mesh.Mesh;
+import com.bean.engine.util.FloatList;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+
+/**
+ * Rejects items hidden behind nearer ones, by drawing simple occluder proxies into a small depth buffer on the CPU
+ * and testing the bounding box of every item against it.
+ * <p>
+ * Each frame starts with {@link #begin(Matrix4f, Matrix4f)}, then occluders are added and {@link #rasterize()}
+ * draws them, in horizontal bands rasterized in parallel. The buffer stores the view distance of the nearest
+ * occluder per pixel, and a pyramid keeps the nearest and farthest distance of each 2x2 block of the level below.
+ * A box is hidden when its nearest corner is farther than the farthest occluder over the pixels it covers: the test
+ * starts at the level where it covers at most 2x2 texels and only descends into the texels it cannot decide. Pixels
+ * are only covered when an occluder contains their centre, so the test is conservative. Results do not depend on
+ * the number of bands and no OpenGL context is needed.
+ */
+public class OcclusionCuller {
+
+    public static final int DEFAULT_MAX_OCCLUDERS = 256;
+
+    /**
+     * Relative distance under which an item is not considered behind an occluder, absorbing rounding in the
+     * interpolated depth of the occluder's own faces.
+     */
+    private static final float DEPTH_BIAS = 1e-5f;
+
+    /**
+     * Two triangles for each face of a box, -z, +z, -y, +y, -x and +x, whose corners have bit 0, 1 and 2 of their
+     * index set for the maximum x, y and z.
+     */
+    private static final int[] BOX_INDICES = {
+            0, 1, 3, 0, 3, 2, 4, 6, 7, 4, 7, 5,
+            0, 4, 5, 0, 5, 1, 2, 3, 7, 2, 7, 6,
+            0, 2, 6, 0, 6, 4, 1, 5, 7, 1, 7, 3
+    };
+
+    private final int width;
+
+    private final int height;
+
+    private final int bands;
+
+    private final float[][] minDepths;
+
+    private final float[][] maxDepths;
+
+    private final int[] levelWidths;
+
+    private final int[] levelHeights;
+
+    /**
+     * Occluder triangles after clipping and projection, as (x, y, 1 / w) per vertex in pixels.
+     */
+    private final FloatList triangles = new FloatList(1024);
+
+    private final Matrix4f projectionViewMatrix = new Matrix4f();
+
+    private final Matrix4f modelProjectionViewMatrix = new Matrix4f();
+
+    private final Vector3f cameraPosition = new Vector3f();
+
+    private final Transformation transformation = new Transformation();
+
+    private final Vector4f corner = new Vector4f();
+
+    private final float[] polygon = new float[4 * 4];
+
+    private final float[] clippedPolygon = new float[4 * 4];
+
+    private final float[] boxPositions = new float[8 * 3];
+
+    private final Vector3f worldMin = new Vector3f();
+
+    private final Vector3f worldMax = new Vector3f();
+
+    private long[] occluderOrder = new long[64];
+
+    private int maxOccluders = DEFAULT_MAX_OCCLUDERS;
+
+    private int lastOccluders;
+
+    private int lastOccluderTriangles;
+
+    private int lastTested;
+
+    private int lastOccluded;
+
+    private long lastRasterNanos;
+
+    private long lastTestNanos;
+
+    /**
+     * @param width  depth buffer width in pixels
+     * @param height depth buffer height in pixels
+     * @param bands  number of horizontal bands rasterized in parallel, 1 to rasterize on the calling thread
+     */
+    public OcclusionCuller(int width, int height, int bands) {
+        this.width = width;
+        this.height = height;
+        this.bands = Math.max(1, Math.min(bands, height));
+        int levels = 1;
+        while ((width - 1) >> (levels - 1) > 0 || (height - 1) >> (levels - 1) > 0) {
+            levels++;
+        }
+        minDepths = new float[levels][];
+        maxDepths = new float[levels][];
+        levelWidths = new int[levels];
+        levelHeights = new int[levels];
+        for (int level = 0; level < levels; level++) {
+            levelWidths[level] = Math.max(1, (width + (1 << level) - 1) >> level);
+            levelHeights[level] = Math.max(1, (height + (1 << level) - 1) >> level);
+            minDepths[level] = new float[levelWidths[level] * levelHeights[level]];
+            maxDepths[level] = level == 0 ? minDepths[0] : new float[minDepths[level].length];
+        }
+    }
+
+    /**
+     * Clears the depth buffer and sets the camera of the frame.
+     */
+    public void begin(Matrix4f projectionMatrix, Matrix4f viewMatrix) {
+        projectionMatrix.mul(viewMatrix, projectionViewMatrix);
+        viewMatrix.originAffine(cameraPosition);
+        triangles.clear();
+        lastOccluders = 0;
+        Arrays.fill(minDepths[0], Float.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Adds the model space box as an occluder, for meshes that fill their bounds.
+     */
+    public void addOccluder(Bounds bounds, Matrix4f modelMatrix) {
+        Vector3f min = bounds.getMin();
+        Vector3f max = bounds.getMax();
+        for (int i = 0; i < 8; i++) {
+            boxPositions[i * 3] = (i & 1) == 0 ? min.x : max.x;
+            boxPositions[i * 3 + 1] = (i & 2) == 0 ? min.y : max.y;
+            boxPositions[i * 3 + 2] = (i & 4) == 0 ? min.z : max.z;
+        }
+        addOccluder(boxPositions, BOX_INDICES, modelMatrix);
+    }
+
+    /**
+     * Adds an indexed triangle mesh, given as model space (x, y, z) positions, as an occluder. Proxies must lie
+     * within the geometry they stand for, or they could hide items that are visible.
+     */
+    public void addOccluder(float[] positions, int[] indices, Matrix4f modelMatrix) {
+        projectionViewMatrix.mul(modelMatrix, modelProjectionViewMatrix);
+        for (int t = 0; t + 2 < indices.length; t += 3) {
+            for (int v = 0; v < 3; v++) {
+                int index = indices[t + v] * 3;
+                modelProjectionViewMatrix.transform(corner.set(positions[index], positions[index + 1],
+                        positions[index + 2], 1));
+                polygon[v * 4] = corner.x;
+                polygon[v * 4 + 1] = corner.y;
+                polygon[v * 4 + 2] = corner.z;
+                polygon[v * 4 + 3] = corner.w;
+            }
+            addClippedTriangle();
+        }
+        lastOccluders++;
+    }
+
+    /**
+     * Clips the clip space triangle in <code>polygon</code> against the near plane, z + w >= 0, and queues the one or
+     * two resulting triangles in screen space.
+     */
+    private void addClippedTriangle() {
+        int count = 0;
+        for (int i = 0; i < 3; i++) {
+            int j = (i + 1) % 3;
+            float di = polygon[i * 4 + 2] + polygon[i * 4 + 3];
+            float dj = polygon[j * 4 + 2] + polygon[j * 4 + 3];
+            if (di >= 0) {
+                System.arraycopy(polygon, i * 4, clippedPolygon, count++ * 4, 4);
+            }
+            if ((di >= 0) != (dj >= 0)) {
+                float s = di / (di - dj);
+                for (int c = 0; c < 4; c++) {
+                    clippedPolygon[count * 4 + c] = polygon[i * 4 + c] + s * (polygon[j * 4 + c] - polygon[i * 4 + c]);
+                }
+                count++;
+            }
+        }
+        for (int i = 1; i + 1 < count; i++) {
+            addScreenVertex(0);
+            addScreenVertex(i);
+            addScreenVertex(i + 1);
+        }
+    }
+
+    private void addScreenVertex(int vertex) {
+        float w = Math.max(clippedPolygon[vertex * 4 + 3], Float.MIN_NORMAL);
+        triangles.add((clippedPolygon[vertex * 4] / w * 0.5f + 0.5f) * width);
+        triangles.add((clippedPolygon[vertex * 4 + 1] / w * 0.5f + 0.5f) * height);
+        triangles.add(1 / w);
+    }
+
+    /**
+     * Draws the occluders added since {@link #begin(Matrix4f, Matrix4f)} and builds the depth pyramid.
+     */
+    public void rasterize() {
+        long start = System.nanoTime();
+        lastOccluderTriangles = triangles.size() / 9;
+        if (bands == 1) {
+            rasterizeBand(0);
+        } else {
+            IntStream.range(0, bands).parallel().forEach(this::rasterizeBand);
+        }
+        buildPyramid();
+        lastRasterNanos = System.nanoTime() - start;
+    }
+
+    private void rasterizeBand(int band) {
+        int rowStart = height * band / bands;
+        int rowEnd = height * (band + 1) / bands;
+        float[] depth = minDepths[0];
+        for (int t = 0; t + 8 < triangles.size(); t += 9) {
+            float x0 = triangles.get(t), y0 = triangles.get(t + 1), z0 = triangles.get(t + 2);
+            float x1 = triangles.get(t + 3), y1 = triangles.get(t + 4), z1 = triangles.get(t + 5);
+            float x2 = triangles.get(t + 6), y2 = triangles.get(t + 7), z2 = triangles.get(t + 8);
+            float area = (x1 - x0) * (y2 - y0) - (x2 - x0) * (y1 - y0);
+            if (!(Math.abs(area) > 1e-12f)) {
+                continue;
+            }
+            if (area < 0) {
+                // Both windings are drawn, swap to counter-clockwise
+                float x = x1, y = y1, z = z1;
+                x1 = x2; y1 = y2; z1 = z2;
+                x2 = x; y2 = y; z2 = z;
+                area = -area;
+            }
+            int minX = Math.max(0, (int) Math.floor(Math.min(x0, Math.min(x1, x2)) - 0.5f));
+            int maxX = Math.min(width - 1, (int) Math.ceil(Math.max(x0, Math.max(x1, x2)) - 0.5f));
+            int minY = Math.max(rowStart, (int) Math.floor(Math.min(y0, Math.min(y1, y2)) - 0.5f));
+            int maxY = Math.min(rowEnd - 1, (int) Math.ceil(Math.max(y0, Math.max(y1, y2)) - 0.5f));
+            float inverseArea = 1 / area;
+            for (int y = minY; y <= maxY; y++) {
+                float py = y + 0.5f;
+                for (int x = minX; x <= maxX; x++) {
+                    float px = x + 0.5f;
+                    float w0 = (x2 - x1) * (py - y1) - (y2 - y1) * (px - x1);
+                    float w1 = (x0 - x2) * (py - y2) - (y0 - y2) * (px - x2);
+                    float w2 = (x1 - x0) * (py - y0) - (y1 - y0) * (px - x0);
+                    if (w0 < 0 || w1 < 0 || w2 < 0) {
+                        continue;
+                    }
+                    // 1 / w is linear in screen space
+                    float distance = 1 / ((w0 * z0 + w1 * z1 + w2 * z2) * inverseArea);
+                    int index = y * width + x;
+                    if (distance < depth[index]) {
+                        depth[index] = distance;
+                    }
+                }
+            }
+        }
+    }
+
+    private void buildPyramid() {
+        for (int level = 1; level < minDepths.length; level++) {
+            int sourceWidth = levelWidths[level - 1];
+            int sourceHeight = levelHeights[level - 1];
+            float[] sourceMin = minDepths[level - 1];
+            float[] sourceMax = maxDepths[level - 1];
+            float[] levelMin = minDepths[level];
+            float[] levelMax = maxDepths[level];
+            for (int y = 0; y < levelHeights[level]; y++) {
+                int y0 = y * 2;
+                int y1 = Math.min(y0 + 1, sourceHeight - 1);
+                for (int x = 0; x < levelWidths[level]; x++) {
+                    int x0 = x * 2;
+                    int x1 = Math.min(x0 + 1, sourceWidth - 1);
+                    int a = y0 * sourceWidth + x0, b = y0 * sourceWidth + x1;
+                    int c = y1 * sourceWidth + x0, d = y1 * sourceWidth + x1;
+                    levelMin[y * levelWidths[level] + x] = Math.min(Math.min(sourceMin[a], sourceMin[b]),
+                            Math.min(sourceMin[c], sourceMin[d]));
+                    levelMax[y * levelWidths[level] + x] = Math.max(Math.max(sourceMax[a], sourceMax[b]),
+                            Math.max(sourceMax[c], sourceMax[d]));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns whether the model space box, placed in the world by <code>modelMatrix</code>, is hidden by the
+     * rasterized occluders.
+     */
+    public boolean isOccluded(Bounds bounds, Matrix4f modelMatrix) {
+        modelMatrix.transformAab(bounds.getMin(), bounds.getMax(), worldMin, worldMax);
+        return isOccluded(worldMin, worldMax);
+    }
+
+    /**
+     * Returns whether the world space box is hidden by the rasterized occluders. Boxes crossing the near plane or
+     * outside the screen are never hidden.
+     */
+    public boolean isOccluded(Vector3f min, Vector3f max) {
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+        float nearest = Float.POSITIVE_INFINITY;
+        for (int i = 0; i < 8; i++) {
+            projectionViewMatrix.transform(corner.set((i & 1) == 0 ? min.x : max.x, (i & 2) == 0 ? min.y : max.y,
+                    (i & 4) == 0 ? min.z : max.z, 1));
+            if (corner.z + corner.w < 0 || corner.w <= 0) {
+                return false;
+            }
+            float x = (corner.x / corner.w * 0.5f + 0.5f) * width;
+            float y = (corner.y / corner.w * 0.5f + 0.5f) * height;
+            minX = Math.min(minX, x);
+            maxX = Math.max(maxX, x);
+            minY = Math.min(minY, y);
+            maxY = Math.max(maxY, y);
+            nearest = Math.min(nearest, corner.w);
+        }
+        int x0 = Math.max(0, (int) Math.floor(minX));
+        int x1 = Math.min(width - 1, (int) Math.floor(maxX));
+        int y0 = Math.max(0, (int) Math.floor(minY));
+        int y1 = Math.min(height - 1, (int) Math.floor(maxY));
+        if (x0 > x1 || y0 > y1) {
+            return false;
+        }
+        float distance = nearest - nearest * DEPTH_BIAS;
+        int level = 0;
+        while (level + 1 < minDepths.length && ((x1 >> level) - (x0 >> level) > 1 || (y1 >> level) - (y0 >> level) > 1)) {
+            level++;
+        }
+        for (int y = y0 >> level; y <= y1 >> level; y++) {
+            for (int x = x0 >> level; x <= x1 >> level; x++) {
+                if (!isHidden(level, x, y, x0, y0, x1, y1, distance)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean isHidden(int level, int x, int y, int x0, int y0, int x1, int y1, float distance) {
+        int index = y * levelWidths[level] + x;
+        if (distance <= minDepths[level][index]) {
+            return false;
+        }
+        if (distance > maxDepths[level][index]) {
+            return true;
+        }
+        if (level == 0) {
+            return false;
+        }
+        int childLevel = level - 1;
+        int childX0 = Math.max(x * 2, x0 >> childLevel);
+        int childX1 = Math.min(Math.min(x * 2 + 1, levelWidths[childLevel] - 1), x1 >> childLevel);
+        int childY0 = Math.max(y * 2, y0 >> childLevel);
+        int childY1 = Math.min(Math.min(y * 2 + 1, levelHeights[childLevel] - 1), y1 >> childLevel);
+        for (int childY = childY0; childY <= childY1; childY++) {
+            for (int childX = childX0; childX <= childX1; childX++) {
+                if (!isHidden(childLevel, childX, childY, x0, y0, x1, y1, distance)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Replaces the content of <code>visibleItems</code> with the items that are not hidden, in their original order.
+     * The items whose mesh is an occluder, nearest and largest first, up to {@link #getMaxOccluders()}, are drawn
+     * into the depth buffer before testing. {@link #begin(Matrix4f, Matrix4f)} must have been called for the frame.
+     */
+    public void cull(List<GameItem> gameItems, List<GameItem> visibleItems) {
+        long start = System.nanoTime();
+        int candidates = 0;
+        for (int i = 0; i < gameItems.size(); i++) {
+            Mesh mesh = gameItems.get(i).getMesh();
+            if (mesh.isOccluder()) {
+                if (candidates == occluderOrder.length) {
+                    occluderOrder = Arrays.copyOf(occluderOrder, candidates * 2);
+                }
+                GameItem gameItem = gameItems.get(i);
+                float size = mesh.getBounds().getRadius() * gameItem.getScale();
+                float rank = cameraPosition.distance(gameItem.getPosition()) / Math.max(size, Float.MIN_NORMAL);
+                // Non-negative float bits sort like the floats, ties keep the item order
+                occluderOrder[candidates++] = (long) Float.floatToIntBits(rank) << 32 | i;
+            }
+        }
+        Arrays.sort(occluderOrder, 0, candidates);
+        for (int i = 0; i < Math.min(candidates, maxOccluders); i++) {
+            GameItem gameItem = gameItems.get((int) occluderOrder[i]);
+            addOccluder(gameItem.getMesh().getBounds(), transformation.getModelMatrix(gameItem));
+        }
+        long setupNanos = System.nanoTime() - start;
+        rasterize();
+
+        start = System.nanoTime();
+        visibleItems.clear();
+        for (GameItem gameItem : gameItems) {
+            if (!isOccluded(gameItem.getMesh().getBounds(), transformation.getModelMatrix(gameItem))) {
+                visibleItems.add(gameItem);
+            }
+        }
+        lastTested = gameItems.size();
+        lastOccluded = gameItems.size() - visibleItems.size();
+        lastRasterNanos += setupNanos;
+        lastTestNanos = System.nanoTime() - start;
+    }
+
+    public int getMaxOccluders() {
+        return maxOccluders;
+    }
+
+    public void setMaxOccluders(int maxOccluders) {
+        this.maxOccluders = maxOccluders;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getLevels() {
+        return minDepths.length;
+    }
+
+    /**
+     * View distance of the nearest occluder at the pixel, counted from the bottom left, or infinity if none.
+     */
+    public float getDepth(int x, int y) {
+        return minDepths[0][y * width + x];
+    }
+
+    public int getLastOccluders() {
+        return lastOccluders;
+    }
+
+    public int getLastOccluderTriangles() {
+        return lastOccluderTriangles;
+    }
+
+    /**
+     * Items tested by the last {@link #cull(List, List)}.
+     */
+    public int getLastTested() {
+        return lastTested;
+    }
+
+    /**
+     * Items found hidden by the last {@link #cull(List, List)}.
+     */
+    public int getLastOccluded() {
+        return lastOccluded;
+    }
+
+    /**
+     * Time spent selecting, transforming and rasterizing occluders and building the pyramid in the last frame.
+     */
+    public long getLastRasterNanos() {
+        return lastRasterNanos;
+    }
+
+    /**
+     * Time spent testing items in the last {@link #cull(List, List)}.
+     */
+    public long getLastTestNanos() {
+        return lastTestNanos;
+    }
+}
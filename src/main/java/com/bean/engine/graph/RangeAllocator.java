@@ -0,0 +1,103 @@
+package com.bean.engine.graph;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Sub-allocates ranges of a fixed size space, such as the elements of a shared buffer, without any OpenGL calls.
+ * <p>
+ * Free ranges are kept sorted by offset and merged with their neighbours when released. Allocations take the
+ * smallest free range that fits, which keeps large ranges available for large requests.
+ */
+public class RangeAllocator {
+
+    private final TreeMap<Integer, Integer> freeRanges = new TreeMap<>();
+
+    private int capacity;
+
+    private int freeSpace;
+
+    public RangeAllocator(int capacity) {
+        this.capacity = capacity;
+        release(0, capacity);
+    }
+
+    /**
+     * Returns the offset of a free range of <code>size</code> elements, or -1 when no free range is large enough.
+     */
+    public int allocate(int size) {
+        Map.Entry<Integer, Integer> best = null;
+        for (Map.Entry<Integer, Integer> range : freeRanges.entrySet()) {
+            if (range.getValue() >= size && (best == null || range.getValue() < best.getValue())) {
+                best = range;
+                if (range.getValue() == size) {
+                    break;
+                }
+            }
+        }
+        if (best == null) {
+            return -1;
+        }
+        int offset = best.getKey();
+        freeRanges.remove(offset);
+        if (best.getValue() > size) {
+            freeRanges.put(offset + size, best.getValue() - size);
+        }
+        freeSpace -= size;
+        return offset;
+    }
+
+    /**
+     * Returns a range to the free space, merging it with the free ranges around it.
+     */
+    public void release(int offset, int size) {
+        if (size == 0) {
+            return;
+        }
+        freeSpace += size;
+        Map.Entry<Integer, Integer> before = freeRanges.floorEntry(offset);
+        if (before != null && before.getKey() + before.getValue() == offset) {
+            offset = before.getKey();
+            size += before.getValue();
+        }
+        Integer afterSize = freeRanges.remove(offset + size);
+        if (afterSize != null) {
+            size += afterSize;
+        }
+        freeRanges.put(offset, size);
+    }
+
+    /**
+     * Forgets all ranges: the first <code>usedSize</code> elements are in use and the rest, up to the new capacity,
+     * is free. Used after compacting the live ranges to the start of the space.
+     */
+    public void reset(int usedSize, int capacity) {
+        this.capacity = capacity;
+        freeRanges.clear();
+        freeSpace = 0;
+        release(usedSize, capacity - usedSize);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getFreeSpace() {
+        return freeSpace;
+    }
+
+    public int getLargestFreeRange() {
+        int largest = 0;
+        for (int size : freeRanges.values()) {
+            largest = Math.max(largest, size);
+        }
+        return largest;
+    }
+
+    /**
+     * Share of the free space that is not in the largest free range, 0 when the free space is contiguous.
+     */
+    public float getFragmentation() {
+        return freeSpace == 0 ? 0 : 1 - (float) getLargestFreeRange() / freeSpace;
+    }
+}
@@ -0,0 +1,160 @@
+package com.bean.engine.graph;
+
+import java.util.Arrays;
+
+/**
+ * Draw submissions of a frame as packed 64 bit sort keys, radix sorted so that items sharing state end up next to
+ * each other.
+ * <p>
+ * Opaque key, most significant bits first:
+ * <pre>
+ *   pass 2 | shader 6 | material 12 | texture 12 | mesh 12 | depth 20
+ * </pre>
+ * Transparent items must be blended back to front whatever their state, so their depth moves right after the pass
+ * and is inverted:
+ * <pre>
+ *   pass 2 | inverted depth 20 | shader 6 | material 12 | texture 12 | mesh 12
+ * </pre>
+ * Opaque items sharing all state are drawn front to back, which lets early depth testing reject hidden fragments.
+ * Ids wider than their field are masked: sorting gets less effective, but draws stay correct as long as the caller
+ * compares the real state objects when executing the queue.
+ */
+public class RenderQueue {
+
+    public static final int PASS_OPAQUE = 0;
+
+    public static final int PASS_TRANSPARENT = 1;
+
+    private static final int SHADER_BITS = 6;
+
+    private static final int ID_BITS = 12;
+
+    private static final int DEPTH_BITS = 20;
+
+    private static final int DEPTH_MAX = (1 << DEPTH_BITS) - 1;
+
+    private static final int RADIX_BITS = 8;
+
+    private static final int RADIX_BUCKETS = 1 << RADIX_BITS;
+
+    private long[] keys;
+
+    private int[] items;
+
+    private long[] sortKeys;
+
+    private int[] sortItems;
+
+    private final int[] bucketCounts = new int[RADIX_BUCKETS];
+
+    private int size;
+
+    public RenderQueue(int initialCapacity) {
+        int capacity = Math.max(16, initialCapacity);
+        keys = new long[capacity];
+        items = new int[capacity];
+        sortKeys = new long[capacity];
+        sortItems = new int[capacity];
+    }
+
+    /**
+     * @param depth view distance normalized to [0, 1], values outside are clamped
+     */
+    public static long opaqueKey(int shader, int material, int texture, int mesh, float depth) {
+        return (long) PASS_OPAQUE << 62
+                | (long) (shader & ((1 << SHADER_BITS) - 1)) << 56
+                | (long) (material & ((1 << ID_BITS) - 1)) << 44
+                | (long) (texture & ((1 << ID_BITS) - 1)) << 32
+                | (long) (mesh & ((1 << ID_BITS) - 1)) << 20
+                | quantizeDepth(depth);
+    }
+
+    /**
+     * @param depth view distance normalized to [0, 1], values outside are clamped
+     */
+    public static long transparentKey(int shader, int material, int texture, int mesh, float depth) {
+        return (long) PASS_TRANSPARENT << 62
+                | (long) (DEPTH_MAX - quantizeDepth(depth)) << 42
+                | (long) (shader & ((1 << SHADER_BITS) - 1)) << 36
+                | (long) (material & ((1 << ID_BITS) - 1)) << 24
+                | (long) (texture & ((1 << ID_BITS) - 1)) << 12
+                | (long) (mesh & ((1 << ID_BITS) - 1));
+    }
+
+    public static int getPass(long key) {
+        return (int) (key >>> 62);
+    }
+
+    private static int quantizeDepth(float depth) {
+        return (int) (Math.max(0, Math.min(1, depth)) * DEPTH_MAX);
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Queues an item, identified by an index into the caller's own item list.
+     */
+    public void add(long key, int item) {
+        if (size == keys.length) {
+            int capacity = keys.length * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            items = Arrays.copyOf(items, capacity);
+            sortKeys = new long[capacity];
+            sortItems = new int[capacity];
+        }
+        keys[size] = key;
+        items[size] = item;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getKey(int index) {
+        return keys[index];
+    }
+
+    public int getItem(int index) {
+        return items[index];
+    }
+
+    /**
+     * Sorts the queue by key with a stable least significant digit radix sort, 8 bits per pass. Passes over bytes
+     * that are the same in every key are skipped, which is common for the pass and shader bits.
+     */
+    public void sort() {
+        long differing = 0;
+        for (int i = 1; i < size; i++) {
+            differing |= keys[i] ^ keys[0];
+        }
+        for (int shift = 0; shift < Long.SIZE; shift += RADIX_BITS) {
+            if (((differing >>> shift) & (RADIX_BUCKETS - 1)) == 0) {
+                continue;
+            }
+            Arrays.fill(bucketCounts, 0);
+            for (int i = 0; i < size; i++) {
+                bucketCounts[(int) (keys[i] >>> shift) & (RADIX_BUCKETS - 1)]++;
+            }
+            int offset = 0;
+            for (int bucket = 0; bucket < RADIX_BUCKETS; bucket++) {
+                int count = bucketCounts[bucket];
+                bucketCounts[bucket] = offset;
+                offset += count;
+            }
+            for (int i = 0; i < size; i++) {
+                int target = bucketCounts[(int) (keys[i] >>> shift) & (RADIX_BUCKETS - 1)]++;
+                sortKeys[target] = keys[i];
+                sortItems[target] = items[i];
+            }
+            long[] swapKeys = keys;
+            keys = sortKeys;
+            sortKeys = swapKeys;
+            int[] swapItems = items;
+            items = sortItems;
+            sortItems = swapItems;
+        }
+    }
+}
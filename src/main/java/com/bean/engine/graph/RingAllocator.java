@@ -0,0 +1,156 @@
+package com.bean.engine.graph;
+
+/**
+ * Offset bookkeeping of a ring buffer shared by the frames in flight, without any OpenGL calls.
+ * <p>
+ * Allocations of the current frame are placed after those of the previous one, wrapping to the start of the ring
+ * when the end is reached. The space of a frame only becomes free again once the frame is retired, which the owner
+ * does when the GPU is known to be done with it. Allocations are never split across the end of the ring.
+ */
+public class RingAllocator {
+
+    private final int size;
+
+    private final int maxFramesInFlight;
+
+    /**
+     * Ring offset of the first allocation of each submitted frame, oldest first from <code>oldestFrame</code>.
+     */
+    private final int[] frameStarts;
+
+    /**
+     * Bytes allocated by each submitted frame, indexed like <code>frameStarts</code>.
+     */
+    private final int[] frameSizes;
+
+    private int bytesInFlight;
+
+    private int oldestFrame;
+
+    private int framesInFlight;
+
+    private int head;
+
+    private int tail;
+
+    private int frameStart;
+
+    private int frameBytes;
+
+    private int wraps;
+
+    public RingAllocator(int size, int maxFramesInFlight) {
+        this.size = size;
+        this.maxFramesInFlight = maxFramesInFlight;
+        frameStarts = new int[maxFramesInFlight];
+        frameSizes = new int[maxFramesInFlight];
+    }
+
+    /**
+     * Returns the offset of <code>bytes</code> free bytes aligned to <code>alignment</code>, a power of two, or -1
+     * when the frames in flight hold the space. Nothing is allocated in that case.
+     */
+    public int allocate(int bytes, int alignment) {
+        if (bytes > size) {
+            throw new IllegalArgumentException("Allocation of " + bytes + " bytes exceeds the ring size of " + size);
+        }
+        // Frames in flight that allocated nothing hold no space, so the ring may be empty with frames in flight
+        boolean pending = bytesInFlight > 0 || frameBytes > 0;
+        if (!pending) {
+            tail = head;
+        }
+        int offset = (head + alignment - 1) & -alignment;
+        if (!pending || head > tail) {
+            // Free space runs from the head to the end of the ring, then from its start up to the tail
+            if (offset + bytes <= size) {
+                return take(offset, bytes);
+            }
+            if (bytes <= (pending ? tail : size)) {
+                wraps++;
+                return take(0, bytes);
+            }
+            return -1;
+        }
+        if (head < tail && offset + bytes <= tail) {
+            return take(offset, bytes);
+        }
+        return -1;
+    }
+
+    private int take(int offset, int bytes) {
+        if (frameBytes == 0) {
+            frameStart = offset;
+        }
+        head = offset + bytes;
+        frameBytes += bytes;
+        return offset;
+    }
+
+    /**
+     * Closes the current frame, whose allocations stay in use until {@link #retireOldest()} releases them.
+     *
+     * @throws IllegalStateException when {@link #getMaxFramesInFlight()} frames are already in flight
+     */
+    public void endFrame() {
+        if (framesInFlight == maxFramesInFlight) {
+            throw new IllegalStateException("Already " + maxFramesInFlight + " frames in flight");
+        }
+        int frame = (oldestFrame + framesInFlight) % maxFramesInFlight;
+        frameStarts[frame] = frameBytes > 0 ? frameStart : head;
+        frameSizes[frame] = frameBytes;
+        bytesInFlight += frameBytes;
+        framesInFlight++;
+        frameBytes = 0;
+    }
+
+    /**
+     * Frees the space of the oldest frame in flight.
+     */
+    public void retireOldest() {
+        if (framesInFlight == 0) {
+            throw new IllegalStateException("No frame in flight");
+        }
+        bytesInFlight -= frameSizes[oldestFrame];
+        oldestFrame = (oldestFrame + 1) % maxFramesInFlight;
+        framesInFlight--;
+        // Space skipped when wrapping is freed along with the frame before it
+        if (framesInFlight > 0) {
+            tail = frameStarts[oldestFrame];
+        } else {
+            tail = frameBytes > 0 ? frameStart : head;
+        }
+    }
+
+    public int getFramesInFlight() {
+        return framesInFlight;
+    }
+
+    /**
+     * Bytes allocated by the frames in flight.
+     */
+    public int getBytesInFlight() {
+        return bytesInFlight;
+    }
+
+    public int getMaxFramesInFlight() {
+        return maxFramesInFlight;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Bytes allocated in the current frame.
+     */
+    public int getFrameBytes() {
+        return frameBytes;
+    }
+
+    /**
+     * Number of allocations that went back to the start of the ring.
+     */
+    public int getWraps() {
+        return wraps;
+    }
+}
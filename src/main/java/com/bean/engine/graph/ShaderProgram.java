@@ -1,32 +1,32 @@
 package com.bean.engine.graph;
 
-import org.joml.Matrix4f;
-import org.joml.Vector3f;
-import org.joml.Vector4f;
-import org.lwjgl.system.MemoryStack;
-
-import java.nio.FloatBuffer;
-import java.util.HashMap;
-import java.util.Map;
-
 import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL31.GL_INVALID_INDEX;
+import static org.lwjgl.opengl.GL31.glGetUniformBlockIndex;
+import static org.lwjgl.opengl.GL31.glUniformBlockBinding;
 
 public class ShaderProgram {
 
     private final int programId;
-    private final Map<String, Integer> uniforms;
+
+    private int uniformCalls;
+
+    private int skippedUniformCalls;
 
     private int vertexShaderId;
     private int fragmentShaderId;
 
     public ShaderProgram() throws Exception {
         programId = glCreateProgram();
-        uniforms = new HashMap<>();
         if (programId == 0) {
             throw new Exception("Could not create Shader");
         }
     }
 
+    public int getProgramId() {
+        return programId;
+    }
+
     public void createVertexShader(String shaderCode) throws Exception {
         vertexShaderId = createShader(shaderCode, GL_VERTEX_SHADER);
     }
@@ -53,72 +53,65 @@ public class ShaderProgram {
         return shaderId;
     }
 
-    public void createUniform(String uniformName) throws Exception {
-        int uniformLocation = glGetUniformLocation(programId, uniformName);
-        if (uniformLocation < 0) {
-            throw new Exception("Could not find uniform:" + uniformName);
-        }
-        uniforms.put(uniformName, uniformLocation);
+    public Uniform.Int createIntUniform(String uniformName) throws Exception {
+        return new Uniform.Int(this, getUniformLocation(uniformName));
     }
 
-    public void createPointLightUniform(String uniformName) throws Exception {
-        createUniform(uniformName + ".colour");
-        createUniform(uniformName + ".position");
-        createUniform(uniformName + ".intensity");
-        createUniform(uniformName + ".att.constant");
-        createUniform(uniformName + ".att.linear");
-        createUniform(uniformName + ".att.exponent");
+    public Uniform.Float createFloatUniform(String uniformName) throws Exception {
+        return new Uniform.Float(this, getUniformLocation(uniformName));
     }
 
-    public void createMaterialUniform(String uniformName) throws Exception {
-        createUniform(uniformName + ".ambient");
-        createUniform(uniformName + ".diffuse");
-        createUniform(uniformName + ".specular");
-        createUniform(uniformName + ".hasTexture");
-        createUniform(uniformName + ".reflectance");
+    public Uniform.Vec3 createVec3Uniform(String uniformName) throws Exception {
+        return new Uniform.Vec3(this, getUniformLocation(uniformName));
     }
 
-    public void setUniform(String uniformName, Matrix4f value) {
-        try (MemoryStack stack = MemoryStack.stackPush()) {
-            FloatBuffer fb = stack.mallocFloat(16);
-            value.get(fb);
-            glUniformMatrix4fv(uniforms.get(uniformName), false, fb);
-        }
+    public Uniform.Vec4 createVec4Uniform(String uniformName) throws Exception {
+        return new Uniform.Vec4(this, getUniformLocation(uniformName));
     }
 
-    public void setUniform(String uniformName, int value) {
-        glUniform1i(uniforms.get(uniformName), value);
+    public Uniform.Mat4 createMat4Uniform(String uniformName) throws Exception {
+        return new Uniform.Mat4(this, getUniformLocation(uniformName));
     }
 
-    public void setUniform(String uniformName, float value) {
-        glUniform1f(uniforms.get(uniformName), value);
+    private int getUniformLocation(String uniformName) throws Exception {
+        int uniformLocation = glGetUniformLocation(programId, uniformName);
+        if (uniformLocation < 0) {
+            throw new Exception("Could not find uniform:" + uniformName);
+        }
+        return uniformLocation;
     }
 
-    public void setUniform(String uniformName, Vector3f value) {
-        glUniform3f(uniforms.get(uniformName), value.x, value.y, value.z);
+    /**
+     * Connects a uniform block of the program to a uniform buffer binding point.
+     */
+    public void bindUniformBlock(String blockName, int binding) throws Exception {
+        int blockIndex = glGetUniformBlockIndex(programId, blockName);
+        if (blockIndex == GL_INVALID_INDEX) {
+            throw new Exception("Could not find uniform block:" + blockName);
+        }
+        glUniformBlockBinding(programId, blockIndex, binding);
     }
 
+    /**
+     * Number of glUniform calls made through this program so far.
+     */
+    public int getUniformCalls() {
+        return uniformCalls;
+    }
 
-    public void setUniform(String uniformName, Vector4f value) {
-        glUniform4f(uniforms.get(uniformName), value.x, value.y, value.z, value.w);
+    /**
+     * Number of uniform sets skipped so far because the uniform already had the value.
+     */
+    public int getSkippedUniformCalls() {
+        return skippedUniformCalls;
     }
 
-    public void setUniform(String uniformName, PointLight pointLight) {
-        setUniform(uniformName + ".colour", pointLight.getColor());
-        setUniform(uniformName + ".position", pointLight.getPosition());
-        setUniform(uniformName + ".intensity", pointLight.getIntensity());
-        PointLight.Attenuation att = pointLight.getAttenuation();
-        setUniform(uniformName + ".att.constant", att.getConstant());
-        setUniform(uniformName + ".att.linear", att.getLinear());
-        setUniform(uniformName + ".att.exponent", att.getExponent());
+    void countUniformCall() {
+        uniformCalls++;
     }
 
-    public void setUniform(String uniformName, Material material) {
-        setUniform(uniformName + ".ambient", material.getAmbientColour());
-        setUniform(uniformName + ".diffuse", material.getDiffuseColour());
-        setUniform(uniformName + ".specular", material.getSpecularColour());
-        setUniform(uniformName + ".hasTexture", material.isTextured() ? 1 : 0);
-        setUniform(uniformName + ".reflectance", material.getReflectance());
+    void countSkippedUniformCall() {
+        skippedUniformCalls++;
     }
 
     public void link() throws Exception {
@@ -0,0 +1,251 @@
+package com.bean.engine.graph;
+
+import java.nio.ByteBuffer;
+
+import org.lwjgl.opengl.ARBBufferStorage;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+import org.lwjgl.system.MemoryUtil;
+
+import static org.lwjgl.opengl.GL15.GL_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL15.GL_STREAM_DRAW;
+import static org.lwjgl.opengl.GL15.glBindBuffer;
+import static org.lwjgl.opengl.GL15.glBufferData;
+import static org.lwjgl.opengl.GL15.glBufferSubData;
+import static org.lwjgl.opengl.GL15.glDeleteBuffers;
+import static org.lwjgl.opengl.GL15.glGenBuffers;
+import static org.lwjgl.opengl.GL15.glUnmapBuffer;
+import static org.lwjgl.opengl.GL30.GL_MAP_WRITE_BIT;
+import static org.lwjgl.opengl.GL30.glMapBufferRange;
+import static org.lwjgl.opengl.GL32.GL_ALREADY_SIGNALED;
+import static org.lwjgl.opengl.GL32.GL_CONDITION_SATISFIED;
+import static org.lwjgl.opengl.GL32.GL_SYNC_FLUSH_COMMANDS_BIT;
+import static org.lwjgl.opengl.GL32.GL_SYNC_GPU_COMMANDS_COMPLETE;
+import static org.lwjgl.opengl.GL32.GL_WAIT_FAILED;
+import static org.lwjgl.opengl.GL32.glClientWaitSync;
+import static org.lwjgl.opengl.GL32.glDeleteSync;
+import static org.lwjgl.opengl.GL32.glFenceSync;
+import static org.lwjgl.opengl.GL44.GL_MAP_COHERENT_BIT;
+import static org.lwjgl.opengl.GL44.GL_MAP_PERSISTENT_BIT;
+
+/**
+ * Ring buffer for data rewritten every frame, such as instance attributes, shared by up to
+ * {@link #FRAMES_IN_FLIGHT} frames so the CPU can fill one while the GPU still reads the others.
+ * <p>
+ * Subsystems sub-allocate aligned ranges with {@link #allocate(int, int)}, write them through {@link #getData()}
+ * and call {@link #flush()} before drawing from them. When buffer storage is available (OpenGL 4.4 or
+ * ARB_buffer_storage) the buffer is mapped once, persistently and coherently, and {@link #flush()} does nothing.
+ * The end of each frame is marked by a fence, and ranges are only reused once the GPU has passed the fence of the
+ * frame that wrote them. Otherwise writes go to a CPU copy and the first flush of a frame orphans the buffer, which
+ * lets the driver keep the storage of earlier frames alive for as long as they are read.
+ */
+public class StreamBuffer {
+
+    public static final int FRAMES_IN_FLIGHT = 3;
+
+    private static final long FENCE_TIMEOUT_NANOS = 1_000_000;
+
+    private final int bufferId;
+
+    private final boolean persistent;
+
+    private final RingAllocator allocator;
+
+    private final ByteBuffer data;
+
+    private final long[] fences = new long[FRAMES_IN_FLIGHT];
+
+    private int oldestFence;
+
+    /**
+     * Range written but not yet uploaded, without buffer storage.
+     */
+    private int pendingStart;
+
+    private int pendingEnd;
+
+    private boolean orphaned;
+
+    private int stalls;
+
+    private long stallNanos;
+
+    /**
+     * @param frameSize bytes a frame is expected to use, the ring holds {@link #FRAMES_IN_FLIGHT} times as many
+     */
+    public StreamBuffer(int frameSize) {
+        int size = frameSize * FRAMES_IN_FLIGHT;
+        allocator = new RingAllocator(size, FRAMES_IN_FLIGHT);
+        GLCapabilities capabilities = GL.getCapabilities();
+        persistent = capabilities.OpenGL44 || capabilities.GL_ARB_buffer_storage;
+
+        bufferId = glGenBuffers();
+        glBindBuffer(GL_ARRAY_BUFFER, bufferId);
+        if (persistent) {
+            int flags = GL_MAP_WRITE_BIT | GL_MAP_PERSISTENT_BIT | GL_MAP_COHERENT_BIT;
+            // Same entry point as GL44.glBufferStorage, also present on older contexts exposing the extension
+            ARBBufferStorage.glBufferStorage(GL_ARRAY_BUFFER, size, flags);
+            data = glMapBufferRange(GL_ARRAY_BUFFER, 0, size, flags);
+        } else {
+            glBufferData(GL_ARRAY_BUFFER, size, GL_STREAM_DRAW);
+            data = MemoryUtil.memAlloc(size);
+        }
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+    }
+
+    public int getBufferId() {
+        return bufferId;
+    }
+
+    /**
+     * Whether the buffer is persistently mapped, rather than orphaned and re-uploaded every frame.
+     */
+    public boolean isPersistent() {
+        return persistent;
+    }
+
+    /**
+     * The mapped buffer, or its CPU copy, to be written with absolute puts in native byte order within allocated
+     * ranges.
+     */
+    public ByteBuffer getData() {
+        return data;
+    }
+
+    /**
+     * Returns the offset of a range of <code>bytes</code> bytes aligned to <code>alignment</code>, a power of two,
+     * for the current frame. Blocks until the GPU is done with older frames if the ring is full.
+     *
+     * @throws IllegalStateException if the current frame alone does not leave room for the allocation
+     */
+    public int allocate(int bytes, int alignment) {
+        while (true) {
+            int offset = allocator.allocate(bytes, alignment);
+            if (offset >= 0) {
+                if (!persistent) {
+                    if (offset < pendingEnd) {
+                        // Wrapped, send what the frame wrote at the end of the ring first
+                        uploadPending();
+                    }
+                    if (pendingStart == pendingEnd) {
+                        pendingStart = offset;
+                    }
+                    pendingEnd = offset + bytes;
+                }
+                return offset;
+            }
+            if (allocator.getFramesInFlight() == 0) {
+                throw new IllegalStateException("Stream buffer of " + allocator.getSize()
+                        + " bytes cannot hold " + bytes + " more bytes in one frame");
+            }
+            waitForOldestFrame();
+        }
+    }
+
+    /**
+     * Makes the data written since the last flush visible to the GPU.
+     */
+    public void flush() {
+        if (!persistent) {
+            uploadPending();
+        }
+    }
+
+    private void uploadPending() {
+        if (pendingStart == pendingEnd) {
+            return;
+        }
+        glBindBuffer(GL_ARRAY_BUFFER, bufferId);
+        if (!orphaned) {
+            glBufferData(GL_ARRAY_BUFFER, allocator.getSize(), GL_STREAM_DRAW);
+            orphaned = true;
+        }
+        glBufferSubData(GL_ARRAY_BUFFER, pendingStart, data.slice(pendingStart, pendingEnd - pendingStart));
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        pendingStart = pendingEnd;
+    }
+
+    /**
+     * Marks the end of the frame's GPU commands. Called once per frame after its last draw.
+     */
+    public void endFrame() {
+        if (allocator.getFramesInFlight() == FRAMES_IN_FLIGHT) {
+            waitForOldestFrame();
+        }
+        if (persistent) {
+            fences[(oldestFence + allocator.getFramesInFlight()) % FRAMES_IN_FLIGHT] =
+                    glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+            allocator.endFrame();
+            retireSignaledFrames();
+        } else {
+            // The driver tracks orphaned storage, frames are done as soon as they are submitted
+            allocator.endFrame();
+            allocator.retireOldest();
+            pendingStart = pendingEnd;
+            orphaned = false;
+        }
+    }
+
+    private void retireSignaledFrames() {
+        while (allocator.getFramesInFlight() > 0) {
+            int status = glClientWaitSync(fences[oldestFence], 0, 0);
+            if (status != GL_ALREADY_SIGNALED && status != GL_CONDITION_SATISFIED) {
+                return;
+            }
+            retireOldestFrame();
+        }
+    }
+
+    private void waitForOldestFrame() {
+        long fence = fences[oldestFence];
+        int status = glClientWaitSync(fence, 0, 0);
+        if (status != GL_ALREADY_SIGNALED && status != GL_CONDITION_SATISFIED) {
+            stalls++;
+            long start = System.nanoTime();
+            do {
+                status = glClientWaitSync(fence, GL_SYNC_FLUSH_COMMANDS_BIT, FENCE_TIMEOUT_NANOS);
+            } while (status != GL_ALREADY_SIGNALED && status != GL_CONDITION_SATISFIED && status != GL_WAIT_FAILED);
+            stallNanos += System.nanoTime() - start;
+        }
+        retireOldestFrame();
+    }
+
+    private void retireOldestFrame() {
+        glDeleteSync(fences[oldestFence]);
+        fences[oldestFence] = 0;
+        oldestFence = (oldestFence + 1) % FRAMES_IN_FLIGHT;
+        allocator.retireOldest();
+    }
+
+    /**
+     * Number of times the CPU had to wait for the GPU to release ring space.
+     */
+    public int getStalls() {
+        return stalls;
+    }
+
+    public long getStallNanos() {
+        return stallNanos;
+    }
+
+    /**
+     * Number of allocations that went back to the start of the ring.
+     */
+    public int getWraps() {
+        return allocator.getWraps();
+    }
+
+    public void cleanup() {
+        for (int i = 0; i < allocator.getFramesInFlight(); i++) {
+            glDeleteSync(fences[(oldestFence + i) % FRAMES_IN_FLIGHT]);
+        }
+        glBindBuffer(GL_ARRAY_BUFFER, bufferId);
+        if (persistent) {
+            glUnmapBuffer(GL_ARRAY_BUFFER);
+        } else {
+            MemoryUtil.memFree(data);
+        }
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        glDeleteBuffers(bufferId);
+    }
+}
@@ -1,11 +1,13 @@
 package com.bean.engine.graph;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
 
 import org.lwjgl.system.MemoryStack;
 
 import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL12.GL_TEXTURE_MAX_LEVEL;
 import static org.lwjgl.opengl.GL30.glGenerateMipmap;
 import static org.lwjgl.stb.STBImage.*;
 
@@ -14,7 +16,14 @@ public class Texture {
     private final int id;
 
     public Texture(String fileName) throws RuntimeException {
-        this(loadTexture(fileName));
+        this(upload(load(fileName), true));
+    }
+
+    /**
+     * Uploads decoded pixels. The data is not freed, the caller keeps ownership of it.
+     */
+    public Texture(TextureData textureData) {
+        this(upload(textureData, false));
     }
 
     public Texture(int id) {
@@ -29,7 +38,34 @@ public class Texture {
         return id;
     }
 
-    private static int loadTexture(String fileName) throws RuntimeException {
+    /**
+     * Loads the pixels and mip levels of an image through its {@link TextureCache}, decoding the image and
+     * building the mip chain on the CPU the first time or whenever the source file has changed.
+     * Does not touch OpenGL, so it can be called from any thread.
+     */
+    public static TextureData load(String fileName) throws RuntimeException {
+        try {
+            TextureData cached = TextureCache.read(fileName);
+            if (cached != null) {
+                return cached;
+            }
+        } catch (IOException excp) {
+            System.err.println("Warning reading texture cache for [" + fileName + "]: " + excp.getMessage());
+        }
+
+        TextureData textureData = decode(fileName).generateMipChain();
+        try {
+            TextureCache.write(fileName, textureData);
+        } catch (IOException excp) {
+            System.err.println("Warning writing texture cache for [" + fileName + "]: " + excp.getMessage());
+        }
+        return textureData;
+    }
+
+    /**
+     * Decodes an image file into RGBA pixels. Does not touch OpenGL, so it can be called from any thread.
+     */
+    public static TextureData decode(String fileName) throws RuntimeException {
         int width;
         int height;
         ByteBuffer buf;
@@ -48,7 +84,11 @@ public class Texture {
             width = w.get();
             height = h.get();
         }
+        ByteBuffer pixels = buf;
+        return new TextureData(width, height, new ByteBuffer[]{pixels}, () -> stbi_image_free(pixels));
+    }
 
+    private static int upload(TextureData textureData, boolean free) {
         // Create a new OpenGL texture
         int textureId = glGenTextures();
         // Bind the texture
@@ -61,12 +101,24 @@ public class Texture {
         //glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
 
         // Upload the texture data
-        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, width, height, 0,
-                GL_RGBA, GL_UNSIGNED_BYTE, buf);
-        // Generate Mip Map
-        glGenerateMipmap(GL_TEXTURE_2D);
+        int levelCount = textureData.getLevelCount();
+        for (int level = 0; level < levelCount; level++) {
+            glTexImage2D(GL_TEXTURE_2D, level, GL_RGBA,
+                    TextureData.getLevelWidth(textureData.getWidth(), level),
+                    TextureData.getLevelHeight(textureData.getHeight(), level), 0,
+                    GL_RGBA, GL_UNSIGNED_BYTE, textureData.getLevel(level));
+        }
+        if (levelCount > 1) {
+            // Mip levels were built on the CPU
+            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAX_LEVEL, levelCount - 1);
+        } else {
+            // Generate Mip Map
+            glGenerateMipmap(GL_TEXTURE_2D);
+        }
 
-        stbi_image_free(buf);
+        if (free) {
+            textureData.free();
+        }
 
         return textureId;
     }
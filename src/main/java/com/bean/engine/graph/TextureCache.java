@@ -0,0 +1,145 @@
+package com.bean.engine.graph;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Logger;
+
+import com.bean.engine.util.FileHash;
+
+/**
+ * Cache of decoded textures, stored next to the source image as <code>&lt;image&gt;.btex</code>.
+ * <p>
+ * Layout (native byte order):
+ * <pre>
+ *   int   magic, format version, byte order marker
+ *   int   width, height, level count
+ *   long  source size, source CRC32C
+ *   ...   padding up to {@link #DATA_OFFSET}
+ *   byte  RGBA8 pixels of every mip level, full size first
+ * </pre>
+ * Loading maps the file and uploads each level as is, so there is neither image decoding nor runtime mip map
+ * generation. A cache whose version or source hash does not match is treated as missing and rebuilt.
+ */
+public class TextureCache {
+
+    public static final String EXTENSION = ".btex";
+
+    private static final Logger LOGGER = Logger.getLogger(TextureCache.class.getName());
+
+    /**
+     * Bump whenever the layout or the pixel processing for the same source changes.
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    private static final int MAGIC = 0x58455442; // "BTEX"
+
+    private static final int BYTE_ORDER_MARKER = 0x01020304;
+
+    private static final int DATA_OFFSET = 64;
+
+    private TextureCache() {
+    }
+
+    public static Path getCachePath(String sourceFile) {
+        return Path.of(sourceFile + EXTENSION);
+    }
+
+    /**
+     * Memory maps the cache of an image. Returns null if there is no cache or if it is stale.
+     */
+    public static TextureData read(String sourceFile) throws IOException {
+        Path cachePath = getCachePath(sourceFile);
+        Path sourcePath = Path.of(sourceFile);
+        if (!Files.exists(cachePath)) {
+            return null;
+        }
+        ByteBuffer buffer;
+        int width;
+        int height;
+        int levelCount;
+        try (FileChannel channel = FileChannel.open(cachePath, StandardOpenOption.READ)) {
+            if (channel.size() < DATA_OFFSET || channel.size() > Integer.MAX_VALUE) {
+                return null;
+            }
+            // The header is checked before mapping: a stale cache left mapped could not be replaced on Windows
+            ByteBuffer header = ByteBuffer.allocate(DATA_OFFSET).order(ByteOrder.nativeOrder());
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) {
+                    return null;
+                }
+            }
+            if (header.getInt(0) != MAGIC || header.getInt(4) != FORMAT_VERSION
+                    || header.getInt(8) != BYTE_ORDER_MARKER) {
+                return null;
+            }
+            width = header.getInt(12);
+            height = header.getInt(16);
+            levelCount = header.getInt(20);
+            long sourceSize = header.getLong(24);
+            long sourceHash = header.getLong(32);
+            if (width <= 0 || height <= 0 || levelCount <= 0
+                    || levelCount > TextureData.getFullLevelCount(width, height)) {
+                return null;
+            }
+
+            long expectedSize = DATA_OFFSET;
+            for (int level = 0; level < levelCount; level++) {
+                expectedSize += 4L * TextureData.getLevelWidth(width, level) * TextureData.getLevelHeight(height, level);
+            }
+            if (channel.size() != expectedSize) {
+                return null;
+            }
+            if (!Files.exists(sourcePath) || Files.size(sourcePath) != sourceSize
+                    || FileHash.crc32c(sourcePath) != sourceHash) {
+                LOGGER.info(() -> "Texture cache [" + cachePath + "] is stale, rebuilding");
+                return null;
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        ByteBuffer[] levels = new ByteBuffer[levelCount];
+        int offset = DATA_OFFSET;
+        for (int level = 0; level < levelCount; level++) {
+            int length = 4 * TextureData.getLevelWidth(width, level) * TextureData.getLevelHeight(height, level);
+            levels[level] = buffer.duplicate().position(offset).limit(offset + length).slice();
+            offset += length;
+        }
+        // The mapping is released by the garbage collector
+        return new TextureData(width, height, levels, null);
+    }
+
+    /**
+     * Writes the cache of an image through a temporary file, so a crash never leaves a truncated cache behind.
+     */
+    public static void write(String sourceFile, TextureData textureData) throws IOException {
+        Path sourcePath = Path.of(sourceFile);
+        Path cachePath = getCachePath(sourceFile);
+
+        ByteBuffer header = ByteBuffer.allocate(DATA_OFFSET).order(ByteOrder.nativeOrder());
+        header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(BYTE_ORDER_MARKER);
+        header.putInt(textureData.getWidth()).putInt(textureData.getHeight()).putInt(textureData.getLevelCount());
+        header.putLong(Files.size(sourcePath)).putLong(FileHash.crc32c(sourcePath));
+        header.rewind();
+
+        Path tmpPath = cachePath.resolveSibling(cachePath.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmpPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            for (int level = 0; level < textureData.getLevelCount(); level++) {
+                ByteBuffer pixels = textureData.getLevel(level).duplicate();
+                while (pixels.hasRemaining()) {
+                    channel.write(pixels);
+                }
+            }
+        }
+        Files.move(tmpPath, cachePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,135 @@
+package com.bean.engine.graph;
+
+import java.nio.ByteBuffer;
+
+import org.lwjgl.system.MemoryUtil;
+
+/**
+ * Decoded RGBA pixels of an image, ready to be uploaded by {@link Texture}. Holds either a single level, leaving
+ * mip map generation to the driver, or a full pre-built mip chain.
+ * Decoding does not require an OpenGL context so it can run on any thread.
+ */
+public class TextureData {
+
+    private final int width;
+
+    private final int height;
+
+    private final ByteBuffer[] levels;
+
+    private Runnable releaser;
+
+    /**
+     * @param levels   RGBA8 pixels of each mip level, starting with the full size image
+     * @param releaser frees the level buffers, may be null if they are garbage collected
+     */
+    public TextureData(int width, int height, ByteBuffer[] levels, Runnable releaser) {
+        this.width = width;
+        this.height = height;
+        this.levels = levels;
+        this.releaser = releaser;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public ByteBuffer getPixels() {
+        return levels[0];
+    }
+
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    public ByteBuffer getLevel(int level) {
+        return levels[level];
+    }
+
+    public static int getLevelWidth(int width, int level) {
+        return Math.max(1, width >> level);
+    }
+
+    public static int getLevelHeight(int height, int level) {
+        return Math.max(1, height >> level);
+    }
+
+    /**
+     * Number of levels of a full mip chain, down to 1x1.
+     */
+    public static int getFullLevelCount(int width, int height) {
+        return 32 - Integer.numberOfLeadingZeros(Math.max(width, height));
+    }
+
+    /**
+     * Builds the full mip chain of a single level image on the CPU with a 2x2 box filter. The returned data owns the
+     * source buffer too, freeing it also runs the releaser of this data.
+     */
+    public TextureData generateMipChain() {
+        int levelCount = getFullLevelCount(width, height);
+        ByteBuffer[] chain = new ByteBuffer[levelCount];
+        chain[0] = levels[0];
+        for (int level = 1; level < levelCount; level++) {
+            int srcWidth = getLevelWidth(width, level - 1);
+            int srcHeight = getLevelHeight(height, level - 1);
+            int dstWidth = getLevelWidth(width, level);
+            int dstHeight = getLevelHeight(height, level);
+            chain[level] = MemoryUtil.memAlloc(dstWidth * dstHeight * 4);
+            downsample(chain[level - 1], srcWidth, srcHeight, chain[level], dstWidth, dstHeight);
+        }
+
+        Runnable sourceReleaser = releaser;
+        releaser = null;
+        return new TextureData(width, height, chain, () -> {
+            for (int level = 1; level < chain.length; level++) {
+                MemoryUtil.memFree(chain[level]);
+            }
+            if (sourceReleaser != null) {
+                sourceReleaser.run();
+            }
+        });
+    }
+
+    private static void downsample(ByteBuffer src, int srcWidth, int srcHeight, ByteBuffer dst, int dstWidth, int dstHeight) {
+        for (int y = 0; y < dstHeight; y++) {
+            int y0 = Math.min(y * 2, srcHeight - 1);
+            int y1 = Math.min(y * 2 + 1, srcHeight - 1);
+            for (int x = 0; x < dstWidth; x++) {
+                int x0 = Math.min(x * 2, srcWidth - 1);
+                int x1 = Math.min(x * 2 + 1, srcWidth - 1);
+                int p00 = (y0 * srcWidth + x0) * 4;
+                int p01 = (y0 * srcWidth + x1) * 4;
+                int p10 = (y1 * srcWidth + x0) * 4;
+                int p11 = (y1 * srcWidth + x1) * 4;
+                int out = (y * dstWidth + x) * 4;
+                for (int c = 0; c < 4; c++) {
+                    int sum = (src.get(p00 + c) & 0xFF) + (src.get(p01 + c) & 0xFF)
+                            + (src.get(p10 + c) & 0xFF) + (src.get(p11 + c) & 0xFF);
+                    dst.put(out + c, (byte) ((sum + 2) >> 2));
+                }
+            }
+        }
+    }
+
+    public int getByteSize() {
+        int byteSize = 0;
+        for (ByteBuffer level : levels) {
+            byteSize += level.remaining();
+        }
+        return byteSize;
+    }
+
+    /**
+     * Releases the decoded pixels, the data can not be uploaded afterwards.
+     */
+    public void free() {
+        if (releaser != null) {
+            releaser.run();
+            releaser = null;
+        }
+    }
+}
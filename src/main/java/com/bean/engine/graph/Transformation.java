@@ -9,9 +9,11 @@ public class Transformation {
     private final Matrix4f projectionMatrix;
     private final Matrix4f viewMatrix;
     private final Matrix4f modelViewMatrix;
+    private final Matrix4f modelMatrix;
 
     public Transformation() {
         modelViewMatrix = new Matrix4f();
+        modelMatrix = new Matrix4f();
         viewMatrix = new Matrix4f();
         projectionMatrix = new Matrix4f();
     }
@@ -36,14 +38,30 @@ public class Transformation {
         return viewMatrix;
     }
 
+    /**
+     * Model matrix of the item, from the cache of its store. The returned matrix is reused by the next call.
+     */
+    public Matrix4f getModelMatrix(GameItem gameItem) {
+        return gameItem.getModelMatrix(modelMatrix);
+    }
+
+    /**
+     * Model matrix of a transform given as a position, rotations in degrees and a uniform scale.
+     */
+    public static Matrix4f modelMatrix(float x, float y, float z, float rotationX, float rotationY, float rotationZ,
+                                       float scale, Matrix4f dest) {
+        return dest.translation(x, y, z).
+                rotateX((float) Math.toRadians(-rotationX)).
+                rotateY((float) Math.toRadians(-rotationY)).
+                rotateZ((float) Math.toRadians(-rotationZ)).
+                scale(scale);
+    }
+
+    /**
+     * Product of the affine view matrix and the cached model matrix of the item. The returned matrix is reused by the
+     * next call.
+     */
     public Matrix4f getModelViewMatrix(GameItem gameItem, Matrix4f viewMatrix) {
-        Vector3f rotation = gameItem.getRotation();
-        modelViewMatrix.identity().translate(gameItem.getPosition()).
-                rotateX((float) Math.toRadians(-rotation.x)).
-                rotateY((float) Math.toRadians(-rotation.y)).
-                rotateZ((float) Math.toRadians(-rotation.z)).
-                scale(gameItem.getScale());
-        Matrix4f viewCurr = new Matrix4f(viewMatrix);
-        return viewCurr.mul(modelViewMatrix);
+        return viewMatrix.mulAffine(gameItem.getModelMatrix(modelMatrix), modelViewMatrix);
     }
 }
\ No newline at end of file
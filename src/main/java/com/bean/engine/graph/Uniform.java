@@ -0,0 +1,138 @@
+package com.bean.engine.graph;
+
+import java.nio.FloatBuffer;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+import org.lwjgl.system.MemoryStack;
+
+import static org.lwjgl.opengl.GL20.glUniform1f;
+import static org.lwjgl.opengl.GL20.glUniform1i;
+import static org.lwjgl.opengl.GL20.glUniform3f;
+import static org.lwjgl.opengl.GL20.glUniform4f;
+import static org.lwjgl.opengl.GL20.glUniformMatrix4fv;
+
+/**
+ * Handle of a uniform, created by {@link ShaderProgram} with its location resolved once. Each handle keeps a copy
+ * of the value last sent, so setting the same value again makes no GL call. Setting a value never allocates.
+ * As with any glUniform call, the program must be bound.
+ */
+public abstract class Uniform {
+
+    protected final ShaderProgram program;
+
+    protected final int location;
+
+    protected boolean set;
+
+    Uniform(ShaderProgram program, int location) {
+        this.program = program;
+        this.location = location;
+    }
+
+    public int getLocation() {
+        return location;
+    }
+
+    /**
+     * Returns true if the value has to be sent, and counts the call either way.
+     */
+    protected boolean changed(boolean same) {
+        if (set && same) {
+            program.countSkippedUniformCall();
+            return false;
+        }
+        set = true;
+        program.countUniformCall();
+        return true;
+    }
+
+    public static class Int extends Uniform {
+
+        private int value;
+
+        Int(ShaderProgram program, int location) {
+            super(program, location);
+        }
+
+        public void set(int value) {
+            if (changed(this.value == value)) {
+                this.value = value;
+                glUniform1i(location, value);
+            }
+        }
+    }
+
+    public static class Float extends Uniform {
+
+        private float value;
+
+        Float(ShaderProgram program, int location) {
+            super(program, location);
+        }
+
+        public void set(float value) {
+            if (changed(java.lang.Float.compare(this.value, value) == 0)) {
+                this.value = value;
+                glUniform1f(location, value);
+            }
+        }
+    }
+
+    public static class Vec3 extends Uniform {
+
+        private final Vector3f value = new Vector3f();
+
+        Vec3(ShaderProgram program, int location) {
+            super(program, location);
+        }
+
+        public void set(Vector3f value) {
+            set(value.x, value.y, value.z);
+        }
+
+        public void set(float x, float y, float z) {
+            if (changed(value.equals(x, y, z))) {
+                value.set(x, y, z);
+                glUniform3f(location, x, y, z);
+            }
+        }
+    }
+
+    public static class Vec4 extends Uniform {
+
+        private final Vector4f value = new Vector4f();
+
+        Vec4(ShaderProgram program, int location) {
+            super(program, location);
+        }
+
+        public void set(Vector4f value) {
+            if (changed(this.value.equals(value))) {
+                this.value.set(value);
+                glUniform4f(location, value.x, value.y, value.z, value.w);
+            }
+        }
+    }
+
+    public static class Mat4 extends Uniform {
+
+        private final Matrix4f value = new Matrix4f();
+
+        Mat4(ShaderProgram program, int location) {
+            super(program, location);
+        }
+
+        public void set(Matrix4f value) {
+            if (changed(this.value.equals(value))) {
+                this.value.set(value);
+                try (MemoryStack stack = MemoryStack.stackPush()) {
+                    FloatBuffer fb = stack.mallocFloat(16);
+                    value.get(fb);
+                    glUniformMatrix4fv(location, false, fb);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.bean.engine.graph;
+
+import java.nio.ByteBuffer;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector4fc;
+
+/**
+ * std140 layouts of the uniform blocks shared by the shaders, and writers filling them. Offsets here must match
+ * the block declarations in <code>vertex.shader</code> and <code>fragment.shader</code>.
+ * <pre>
+ *   Camera    (binding 0): mat4 projectionMatrix, mat4 viewMatrix
+ *   Lights    (binding 1): vec3 ambientLight, float specularPower, PointLight pointLight
+ *   Materials (binding 2): Material materials[MAX_MATERIALS]
+ * </pre>
+ * Writing does not need an OpenGL context.
+ */
+public class UniformBlocks {
+
+    public static final String CAMERA_BLOCK = "Camera";
+
+    public static final int CAMERA_BINDING = 0;
+
+    public static final int CAMERA_SIZE = 2 * 64;
+
+    public static final String LIGHTS_BLOCK = "Lights";
+
+    public static final int LIGHTS_BINDING = 1;
+
+    /**
+     * vec3 + float, then a 48 byte PointLight: vec3 colour, float intensity, vec3 position, float constant,
+     * float linear, float exponent, padded to 16 bytes.
+     */
+    public static final int LIGHTS_SIZE = 16 + 48;
+
+    public static final String MATERIALS_BLOCK = "Materials";
+
+    public static final int MATERIALS_BINDING = 2;
+
+    /**
+     * vec4 ambient, vec4 diffuse, vec4 specular, int hasTexture, float reflectance, padded to 16 bytes.
+     */
+    public static final int MATERIAL_SIZE = 64;
+
+    /**
+     * Materials per block, 16 KB being the smallest GL_MAX_UNIFORM_BLOCK_SIZE allowed. Matches the
+     * <code>MAX_MATERIALS</code> define of the fragment shader.
+     */
+    public static final int MAX_MATERIALS = 256;
+
+    private UniformBlocks() {
+    }
+
+    /**
+     * @param buffer a direct buffer, JOML writes matrices to it with unchecked memory access
+     */
+    public static void writeCamera(ByteBuffer buffer, Matrix4f projectionMatrix, Matrix4f viewMatrix) {
+        projectionMatrix.get(0, buffer);
+        viewMatrix.get(64, buffer);
+    }
+
+    /**
+     * @param viewLightPosition position of the light in view coordinates
+     */
+    public static void writeLights(ByteBuffer buffer, Vector3f ambientLight, float specularPower, PointLight pointLight,
+                                   Vector3f viewLightPosition) {
+        putVec3(buffer, 0, ambientLight);
+        buffer.putFloat(12, specularPower);
+        putVec3(buffer, 16, pointLight.getColor());
+        buffer.putFloat(28, pointLight.getIntensity());
+        putVec3(buffer, 32, viewLightPosition);
+        PointLight.Attenuation attenuation = pointLight.getAttenuation();
+        buffer.putFloat(44, attenuation.getConstant());
+        buffer.putFloat(48, attenuation.getLinear());
+        buffer.putFloat(52, attenuation.getExponent());
+    }
+
+    public static void writeMaterial(ByteBuffer buffer, int offset, Material material) {
+        putVec4(buffer, offset, material.getAmbientColour());
+        putVec4(buffer, offset + 16, material.getDiffuseColour());
+        putVec4(buffer, offset + 32, material.getSpecularColour());
+        buffer.putInt(offset + 48, material.isTextured() ? 1 : 0);
+        buffer.putFloat(offset + 52, material.getReflectance());
+    }
+
+    private static void putVec3(ByteBuffer buffer, int offset, Vector3f value) {
+        buffer.putFloat(offset, value.x).putFloat(offset + 4, value.y).putFloat(offset + 8, value.z);
+    }
+
+    private static void putVec4(ByteBuffer buffer, int offset, Vector4fc value) {
+        buffer.putFloat(offset, value.x()).putFloat(offset + 4, value.y()).putFloat(offset + 8, value.z())
+                .putFloat(offset + 12, value.w());
+    }
+}
@@ -0,0 +1,90 @@
+package com.bean.engine.graph;
+
+import java.nio.ByteBuffer;
+
+import org.lwjgl.system.MemoryUtil;
+
+import static org.lwjgl.opengl.GL15.GL_DYNAMIC_DRAW;
+import static org.lwjgl.opengl.GL15.glBindBuffer;
+import static org.lwjgl.opengl.GL15.glBufferData;
+import static org.lwjgl.opengl.GL15.glBufferSubData;
+import static org.lwjgl.opengl.GL15.glDeleteBuffers;
+import static org.lwjgl.opengl.GL15.glGenBuffers;
+import static org.lwjgl.opengl.GL31.GL_UNIFORM_BUFFER;
+import static org.lwjgl.opengl.GL30.glBindBufferBase;
+
+/**
+ * A uniform buffer object bound to a fixed binding point, with a CPU copy that is filled through {@link #getData()}
+ * and sent with {@link #upload()}. Uploads of unchanged data are skipped.
+ */
+public class UniformBuffer {
+
+    private final int uboId;
+
+    private final int binding;
+
+    private final ByteBuffer data;
+
+    private final ByteBuffer uploaded;
+
+    private int uploads;
+
+    public UniformBuffer(int binding, int size) {
+        this.binding = binding;
+        data = MemoryUtil.memCalloc(size);
+        uploaded = MemoryUtil.memCalloc(size);
+        uboId = glGenBuffers();
+        glBindBuffer(GL_UNIFORM_BUFFER, uboId);
+        // Start from zeros on both sides, so the CPU copy of the last upload always matches the GPU
+        glBufferData(GL_UNIFORM_BUFFER, uploaded, GL_DYNAMIC_DRAW);
+        glBindBuffer(GL_UNIFORM_BUFFER, 0);
+        glBindBufferBase(GL_UNIFORM_BUFFER, binding, uboId);
+    }
+
+    /**
+     * CPU copy of the whole block, written with absolute puts in native byte order.
+     */
+    public ByteBuffer getData() {
+        return data;
+    }
+
+    public int getBinding() {
+        return binding;
+    }
+
+    /**
+     * Sends the whole block if it changed since the last upload.
+     */
+    public void upload() {
+        upload(0, data.capacity());
+    }
+
+    /**
+     * Sends a range of the block if it changed since the last upload.
+     */
+    public void upload(int offset, int length) {
+        ByteBuffer range = data.slice(offset, length);
+        ByteBuffer uploadedRange = uploaded.slice(offset, length);
+        if (range.equals(uploadedRange)) {
+            return;
+        }
+        glBindBuffer(GL_UNIFORM_BUFFER, uboId);
+        glBufferSubData(GL_UNIFORM_BUFFER, offset, range);
+        glBindBuffer(GL_UNIFORM_BUFFER, 0);
+        uploadedRange.put(range);
+        uploads++;
+    }
+
+    /**
+     * Number of uploads that actually reached the GPU.
+     */
+    public int getUploads() {
+        return uploads;
+    }
+
+    public void cleanup() {
+        glDeleteBuffers(uboId);
+        MemoryUtil.memFree(data);
+        MemoryUtil.memFree(uploaded);
+    }
+}
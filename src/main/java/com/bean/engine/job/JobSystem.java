@@ -0,0 +1,126 @@
+package com.bean.engine.job;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs jobs on a work-stealing pool of worker threads, one per core by default.
+ * <p>
+ * {@link #parallelFor(int, int, RangeJob)} splits an index range in halves down to ranges of at most
+ * <code>grain</code> indices. Idle workers steal the larger halves left by busy ones, which balances uneven
+ * work without tuning. The ranges only depend on the count and the grain, so jobs that write nothing but the
+ * elements of their range produce the same result with any number of threads. Jobs may themselves call
+ * {@link #parallelFor(int, int, RangeJob)}; the calling worker then helps with the nested ranges instead of
+ * blocking. Dependent jobs are chained with a {@link TaskGraph}.
+ */
+public class JobSystem {
+
+    private final ForkJoinPool pool;
+
+    public JobSystem() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public JobSystem(int threads) {
+        pool = new ForkJoinPool(threads, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("JOB_WORKER_" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * Work on the indices from <code>from</code>, inclusive, to <code>to</code>, exclusive.
+     */
+    @FunctionalInterface
+    public interface RangeJob {
+
+        void run(int from, int to);
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Runs <code>job</code> over the indices from 0 to <code>count</code>, in ranges of at most <code>grain</code>
+     * indices, and returns once all ranges are done. Exceptions thrown by the job are rethrown.
+     */
+    public void parallelFor(int count, int grain, RangeJob job) {
+        if (count <= 0) {
+            return;
+        }
+        if (count <= grain) {
+            job.run(0, count);
+        } else {
+            invoke(new RangeAction(job, 0, count, Math.max(1, grain)));
+        }
+    }
+
+    /**
+     * Runs a task on the pool and waits for it, or runs it directly when called from a job.
+     */
+    void invoke(ForkJoinTask<?> task) {
+        if (isWorker()) {
+            task.invoke();
+        } else {
+            pool.invoke(task);
+        }
+    }
+
+    /**
+     * Whether the caller is one of the pool's workers.
+     */
+    boolean isWorker() {
+        return ForkJoinTask.getPool() == pool;
+    }
+
+    /**
+     * Waits for running jobs to finish and stops the workers.
+     */
+    public void shutdown() {
+        pool.shutdown();
+        try {
+            pool.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @SuppressWarnings("serial") // Tasks are never serialized
+    private static class RangeAction extends RecursiveAction {
+
+        private final RangeJob job;
+
+        private final int from;
+
+        private final int to;
+
+        private final int grain;
+
+        RangeAction(RangeJob job, int from, int to, int grain) {
+            this.job = job;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                job.run(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            // Fork the second half for thieves and keep working on the first
+            RangeAction second = new RangeAction(job, middle, to, grain);
+            second.fork();
+            new RangeAction(job, from, middle, grain).compute();
+            second.join();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.bean.engine.job;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tasks with dependencies, run on a {@link JobSystem} as soon as the tasks they depend on are done.
+ * <p>
+ * The graph is built once and can be run any number of times, such as once per tick. Tasks can only depend on
+ * tasks added before them, so graphs have no cycles. Each run counts the unfinished dependencies of every task and
+ * the worker finishing the last one forks the task, so independent tasks run in parallel and no thread waits on a
+ * dependency. When a task throws, the tasks that have not started yet are skipped and {@link #run(JobSystem)}
+ * rethrows the exception.
+ */
+public class TaskGraph {
+
+    private final List<Task> tasks = new ArrayList<>();
+
+    /**
+     * Adds a task running <code>work</code> once all of <code>dependencies</code> are done.
+     */
+    public Task add(String name, Runnable work, Task... dependencies) {
+        Task task = new Task(name, work, dependencies.length);
+        for (Task dependency : dependencies) {
+            if (dependency.graph != this) {
+                throw new IllegalArgumentException("Task '" + dependency.name + "' belongs to another graph");
+            }
+            dependency.dependents.add(task);
+        }
+        tasks.add(task);
+        return task;
+    }
+
+    public List<Task> getTasks() {
+        return List.copyOf(tasks);
+    }
+
+    /**
+     * Runs every task once and returns when all are done.
+     */
+    public void run(JobSystem jobSystem) {
+        if (tasks.isEmpty()) {
+            return;
+        }
+        Run run = new Run();
+        for (Task task : tasks) {
+            task.pending.set(task.dependencyCount);
+        }
+        jobSystem.invoke(run);
+        Throwable error = run.error.get();
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        }
+        if (error instanceof Error) {
+            throw (Error) error;
+        }
+    }
+
+    /**
+     * Root of a run, completing once every task has completed.
+     */
+    @SuppressWarnings("serial") // Tasks are never serialized
+    private class Run extends CountedCompleter<Void> {
+
+        private final AtomicReference<Throwable> error = new AtomicReference<>();
+
+        @Override
+        public void compute() {
+            setPendingCount(tasks.size());
+            for (Task task : tasks) {
+                if (task.dependencyCount == 0) {
+                    new TaskAction(this, task).fork();
+                }
+            }
+            tryComplete();
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static class TaskAction extends CountedCompleter<Void> {
+
+        private final Run run;
+
+        private final Task task;
+
+        TaskAction(Run run, Task task) {
+            super(run);
+            this.run = run;
+            this.task = task;
+        }
+
+        @Override
+        public void compute() {
+            if (run.error.get() == null) {
+                try {
+                    task.work.run();
+                } catch (Throwable excp) {
+                    run.error.compareAndSet(null, excp);
+                }
+            }
+            for (Task dependent : task.dependents) {
+                if (dependent.pending.decrementAndGet() == 0) {
+                    new TaskAction(run, dependent).fork();
+                }
+            }
+            // Completes the run when this was its last task
+            tryComplete();
+        }
+    }
+
+    /**
+     * A node of the graph.
+     */
+    public class Task {
+
+        private final TaskGraph graph = TaskGraph.this;
+
+        private final String name;
+
+        private final Runnable work;
+
+        private final int dependencyCount;
+
+        private final List<Task> dependents = new ArrayList<>();
+
+        private final AtomicInteger pending = new AtomicInteger();
+
+        private Task(String name, Runnable work, int dependencyCount) {
+            this.name = name;
+            this.work = work;
+            this.dependencyCount = dependencyCount;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+}
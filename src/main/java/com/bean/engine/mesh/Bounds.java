@@ -0,0 +1,71 @@
+package com.bean.engine.mesh;
+
+import java.nio.FloatBuffer;
+
+import org.joml.Vector3f;
+
+/**
+ * Model space bounding volumes of a mesh: an axis aligned box and the sphere around its centre.
+ */
+public class Bounds {
+
+    private final Vector3f min;
+
+    private final Vector3f max;
+
+    private final Vector3f center;
+
+    private final float radius;
+
+    public Bounds(Vector3f min, Vector3f max, float radius) {
+        this.min = min;
+        this.max = max;
+        this.center = new Vector3f(min).add(max).mul(0.5f);
+        this.radius = radius;
+    }
+
+    /**
+     * Computes the bounds of packed (x, y, z) positions, from the buffer's position to its limit.
+     */
+    public static Bounds of(FloatBuffer positions) {
+        Vector3f min = new Vector3f(Float.POSITIVE_INFINITY);
+        Vector3f max = new Vector3f(Float.NEGATIVE_INFINITY);
+        for (int i = positions.position(); i + 2 < positions.limit(); i += 3) {
+            float x = positions.get(i);
+            float y = positions.get(i + 1);
+            float z = positions.get(i + 2);
+            min.set(Math.min(min.x, x), Math.min(min.y, y), Math.min(min.z, z));
+            max.set(Math.max(max.x, x), Math.max(max.y, y), Math.max(max.z, z));
+        }
+        if (min.x > max.x) {
+            min.zero();
+            max.zero();
+        }
+        Vector3f center = new Vector3f(min).add(max).mul(0.5f);
+        float maxDistanceSquared = 0;
+        for (int i = positions.position(); i + 2 < positions.limit(); i += 3) {
+            maxDistanceSquared = Math.max(maxDistanceSquared,
+                    center.distanceSquared(positions.get(i), positions.get(i + 1), positions.get(i + 2)));
+        }
+        return new Bounds(min, max, (float) Math.sqrt(maxDistanceSquared));
+    }
+
+    public Vector3f getMin() {
+        return min;
+    }
+
+    public Vector3f getMax() {
+        return max;
+    }
+
+    public Vector3f getCenter() {
+        return center;
+    }
+
+    /**
+     * Radius of the sphere around {@link #getCenter()} containing every vertex.
+     */
+    public float getRadius() {
+        return radius;
+    }
+}
@@ -0,0 +1,404 @@
+package com.bean.engine.mesh;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+import com.bean.engine.graph.Transformation;
+import org.joml.Matrix4f;
+
+/**
+ * Transforms, tints and meshes of many items in contiguous primitive arrays, so passes over all items read memory
+ * linearly instead of following a pointer per item.
+ * <p>
+ * Live entities are packed at the start of the arrays, in dense order: removing one moves the last entity into its
+ * place. Entities are addressed by handles that stay valid across such moves: the low 32 bits select a slot mapping to
+ * the dense index, the high 32 bits hold the generation of the slot, which changes when its entity is removed so old
+ * handles are rejected rather than reaching the slot's next entity. Adding and removing are O(1). Each entity comes
+ * with a {@link GameItem} view, through which the rest of the engine reads and changes it. Meshes are stored as ids
+ * into a table of the meshes in use, materials being reached through their mesh. Ids are counted per entity and freed
+ * for the next new mesh once no entity uses them, so the table does not keep meshes that left the store.
+ * <p>
+ * Model matrices are cached per entity and only recomputed when the entity moved since, which the setters of the
+ * views record by bumping its version. Passes over mostly static entities thus cost a copy per entity rather than
+ * the trigonometry of its rotations.
+ * <p>
+ * A store is not thread safe: it must be used by one thread at a time, like the lists it replaces.
+ */
+public class EntityStore {
+
+    private static final long SLOT_MASK = 0xFFFFFFFFL;
+
+    private int size;
+
+    private float[] positions;
+
+    private float[] rotations;
+
+    private float[] scales;
+
+    private float[] tints;
+
+    private int[] meshIds;
+
+    private int[] versions;
+
+    private int[] lodLevels;
+
+    private float[] modelMatrices;
+
+    /**
+     * Version of each entity its cached model matrix was computed at.
+     */
+    private int[] modelVersions;
+
+    private long modelMatrixUpdates;
+
+    private GameItem[] items;
+
+    /**
+     * Slot of each dense entity.
+     */
+    private int[] denseSlots;
+
+    /**
+     * Dense index of the entity in each slot, -1 for free slots.
+     */
+    private int[] slotIndices = new int[0];
+
+    private int[] slotGenerations = new int[0];
+
+    private int[] freeSlots = new int[0];
+
+    private int freeSlotCount;
+
+    private final List<Mesh> meshes = new ArrayList<>();
+
+    private final Map<Mesh, Integer> meshIdsByMesh = new IdentityHashMap<>();
+
+    /**
+     * Entities using each mesh id, 0 for free ids.
+     */
+    private int[] meshRefCounts = new int[4];
+
+    private int[] freeMeshIds = new int[4];
+
+    private int freeMeshIdCount;
+
+    private final List<GameItem> itemList = new ItemList();
+
+    public EntityStore() {
+        this(64);
+    }
+
+    public EntityStore(int initialCapacity) {
+        allocate(Math.max(initialCapacity, 1));
+    }
+
+    private void allocate(int capacity) {
+        positions = positions == null ? new float[capacity * 3] : Arrays.copyOf(positions, capacity * 3);
+        rotations = rotations == null ? new float[capacity * 3] : Arrays.copyOf(rotations, capacity * 3);
+        scales = scales == null ? new float[capacity] : Arrays.copyOf(scales, capacity);
+        tints = tints == null ? new float[capacity * 4] : Arrays.copyOf(tints, capacity * 4);
+        meshIds = meshIds == null ? new int[capacity] : Arrays.copyOf(meshIds, capacity);
+        versions = versions == null ? new int[capacity] : Arrays.copyOf(versions, capacity);
+        lodLevels = lodLevels == null ? new int[capacity] : Arrays.copyOf(lodLevels, capacity);
+        items = items == null ? new GameItem[capacity] : Arrays.copyOf(items, capacity);
+        denseSlots = denseSlots == null ? new int[capacity] : Arrays.copyOf(denseSlots, capacity);
+        modelMatrices = modelMatrices == null ? new float[capacity * 16] : Arrays.copyOf(modelMatrices, capacity * 16);
+        modelVersions = modelVersions == null ? new int[capacity] : Arrays.copyOf(modelVersions, capacity);
+    }
+
+    /**
+     * Adds an entity at the origin with scale 1, no rotation and a white tint, and returns its view.
+     */
+    public GameItem create(Mesh mesh) {
+        return new GameItem(this, mesh);
+    }
+
+    /**
+     * Called by the {@link GameItem} constructor. Returns the handle of the new entity.
+     */
+    long add(Mesh mesh, GameItem item) {
+        if (size == scales.length) {
+            allocate(size * 2);
+        }
+        int slot;
+        if (freeSlotCount > 0) {
+            slot = freeSlots[--freeSlotCount];
+        } else {
+            slot = slotIndices.length;
+            slotIndices = Arrays.copyOf(slotIndices, Math.max(slot * 2, 4));
+            slotGenerations = Arrays.copyOf(slotGenerations, slotIndices.length);
+            Arrays.fill(slotIndices, slot, slotIndices.length, -1);
+            freeSlots = Arrays.copyOf(freeSlots, slotIndices.length);
+            for (int free = slotIndices.length - 1; free > slot; free--) {
+                freeSlots[freeSlotCount++] = free;
+            }
+        }
+        int index = size++;
+        slotIndices[slot] = index;
+        denseSlots[index] = slot;
+        positions[index * 3] = positions[index * 3 + 1] = positions[index * 3 + 2] = 0;
+        rotations[index * 3] = rotations[index * 3 + 1] = rotations[index * 3 + 2] = 0;
+        scales[index] = 1;
+        tints[index * 4] = tints[index * 4 + 1] = tints[index * 4 + 2] = tints[index * 4 + 3] = 1;
+        meshIds[index] = acquireMeshId(mesh);
+        versions[index] = 0;
+        modelVersions[index] = -1;
+        lodLevels[index] = 0;
+        items[index] = item;
+        return (long) slotGenerations[slot] << 32 | slot;
+    }
+
+    private int acquireMeshId(Mesh mesh) {
+        Integer id = meshIdsByMesh.get(mesh);
+        if (id == null) {
+            if (freeMeshIdCount > 0) {
+                id = freeMeshIds[--freeMeshIdCount];
+                meshes.set(id, mesh);
+            } else {
+                id = meshes.size();
+                meshes.add(mesh);
+                if (id == meshRefCounts.length) {
+                    meshRefCounts = Arrays.copyOf(meshRefCounts, id * 2);
+                    freeMeshIds = Arrays.copyOf(freeMeshIds, id * 2);
+                }
+            }
+            meshIdsByMesh.put(mesh, id);
+        }
+        meshRefCounts[id]++;
+        return id;
+    }
+
+    private void releaseMeshId(int id) {
+        if (--meshRefCounts[id] == 0) {
+            meshIdsByMesh.remove(meshes.get(id));
+            meshes.set(id, null);
+            freeMeshIds[freeMeshIdCount++] = id;
+        }
+    }
+
+    /**
+     * Removes the entity, invalidating its handle and view, and moves the last entity into its dense index. Returns
+     * false if the handle was already invalid.
+     */
+    public boolean remove(long handle) {
+        int index = indexOf(handle);
+        if (index < 0) {
+            return false;
+        }
+        int slot = (int) (handle & SLOT_MASK);
+        releaseMeshId(meshIds[index]);
+        int last = --size;
+        if (index != last) {
+            System.arraycopy(positions, last * 3, positions, index * 3, 3);
+            System.arraycopy(rotations, last * 3, rotations, index * 3, 3);
+            System.arraycopy(tints, last * 4, tints, index * 4, 4);
+            scales[index] = scales[last];
+            meshIds[index] = meshIds[last];
+            versions[index] = versions[last];
+            System.arraycopy(modelMatrices, last * 16, modelMatrices, index * 16, 16);
+            modelVersions[index] = modelVersions[last];
+            lodLevels[index] = lodLevels[last];
+            items[index] = items[last];
+            denseSlots[index] = denseSlots[last];
+            slotIndices[denseSlots[index]] = index;
+        }
+        items[last] = null;
+        slotIndices[slot] = -1;
+        slotGenerations[slot]++;
+        freeSlots[freeSlotCount++] = slot;
+        return true;
+    }
+
+    public boolean remove(GameItem item) {
+        return item.getStore() == this && remove(item.getHandle());
+    }
+
+    public boolean isAlive(long handle) {
+        return indexOf(handle) >= 0;
+    }
+
+    /**
+     * Dense index of the entity, -1 if the handle is invalid.
+     */
+    public int indexOf(long handle) {
+        int slot = (int) (handle & SLOT_MASK);
+        if (slot < 0 || slot >= slotIndices.length || slotGenerations[slot] != (int) (handle >>> 32)) {
+            return -1;
+        }
+        return slotIndices[slot];
+    }
+
+    /**
+     * Dense index of a live entity, for views.
+     */
+    int checkedIndexOf(long handle) {
+        int index = indexOf(handle);
+        if (index < 0) {
+            throw new IllegalStateException("Entity " + Long.toHexString(handle) + " was removed");
+        }
+        return index;
+    }
+
+    /**
+     * View of a live entity, or null if the handle is invalid.
+     */
+    public GameItem get(long handle) {
+        int index = indexOf(handle);
+        return index < 0 ? null : items[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Views of the live entities in dense order, reflecting later additions and removals.
+     */
+    public List<GameItem> getItems() {
+        return itemList;
+    }
+
+    public GameItem getItem(int index) {
+        return items[index];
+    }
+
+    public Mesh getMesh(int index) {
+        return meshes.get(meshIds[index]);
+    }
+
+    /**
+     * Meshes in use, indexed by the ids in {@link #getMeshIds()}. Freed ids hold null until a new mesh takes them.
+     */
+    public List<Mesh> getMeshes() {
+        return meshes;
+    }
+
+    /**
+     * Number of distinct meshes used by the entities.
+     */
+    public int getMeshCount() {
+        return meshIdsByMesh.size();
+    }
+
+    /**
+     * Writes the model matrix of the entity at the dense index into <code>dest</code>, recomputing the cached one
+     * first if the entity moved.
+     */
+    public Matrix4f getModelMatrix(int index, Matrix4f dest) {
+        if (modelVersions[index] != versions[index]) {
+            updateModelMatrix(index, dest);
+            return dest;
+        }
+        return dest.set(modelMatrices, index * 16);
+    }
+
+    private void updateModelMatrix(int index, Matrix4f matrix) {
+        Transformation.modelMatrix(positions[index * 3], positions[index * 3 + 1], positions[index * 3 + 2],
+                rotations[index * 3], rotations[index * 3 + 1], rotations[index * 3 + 2], scales[index], matrix)
+                .get(modelMatrices, index * 16);
+        modelVersions[index] = versions[index];
+        modelMatrixUpdates++;
+    }
+
+    /**
+     * Recomputes the cached model matrices of the entities that moved and returns how many there were.
+     */
+    public int updateModelMatrices() {
+        Matrix4f matrix = new Matrix4f();
+        int updated = 0;
+        for (int i = 0; i < size; i++) {
+            if (modelVersions[i] != versions[i]) {
+                updateModelMatrix(i, matrix);
+                updated++;
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * Writes the model matrices of all entities, 16 floats each in column major order and dense order, into
+     * <code>dest</code>, which must hold {@link #size()} matrices.
+     */
+    public void computeModelMatrices(float[] dest) {
+        updateModelMatrices();
+        System.arraycopy(modelMatrices, 0, dest, 0, size * 16);
+    }
+
+    /**
+     * Marks the transform of the entity at the dense index as changed, after writing the arrays directly.
+     */
+    public void touch(int index) {
+        versions[index]++;
+    }
+
+    /**
+     * Model matrices computed so far, to check how many entities moved.
+     */
+    public long getModelMatrixUpdates() {
+        return modelMatrixUpdates;
+    }
+
+    // The arrays below are indexed by dense index and hold at least size() entities, for passes streaming over all
+    // of them. They are replaced when the store grows, so they must be fetched again after adding entities. Transforms
+    // written directly must be followed by touch(int), or spatial indices and cached model matrices miss the change.
+
+    /**
+     * (x, y, z) positions.
+     */
+    public float[] getPositions() {
+        return positions;
+    }
+
+    /**
+     * (x, y, z) rotations in degrees.
+     */
+    public float[] getRotations() {
+        return rotations;
+    }
+
+    public float[] getScales() {
+        return scales;
+    }
+
+    /**
+     * (r, g, b, a) tints.
+     */
+    public float[] getTints() {
+        return tints;
+    }
+
+    public int[] getMeshIds() {
+        return meshIds;
+    }
+
+    int[] getVersions() {
+        return versions;
+    }
+
+    int[] getLodLevels() {
+        return lodLevels;
+    }
+
+    private class ItemList extends AbstractList<GameItem> implements RandomAccess {
+
+        @Override
+        public GameItem get(int index) {
+            if (index >= size) {
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+            }
+            return items[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
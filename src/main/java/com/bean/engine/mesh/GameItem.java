@@ -1,60 +1,225 @@
 package com.bean.engine.mesh;
 
-import com.bean.engine.mesh.Mesh;
+import com.bean.engine.graph.Transformation;
+import org.joml.Matrix4f;
 import org.joml.Vector3f;
+import org.joml.Vector3fc;
+import org.joml.Vector4f;
+import org.joml.Vector4fc;
 
+/**
+ * Transform, tint and mesh of an item drawn by the renderer.
+ * <p>
+ * Items created with {@link #GameItem(Mesh)} are standalone and hold their state in their own fields. Items created
+ * in a store with {@link EntityStore#create(Mesh)} are views of an entity, whose state is laid out next to the other
+ * entities for passes over the whole store. Either way the getters return read-only vectors owned by the item: an
+ * entity's are refreshed from the store on each call, so a vector obtained earlier changes with the next call on the
+ * same item. Changes go through the setters.
+ */
 public class GameItem {
 
+    /**
+     * Handle of standalone items, never valid in a store.
+     */
+    public static final long NO_HANDLE = -1;
+
+    /**
+     * Store of the entity, null for standalone items.
+     */
+    private final EntityStore store;
+
+    private final long handle;
+
     private final Mesh mesh;
 
-    private final Vector3f position;
+    // State of a standalone item, copies of the entity's otherwise
+
+    private final Vector3f position = new Vector3f();
+
+    private final Vector3f rotation = new Vector3f();
+
+    private final Vector4f tint = new Vector4f(1, 1, 1, 1);
+
+    private float scale = 1;
+
+    private int version;
 
-    private float scale;
+    private int lodLevel;
 
-    private final Vector3f rotation;
+    /**
+     * Cached model matrix of a standalone item, null for entities whose store caches it.
+     */
+    private final Matrix4f modelMatrix;
+
+    private int modelVersion = -1;
 
     public GameItem(Mesh mesh) {
+        store = null;
+        this.mesh = mesh;
+        handle = NO_HANDLE;
+        modelMatrix = new Matrix4f();
+    }
+
+    public GameItem(EntityStore store, Mesh mesh) {
+        this.store = store;
         this.mesh = mesh;
-        position = new Vector3f(0, 0, 0);
-        scale = 1;
-        rotation = new Vector3f(0, 0, 0);
+        handle = store.add(mesh, this);
+        modelMatrix = null;
     }
 
-    public Vector3f getPosition() {
+    private int index() {
+        return store.checkedIndexOf(handle);
+    }
+
+    public Vector3fc getPosition() {
+        if (store != null) {
+            float[] positions = store.getPositions();
+            int offset = index() * 3;
+            position.set(positions[offset], positions[offset + 1], positions[offset + 2]);
+        }
         return position;
     }
 
     public void setPosition(float x, float y, float z) {
-        this.position.x = x;
-        this.position.y = y;
-        this.position.z = z;
+        if (store == null) {
+            position.set(x, y, z);
+            version++;
+            return;
+        }
+        int index = index();
+        float[] positions = store.getPositions();
+        positions[index * 3] = x;
+        positions[index * 3 + 1] = y;
+        positions[index * 3 + 2] = z;
+        store.getVersions()[index]++;
     }
 
     public float getScale() {
-        return scale;
+        return store == null ? scale : store.getScales()[index()];
     }
 
     public void setScale(float scale) {
-        this.scale = scale;
+        if (store == null) {
+            this.scale = scale;
+            version++;
+            return;
+        }
+        int index = index();
+        store.getScales()[index] = scale;
+        store.getVersions()[index]++;
     }
 
-    public Vector3f getRotation() {
+    public Vector3fc getRotation() {
+        if (store != null) {
+            float[] rotations = store.getRotations();
+            int offset = index() * 3;
+            rotation.set(rotations[offset], rotations[offset + 1], rotations[offset + 2]);
+        }
         return rotation;
     }
 
     public void setRotation(float x, float y, float z) {
-        this.rotation.x = x;
-        this.rotation.y = y;
-        this.rotation.z = z;
+        if (store == null) {
+            rotation.set(x, y, z);
+            version++;
+            return;
+        }
+        int index = index();
+        float[] rotations = store.getRotations();
+        rotations[index * 3] = x;
+        rotations[index * 3 + 1] = y;
+        rotations[index * 3 + 2] = z;
+        store.getVersions()[index]++;
+    }
+
+    public void setRotation(Vector3fc rotation) {
+        setRotation(rotation.x(), rotation.y(), rotation.z());
     }
 
-    public void setRotation(Vector3f rotation) {
-        this.rotation.x = rotation.x;
-        this.rotation.y = rotation.y;
-        this.rotation.z = rotation.z;
+    /**
+     * Colour multiplied with the shaded colour of the item, white by default.
+     */
+    public Vector4fc getTint() {
+        if (store != null) {
+            float[] tints = store.getTints();
+            int offset = index() * 4;
+            tint.set(tints[offset], tints[offset + 1], tints[offset + 2], tints[offset + 3]);
+        }
+        return tint;
+    }
+
+    public void setTint(float r, float g, float b, float a) {
+        if (store == null) {
+            tint.set(r, g, b, a);
+            return;
+        }
+        float[] tints = store.getTints();
+        int offset = index() * 4;
+        tints[offset] = r;
+        tints[offset + 1] = g;
+        tints[offset + 2] = b;
+        tints[offset + 3] = a;
+    }
+
+    /**
+     * Incremented by the position, scale and rotation setters, so spatial indices know when to refresh the item.
+     */
+    public int getVersion() {
+        return store == null ? version : store.getVersions()[index()];
+    }
+
+    /**
+     * Writes the model matrix into <code>dest</code>, only recomputing it if the item moved since it was last computed.
+     */
+    public Matrix4f getModelMatrix(Matrix4f dest) {
+        if (store != null) {
+            return store.getModelMatrix(index(), dest);
+        }
+        if (modelVersion != version) {
+            Transformation.modelMatrix(position.x, position.y, position.z, rotation.x, rotation.y, rotation.z, scale,
+                    modelMatrix);
+            modelVersion = version;
+        }
+        return dest.set(modelMatrix);
     }
 
     public Mesh getMesh() {
         return mesh;
     }
-}
\ No newline at end of file
+
+    /**
+     * LOD level drawn in the last frame, kept so the renderer can apply hysteresis when switching levels.
+     */
+    public int getLodLevel() {
+        return store == null ? lodLevel : store.getLodLevels()[index()];
+    }
+
+    public void setLodLevel(int lodLevel) {
+        if (store == null) {
+            this.lodLevel = lodLevel;
+        } else {
+            store.getLodLevels()[index()] = lodLevel;
+        }
+    }
+
+    /**
+     * Store of the entity, null for standalone items.
+     */
+    public EntityStore getStore() {
+        return store;
+    }
+
+    /**
+     * Generational handle of the entity in its store, {@link #NO_HANDLE} for standalone items.
+     */
+    public long getHandle() {
+        return handle;
+    }
+
+    /**
+     * Whether the entity is still in its store. Standalone items are always alive.
+     */
+    public boolean isAlive() {
+        return store == null || store.isAlive(handle);
+    }
+}
@@ -0,0 +1,131 @@
+package com.bean.engine.mesh;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.bean.engine.graph.Transformation;
+import com.bean.engine.util.DynamicAabbTree;
+import org.joml.FrustumIntersection;
+import org.joml.Vector3f;
+
+/**
+ * Spatial index over the world space bounding boxes of game items, backed by a {@link DynamicAabbTree}.
+ * <p>
+ * Items moved through the {@link GameItem} setters are refreshed by {@link #update(GameItem)}, which returns
+ * early when the item has not changed since it was last indexed. Transforms written directly into the arrays of an
+ * {@link EntityStore} are only seen once the entity is touched.
+ */
+public class GameItemIndex {
+
+    /**
+     * World units by which item boxes are grown, so that small moves do not restructure the tree.
+     */
+    public static final float DEFAULT_MARGIN = 0.1f;
+
+    private final DynamicAabbTree<GameItem> tree;
+
+    private final Map<GameItem, Proxy> proxies = new HashMap<>();
+
+    private final Transformation transformation = new Transformation();
+
+    private final Vector3f min = new Vector3f();
+
+    private final Vector3f max = new Vector3f();
+
+    public GameItemIndex() {
+        this(DEFAULT_MARGIN);
+    }
+
+    public GameItemIndex(float margin) {
+        tree = new DynamicAabbTree<>(margin);
+    }
+
+    public void add(GameItem gameItem) {
+        if (proxies.containsKey(gameItem)) {
+            return;
+        }
+        computeBox(gameItem);
+        int id = tree.add(gameItem, min.x, min.y, min.z, max.x, max.y, max.z);
+        proxies.put(gameItem, new Proxy(id, gameItem.getVersion()));
+    }
+
+    public void remove(GameItem gameItem) {
+        Proxy proxy = proxies.remove(gameItem);
+        if (proxy != null) {
+            tree.remove(proxy.id);
+        }
+    }
+
+    /**
+     * Refreshes the box of an item after it moved. Returns whether the tree had to reinsert it.
+     */
+    public boolean update(GameItem gameItem) {
+        Proxy proxy = proxies.get(gameItem);
+        if (proxy == null || proxy.version == gameItem.getVersion()) {
+            return false;
+        }
+        proxy.version = gameItem.getVersion();
+        computeBox(gameItem);
+        return tree.move(proxy.id, min.x, min.y, min.z, max.x, max.y, max.z);
+    }
+
+    public boolean contains(GameItem gameItem) {
+        return proxies.containsKey(gameItem);
+    }
+
+    /**
+     * Adds every indexed item to <code>out</code>, in no particular order.
+     */
+    public void getItems(List<GameItem> out) {
+        out.addAll(proxies.keySet());
+    }
+
+    public int size() {
+        return tree.size();
+    }
+
+    public int getHeight() {
+        return tree.getHeight();
+    }
+
+    public int getReinserts() {
+        return tree.getReinserts();
+    }
+
+    public void queryFrustum(FrustumIntersection frustum, List<GameItem> out) {
+        tree.queryFrustum(frustum, out);
+    }
+
+    public void queryAabb(Vector3f min, Vector3f max, List<GameItem> out) {
+        tree.queryAabb(min.x, min.y, min.z, max.x, max.y, max.z, out);
+    }
+
+    public void querySphere(Vector3f center, float radius, List<GameItem> out) {
+        tree.querySphere(center.x, center.y, center.z, radius, out);
+    }
+
+    /**
+     * Adds the <code>k</code> items nearest to <code>point</code> to <code>out</code>, nearest first.
+     */
+    public void nearest(Vector3f point, int k, List<GameItem> out) {
+        tree.nearest(point.x, point.y, point.z, k, out);
+    }
+
+    private void computeBox(GameItem gameItem) {
+        Bounds bounds = gameItem.getMesh().getBounds();
+        transformation.getModelMatrix(gameItem).transformAab(bounds.getMin(), bounds.getMax(), min, max);
+    }
+
+    private static class Proxy {
+
+        private final int id;
+
+        private int version;
+
+        private Proxy(int id, int version) {
+            this.id = id;
+            this.version = version;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.bean.engine.mesh;
+
+/**
+ * Picks the LOD level of a mesh from its projected size on screen.
+ * <p>
+ * Level <code>i</code> is used once the screen size drops below <code>thresholds[i - 1]</code>. Switching only
+ * happens when the size is past the threshold by the hysteresis margin, so an object sitting right at a
+ * threshold does not pop between two levels every frame.
+ */
+public class LodSelector {
+
+    /**
+     * Fraction of the viewport height covered by the bounding sphere below which each LOD level kicks in.
+     */
+    public static final float[] DEFAULT_THRESHOLDS = {0.5f, 0.25f, 0.125f, 0.0625f};
+
+    public static final float DEFAULT_HYSTERESIS = 0.1f;
+
+    private final float[] thresholds;
+
+    private final float hysteresis;
+
+    public LodSelector() {
+        this(DEFAULT_THRESHOLDS, DEFAULT_HYSTERESIS);
+    }
+
+    /**
+     * @param thresholds decreasing screen sizes at which levels 1, 2, ... are selected
+     * @param hysteresis relative margin around each threshold
+     */
+    public LodSelector(float[] thresholds, float hysteresis) {
+        this.thresholds = thresholds.clone();
+        this.hysteresis = hysteresis;
+    }
+
+    /**
+     * Fraction of the viewport height covered by a bounding sphere, 1 or more when the camera is inside it.
+     *
+     * @param fov vertical field of view in radians
+     */
+    public static float getScreenSize(float radius, float distance, float fov) {
+        if (distance <= radius) {
+            return Float.POSITIVE_INFINITY;
+        }
+        return radius / (distance * (float) Math.tan(fov * 0.5f));
+    }
+
+    /**
+     * Returns the level to draw this frame, given the level drawn in the previous one.
+     */
+    public int selectLevel(float screenSize, int currentLevel, int levelCount) {
+        int maxLevel = Math.min(levelCount - 1, thresholds.length);
+        int level = Math.max(0, Math.min(currentLevel, maxLevel));
+        while (level < maxLevel && screenSize < thresholds[level] * (1 - hysteresis)) {
+            level++;
+        }
+        while (level > 0 && screenSize > thresholds[level - 1] * (1 + hysteresis)) {
+            level--;
+        }
+        return level;
+    }
+}
@@ -1,10 +1,13 @@
 package com.bean.engine.mesh;
 
+import com.bean.engine.graph.GeometryPool;
+import com.bean.engine.graph.InstanceBuffer;
 import com.bean.engine.graph.Material;
 import com.bean.engine.graph.Texture;
 import org.joml.Vector3f;
 import org.lwjgl.system.MemoryUtil;
 
+import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.util.ArrayList;
@@ -13,6 +16,9 @@ import java.util.Vector;
 
 import static org.lwjgl.opengl.GL20.glDisableVertexAttribArray;
 import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL31.glDrawElementsInstanced;
+import static org.lwjgl.opengl.GL32.glDrawElementsBaseVertex;
+import static org.lwjgl.opengl.GL32.glDrawElementsInstancedBaseVertex;
 
 public class Mesh {
 
@@ -20,98 +26,223 @@ public class Mesh {
 
     private final List<Integer> vboIdList = new ArrayList<>();
 
+    /**
+     * Format used by the constructors that do not take one, half the size of plain float vertices.
+     */
+    public static final VertexFormat DEFAULT_VERTEX_FORMAT = VertexFormat.QUANTIZED;
+
     private final int vertexCount;
 
+    private final VertexFormat vertexFormat;
+
+    private final int indexType;
+
+    private final float[] dequantization;
+
+    private final int vertexBytes;
+
+    private final int indexBytes;
+
+    private final Bounds bounds;
+
+    /**
+     * Ranges in the shared buffers of a {@link GeometryPool}, null when the mesh owns its buffers.
+     */
+    private final GeometryPool.Allocation poolAllocation;
+
     private Material material;
 
+    private Mesh[] lods = new Mesh[0];
+
+    private boolean occluder;
+
+    public Mesh(MeshData meshData) {
+        this(meshData, DEFAULT_VERTEX_FORMAT);
+    }
+
+    public Mesh(MeshData meshData, VertexFormat vertexFormat) {
+        this(FloatBuffer.wrap(meshData.getPositions()), FloatBuffer.wrap(meshData.getTextCoords()),
+                FloatBuffer.wrap(meshData.getNormals()), IntBuffer.wrap(meshData.getIndices()), vertexFormat);
+    }
+
     public Mesh(float[] positions, float[] textCoords, float[] normals, int[] indices) {
-        FloatBuffer posBuffer = null;
-        FloatBuffer textCoordsBuffer = null;
-        FloatBuffer vecNormalsBuffer = null;
-        IntBuffer indicesBuffer = null;
+        this(FloatBuffer.wrap(positions), FloatBuffer.wrap(textCoords), FloatBuffer.wrap(normals),
+                IntBuffer.wrap(indices), DEFAULT_VERTEX_FORMAT);
+    }
+
+    public Mesh(FloatBuffer positions, FloatBuffer textCoords, FloatBuffer normals, IntBuffer indices) {
+        this(positions, textCoords, normals, indices, DEFAULT_VERTEX_FORMAT);
+    }
+
+    public Mesh(MeshData meshData, GeometryPool pool) {
+        this(FloatBuffer.wrap(meshData.getPositions()), FloatBuffer.wrap(meshData.getTextCoords()),
+                FloatBuffer.wrap(meshData.getNormals()), IntBuffer.wrap(meshData.getIndices()), pool);
+    }
+
+    /**
+     * Stores the mesh in the shared buffers of <code>pool</code>, in the pool's vertex format, instead of buffers
+     * of its own.
+     */
+    public Mesh(FloatBuffer positions, FloatBuffer textCoords, FloatBuffer normals, IntBuffer indices,
+                GeometryPool pool) {
+        this(positions, textCoords, normals, indices, GeometryPool.VERTEX_FORMAT, pool);
+    }
+
+    /**
+     * Encodes the attributes into one interleaved vertex buffer of the given format. The source buffers, heap or
+     * direct (for example slices of a memory mapped mesh cache), are owned by the caller and only read.
+     */
+    public Mesh(FloatBuffer positions, FloatBuffer textCoords, FloatBuffer normals, IntBuffer indices,
+                VertexFormat vertexFormat) {
+        this(positions, textCoords, normals, indices, vertexFormat, null);
+    }
+
+    private Mesh(FloatBuffer positions, FloatBuffer textCoords, FloatBuffer normals, IntBuffer indices,
+                 VertexFormat vertexFormat, GeometryPool pool) {
+        this.vertexFormat = vertexFormat;
+        int meshVertices = positions.remaining() / 3;
+        vertexCount = indices.remaining();
+        indexType = pool != null ? GeometryPool.INDEX_TYPE : VertexFormat.getIndexType(meshVertices);
+        bounds = Bounds.of(positions);
+        dequantization = vertexFormat.getDequantization(positions);
+        vertexBytes = meshVertices * vertexFormat.getBytesPerVertex();
+        indexBytes = vertexCount * VertexFormat.getIndexSize(indexType);
+
+        if (pool != null) {
+            poolAllocation = pool.add(positions, textCoords, normals, indices);
+            vaoId = pool.getVaoId();
+            return;
+        }
+        poolAllocation = null;
+        ByteBuffer vertexBuffer = null;
+        ByteBuffer indexBuffer = null;
         try {
-            vertexCount = indices.length;
-
-            vaoId = glGenVertexArrays();
-            glBindVertexArray(vaoId);
-
-            // Position VBO
-            int posVboId = glGenBuffers();
-            vboIdList.add(posVboId);
-            posBuffer = MemoryUtil.memAllocFloat(positions.length);
-            posBuffer.put(positions).flip();
-            glBindBuffer(GL_ARRAY_BUFFER, posVboId);
-            glBufferData(GL_ARRAY_BUFFER, posBuffer, GL_STATIC_DRAW);
-            glEnableVertexAttribArray(0);
-            glVertexAttribPointer(0, 3, GL_FLOAT, false, 0, 0);
-
-            // Texture coordinates VBO
-            int textureVbo = glGenBuffers();
-            vboIdList.add(textureVbo);
-            textCoordsBuffer = MemoryUtil.memAllocFloat(textCoords.length);
-            textCoordsBuffer.put(textCoords).flip();
-            glBindBuffer(GL_ARRAY_BUFFER, textureVbo);
-            glBufferData(GL_ARRAY_BUFFER, textCoordsBuffer, GL_STATIC_DRAW);
-            glEnableVertexAttribArray(1);
-            glVertexAttribPointer(1, 2, GL_FLOAT, false, 0, 0);
-
-            // Vertex normals VBO
-            int normalsVbo = glGenBuffers();
-            vboIdList.add(normalsVbo);
-            vecNormalsBuffer = MemoryUtil.memAllocFloat(normals.length);
-            vecNormalsBuffer.put(normals).flip();
-            glBindBuffer(GL_ARRAY_BUFFER, normalsVbo);
-            glBufferData(GL_ARRAY_BUFFER, vecNormalsBuffer, GL_STATIC_DRAW);
-            glEnableVertexAttribArray(2);
-            glVertexAttribPointer(2, 3, GL_FLOAT, false, 0, 0);
-
-            // Index VBO
-            int idxVboId = glGenBuffers();
-            vboIdList.add(idxVboId);
-            indicesBuffer = MemoryUtil.memAllocInt(indices.length);
-            indicesBuffer.put(indices).flip();
-            glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, idxVboId);
-            glBufferData(GL_ELEMENT_ARRAY_BUFFER, indicesBuffer, GL_STATIC_DRAW);
-
-            glBindBuffer(GL_ARRAY_BUFFER, 0);
-            glBindVertexArray(0);
+            vertexBuffer = MemoryUtil.memAlloc(vertexBytes);
+            vertexFormat.encodeVertices(positions, textCoords, normals, dequantization, vertexBuffer);
+            indexBuffer = MemoryUtil.memAlloc(indexBytes);
+            VertexFormat.encodeIndices(indices, indexType, indexBuffer);
 
+            vaoId = createVao(vertexBuffer, indexBuffer);
         } finally {
-            if (posBuffer != null) {
-                MemoryUtil.memFree(posBuffer);
+            if (vertexBuffer != null) {
+                MemoryUtil.memFree(vertexBuffer);
             }
-            if (textCoordsBuffer != null) {
-                MemoryUtil.memFree(textCoordsBuffer);
-            }
-            if (vecNormalsBuffer != null) {
-                MemoryUtil.memFree(vecNormalsBuffer);
-            }
-            if (indicesBuffer != null) {
-                MemoryUtil.memFree(indicesBuffer);
+            if (indexBuffer != null) {
+                MemoryUtil.memFree(indexBuffer);
             }
         }
     }
 
-    public void render() {
-        Texture texture = material.getTexture();
-        if (texture != null) {
-            // Activate firs texture bank
-            glActiveTexture(GL_TEXTURE0);
-            // Bind the texture
-            glBindTexture(GL_TEXTURE_2D, texture.getId());
+    private int createVao(ByteBuffer vertexBuffer, ByteBuffer indexBuffer) {
+        int vaoId = glGenVertexArrays();
+        glBindVertexArray(vaoId);
+
+        // Interleaved vertex VBO
+        int vboId = glGenBuffers();
+        vboIdList.add(vboId);
+        glBindBuffer(GL_ARRAY_BUFFER, vboId);
+        glBufferData(GL_ARRAY_BUFFER, vertexBuffer, GL_STATIC_DRAW);
+        for (int[] attribute : vertexFormat.getAttributes()) {
+            glEnableVertexAttribArray(attribute[0]);
+            glVertexAttribPointer(attribute[0], attribute[1], attribute[2], attribute[3] != 0,
+                    vertexFormat.getBytesPerVertex(), attribute[4]);
         }
 
+        // Index VBO
+        int idxVboId = glGenBuffers();
+        vboIdList.add(idxVboId);
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, idxVboId);
+        glBufferData(GL_ELEMENT_ARRAY_BUFFER, indexBuffer, GL_STATIC_DRAW);
+
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        glBindVertexArray(0);
+        return vaoId;
+    }
+
+    public void render() {
+        bindTexture();
+
         // Draw the mesh
         glBindVertexArray(getVaoId());
 
-        glDrawElements(GL_TRIANGLES, getVertexCount(), GL_UNSIGNED_INT, 0);
+        draw();
+
+        // Restore state
+        glBindVertexArray(0);
+        glBindTexture(GL_TEXTURE_2D, 0);
+    }
+
+    /**
+     * Draws <code>instanceCount</code> copies of the mesh with one draw call, reading the per-instance attributes
+     * from <code>instanceBuffer</code> starting at <code>firstInstance</code>.
+     */
+    public void renderInstanced(InstanceBuffer instanceBuffer, int firstInstance, int instanceCount) {
+        bindTexture();
+
+        glBindVertexArray(getVaoId());
+        instanceBuffer.bind(firstInstance);
+
+        drawInstanced(instanceCount);
 
         // Restore state
+        instanceBuffer.unbind();
         glBindVertexArray(0);
         glBindTexture(GL_TEXTURE_2D, 0);
     }
 
+    /**
+     * Binds the vertex array, so that {@link #draw()} can be called for several items in a row. The caller binds
+     * the texture.
+     */
+    public void bind() {
+        glBindVertexArray(getVaoId());
+    }
+
+    /**
+     * Draws the mesh with the vertex array bound by {@link #bind()}.
+     */
+    public void draw() {
+        if (poolAllocation != null) {
+            glDrawElementsBaseVertex(GL_TRIANGLES, getVertexCount(), indexType,
+                    (long) poolAllocation.getFirstIndex() * Integer.BYTES, poolAllocation.getBaseVertex());
+        } else {
+            glDrawElements(GL_TRIANGLES, getVertexCount(), indexType, 0);
+        }
+    }
+
+    /**
+     * Draws <code>instanceCount</code> copies of the mesh with the vertex array bound by {@link #bind()} and the
+     * instance attributes bound by the caller.
+     */
+    public void drawInstanced(int instanceCount) {
+        if (poolAllocation != null) {
+            glDrawElementsInstancedBaseVertex(GL_TRIANGLES, getVertexCount(), indexType,
+                    (long) poolAllocation.getFirstIndex() * Integer.BYTES, instanceCount,
+                    poolAllocation.getBaseVertex());
+        } else {
+            glDrawElementsInstanced(GL_TRIANGLES, getVertexCount(), indexType, 0, instanceCount);
+        }
+    }
+
+    private void bindTexture() {
+        Texture texture = material.getTexture();
+        if (texture != null) {
+            // Activate firs texture bank
+            glActiveTexture(GL_TEXTURE0);
+            // Bind the texture
+            glBindTexture(GL_TEXTURE_2D, texture.getId());
+        }
+    }
+
     public void cleanUp() {
+        for (Mesh lod : lods) {
+            lod.cleanUp();
+        }
+        if (poolAllocation != null) {
+            poolAllocation.release();
+            return;
+        }
+
         glDisableVertexAttribArray(0);
 
         // Delete the VBOs
@@ -120,25 +251,99 @@ public class Mesh {
             glDeleteBuffers(vboId);
         }
 
-        // Delete the texture
-        Texture texture = material.getTexture();
-        if (texture != null) {
-            texture.cleanup();
-        }
+        // Textures may be shared by several meshes, they are deleted by whoever loaded them
 
         // Delete the VAO
         glBindVertexArray(0);
         glDeleteVertexArrays(vaoId);
     }
 
+    /**
+     * The vertex array of the mesh, shared by all meshes of the same {@link GeometryPool}.
+     */
     public int getVaoId() {
         return vaoId;
     }
 
+    /**
+     * Ranges of the mesh in its {@link GeometryPool}, or null when it owns its buffers.
+     */
+    public GeometryPool.Allocation getPoolAllocation() {
+        return poolAllocation;
+    }
+
     public int getVertexCount() {
         return vertexCount;
     }
 
+    public int getTriangleCount() {
+        return vertexCount / 3;
+    }
+
+    public VertexFormat getVertexFormat() {
+        return vertexFormat;
+    }
+
+    /**
+     * GL_UNSIGNED_SHORT or GL_UNSIGNED_INT.
+     */
+    public int getIndexType() {
+        return indexType;
+    }
+
+    /**
+     * Model space offset (x, y, z) and scale (x, y, z) of the stored positions, see {@link VertexFormat}.
+     */
+    public float[] getDequantization() {
+        return dequantization;
+    }
+
+    /**
+     * GPU memory used by the vertex and index buffers, not counting the LODs.
+     */
+    public int getByteSize() {
+        return vertexBytes + indexBytes;
+    }
+
+    /**
+     * Model space bounding box and sphere, used for culling and detail level selection.
+     */
+    public Bounds getBounds() {
+        return bounds;
+    }
+
+    /**
+     * Number of detail levels, including this mesh as level 0.
+     */
+    public int getLodCount() {
+        return lods.length + 1;
+    }
+
+    public Mesh getLod(int level) {
+        return level == 0 ? this : lods[level - 1];
+    }
+
+    /**
+     * Sets the simplified versions of this mesh, from the most to the least detailed. They share the material
+     * of this mesh and are destroyed along with it.
+     */
+    public void setLods(Mesh... lods) {
+        this.lods = lods;
+        for (Mesh lod : lods) {
+            lod.setMaterial(material);
+        }
+    }
+
+    /**
+     * Whether the mesh fills its bounding box, which then hides the items behind it in occlusion culling.
+     */
+    public boolean isOccluder() {
+        return occluder;
+    }
+
+    public void setOccluder(boolean occluder) {
+        this.occluder = occluder;
+    }
 
     public Material getMaterial() {
         return material;
@@ -146,6 +351,9 @@ public class Mesh {
 
     public void setMaterial(Material material) {
         this.material = material;
+        for (Mesh lod : lods) {
+            lod.setMaterial(material);
+        }
     }
 
 }
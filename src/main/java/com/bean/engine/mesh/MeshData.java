@@ -0,0 +1,47 @@
+package com.bean.engine.mesh;
+
+/**
+ * CPU side vertex and index arrays of a mesh, ready to be uploaded by {@link Mesh}.
+ * Building a MeshData does not require an OpenGL context.
+ */
+public class MeshData {
+
+    private final float[] positions;
+
+    private final float[] textCoords;
+
+    private final float[] normals;
+
+    private final int[] indices;
+
+    public MeshData(float[] positions, float[] textCoords, float[] normals, int[] indices) {
+        this.positions = positions;
+        this.textCoords = textCoords;
+        this.normals = normals;
+        this.indices = indices;
+    }
+
+    public float[] getPositions() {
+        return positions;
+    }
+
+    public float[] getTextCoords() {
+        return textCoords;
+    }
+
+    public float[] getNormals() {
+        return normals;
+    }
+
+    public int[] getIndices() {
+        return indices;
+    }
+
+    public int getVertexCount() {
+        return positions.length / 3;
+    }
+
+    public int getTriangleCount() {
+        return indices.length / 3;
+    }
+}
@@ -0,0 +1,272 @@
+package com.bean.engine.mesh;
+
+import java.util.Arrays;
+
+/**
+ * CPU mesh optimization passes. Triangles are reordered for post-transform vertex cache locality using
+ * Tom Forsyth's linear-speed vertex cache optimization, then vertices are renumbered in order of first use
+ * for vertex fetch locality. None of this needs an OpenGL context.
+ */
+public class MeshOptimizer {
+
+    /**
+     * FIFO cache size used to report ACMR and ATVR, close to the post-transform caches of current GPUs.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 16;
+
+    private static final int MAX_CACHE_SIZE = 32;
+
+    private static final float CACHE_DECAY_POWER = 1.5f;
+
+    private static final float LAST_TRIANGLE_SCORE = 0.75f;
+
+    private static final float VALENCE_BOOST_SCALE = 2.0f;
+
+    private static final float VALENCE_BOOST_POWER = 0.5f;
+
+    private MeshOptimizer() {
+    }
+
+    /**
+     * Runs both passes and returns the optimized mesh. The input is not modified.
+     */
+    public static MeshData optimize(MeshData meshData) {
+        int[] indices = optimizeVertexCache(meshData.getIndices(), meshData.getVertexCount());
+        return optimizeVertexFetch(new MeshData(meshData.getPositions(), meshData.getTextCoords(),
+                meshData.getNormals(), indices));
+    }
+
+    /**
+     * Returns the triangles of the index list reordered so that consecutive triangles share vertices.
+     */
+    public static int[] optimizeVertexCache(int[] indices, int vertexCount) {
+        int triangleCount = indices.length / 3;
+        if (triangleCount == 0) {
+            return indices.clone();
+        }
+
+        // Triangle adjacency of every vertex, packed in one array
+        int[] remaining = new int[vertexCount];
+        for (int index : indices) {
+            remaining[index]++;
+        }
+        int[] adjacencyOffsets = new int[vertexCount + 1];
+        for (int v = 0; v < vertexCount; v++) {
+            adjacencyOffsets[v + 1] = adjacencyOffsets[v] + remaining[v];
+        }
+        int[] adjacency = new int[indices.length];
+        int[] fill = Arrays.copyOf(adjacencyOffsets, vertexCount);
+        for (int i = 0; i < indices.length; i++) {
+            adjacency[fill[indices[i]]++] = i / 3;
+        }
+
+        int[] cachePosition = new int[vertexCount];
+        Arrays.fill(cachePosition, -1);
+        float[] vertexScores = new float[vertexCount];
+        for (int v = 0; v < vertexCount; v++) {
+            vertexScores[v] = vertexScore(cachePosition[v], remaining[v]);
+        }
+        float[] triangleScores = new float[triangleCount];
+        boolean[] emitted = new boolean[triangleCount];
+        for (int t = 0; t < triangleCount; t++) {
+            triangleScores[t] = vertexScores[indices[t * 3]] + vertexScores[indices[t * 3 + 1]]
+                    + vertexScores[indices[t * 3 + 2]];
+        }
+
+        int[] cache = new int[MAX_CACHE_SIZE + 3];
+        int[] newCache = new int[MAX_CACHE_SIZE + 3];
+        int cacheSize = 0;
+        int[] result = new int[indices.length];
+        int scanCursor = 0;
+        int bestTriangle = findBestTriangle(triangleScores);
+
+        for (int emittedCount = 0; emittedCount < triangleCount; emittedCount++) {
+            if (bestTriangle < 0) {
+                // Nothing adjacent to the cache, continue with the next triangle that was not emitted yet
+                while (emitted[scanCursor]) {
+                    scanCursor++;
+                }
+                bestTriangle = scanCursor;
+            }
+            int t = bestTriangle;
+            emitted[t] = true;
+            System.arraycopy(indices, t * 3, result, emittedCount * 3, 3);
+
+            // Move the triangle's vertices to the front of the cache
+            int newCacheSize = 0;
+            for (int k = 0; k < 3; k++) {
+                int v = indices[t * 3 + k];
+                newCache[newCacheSize++] = v;
+                removeAdjacentTriangle(adjacency, adjacencyOffsets, remaining, v, t);
+            }
+            for (int i = 0; i < cacheSize; i++) {
+                int v = cache[i];
+                if (v != result[emittedCount * 3] && v != result[emittedCount * 3 + 1] && v != result[emittedCount * 3 + 2]) {
+                    newCache[newCacheSize++] = v;
+                }
+            }
+            int[] swap = cache;
+            cache = newCache;
+            newCache = swap;
+            cacheSize = newCacheSize;
+
+            // Update the scores of cached vertices and of the ones that just fell out of the cache
+            for (int i = 0; i < cacheSize; i++) {
+                int v = cache[i];
+                cachePosition[v] = i < MAX_CACHE_SIZE ? i : -1;
+            }
+            bestTriangle = -1;
+            float bestScore = -1;
+            for (int i = 0; i < cacheSize; i++) {
+                int v = cache[i];
+                float newScore = vertexScore(cachePosition[v], remaining[v]);
+                float delta = newScore - vertexScores[v];
+                vertexScores[v] = newScore;
+                for (int a = adjacencyOffsets[v]; a < adjacencyOffsets[v] + remaining[v]; a++) {
+                    int adjacent = adjacency[a];
+                    triangleScores[adjacent] += delta;
+                    if (triangleScores[adjacent] > bestScore) {
+                        bestScore = triangleScores[adjacent];
+                        bestTriangle = adjacent;
+                    }
+                }
+            }
+            cacheSize = Math.min(cacheSize, MAX_CACHE_SIZE);
+        }
+        return result;
+    }
+
+    /**
+     * Renumbers vertices in the order the index list first references them and reorders the attribute arrays
+     * to match. Vertices that no triangle uses are dropped.
+     */
+    public static MeshData optimizeVertexFetch(MeshData meshData) {
+        int[] indices = meshData.getIndices();
+        int[] remap = new int[meshData.getVertexCount()];
+        Arrays.fill(remap, -1);
+        int newVertexCount = 0;
+        int[] newIndices = new int[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            int v = indices[i];
+            if (remap[v] < 0) {
+                remap[v] = newVertexCount++;
+            }
+            newIndices[i] = remap[v];
+        }
+
+        float[] positions = remapAttribute(meshData.getPositions(), 3, remap, newVertexCount);
+        float[] textCoords = remapAttribute(meshData.getTextCoords(), 2, remap, newVertexCount);
+        float[] normals = remapAttribute(meshData.getNormals(), 3, remap, newVertexCount);
+        return new MeshData(positions, textCoords, normals, newIndices);
+    }
+
+    /**
+     * Simulates a FIFO post-transform cache over the index list.
+     */
+    public static CacheStatistics analyzeVertexCache(int[] indices, int vertexCount, int cacheSize) {
+        int[] cachedAt = new int[vertexCount];
+        Arrays.fill(cachedAt, Integer.MIN_VALUE / 2);
+        int misses = 0;
+        for (int index : indices) {
+            if (misses - cachedAt[index] >= cacheSize) {
+                cachedAt[index] = misses;
+                misses++;
+            }
+        }
+        return new CacheStatistics(misses, indices.length / 3, vertexCount);
+    }
+
+    private static float[] remapAttribute(float[] attribute, int size, int[] remap, int newVertexCount) {
+        float[] result = new float[newVertexCount * size];
+        for (int v = 0; v < remap.length; v++) {
+            if (remap[v] >= 0) {
+                System.arraycopy(attribute, v * size, result, remap[v] * size, size);
+            }
+        }
+        return result;
+    }
+
+    private static void removeAdjacentTriangle(int[] adjacency, int[] adjacencyOffsets, int[] remaining, int v, int t) {
+        int start = adjacencyOffsets[v];
+        int end = start + remaining[v];
+        for (int a = start; a < end; a++) {
+            if (adjacency[a] == t) {
+                adjacency[a] = adjacency[end - 1];
+                remaining[v]--;
+                return;
+            }
+        }
+    }
+
+    private static int findBestTriangle(float[] triangleScores) {
+        int best = -1;
+        float bestScore = -1;
+        for (int t = 0; t < triangleScores.length; t++) {
+            if (triangleScores[t] > bestScore) {
+                bestScore = triangleScores[t];
+                best = t;
+            }
+        }
+        return best;
+    }
+
+    private static float vertexScore(int cachePosition, int remainingTriangles) {
+        if (remainingTriangles == 0) {
+            return -1;
+        }
+        float score = 0;
+        if (cachePosition >= 0) {
+            if (cachePosition < 3) {
+                // The vertices of the last triangle get a fixed score, so that strips are not favoured over fans
+                score = LAST_TRIANGLE_SCORE;
+            } else {
+                float scaler = 1.0f / (MAX_CACHE_SIZE - 3);
+                score = (float) Math.pow(1.0f - (cachePosition - 3) * scaler, CACHE_DECAY_POWER);
+            }
+        }
+        // Boost vertices with few triangles left, so that lone triangles are not left behind
+        score += VALENCE_BOOST_SCALE * (float) Math.pow(remainingTriangles, -VALENCE_BOOST_POWER);
+        return score;
+    }
+
+    /**
+     * Post-transform vertex cache efficiency of an index list.
+     */
+    public static class CacheStatistics {
+
+        private final int misses;
+
+        private final int triangleCount;
+
+        private final int vertexCount;
+
+        public CacheStatistics(int misses, int triangleCount, int vertexCount) {
+            this.misses = misses;
+            this.triangleCount = triangleCount;
+            this.vertexCount = vertexCount;
+        }
+
+        public int getMisses() {
+            return misses;
+        }
+
+        /**
+         * Average cache miss ratio, vertex shader invocations per triangle. 0.5 is the ideal for regular grids, 3 the worst.
+         */
+        public float getAcmr() {
+            return triangleCount > 0 ? (float) misses / triangleCount : 0;
+        }
+
+        /**
+         * Average transformed vertex ratio, vertex shader invocations per vertex. 1 is the ideal.
+         */
+        public float getAtvr() {
+            return vertexCount > 0 ? (float) misses / vertexCount : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("ACMR %.3f, ATVR %.3f", getAcmr(), getAtvr());
+        }
+    }
+}
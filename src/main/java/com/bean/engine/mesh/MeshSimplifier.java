@@ -0,0 +1,353 @@
+package com.bean.engine.mesh;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.bean.engine.util.IntList;
+import com.bean.engine.util.IntTripleIndexMap;
+
+/**
+ * Mesh simplification with the quadric error metric of Garland and Heckbert, used to build LOD chains at load time.
+ * <p>
+ * Edges are collapsed onto one of their end points (half edge collapse), so no new vertices or attributes are
+ * made up. Vertices on open borders and on attribute seams (several vertices sharing a position) are kept in place,
+ * which preserves silhouettes and texture mapping at the cost of simplifying those areas less.
+ */
+public class MeshSimplifier {
+
+    /**
+     * Triangle count of each LOD level relative to the previous one.
+     */
+    public static final float LOD_REDUCTION = 0.5f;
+
+    /**
+     * Largest geometric error of a LOD level, relative to the mesh extent.
+     */
+    public static final float LOD_MAX_ERROR = 0.05f;
+
+    private static final int MIN_LOD_TRIANGLES = 32;
+
+    /**
+     * A level that does not get below this fraction of the previous one is not worth its memory.
+     */
+    private static final float MIN_LOD_GAIN = 0.8f;
+
+    private static final int QUADRIC_SIZE = 11;
+
+    private MeshSimplifier() {
+    }
+
+    /**
+     * Builds a LOD chain, level 0 being the mesh itself. Each level has about {@link #LOD_REDUCTION} times the
+     * triangles of the previous one. The chain stops early once a level can not be simplified further within
+     * {@link #LOD_MAX_ERROR}.
+     */
+    public static List<MeshData> buildLodChain(MeshData meshData, int maxLevels) {
+        List<MeshData> levels = new ArrayList<>();
+        levels.add(meshData);
+        MeshData previous = meshData;
+        while (levels.size() < maxLevels) {
+            int targetTriangles = (int) (previous.getTriangleCount() * LOD_REDUCTION);
+            if (targetTriangles < MIN_LOD_TRIANGLES) {
+                break;
+            }
+            MeshData level = simplify(previous, targetTriangles * 3, LOD_MAX_ERROR);
+            if (level.getTriangleCount() > previous.getTriangleCount() * MIN_LOD_GAIN) {
+                break;
+            }
+            levels.add(level);
+            previous = level;
+        }
+        return levels;
+    }
+
+    /**
+     * Collapses edges in order of increasing quadric error until the index count drops to the target or the next
+     * collapse would move the surface by more than <code>targetError</code> times the mesh extent. Unused vertices
+     * are dropped from the result. The input is not modified.
+     */
+    public static MeshData simplify(MeshData meshData, int targetIndexCount, float targetError) {
+        float[] positions = meshData.getPositions();
+        int vertexCount = meshData.getVertexCount();
+        int[] indices = meshData.getIndices().clone();
+        int indexCount = indices.length;
+
+        int[] canonical = weldPositions(positions, vertexCount);
+        boolean[] locked = findLockedVertices(canonical, indices, vertexCount);
+        double[] quadrics = new double[vertexCount * QUADRIC_SIZE];
+        for (int i = 0; i < indexCount; i += 3) {
+            addTriangleQuadric(quadrics, positions, canonical, indices[i], indices[i + 1], indices[i + 2]);
+        }
+        float extent = getExtent(positions);
+        double errorLimit = (double) targetError * extent * targetError * extent;
+
+        int[] remap = new int[vertexCount];
+        boolean[] touched = new boolean[vertexCount];
+        IntList candidates = new IntList();
+        while (indexCount > targetIndexCount) {
+            int[] adjacencyOffsets = new int[vertexCount + 1];
+            int[] adjacency = buildAdjacency(indices, indexCount, vertexCount, adjacencyOffsets);
+
+            // Every edge is a candidate in both directions, unless the vertex it would remove is locked
+            candidates.clear();
+            for (int i = 0; i < indexCount; i += 3) {
+                for (int k = 0; k < 3; k++) {
+                    int a = indices[i + k];
+                    int b = indices[i + (k + 1) % 3];
+                    if (!locked[a]) {
+                        candidates.add(a);
+                        candidates.add(b);
+                    }
+                    if (!locked[b]) {
+                        candidates.add(b);
+                        candidates.add(a);
+                    }
+                }
+            }
+            int candidateCount = candidates.size() / 2;
+            int[] edges = candidates.elements();
+            long[] order = new long[candidateCount];
+            for (int c = 0; c < candidateCount; c++) {
+                float cost = (float) collapseError(quadrics, positions, canonical, edges[c * 2], edges[c * 2 + 1]);
+                // Non negative floats sort like their bit patterns
+                order[c] = ((long) Float.floatToIntBits(Math.max(0, cost)) << 32) | c;
+            }
+            Arrays.sort(order);
+
+            for (int v = 0; v < vertexCount; v++) {
+                remap[v] = v;
+            }
+            Arrays.fill(touched, false);
+            int collapses = 0;
+            // An interior collapse removes two triangles
+            int collapseGoal = (indexCount - targetIndexCount + 5) / 6;
+            for (long key : order) {
+                if (collapses >= collapseGoal || Float.intBitsToFloat((int) (key >>> 32)) > errorLimit) {
+                    break;
+                }
+                int c = (int) key;
+                int a = edges[c * 2];
+                int b = edges[c * 2 + 1];
+                if (touched[a] || touched[b] || flipsTriangle(positions, indices, adjacency, adjacencyOffsets, a, b)) {
+                    continue;
+                }
+                remap[a] = b;
+                // Keep the neighbourhood of the collapse fixed for the rest of the pass, so flip tests stay valid
+                for (int t = adjacencyOffsets[a]; t < adjacencyOffsets[a + 1]; t++) {
+                    int triangle = adjacency[t];
+                    touched[indices[triangle * 3]] = true;
+                    touched[indices[triangle * 3 + 1]] = true;
+                    touched[indices[triangle * 3 + 2]] = true;
+                }
+                int from = canonical[a] * QUADRIC_SIZE;
+                int to = canonical[b] * QUADRIC_SIZE;
+                for (int q = 0; q < QUADRIC_SIZE; q++) {
+                    quadrics[to + q] += quadrics[from + q];
+                }
+                collapses++;
+            }
+            if (collapses == 0) {
+                break;
+            }
+
+            // Apply the collapses and drop the triangles that became degenerate
+            int newIndexCount = 0;
+            for (int i = 0; i < indexCount; i += 3) {
+                int v0 = remap[indices[i]];
+                int v1 = remap[indices[i + 1]];
+                int v2 = remap[indices[i + 2]];
+                if (v0 != v1 && v1 != v2 && v0 != v2) {
+                    indices[newIndexCount++] = v0;
+                    indices[newIndexCount++] = v1;
+                    indices[newIndexCount++] = v2;
+                }
+            }
+            indexCount = newIndexCount;
+        }
+
+        return MeshOptimizer.optimizeVertexFetch(new MeshData(positions, meshData.getTextCoords(),
+                meshData.getNormals(), Arrays.copyOf(indices, indexCount)));
+    }
+
+    /**
+     * Maps every vertex to the first vertex with the same position.
+     */
+    private static int[] weldPositions(float[] positions, int vertexCount) {
+        int[] canonical = new int[vertexCount];
+        IntTripleIndexMap map = new IntTripleIndexMap(vertexCount);
+        for (int v = 0; v < vertexCount; v++) {
+            canonical[v] = map.getOrPut(Float.floatToIntBits(positions[v * 3]),
+                    Float.floatToIntBits(positions[v * 3 + 1]), Float.floatToIntBits(positions[v * 3 + 2]), v);
+        }
+        return canonical;
+    }
+
+    /**
+     * Locks vertices on attribute seams and on open borders. A border edge is used by a single triangle.
+     */
+    private static boolean[] findLockedVertices(int[] canonical, int[] indices, int vertexCount) {
+        boolean[] locked = new boolean[vertexCount];
+        int[] wedges = new int[vertexCount];
+        for (int v = 0; v < vertexCount; v++) {
+            wedges[canonical[v]]++;
+        }
+
+        int[] welded = new int[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            welded[i] = canonical[indices[i]];
+        }
+        int[] adjacencyOffsets = new int[vertexCount + 1];
+        int[] adjacency = buildAdjacency(welded, welded.length, vertexCount, adjacencyOffsets);
+        boolean[] borderPosition = new boolean[vertexCount];
+        for (int i = 0; i < welded.length; i += 3) {
+            for (int k = 0; k < 3; k++) {
+                int a = welded[i + k];
+                int b = welded[i + (k + 1) % 3];
+                int shared = 0;
+                for (int t = adjacencyOffsets[a]; t < adjacencyOffsets[a + 1]; t++) {
+                    int triangle = adjacency[t];
+                    if (welded[triangle * 3] == b || welded[triangle * 3 + 1] == b || welded[triangle * 3 + 2] == b) {
+                        shared++;
+                    }
+                }
+                if (shared == 1) {
+                    borderPosition[a] = true;
+                    borderPosition[b] = true;
+                }
+            }
+        }
+
+        for (int v = 0; v < vertexCount; v++) {
+            locked[v] = wedges[canonical[v]] > 1 || borderPosition[canonical[v]];
+        }
+        return locked;
+    }
+
+    /**
+     * Triangles using each vertex, packed in one array indexed by <code>offsets</code>.
+     */
+    private static int[] buildAdjacency(int[] indices, int indexCount, int vertexCount, int[] offsets) {
+        Arrays.fill(offsets, 0);
+        for (int i = 0; i < indexCount; i++) {
+            offsets[indices[i] + 1]++;
+        }
+        for (int v = 0; v < vertexCount; v++) {
+            offsets[v + 1] += offsets[v];
+        }
+        int[] adjacency = new int[indexCount];
+        int[] fill = Arrays.copyOf(offsets, vertexCount);
+        for (int i = 0; i < indexCount; i++) {
+            adjacency[fill[indices[i]]++] = i / 3;
+        }
+        return adjacency;
+    }
+
+    /**
+     * Adds the area weighted plane quadric of a triangle to the quadrics of its corners. The last element of each
+     * quadric accumulates the weight, so errors can be normalized to squared distances.
+     */
+    private static void addTriangleQuadric(double[] quadrics, float[] positions, int[] canonical, int i0, int i1, int i2) {
+        double ux = positions[i1 * 3] - positions[i0 * 3];
+        double uy = positions[i1 * 3 + 1] - positions[i0 * 3 + 1];
+        double uz = positions[i1 * 3 + 2] - positions[i0 * 3 + 2];
+        double vx = positions[i2 * 3] - positions[i0 * 3];
+        double vy = positions[i2 * 3 + 1] - positions[i0 * 3 + 1];
+        double vz = positions[i2 * 3 + 2] - positions[i0 * 3 + 2];
+        double nx = uy * vz - uz * vy;
+        double ny = uz * vx - ux * vz;
+        double nz = ux * vy - uy * vx;
+        double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (length == 0) {
+            return;
+        }
+        double weight = length * 0.5;
+        nx /= length;
+        ny /= length;
+        nz /= length;
+        double d = -(nx * positions[i0 * 3] + ny * positions[i0 * 3 + 1] + nz * positions[i0 * 3 + 2]);
+
+        for (int corner : new int[]{i0, i1, i2}) {
+            int q = canonical[corner] * QUADRIC_SIZE;
+            quadrics[q] += weight * nx * nx;
+            quadrics[q + 1] += weight * nx * ny;
+            quadrics[q + 2] += weight * nx * nz;
+            quadrics[q + 3] += weight * nx * d;
+            quadrics[q + 4] += weight * ny * ny;
+            quadrics[q + 5] += weight * ny * nz;
+            quadrics[q + 6] += weight * ny * d;
+            quadrics[q + 7] += weight * nz * nz;
+            quadrics[q + 8] += weight * nz * d;
+            quadrics[q + 9] += weight * d * d;
+            quadrics[q + 10] += weight;
+        }
+    }
+
+    /**
+     * Mean squared distance of the position of <code>b</code> to the planes around both end points.
+     */
+    private static double collapseError(double[] quadrics, float[] positions, int[] canonical, int a, int b) {
+        double x = positions[b * 3];
+        double y = positions[b * 3 + 1];
+        double z = positions[b * 3 + 2];
+        double error = 0;
+        double weight = 0;
+        for (int q : new int[]{canonical[a] * QUADRIC_SIZE, canonical[b] * QUADRIC_SIZE}) {
+            error += quadrics[q] * x * x + 2 * quadrics[q + 1] * x * y + 2 * quadrics[q + 2] * x * z
+                    + 2 * quadrics[q + 3] * x + quadrics[q + 4] * y * y + 2 * quadrics[q + 5] * y * z
+                    + 2 * quadrics[q + 6] * y + quadrics[q + 7] * z * z + 2 * quadrics[q + 8] * z + quadrics[q + 9];
+            weight += quadrics[q + 10];
+        }
+        return weight > 0 ? error / weight : 0;
+    }
+
+    /**
+     * Whether moving <code>a</code> onto <code>b</code> would flip or flatten one of the triangles that survive the
+     * collapse.
+     */
+    private static boolean flipsTriangle(float[] positions, int[] indices, int[] adjacency, int[] adjacencyOffsets,
+                                         int a, int b) {
+        for (int t = adjacencyOffsets[a]; t < adjacencyOffsets[a + 1]; t++) {
+            int triangle = adjacency[t] * 3;
+            int v0 = indices[triangle];
+            int v1 = indices[triangle + 1];
+            int v2 = indices[triangle + 2];
+            if (v0 == b || v1 == b || v2 == b) {
+                continue;
+            }
+            // Rotate the triangle so that a comes first
+            int o1 = v0 == a ? v1 : v1 == a ? v2 : v0;
+            int o2 = v0 == a ? v2 : v1 == a ? v0 : v1;
+            double ex = positions[o1 * 3] - positions[o2 * 3];
+            double ey = positions[o1 * 3 + 1] - positions[o2 * 3 + 1];
+            double ez = positions[o1 * 3 + 2] - positions[o2 * 3 + 2];
+            double[] before = cornerNormal(positions, a, o2, ex, ey, ez);
+            double[] after = cornerNormal(positions, b, o2, ex, ey, ez);
+            if (before[0] * after[0] + before[1] * after[1] + before[2] * after[2] <= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static double[] cornerNormal(float[] positions, int corner, int o2, double ex, double ey, double ez) {
+        double fx = positions[corner * 3] - positions[o2 * 3];
+        double fy = positions[corner * 3 + 1] - positions[o2 * 3 + 1];
+        double fz = positions[corner * 3 + 2] - positions[o2 * 3 + 2];
+        return new double[]{ey * fz - ez * fy, ez * fx - ex * fz, ex * fy - ey * fx};
+    }
+
+    private static float getExtent(float[] positions) {
+        float extent = 0;
+        for (int axis = 0; axis < 3; axis++) {
+            float min = Float.POSITIVE_INFINITY;
+            float max = Float.NEGATIVE_INFINITY;
+            for (int i = axis; i < positions.length; i += 3) {
+                min = Math.min(min, positions[i]);
+                max = Math.max(max, positions[i]);
+            }
+            extent = Math.max(extent, max - min);
+        }
+        return extent;
+    }
+}
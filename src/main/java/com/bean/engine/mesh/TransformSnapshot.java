@@ -0,0 +1,192 @@
+package com.bean.engine.mesh;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.bean.engine.graph.Camera;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+import org.joml.Vector4fc;
+
+/**
+ * Copy of the transforms of the simulated items and of the camera at the end of a simulation tick, handed to the
+ * render thread so it never reads objects the simulation is changing.
+ * <p>
+ * Snapshots are reused: the simulation thread overwrites one with {@link #capture(List, Camera)} and
+ * {@link #stamp(long, long)}, after which it is read only until it comes back to the simulation. The render thread
+ * blends two consecutive snapshots into its own entities with {@link #interpolate(TransformSnapshot, float,
+ * EntityStore, Camera)}. Transforms are kept in the layout of {@link EntityStore}, so capturing a whole store copies
+ * its arrays.
+ */
+public class TransformSnapshot {
+
+    private final List<GameItem> items = new ArrayList<>();
+
+    private float[] positions = new float[0];
+
+    private float[] rotations = new float[0];
+
+    private float[] scales = new float[0];
+
+    private float[] tints = new float[0];
+
+    private final Vector3f cameraPosition = new Vector3f();
+
+    private final Vector3f cameraRotation = new Vector3f();
+
+    private long tick;
+
+    private long updateNanos;
+
+    private long publishedNanos;
+
+    /**
+     * Copies the transforms of the items, in order, and the camera pose.
+     */
+    public void capture(List<GameItem> gameItems, Camera camera) {
+        setItems(gameItems);
+        for (int i = 0; i < items.size(); i++) {
+            GameItem gameItem = items.get(i);
+            Vector3fc position = gameItem.getPosition();
+            positions[i * 3] = position.x();
+            positions[i * 3 + 1] = position.y();
+            positions[i * 3 + 2] = position.z();
+            Vector3fc rotation = gameItem.getRotation();
+            rotations[i * 3] = rotation.x();
+            rotations[i * 3 + 1] = rotation.y();
+            rotations[i * 3 + 2] = rotation.z();
+            scales[i] = gameItem.getScale();
+            Vector4fc tint = gameItem.getTint();
+            tints[i * 4] = tint.x();
+            tints[i * 4 + 1] = tint.y();
+            tints[i * 4 + 2] = tint.z();
+            tints[i * 4 + 3] = tint.w();
+        }
+        cameraPosition.set(camera.getPosition());
+        cameraRotation.set(camera.getRotation());
+    }
+
+    /**
+     * Copies the transforms of all entities of the store, in dense order, and the camera pose.
+     */
+    public void capture(EntityStore store, Camera camera) {
+        setItems(store.getItems());
+        int count = items.size();
+        System.arraycopy(store.getPositions(), 0, positions, 0, count * 3);
+        System.arraycopy(store.getRotations(), 0, rotations, 0, count * 3);
+        System.arraycopy(store.getScales(), 0, scales, 0, count);
+        System.arraycopy(store.getTints(), 0, tints, 0, count * 4);
+        cameraPosition.set(camera.getPosition());
+        cameraRotation.set(camera.getRotation());
+    }
+
+    private void setItems(List<GameItem> gameItems) {
+        items.clear();
+        items.addAll(gameItems);
+        int count = items.size();
+        if (scales.length < count) {
+            int capacity = Math.max(scales.length * 2, count);
+            positions = Arrays.copyOf(positions, capacity * 3);
+            rotations = Arrays.copyOf(rotations, capacity * 3);
+            scales = Arrays.copyOf(scales, capacity);
+            tints = Arrays.copyOf(tints, capacity * 4);
+        }
+    }
+
+    /**
+     * Records the simulation tick the snapshot was taken after, how long its update took, and the publication time.
+     */
+    public void stamp(long tick, long updateNanos) {
+        this.tick = tick;
+        this.updateNanos = updateNanos;
+        this.publishedNanos = System.nanoTime();
+    }
+
+    /**
+     * Writes the state between <code>previous</code>, at <code>alpha</code> 0, and this snapshot, at 1, into
+     * <code>views</code> and <code>camera</code>. The entity at each dense index of <code>views</code>, a store owned
+     * by the render thread, stands for the captured item at the same index; entities are added, or removed from the
+     * first whose mesh no longer matches, until they line up. Items that were not at the same index in
+     * <code>previous</code> are not interpolated. Versions only change for entities that moved.
+     */
+    public void interpolate(TransformSnapshot previous, float alpha, EntityStore views, Camera camera) {
+        int count = items.size();
+        int kept = Math.min(views.size(), count);
+        for (int i = 0; i < kept; i++) {
+            if (views.getMesh(i) != items.get(i).getMesh()) {
+                kept = i;
+            }
+        }
+        while (views.size() > kept) {
+            views.remove(views.getItem(views.size() - 1));
+        }
+        while (views.size() < count) {
+            views.create(items.get(views.size()).getMesh());
+        }
+
+        float[] viewPositions = views.getPositions();
+        float[] viewRotations = views.getRotations();
+        float[] viewScales = views.getScales();
+        int[] viewVersions = views.getVersions();
+        for (int i = 0; i < count; i++) {
+            boolean blend = i < previous.items.size() && previous.items.get(i) == items.get(i);
+            TransformSnapshot from = blend ? previous : this;
+            boolean moved = false;
+            for (int c = i * 3; c < i * 3 + 3; c++) {
+                float position = lerp(from.positions[c], positions[c], alpha);
+                float rotation = lerpAngle(from.rotations[c], rotations[c], alpha);
+                moved |= viewPositions[c] != position || viewRotations[c] != rotation;
+                viewPositions[c] = position;
+                viewRotations[c] = rotation;
+            }
+            float scale = lerp(from.scales[i], scales[i], alpha);
+            moved |= viewScales[i] != scale;
+            viewScales[i] = scale;
+            if (moved) {
+                viewVersions[i]++;
+            }
+        }
+        System.arraycopy(tints, 0, views.getTints(), 0, count * 4);
+
+        previous.cameraPosition.lerp(cameraPosition, alpha, camera.getPosition());
+        Vector3f from = previous.cameraRotation;
+        camera.setRotation(lerpAngle(from.x, cameraRotation.x, alpha), lerpAngle(from.y, cameraRotation.y, alpha),
+                lerpAngle(from.z, cameraRotation.z, alpha));
+    }
+
+    private static float lerp(float from, float to, float alpha) {
+        return from + (to - from) * alpha;
+    }
+
+    /**
+     * Interpolates angles in degrees the short way round.
+     */
+    private static float lerpAngle(float from, float to, float alpha) {
+        float delta = ((to - from) % 360 + 540) % 360 - 180;
+        return from + delta * alpha;
+    }
+
+    public int size() {
+        return items.size();
+    }
+
+    public GameItem getItem(int index) {
+        return items.get(index);
+    }
+
+    /**
+     * Simulation tick the snapshot was taken after, 0 for a snapshot that was never published.
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    public long getUpdateNanos() {
+        return updateNanos;
+    }
+
+    public long getPublishedNanos() {
+        return publishedNanos;
+    }
+}
@@ -0,0 +1,253 @@
+package com.bean.engine.mesh;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import static org.lwjgl.opengl.GL11.GL_FLOAT;
+import static org.lwjgl.opengl.GL11.GL_SHORT;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_INT;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_SHORT;
+import static org.lwjgl.opengl.GL30.GL_HALF_FLOAT;
+
+/**
+ * Interleaved vertex layouts of a {@link Mesh}, from full precision floats to quantized attributes.
+ * <p>
+ * Every format feeds the same shader inputs: position at location 0, texture coordinates at 1 and the normal at 2.
+ * Quantized positions are stored as normalized unsigned shorts over the bounding box of the mesh and scaled back
+ * by the <code>positionScale</code> and <code>positionOffset</code> uniforms. Octahedral normals are two normalized
+ * shorts decoded in the vertex shader when <code>octahedralNormals</code> is set.
+ * Encoding is done on the CPU and does not require an OpenGL context.
+ */
+public enum VertexFormat {
+
+    /**
+     * 3 float position, 2 float texture coordinates, 3 float normal.
+     */
+    FLOAT(32, false, false, new int[][]{
+            // location, components, type, normalized, offset
+            {0, 3, GL_FLOAT, 0, 0},
+            {1, 2, GL_FLOAT, 0, 12},
+            {2, 3, GL_FLOAT, 0, 20}
+    }),
+
+    /**
+     * 3 float position, 2 half float texture coordinates, octahedral normal in 2 shorts.
+     */
+    COMPACT(20, false, true, new int[][]{
+            {0, 3, GL_FLOAT, 0, 0},
+            {1, 2, GL_HALF_FLOAT, 0, 12},
+            {2, 2, GL_SHORT, 1, 16}
+    }),
+
+    /**
+     * 3 unsigned short position (padded to 4 for alignment), 2 half float texture coordinates, octahedral normal in
+     * 2 shorts.
+     */
+    QUANTIZED(16, true, true, new int[][]{
+            {0, 3, GL_UNSIGNED_SHORT, 1, 0},
+            {1, 2, GL_HALF_FLOAT, 0, 8},
+            {2, 2, GL_SHORT, 1, 12}
+    });
+
+    /**
+     * Meshes with fewer vertices than this get 16 bit indices.
+     */
+    public static final int MAX_SHORT_INDEX_VERTICES = 1 << 16;
+
+    private final int bytesPerVertex;
+
+    private final boolean quantizedPositions;
+
+    private final boolean octahedralNormals;
+
+    private final int[][] attributes;
+
+    VertexFormat(int bytesPerVertex, boolean quantizedPositions, boolean octahedralNormals, int[][] attributes) {
+        this.bytesPerVertex = bytesPerVertex;
+        this.quantizedPositions = quantizedPositions;
+        this.octahedralNormals = octahedralNormals;
+        this.attributes = attributes;
+    }
+
+    public int getBytesPerVertex() {
+        return bytesPerVertex;
+    }
+
+    public boolean hasQuantizedPositions() {
+        return quantizedPositions;
+    }
+
+    public boolean hasOctahedralNormals() {
+        return octahedralNormals;
+    }
+
+    /**
+     * (location, components, GL type, normalized, byte offset) of each attribute.
+     */
+    public int[][] getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * Returns the offset (x, y, z) and scale (x, y, z) that turn stored positions back into model space.
+     * Formats with float positions need neither.
+     */
+    public float[] getDequantization(FloatBuffer positions) {
+        if (!quantizedPositions) {
+            return new float[]{0, 0, 0, 1, 1, 1};
+        }
+        float[] dequantization = new float[6];
+        for (int axis = 0; axis < 3; axis++) {
+            float min = Float.POSITIVE_INFINITY;
+            float max = Float.NEGATIVE_INFINITY;
+            for (int i = positions.position() + axis; i < positions.limit(); i += 3) {
+                min = Math.min(min, positions.get(i));
+                max = Math.max(max, positions.get(i));
+            }
+            if (min > max) {
+                min = 0;
+                max = 0;
+            }
+            dequantization[axis] = min;
+            dequantization[axis + 3] = max > min ? max - min : 1;
+        }
+        return dequantization;
+    }
+
+    /**
+     * Writes interleaved vertices into <code>dst</code>, which must hold <code>vertexCount * bytesPerVertex</code>
+     * bytes in native order from its position on.
+     *
+     * @param dequantization as returned by {@link #getDequantization(FloatBuffer)}
+     */
+    public void encodeVertices(FloatBuffer positions, FloatBuffer textCoords, FloatBuffer normals,
+                               float[] dequantization, ByteBuffer dst) {
+        int vertexCount = positions.remaining() / 3;
+        int p = positions.position();
+        int t = textCoords.position();
+        int n = normals.position();
+        int base = dst.position();
+        for (int v = 0; v < vertexCount; v++) {
+            int out = base + v * bytesPerVertex;
+            float x = positions.get(p + v * 3);
+            float y = positions.get(p + v * 3 + 1);
+            float z = positions.get(p + v * 3 + 2);
+            float u = textCoords.get(t + v * 2);
+            float w = textCoords.get(t + v * 2 + 1);
+            float nx = normals.get(n + v * 3);
+            float ny = normals.get(n + v * 3 + 1);
+            float nz = normals.get(n + v * 3 + 2);
+            switch (this) {
+                case FLOAT:
+                    dst.putFloat(out, x).putFloat(out + 4, y).putFloat(out + 8, z);
+                    dst.putFloat(out + 12, u).putFloat(out + 16, w);
+                    dst.putFloat(out + 20, nx).putFloat(out + 24, ny).putFloat(out + 28, nz);
+                    break;
+                case COMPACT:
+                    dst.putFloat(out, x).putFloat(out + 4, y).putFloat(out + 8, z);
+                    dst.putShort(out + 12, toHalf(u)).putShort(out + 14, toHalf(w));
+                    putOctahedral(dst, out + 16, nx, ny, nz);
+                    break;
+                case QUANTIZED:
+                    dst.putShort(out, toUnorm16((x - dequantization[0]) / dequantization[3]));
+                    dst.putShort(out + 2, toUnorm16((y - dequantization[1]) / dequantization[4]));
+                    dst.putShort(out + 4, toUnorm16((z - dequantization[2]) / dequantization[5]));
+                    dst.putShort(out + 6, (short) 0);
+                    dst.putShort(out + 8, toHalf(u)).putShort(out + 10, toHalf(w));
+                    putOctahedral(dst, out + 12, nx, ny, nz);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * GL_UNSIGNED_SHORT for meshes with fewer than {@link #MAX_SHORT_INDEX_VERTICES} vertices, GL_UNSIGNED_INT
+     * otherwise.
+     */
+    public static int getIndexType(int vertexCount) {
+        return vertexCount < MAX_SHORT_INDEX_VERTICES ? GL_UNSIGNED_SHORT : GL_UNSIGNED_INT;
+    }
+
+    public static int getIndexSize(int indexType) {
+        return indexType == GL_UNSIGNED_SHORT ? Short.BYTES : Integer.BYTES;
+    }
+
+    /**
+     * Writes the indices as <code>indexType</code> into <code>dst</code>, from its position on.
+     */
+    public static void encodeIndices(IntBuffer indices, int indexType, ByteBuffer dst) {
+        int base = dst.position();
+        int count = indices.remaining();
+        for (int i = 0; i < count; i++) {
+            int index = indices.get(indices.position() + i);
+            if (indexType == GL_UNSIGNED_SHORT) {
+                dst.putShort(base + i * Short.BYTES, (short) index);
+            } else {
+                dst.putInt(base + i * Integer.BYTES, index);
+            }
+        }
+    }
+
+    /**
+     * Converts to IEEE 754 half precision, rounding to nearest. Values out of range become infinity.
+     */
+    static short toHalf(float value) {
+        int bits = Float.floatToIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = ((bits >>> 23) & 0xFF) - 127 + 15;
+        int mantissa = bits & 0x7FFFFF;
+        if (exponent >= 0x1F) {
+            boolean nan = ((bits >>> 23) & 0xFF) == 0xFF && mantissa != 0;
+            return (short) (sign | 0x7C00 | (nan ? 0x200 : 0));
+        }
+        if (exponent <= 0) {
+            if (exponent < -10) {
+                return (short) sign;
+            }
+            // Subnormal half
+            mantissa |= 0x800000;
+            int shift = 14 - exponent;
+            int half = mantissa >> shift;
+            if (((mantissa >> (shift - 1)) & 1) != 0) {
+                half++;
+            }
+            return (short) (sign | half);
+        }
+        int half = sign | (exponent << 10) | (mantissa >> 13);
+        if ((mantissa & 0x1000) != 0) {
+            // May carry into the exponent, which still rounds correctly
+            half++;
+        }
+        return (short) half;
+    }
+
+    static short toUnorm16(float value) {
+        return (short) Math.round(Math.max(0, Math.min(1, value)) * 65535);
+    }
+
+    static short toSnorm16(float value) {
+        return (short) Math.round(Math.max(-1, Math.min(1, value)) * 32767);
+    }
+
+    /**
+     * Projects the normal onto an octahedron and unfolds the lower half over the corners, see Cigolle et al.,
+     * "A Survey of Efficient Representations for Independent Unit Vectors".
+     */
+    private static void putOctahedral(ByteBuffer dst, int offset, float x, float y, float z) {
+        float l1 = Math.abs(x) + Math.abs(y) + Math.abs(z);
+        if (l1 == 0) {
+            dst.putShort(offset, (short) 0).putShort(offset + 2, (short) 0);
+            return;
+        }
+        float ox = x / l1;
+        float oy = y / l1;
+        if (z < 0) {
+            float fx = (1 - Math.abs(oy)) * (ox >= 0 ? 1 : -1);
+            float fy = (1 - Math.abs(ox)) * (oy >= 0 ? 1 : -1);
+            ox = fx;
+            oy = fy;
+        }
+        dst.putShort(offset, toSnorm16(ox)).putShort(offset + 2, toSnorm16(oy));
+    }
+}
@@ -0,0 +1,555 @@
+package com.bean.engine.util;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.joml.FrustumIntersection;
+
+/**
+ * Bounding volume hierarchy over moving axis aligned boxes, after the dynamic tree of Box2D.
+ * <p>
+ * Each item is a leaf holding its exact box and a fat box grown by a margin. Moving an item within its fat box does
+ * not touch the tree. Only items that leave it are removed and reinserted, at the sibling that grows the total
+ * surface area least. Ancestors are rebalanced by rotations on the way back up, which keeps the height logarithmic.
+ * Nodes live in parallel primitive arrays and are recycled through a free list, so updates do not allocate once
+ * the tree has grown.
+ * <p>
+ * Items are identified by the proxy id returned when they are added.
+ *
+ * @param <T> the indexed items
+ */
+public class DynamicAabbTree<T> {
+
+    public static final int NULL = -1;
+
+    private static final int BOX = 6;
+
+    private final float margin;
+
+    /**
+     * Node boxes as (minX, minY, minZ, maxX, maxY, maxZ), fat for leaves.
+     */
+    private float[] boxes;
+
+    /**
+     * Exact boxes of the leaves.
+     */
+    private float[] itemBoxes;
+
+    private int[] parents;
+
+    private int[] children1;
+
+    private int[] children2;
+
+    /**
+     * Leaves have height 0, free nodes -1.
+     */
+    private int[] heights;
+
+    private Object[] items;
+
+    private int root = NULL;
+
+    private int freeList = NULL;
+
+    private int size;
+
+    private int reinserts;
+
+    private int[] stack = new int[64];
+
+    private long[] heap = new long[64];
+
+    public DynamicAabbTree(float margin) {
+        this(margin, 16);
+    }
+
+    /**
+     * @param margin distance by which leaf boxes are grown on each side
+     */
+    public DynamicAabbTree(float margin, int initialCapacity) {
+        this.margin = margin;
+        int capacity = Math.max(2, initialCapacity * 2);
+        boxes = new float[capacity * BOX];
+        itemBoxes = new float[capacity * BOX];
+        parents = new int[capacity];
+        children1 = new int[capacity];
+        children2 = new int[capacity];
+        heights = new int[capacity];
+        items = new Object[capacity];
+        freeNodes(0, capacity);
+    }
+
+    /**
+     * Adds an item with the given box and returns its proxy id.
+     */
+    public int add(T item, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        int leaf = allocateNode();
+        items[leaf] = item;
+        heights[leaf] = 0;
+        setItemBox(leaf, minX, minY, minZ, maxX, maxY, maxZ);
+        insertLeaf(leaf);
+        size++;
+        return leaf;
+    }
+
+    public void remove(int proxy) {
+        removeLeaf(proxy);
+        freeNode(proxy);
+        size--;
+    }
+
+    /**
+     * Sets the box of an item. Returns whether it left its fat box and was reinserted; otherwise only the exact box
+     * used by the queries changes.
+     */
+    public boolean move(int proxy, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        int b = proxy * BOX;
+        float[] fat = boxes;
+        if (minX >= fat[b] && minY >= fat[b + 1] && minZ >= fat[b + 2]
+                && maxX <= fat[b + 3] && maxY <= fat[b + 4] && maxZ <= fat[b + 5]) {
+            float[] box = itemBoxes;
+            box[b] = minX;
+            box[b + 1] = minY;
+            box[b + 2] = minZ;
+            box[b + 3] = maxX;
+            box[b + 4] = maxY;
+            box[b + 5] = maxZ;
+            return false;
+        }
+        removeLeaf(proxy);
+        setItemBox(proxy, minX, minY, minZ, maxX, maxY, maxZ);
+        insertLeaf(proxy);
+        reinserts++;
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(int proxy) {
+        return (T) items[proxy];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Height of the tree, 0 for a single item and -1 when empty.
+     */
+    public int getHeight() {
+        return root == NULL ? -1 : heights[root];
+    }
+
+    /**
+     * Number of moves that had to reinsert their item since the tree was created.
+     */
+    public int getReinserts() {
+        return reinserts;
+    }
+
+    /**
+     * Adds the items whose box overlaps the given box to <code>out</code>.
+     */
+    public void queryAabb(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, List<T> out) {
+        int top = push(0, root);
+        while (top > 0) {
+            int node = stack[--top];
+            if (!overlaps(boxes, node, minX, minY, minZ, maxX, maxY, maxZ)) {
+                continue;
+            }
+            if (heights[node] == 0) {
+                if (overlaps(itemBoxes, node, minX, minY, minZ, maxX, maxY, maxZ)) {
+                    out.add(get(node));
+                }
+            } else {
+                top = push(top, children1[node]);
+                top = push(top, children2[node]);
+            }
+        }
+    }
+
+    /**
+     * Adds the items whose box is within <code>radius</code> of the given point to <code>out</code>.
+     */
+    public void querySphere(float x, float y, float z, float radius, List<T> out) {
+        float radiusSquared = radius * radius;
+        int top = push(0, root);
+        while (top > 0) {
+            int node = stack[--top];
+            if (distanceSquared(boxes, node, x, y, z) > radiusSquared) {
+                continue;
+            }
+            if (heights[node] == 0) {
+                if (distanceSquared(itemBoxes, node, x, y, z) <= radiusSquared) {
+                    out.add(get(node));
+                }
+            } else {
+                top = push(top, children1[node]);
+                top = push(top, children2[node]);
+            }
+        }
+    }
+
+    /**
+     * Adds the items whose box may be inside the frustum to <code>out</code>. Subtrees entirely inside the frustum
+     * are collected without testing their nodes against the planes.
+     */
+    public void queryFrustum(FrustumIntersection frustum, List<T> out) {
+        int top = push(0, root);
+        while (top > 0) {
+            int node = stack[--top];
+            int b = node * BOX;
+            float[] box = heights[node] == 0 ? itemBoxes : boxes;
+            int result = frustum.intersectAab(box[b], box[b + 1], box[b + 2], box[b + 3], box[b + 4], box[b + 5]);
+            if (result == FrustumIntersection.INSIDE) {
+                collectLeaves(node, top, out);
+            } else if (result == FrustumIntersection.INTERSECT) {
+                if (heights[node] == 0) {
+                    out.add(get(node));
+                } else {
+                    top = push(top, children1[node]);
+                    top = push(top, children2[node]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the <code>k</code> items whose box is nearest to the given point to <code>out</code>, nearest first.
+     * <p>
+     * Nodes are visited best first, ordered by the distance to their box, which never exceeds the distance to any
+     * item below them. An item popped from the queue is therefore nearer than everything left in it.
+     */
+    public void nearest(float x, float y, float z, int k, List<T> out) {
+        if (root == NULL || k <= 0) {
+            return;
+        }
+        int heapSize = pushNearest(0, root, x, y, z);
+        int found = 0;
+        while (heapSize > 0 && found < k) {
+            int node = (int) heap[0];
+            heapSize = heapPop(heapSize);
+            if (heights[node] == 0) {
+                out.add(get(node));
+                found++;
+            } else {
+                heapSize = pushNearest(heapSize, children1[node], x, y, z);
+                heapSize = pushNearest(heapSize, children2[node], x, y, z);
+            }
+        }
+    }
+
+    /**
+     * Queues a node keyed by its squared distance in the high bits. Leaves are keyed by their exact box.
+     */
+    private int pushNearest(int heapSize, int node, float x, float y, float z) {
+        float distance = distanceSquared(heights[node] == 0 ? itemBoxes : boxes, node, x, y, z);
+        if (heapSize == heap.length) {
+            heap = Arrays.copyOf(heap, heap.length * 2);
+        }
+        // Non negative floats order like their bits
+        long key = (long) Float.floatToIntBits(distance) << 32 | node;
+        int i = heapSize;
+        while (i > 0) {
+            int parent = (i - 1) >> 1;
+            if (heap[parent] <= key) {
+                break;
+            }
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = key;
+        return heapSize + 1;
+    }
+
+    private int heapPop(int heapSize) {
+        long last = heap[--heapSize];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (heap[child] >= last) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = last;
+        return heapSize;
+    }
+
+    /**
+     * Adds every item below <code>subtree</code>, using the stack above <code>top</code>.
+     */
+    private void collectLeaves(int subtree, int base, List<T> out) {
+        int top = push(base, subtree);
+        while (top > base) {
+            int node = stack[--top];
+            if (heights[node] == 0) {
+                out.add(get(node));
+            } else {
+                top = push(top, children1[node]);
+                top = push(top, children2[node]);
+            }
+        }
+    }
+
+    private int push(int top, int node) {
+        if (node == NULL) {
+            return top;
+        }
+        if (top == stack.length) {
+            stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        stack[top] = node;
+        return top + 1;
+    }
+
+    private static boolean overlaps(float[] box, int node, float minX, float minY, float minZ,
+                                    float maxX, float maxY, float maxZ) {
+        int b = node * BOX;
+        return box[b] <= maxX && box[b + 3] >= minX
+                && box[b + 1] <= maxY && box[b + 4] >= minY
+                && box[b + 2] <= maxZ && box[b + 5] >= minZ;
+    }
+
+    private static float distanceSquared(float[] box, int node, float x, float y, float z) {
+        int b = node * BOX;
+        float dx = Math.max(0, Math.max(box[b] - x, x - box[b + 3]));
+        float dy = Math.max(0, Math.max(box[b + 1] - y, y - box[b + 4]));
+        float dz = Math.max(0, Math.max(box[b + 2] - z, z - box[b + 5]));
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    private void setItemBox(int leaf, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        int b = leaf * BOX;
+        itemBoxes[b] = minX;
+        itemBoxes[b + 1] = minY;
+        itemBoxes[b + 2] = minZ;
+        itemBoxes[b + 3] = maxX;
+        itemBoxes[b + 4] = maxY;
+        itemBoxes[b + 5] = maxZ;
+        boxes[b] = minX - margin;
+        boxes[b + 1] = minY - margin;
+        boxes[b + 2] = minZ - margin;
+        boxes[b + 3] = maxX + margin;
+        boxes[b + 4] = maxY + margin;
+        boxes[b + 5] = maxZ + margin;
+    }
+
+    /**
+     * Inserts a leaf next to the sibling that minimizes the surface area added to the tree, then refits and
+     * rebalances its ancestors.
+     */
+    private void insertLeaf(int leaf) {
+        if (root == NULL) {
+            root = leaf;
+            parents[leaf] = NULL;
+            return;
+        }
+        int b = leaf * BOX;
+        float[] box = boxes;
+        float minX = box[b], minY = box[b + 1], minZ = box[b + 2];
+        float maxX = box[b + 3], maxY = box[b + 4], maxZ = box[b + 5];
+
+        int index = root;
+        while (heights[index] > 0) {
+            int child1 = children1[index];
+            int child2 = children2[index];
+            float area = area(index);
+            float combinedArea = unionArea(index, minX, minY, minZ, maxX, maxY, maxZ);
+            // Cost of making a new parent for this node and the leaf
+            float cost = 2 * combinedArea;
+            // Minimum cost of pushing the leaf further down the tree
+            float inheritanceCost = 2 * (combinedArea - area);
+            float cost1 = descendCost(child1, minX, minY, minZ, maxX, maxY, maxZ) + inheritanceCost;
+            float cost2 = descendCost(child2, minX, minY, minZ, maxX, maxY, maxZ) + inheritanceCost;
+            if (cost < cost1 && cost < cost2) {
+                break;
+            }
+            index = cost1 < cost2 ? child1 : child2;
+        }
+
+        int sibling = index;
+        int oldParent = parents[sibling];
+        int newParent = allocateNode();
+        parents[newParent] = oldParent;
+        heights[newParent] = heights[sibling] + 1;
+        children1[newParent] = sibling;
+        children2[newParent] = leaf;
+        parents[sibling] = newParent;
+        parents[leaf] = newParent;
+        if (oldParent == NULL) {
+            root = newParent;
+        } else if (children1[oldParent] == sibling) {
+            children1[oldParent] = newParent;
+        } else {
+            children2[oldParent] = newParent;
+        }
+        refit(newParent);
+    }
+
+    private void removeLeaf(int leaf) {
+        if (leaf == root) {
+            root = NULL;
+            return;
+        }
+        int parent = parents[leaf];
+        int grandParent = parents[parent];
+        int sibling = children1[parent] == leaf ? children2[parent] : children1[parent];
+        parents[sibling] = grandParent;
+        if (grandParent == NULL) {
+            root = sibling;
+        } else {
+            if (children1[grandParent] == parent) {
+                children1[grandParent] = sibling;
+            } else {
+                children2[grandParent] = sibling;
+            }
+            refit(grandParent);
+        }
+        freeNode(parent);
+    }
+
+    /**
+     * Rebalances and recomputes the box and height of <code>node</code> and all of its ancestors.
+     */
+    private void refit(int node) {
+        while (node != NULL) {
+            node = balance(node);
+            int child1 = children1[node];
+            int child2 = children2[node];
+            heights[node] = 1 + Math.max(heights[child1], heights[child2]);
+            union(node, child1, child2);
+            node = parents[node];
+        }
+    }
+
+    /**
+     * Rotates the higher grandchild up when the children of <code>a</code> differ in height by more than one, and
+     * returns the node now at the position of <code>a</code>.
+     */
+    private int balance(int a) {
+        if (heights[a] < 2) {
+            return a;
+        }
+        int b = children1[a];
+        int c = children2[a];
+        int balance = heights[c] - heights[b];
+        if (balance > 1) {
+            rotateUp(a, c, b, true);
+            return c;
+        }
+        if (balance < -1) {
+            rotateUp(a, b, c, false);
+            return b;
+        }
+        return a;
+    }
+
+    /**
+     * Makes <code>up</code>, a child of <code>a</code>, take its place. <code>a</code> keeps <code>other</code>
+     * and adopts the lower child of <code>up</code>.
+     */
+    private void rotateUp(int a, int up, int other, boolean upIsSecond) {
+        int f = children1[up];
+        int g = children2[up];
+        int aParent = parents[a];
+        children1[up] = a;
+        parents[up] = aParent;
+        parents[a] = up;
+        if (aParent == NULL) {
+            root = up;
+        } else if (children1[aParent] == a) {
+            children1[aParent] = up;
+        } else {
+            children2[aParent] = up;
+        }
+        int higher = heights[f] > heights[g] ? f : g;
+        int lower = higher == f ? g : f;
+        children2[up] = higher;
+        if (upIsSecond) {
+            children2[a] = lower;
+        } else {
+            children1[a] = lower;
+        }
+        parents[lower] = a;
+        union(a, other, lower);
+        union(up, a, higher);
+        heights[a] = 1 + Math.max(heights[other], heights[lower]);
+        heights[up] = 1 + Math.max(heights[a], heights[higher]);
+    }
+
+    private float descendCost(int node, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        float combinedArea = unionArea(node, minX, minY, minZ, maxX, maxY, maxZ);
+        return heights[node] == 0 ? combinedArea : combinedArea - area(node);
+    }
+
+    private void union(int node, int first, int second) {
+        int n = node * BOX;
+        int f = first * BOX;
+        int s = second * BOX;
+        for (int i = 0; i < 3; i++) {
+            boxes[n + i] = Math.min(boxes[f + i], boxes[s + i]);
+            boxes[n + 3 + i] = Math.max(boxes[f + 3 + i], boxes[s + 3 + i]);
+        }
+    }
+
+    private float area(int node) {
+        int b = node * BOX;
+        return surfaceArea(boxes[b + 3] - boxes[b], boxes[b + 4] - boxes[b + 1], boxes[b + 5] - boxes[b + 2]);
+    }
+
+    private float unionArea(int node, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        int b = node * BOX;
+        return surfaceArea(Math.max(boxes[b + 3], maxX) - Math.min(boxes[b], minX),
+                Math.max(boxes[b + 4], maxY) - Math.min(boxes[b + 1], minY),
+                Math.max(boxes[b + 5], maxZ) - Math.min(boxes[b + 2], minZ));
+    }
+
+    private static float surfaceArea(float dx, float dy, float dz) {
+        return 2 * (dx * dy + dy * dz + dz * dx);
+    }
+
+    private int allocateNode() {
+        if (freeList == NULL) {
+            int oldCapacity = parents.length;
+            int capacity = oldCapacity * 2;
+            boxes = Arrays.copyOf(boxes, capacity * BOX);
+            itemBoxes = Arrays.copyOf(itemBoxes, capacity * BOX);
+            parents = Arrays.copyOf(parents, capacity);
+            children1 = Arrays.copyOf(children1, capacity);
+            children2 = Arrays.copyOf(children2, capacity);
+            heights = Arrays.copyOf(heights, capacity);
+            items = Arrays.copyOf(items, capacity);
+            freeNodes(oldCapacity, capacity);
+        }
+        int node = freeList;
+        freeList = children1[node];
+        parents[node] = NULL;
+        children1[node] = NULL;
+        children2[node] = NULL;
+        heights[node] = 0;
+        return node;
+    }
+
+    private void freeNodes(int from, int to) {
+        for (int node = to - 1; node >= from; node--) {
+            freeNode(node);
+        }
+    }
+
+    private void freeNode(int node) {
+        // Free nodes are chained through their first child
+        children1[node] = freeList;
+        heights[node] = -1;
+        items[node] = null;
+        freeList = node;
+    }
+}
@@ -0,0 +1,33 @@
+package com.bean.engine.util;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Content hashes used to detect when the source of a cached asset has changed.
+ */
+public class FileHash {
+
+    private FileHash() {
+    }
+
+    /**
+     * CRC32C of the whole file, read through memory mapping.
+     */
+    public static long crc32c(Path path) throws IOException {
+        CRC32C crc = new CRC32C();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                long length = Math.min(Integer.MAX_VALUE, size - position);
+                crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+                position += length;
+            }
+        }
+        return crc.getValue();
+    }
+}
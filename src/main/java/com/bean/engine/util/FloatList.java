@@ -0,0 +1,82 @@
+package com.bean.engine.util;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive floats, used instead of <code>List&lt;Float&gt;</code> on hot loading paths.
+ */
+public class FloatList {
+
+    private float[] elements;
+
+    private int size;
+
+    public FloatList() {
+        this(16);
+    }
+
+    public FloatList(int initialCapacity) {
+        elements = new float[Math.max(initialCapacity, 1)];
+    }
+
+    public void add(float value) {
+        if (size == elements.length) {
+            grow(size + 1);
+        }
+        elements[size++] = value;
+    }
+
+    public void addAll(float[] values, int offset, int length) {
+        ensureCapacity(size + length);
+        System.arraycopy(values, offset, elements, size, length);
+        size += length;
+    }
+
+    public float get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        return elements[index];
+    }
+
+    public void set(int index, float value) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        elements[index] = value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void ensureCapacity(int capacity) {
+        if (capacity > elements.length) {
+            grow(capacity);
+        }
+    }
+
+    /**
+     * Returns the backing array. Only the first {@link #size()} elements are valid.
+     */
+    public float[] elements() {
+        return elements;
+    }
+
+    public float[] toArray() {
+        return Arrays.copyOf(elements, size);
+    }
+
+    private void grow(int minCapacity) {
+        int newCapacity = Math.max(minCapacity, elements.length + (elements.length >> 1));
+        elements = Arrays.copyOf(elements, newCapacity);
+    }
+}
@@ -0,0 +1,99 @@
+package com.bean.engine.util;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from a triple of ints to a non negative int index, with linear probing
+ * and no boxing. Used to deduplicate (position, texture coordinate, normal) vertex references.
+ */
+public class IntTripleIndexMap {
+
+    private static final int EMPTY = -1;
+
+    private static final float MAX_LOAD_FACTOR = 0.5f;
+
+    private int[] keys;
+
+    private int[] values;
+
+    private int mask;
+
+    private int size;
+
+    public IntTripleIndexMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / MAX_LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * Returns the index mapped to (a, b, c), mapping it to <code>index</code> first if the triple is not present.
+     */
+    public int getOrPut(int a, int b, int c, int index) {
+        if (index < 0) {
+            throw new IllegalArgumentException("Index must not be negative: " + index);
+        }
+        int slot = hash(a, b, c) & mask;
+        while (true) {
+            int value = values[slot];
+            if (value == EMPTY) {
+                break;
+            }
+            int keyOffset = slot * 3;
+            if (keys[keyOffset] == a && keys[keyOffset + 1] == b && keys[keyOffset + 2] == c) {
+                return value;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        insert(slot, a, b, c, index);
+        if (++size > values.length * MAX_LOAD_FACTOR) {
+            rehash();
+        }
+        return index;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void insert(int slot, int a, int b, int c, int index) {
+        int keyOffset = slot * 3;
+        keys[keyOffset] = a;
+        keys[keyOffset + 1] = b;
+        keys[keyOffset + 2] = c;
+        values[slot] = index;
+    }
+
+    private void rehash() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(oldValues.length << 1);
+        for (int oldSlot = 0; oldSlot < oldValues.length; oldSlot++) {
+            if (oldValues[oldSlot] == EMPTY) {
+                continue;
+            }
+            int a = oldKeys[oldSlot * 3];
+            int b = oldKeys[oldSlot * 3 + 1];
+            int c = oldKeys[oldSlot * 3 + 2];
+            int slot = hash(a, b, c) & mask;
+            while (values[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            insert(slot, a, b, c, oldValues[oldSlot]);
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity * 3];
+        values = new int[capacity];
+        Arrays.fill(values, EMPTY);
+        mask = capacity - 1;
+    }
+
+    private static int hash(int a, int b, int c) {
+        int h = a * 0x9E3779B1;
+        h = (h ^ (h >>> 15) ^ b) * 0x85EBCA77;
+        h = (h ^ (h >>> 13) ^ c) * 0xC2B2AE3D;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,97 @@
+package com.bean.engine.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Lock-free handoff of reusable snapshots from one writer thread to one reader thread, which keeps the two latest.
+ * <p>
+ * Four slots rotate between the writer, a shared slot and the reader's latest and previous snapshots, so neither
+ * side ever waits or sees a slot the other is using. {@link #publish()} swaps the written slot into the shared one
+ * and {@link #receive()} swaps the reader's previous slot back for it. When the writer publishes several times
+ * before the reader receives, only the last snapshot is received. A received snapshot must not be modified.
+ */
+public class SnapshotExchange<T> {
+
+    private static final int SLOT_MASK = 3;
+
+    /**
+     * Set on the shared slot index while it holds a snapshot the reader has not received.
+     */
+    private static final int FRESH = 4;
+
+    private final Object[] slots = new Object[4];
+
+    private final AtomicInteger shared = new AtomicInteger(1);
+
+    private int writing = 0;
+
+    private int latest = 2;
+
+    private int previous = 3;
+
+    private volatile long published;
+
+    private long received;
+
+    public SnapshotExchange(Supplier<T> factory) {
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = factory.get();
+        }
+    }
+
+    /**
+     * The slot the writer fills before {@link #publish()}. It holds an older snapshot that must be overwritten.
+     */
+    @SuppressWarnings("unchecked")
+    public T getWriteSlot() {
+        return (T) slots[writing];
+    }
+
+    /**
+     * Makes the written slot available to the reader. Called by the writer thread only.
+     */
+    public void publish() {
+        writing = shared.getAndSet(writing | FRESH) & SLOT_MASK;
+        published++;
+    }
+
+    /**
+     * Takes the last published snapshot as the latest one, the latest becoming the previous one. Returns false,
+     * changing nothing, if nothing was published since the last call. Called by the reader thread only.
+     */
+    public boolean receive() {
+        if ((shared.get() & FRESH) == 0) {
+            return false;
+        }
+        int taken = shared.getAndSet(previous) & SLOT_MASK;
+        previous = latest;
+        latest = taken;
+        received++;
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T getLatest() {
+        return (T) slots[latest];
+    }
+
+    @SuppressWarnings("unchecked")
+    public T getPrevious() {
+        return (T) slots[previous];
+    }
+
+    /**
+     * Snapshots published so far, readable from any thread.
+     */
+    public long getPublished() {
+        return published;
+    }
+
+    /**
+     * Snapshots received so far, the others were replaced before the reader got to them.
+     */
+    public long getReceived() {
+        return received;
+    }
+}
@@ -1,30 +1,66 @@
 package com.bean.game;
 
+import com.bean.engine.asset.AssetCache;
+import com.bean.engine.asset.AssetLoader;
+import com.bean.engine.job.JobSystem;
+import com.bean.engine.job.TaskGraph;
 import com.bean.engine.graph.*;
+import com.bean.engine.mesh.EntityStore;
 import com.bean.engine.mesh.GameItem;
+import com.bean.engine.mesh.TransformSnapshot;
 import com.bean.engine.GameLogic;
 import com.bean.engine.MouseInput;
+import com.bean.engine.Profiler;
 import com.bean.engine.Window;
 import com.bean.engine.mesh.CubeMeshFactory;
 import com.bean.engine.mesh.Mesh;
+import com.bean.engine.util.SnapshotExchange;
 import org.joml.Math;
-import org.joml.Vector2f;
 import org.joml.Vector3f;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import static org.lwjgl.glfw.GLFW.*;
 
 public class DummyGame implements GameLogic {
 
+    private static final int ASSET_LOADER_THREADS = 2;
+    private static final long UPLOAD_BUDGET_BYTES = 4 * 1024 * 1024;
+    private static final long UPLOAD_BUDGET_NANOS = 2_000_000;
+    private static final long ASSET_CACHE_BUDGET_BYTES = 256 * 1024 * 1024;
+    private static final int BUNNY_LOD_LEVELS = 4;
+    private static final int ITEM_UPDATE_GRAIN = 1024;
+
     private int direction = 0;
     private float color = 0.0f;
 
     private final Renderer renderer;
-    private List<GameItem> gameItems = new ArrayList<>();
+    private final AssetLoader assetLoader;
+    /**
+     * The simulated items, only touched by the thread running the updates
+     */
+    private final EntityStore entities = new EntityStore();
+    private final List<GameItem> gameItems = entities.getItems();
+    /**
+     * Spawns items whose assets finished loading into the simulation, run by the next update
+     */
+    private final Queue<Runnable> spawns = new ConcurrentLinkedQueue<>();
+    private final EntityStore renderEntities = new EntityStore();
+    private final List<GameItem> renderItems = renderEntities.getItems();
+    private final Camera renderCamera = new Camera();
 
-    private final Vector3f cameraInc;
+    /**
+     * Input collected by the render thread, published to the simulation after each frame
+     */
+    private final PlayerInput collectedInput = new PlayerInput();
+    private final SnapshotExchange<PlayerInput> inputs = new SnapshotExchange<>(PlayerInput::new);
+    /**
+     * Mouse rotation of the last input record the simulation applied
+     */
+    private double appliedRotationX;
+    private double appliedRotationY;
     private final Camera camera;
 
     //temp
@@ -33,30 +69,51 @@ public class DummyGame implements GameLogic {
 
     int tick = 0;
 
+    private final JobSystem jobSystem = new JobSystem();
+    /**
+     * One tick of the simulation: the camera and the items update in parallel, then the tick advances
+     */
+    private final TaskGraph updateGraph = new TaskGraph();
+
     public DummyGame() {
-        renderer = new Renderer();
+        this(new Profiler());
+    }
+
+    public DummyGame(Profiler profiler) {
+        renderer = new Renderer(profiler);
+        assetLoader = new AssetLoader(ASSET_LOADER_THREADS, UPLOAD_BUDGET_BYTES, UPLOAD_BUDGET_NANOS,
+                new AssetCache(ASSET_CACHE_BUDGET_BYTES));
         camera = new Camera();
-        cameraInc = new Vector3f();
+
+        updateGraph.add("camera", this::updateCamera);
+        TaskGraph.Task items = updateGraph.add("items",
+                () -> jobSystem.parallelFor(gameItems.size(), ITEM_UPDATE_GRAIN, this::updateItems));
+        updateGraph.add("tick", this::advanceTick, items);
     }
 
     @Override
     public void init(Window window) throws Exception {
         renderer.init(window);
+        renderer.setRenderMode(Renderer.RenderMode.INDIRECT);
+        assetLoader.setGeometryPool(renderer.getGeometryPool());
 
-        Texture grassTexture = new Texture("src/main/resources/textures/grassblock.png");
-        Material material = new Material(grassTexture, 1f);
-
-        Mesh cubeMesh = OBJLoader.loadMesh("src/main/resources/models/cube.obj");
-        cubeMesh.setMaterial(material);
-
-        for (int i = 0; i < 100; i++) {
-            GameItem grassCube = new GameItem(cubeMesh);
-            grassCube.setPosition(Math.sin(Math.toRadians((i + 100) * 10)), (float) (i * .2), Math.sin(Math.toRadians((i + 100) * 10)));
-            grassCube.setRotation(3 * i, 3 * i, 3 * i);
-            grassCube.setScale(0.1f);
-            gameItems.add(grassCube);
-        }
+        // The material is drawn untextured until the texture upload completes
+        Material material = new Material((Texture) null, 1f);
+        assetLoader.loadTexture("src/main/resources/textures/grassblock.png").thenAccept(material::setTexture);
 
+        assetLoader.loadMesh("src/main/resources/models/cube.obj", true).thenAccept(cubeMesh -> {
+            cubeMesh.setMaterial(material);
+            cubeMesh.setOccluder(true);
+            spawns.add(() -> {
+                for (int i = 0; i < 100; i++) {
+                    GameItem grassCube = entities.create(cubeMesh);
+                    grassCube.setPosition(Math.sin(Math.toRadians((i + 100) * 10)), (float) (i * .2), Math.sin(Math.toRadians((i + 100) * 10)));
+                    grassCube.setRotation(3 * i, 3 * i, 3 * i);
+                    grassCube.setScale(0.1f);
+                    grassCube.setTint(1f, 0.5f + 0.5f * i / 100f, 1f, 1f);
+                }
+            });
+        });
 
         ambientLight = new Vector3f(0.3f, 0.3f, 0.3f);
         Vector3f lightColour = new Vector3f(1, 1, 1);
@@ -66,17 +123,19 @@ public class DummyGame implements GameLogic {
         PointLight.Attenuation att = new PointLight.Attenuation(0.0f, 0.0f, 1.0f);
         pointLight.setAttenuation(att);
 
-        Mesh bunnyMesh = OBJLoader.loadMesh("src/main/resources/models/bunny.obj");
-        bunnyMesh.setMaterial(material);
-        GameItem bunny = new GameItem(bunnyMesh);
-        bunny.setScale(1.5f);
-        bunny.setPosition(0, 0, 0);
-        gameItems.add(bunny);
-
+        assetLoader.loadMesh("src/main/resources/models/bunny.obj", true, BUNNY_LOD_LEVELS).thenAccept(bunnyMesh -> {
+            bunnyMesh.setMaterial(material);
+            spawns.add(() -> {
+                GameItem bunny = entities.create(bunnyMesh);
+                bunny.setScale(1.5f);
+                bunny.setPosition(0, 0, 0);
+            });
+        });
     }
 
     @Override
     public void input(Window window, MouseInput mouseInput) {
+        Vector3f cameraInc = collectedInput.getCameraInc();
         cameraInc.set(0, 0, 0);
         if (window.isKeyPressed(GLFW_KEY_W)) {
             cameraInc.z = -1;
@@ -103,37 +162,57 @@ public class DummyGame implements GameLogic {
         } else if (window.isKeyPressed(GLFW_KEY_M)) {
             this.pointLight.getPosition().z = lightPos - 0.1f;
         }
+
+        if (mouseInput.isRightButtonPressed()) {
+            collectedInput.addRotation(mouseInput.getDisplacementVec());
+        }
+        inputs.getWriteSlot().set(collectedInput);
+        inputs.publish();
     }
 
     @Override
     public void update(float interval, MouseInput mouseInput) {
+        for (Runnable spawn; (spawn = spawns.poll()) != null; ) {
+            spawn.run();
+        }
+        inputs.receive();
+        updateGraph.run(jobSystem);
+    }
+
+    private void updateCamera() {
+        PlayerInput input = inputs.getLatest();
         // Update camera position
         float CAMERA_POS_STEP = 0.1f;
+        Vector3f cameraInc = input.getCameraInc();
         camera.movePosition(cameraInc.x * CAMERA_POS_STEP,
                 cameraInc.y * CAMERA_POS_STEP,
                 cameraInc.z * CAMERA_POS_STEP);
 
-        // Update camera based on mouse
+        // Update camera based on the mouse moves of the frames since the last tick
         float MOUSE_SENSITIVITY = 0.4f;
+        float rotationX = (float) (input.getRotationX() - appliedRotationX);
+        float rotationY = (float) (input.getRotationY() - appliedRotationY);
+        appliedRotationX = input.getRotationX();
+        appliedRotationY = input.getRotationY();
+        camera.moveRotation(rotationX * MOUSE_SENSITIVITY, rotationY * MOUSE_SENSITIVITY, 0);
+    }
 
-        if (mouseInput.isRightButtonPressed()) {
-            Vector2f rotVec = mouseInput.getDisplacementVec();
-            camera.moveRotation(rotVec.x * MOUSE_SENSITIVITY, rotVec.y * MOUSE_SENSITIVITY, 0);
-        }
-
-
-        //gameItems.forEach(item -> item.setRotation(item.getRotation().add(new Vector3f(1.5f))));
-
-        int tixMax = gameItems.size();
-        gameItems.forEach(item -> {
-            if (tick == gameItems.indexOf(item)) {
+    /**
+     * Updates the items of one range, each only from its own state and index so ranges can run in parallel.
+     */
+    private void updateItems(int from, int to) {
+        for (int i = from; i < to; i++) {
+            GameItem item = gameItems.get(i);
+            if (tick == i) {
                 item.setScale(item.getScale() * 10);
             } else {
                 item.setScale(.1f);
             }
-        });
+        }
+    }
 
-        if (tick > tixMax) {
+    private void advanceTick() {
+        if (tick > gameItems.size()) {
             tick = 0;
         }
 
@@ -142,12 +221,52 @@ public class DummyGame implements GameLogic {
 
     @Override
     public void render(Window window) {
+        render(window, camera, gameItems);
+    }
+
+    @Override
+    public void writeSnapshot(TransformSnapshot snapshot) {
+        snapshot.capture(entities, camera);
+    }
+
+    @Override
+    public void render(Window window, TransformSnapshot previous, TransformSnapshot latest, float alpha) {
+        latest.interpolate(previous, alpha, renderEntities, renderCamera);
+        render(window, renderCamera, renderItems);
+    }
+
+    private void render(Window window, Camera camera, List<GameItem> items) {
+        assetLoader.processUploads();
         window.setClearColor(color, color, color, 0.0f);
-        renderer.render(window, camera, gameItems, ambientLight, pointLight);
+        renderer.render(window, camera, items, ambientLight, pointLight);
     }
 
     @Override
     public void cleanup() {
+        System.out.println(assetLoader.getCache());
+        System.out.println("Triangles last frame: " + renderer.getLastFrameTriangles() + " of "
+                + renderer.getLastFrameFullDetailTriangles() + " at full detail, in "
+                + renderer.getLastFrameDrawCalls() + " draw calls, " + renderer.getLastFrameVaoBinds()
+                + " VAO binds and " + renderer.getLastFrameStateChanges()
+                + " state changes, " + renderer.getLastFrameUniformCalls() + " uniform calls ("
+                + renderer.getLastFrameSkippedUniformCalls() + " skipped) and "
+                + renderer.getLastFrameUniformBufferUploads() + " uniform buffer uploads");
+        System.out.println("Items last frame: " + renderer.getLastFrameVisibleItems() + " visible, "
+                + renderer.getLastFrameCulledItems() + " culled, " + renderer.getLastFrameOccludedItems()
+                + " occluded");
+        OcclusionCuller occlusionCuller = renderer.getOcclusionCuller();
+        System.out.println(String.format("Occlusion culling: %d occluders, %d triangles, %.3f ms rasterizing, "
+                        + "%.3f ms testing", occlusionCuller.getLastOccluders(),
+                occlusionCuller.getLastOccluderTriangles(), occlusionCuller.getLastRasterNanos() / 1e6,
+                occlusionCuller.getLastTestNanos() / 1e6));
+        GeometryPool geometryPool = renderer.getGeometryPool();
+        System.out.println(String.format("Geometry pool: %d meshes, %d vertices, %d indices, %d compactions",
+                geometryPool.getMeshCount(), geometryPool.getVertexCapacity(), geometryPool.getIndexCapacity(),
+                geometryPool.getCompactions()));
+        System.out.println("Stream buffer: " + renderer.getStreamStalls() + " stalls, "
+                + renderer.getStreamWraps() + " wraps");
+        assetLoader.cleanup();
         renderer.cleanup();
+        jobSystem.shutdown();
     }
 }
@@ -1,15 +1,23 @@
 package com.bean.game;
 
+import java.nio.file.Path;
+
 import com.bean.engine.GameEngine;
 import com.bean.engine.GameLogic;
+import com.bean.engine.Profiler;
 
 public class Main {
     public static void main(String[] args) {
         try {
             boolean vSync = true;
-            GameLogic gameLogic = new DummyGame();
+            boolean simulationThreaded = false;
+            Profiler profiler = new Profiler();
+            // Log the average pass times every 10 seconds, pass a path to also append them to a CSV file
+            profiler.setReport(10, args.length > 0 ? Path.of(args[0]) : null);
+            GameLogic gameLogic = new DummyGame(profiler);
             GameEngine gameEng = new GameEngine("GAME",
-                    600, 480, vSync, gameLogic);
+                    600, 480, vSync, gameLogic, profiler);
+            gameEng.setSimulationThreaded(simulationThreaded);
             gameEng.start();
         } catch (Exception excp) {
             excp.printStackTrace();
@@ -0,0 +1,47 @@
+package com.bean.game;
+
+import org.joml.Vector2f;
+import org.joml.Vector3f;
+
+/**
+ * Input of the player collected on the render thread for the simulation: the camera moves held down and the mouse
+ * rotation summed over every frame so far. A tick applies the rotation added since the record it applied last, so
+ * each frame's rotation is applied exactly once whatever the frame and tick rates.
+ */
+class PlayerInput {
+
+    /**
+     * Camera move asked for, -1, 0 or 1 on each axis.
+     */
+    private final Vector3f cameraInc = new Vector3f();
+
+    private double rotationX;
+
+    private double rotationY;
+
+    public Vector3f getCameraInc() {
+        return cameraInc;
+    }
+
+    /**
+     * Adds the rotation of a frame, in mouse displacement units.
+     */
+    public void addRotation(Vector2f displacement) {
+        rotationX += displacement.x;
+        rotationY += displacement.y;
+    }
+
+    public double getRotationX() {
+        return rotationX;
+    }
+
+    public double getRotationY() {
+        return rotationY;
+    }
+
+    public void set(PlayerInput input) {
+        cameraInc.set(input.cameraInc);
+        rotationX = input.rotationX;
+        rotationY = input.rotationY;
+    }
+}
@@ -1,24 +1,51 @@
 package com.bean.game;
 
+import com.bean.engine.graph.FrustumCuller;
+import com.bean.engine.graph.GeometryPool;
+import com.bean.engine.graph.InstanceBuffer;
+import com.bean.engine.graph.Material;
+import com.bean.engine.graph.MaterialBuffer;
+import com.bean.engine.graph.OcclusionCuller;
 import com.bean.engine.graph.PointLight;
+import com.bean.engine.graph.RenderQueue;
+import com.bean.engine.graph.StreamBuffer;
+import com.bean.engine.graph.Texture;
+import com.bean.engine.graph.Uniform;
+import com.bean.engine.graph.UniformBlocks;
+import com.bean.engine.graph.UniformBuffer;
+import com.bean.engine.mesh.Bounds;
 import com.bean.engine.mesh.GameItem;
+import com.bean.engine.mesh.GameItemIndex;
 import com.bean.engine.graph.Camera;
 import com.bean.engine.graph.ShaderProgram;
+import com.bean.engine.Profiler;
 import com.bean.engine.Window;
 import com.bean.engine.graph.Transformation;
+import com.bean.engine.mesh.LodSelector;
 import com.bean.engine.mesh.Mesh;
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
-import org.joml.Vector4f;
+import org.joml.Vector4fc;
+import org.lwjgl.opengl.GL;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL13.GL_TEXTURE0;
+import static org.lwjgl.opengl.GL13.glActiveTexture;
+import static org.lwjgl.opengl.GL20.glVertexAttrib4f;
 import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL40.GL_DRAW_INDIRECT_BUFFER;
+import static org.lwjgl.opengl.GL43.glMultiDrawElementsIndirect;
 
 public class Renderer {
 
@@ -28,11 +55,157 @@ public class Renderer {
     private static final float FOV = (float) Math.toRadians(60.0f);
     private static final float Z_NEAR = 0.01f;
     private static final float Z_FAR = 1000.f;
+    private static final int INITIAL_INSTANCE_CAPACITY = 1024;
+    private static final int STREAM_FRAME_BYTES = 4 * 1024 * 1024;
+    private static final int POOL_VERTEX_CAPACITY = 256 * 1024;
+    private static final int POOL_INDEX_CAPACITY = 1024 * 1024;
+    /**
+     * count, instanceCount, firstIndex, baseVertex, baseInstance
+     */
+    private static final int DRAW_COMMAND_BYTES = 5 * Integer.BYTES;
 
     private float specularPower = 10f;
 
+    private final LodSelector lodSelector = new LodSelector();
+
+    private boolean lodEnabled = true;
+
+    private final Vector3f viewPosition = new Vector3f();
+
+    private final FrustumCuller frustumCuller = new FrustumCuller();
+
+    private boolean frustumCullingEnabled = true;
+
+    private final List<GameItem> visibleItems = new ArrayList<>();
+
+    /**
+     * Items of the index when it is drawn without frustum culling
+     */
+    private final List<GameItem> indexedItems = new ArrayList<>();
+
+    private static final int OCCLUSION_BUFFER_WIDTH = 256;
+
+    private static final int OCCLUSION_BUFFER_HEIGHT = 128;
+
+    private final OcclusionCuller occlusionCuller = new OcclusionCuller(OCCLUSION_BUFFER_WIDTH,
+            OCCLUSION_BUFFER_HEIGHT, Runtime.getRuntime().availableProcessors());
+
+    private boolean occlusionCullingEnabled = true;
+
+    private final List<GameItem> unoccludedItems = new ArrayList<>();
+
+    private Uniform.Mat4 modelViewMatrixUniform;
+
+    private Uniform.Int materialIndexUniform;
+
+    private Uniform.Int instancedUniform;
+
+    private Uniform.Int textureSamplerUniform;
+
+    private Uniform.Vec3 positionScaleUniform;
+
+    private Uniform.Vec3 positionOffsetUniform;
+
+    private Uniform.Int octahedralNormalsUniform;
+
+    /**
+     * How items are submitted to OpenGL.
+     */
+    public enum RenderMode {
+        /**
+         * One draw call per item, in list order, with all of its state set each time.
+         */
+        IMMEDIATE,
+        /**
+         * One instanced draw call per mesh.
+         */
+        INSTANCED,
+        /**
+         * One draw call per item, sorted by {@link RenderQueue} keys so that state only changes when needed.
+         * Opaque items are drawn front to back, transparent items back to front.
+         */
+        SORTED,
+        /**
+         * Meshes of the {@link GeometryPool} drawn under its single vertex array, with one multi-draw indirect
+         * call per texture. Without OpenGL 4.3 each mesh gets an instanced base vertex draw instead. Other meshes
+         * are drawn as in {@link #INSTANCED}.
+         */
+        INDIRECT
+    }
+
+    private RenderMode renderMode = RenderMode.INSTANCED;
+
+    private final RenderQueue renderQueue = new RenderQueue(INITIAL_INSTANCE_CAPACITY);
+
+    private final List<Mesh> queuedMeshes = new ArrayList<>();
+
+    private int lastFrameStateChanges;
+
+    private UniformBuffer cameraBuffer;
+
+    private UniformBuffer lightsBuffer;
+
+    private MaterialBuffer materialBuffer;
+
+    private final Vector3f viewLightPosition = new Vector3f();
+
+    private int lastFrameUniformCalls;
+
+    private int lastFrameSkippedUniformCalls;
+
+    private int lastFrameUniformBufferUploads;
+
+    private StreamBuffer streamBuffer;
+
+    private InstanceBuffer instanceBuffer;
+
+    private final Map<Mesh, List<GameItem>> instanceGroups = new LinkedHashMap<>();
+
+    /**
+     * Meshes of <code>instanceGroups</code> in drawing order: pooled meshes first, grouped by texture.
+     */
+    private final List<Mesh> instanceMeshes = new ArrayList<>();
+
+    private final Comparator<Mesh> instanceOrder = Comparator
+            .comparingInt((Mesh mesh) -> mesh.getPoolAllocation() != null ? 0 : 1)
+            .thenComparingInt(Renderer::getTextureId);
+
+    private GeometryPool geometryPool;
+
+    private boolean multiDrawIndirect;
+
+    private int lastFrameVaoBinds;
+
+    private int lastFrameDrawCalls;
+
+    private int lastFrameVisibleItems;
+
+    private int lastFrameCulledItems;
+
+    private int lastFrameOccludedItems;
+
+    private int lastFrameTriangles;
+
+    private int lastFrameFullDetailTriangles;
+
+    private final Profiler.Scope renderScope;
+
+    private final Profiler.Scope cullScope;
+
+    private final Profiler.Scope occlusionScope;
+
     public Renderer() {
+        this(new Profiler());
+    }
+
+    /**
+     * @param profiler profiler the CPU and GPU time of the render pass and of culling are recorded in
+     */
+    public Renderer(Profiler profiler) {
         transformation = new Transformation();
+        renderScope = profiler.gpuScope("renderer");
+        cullScope = profiler.scope("cull");
+        occlusionScope = profiler.scope("occlusion");
     }
 
     public void init(Window window) throws Exception {
@@ -41,23 +214,55 @@ public class Renderer {
         shaderProgram.createFragmentShader(loadResource("src/main/resources/shaders/fragment.shader"));
         shaderProgram.link();
 
-        shaderProgram.createUniform("projectionMatrix");
-        shaderProgram.createUniform("modelViewMatrix");
-        shaderProgram.createUniform("texture_sampler");
+        // Per frame, light and material data live in uniform blocks
+        shaderProgram.bindUniformBlock(UniformBlocks.CAMERA_BLOCK, UniformBlocks.CAMERA_BINDING);
+        shaderProgram.bindUniformBlock(UniformBlocks.LIGHTS_BLOCK, UniformBlocks.LIGHTS_BINDING);
+        shaderProgram.bindUniformBlock(UniformBlocks.MATERIALS_BLOCK, UniformBlocks.MATERIALS_BINDING);
+        cameraBuffer = new UniformBuffer(UniformBlocks.CAMERA_BINDING, UniformBlocks.CAMERA_SIZE);
+        lightsBuffer = new UniformBuffer(UniformBlocks.LIGHTS_BINDING, UniformBlocks.LIGHTS_SIZE);
+        materialBuffer = new MaterialBuffer();
+
+        modelViewMatrixUniform = shaderProgram.createMat4Uniform("modelViewMatrix");
+        materialIndexUniform = shaderProgram.createIntUniform("materialIndex");
+        instancedUniform = shaderProgram.createIntUniform("instanced");
+        textureSamplerUniform = shaderProgram.createIntUniform("texture_sampler");
+        positionScaleUniform = shaderProgram.createVec3Uniform("positionScale");
+        positionOffsetUniform = shaderProgram.createVec3Uniform("positionOffset");
+        octahedralNormalsUniform = shaderProgram.createIntUniform("octahedralNormals");
 //        shaderProgram.createUniform("colour");
 //        shaderProgram.createUniform("useColour");
-        // Create uniform for material
-        shaderProgram.createMaterialUniform("material");
-        // Create lighting related uniforms
-        shaderProgram.createUniform("specularPower");
-        shaderProgram.createUniform("ambientLight");
-        shaderProgram.createPointLightUniform("pointLight");
+
+        shaderProgram.bind();
+        textureSamplerUniform.set(0);
+        shaderProgram.unbind();
+
+        streamBuffer = new StreamBuffer(STREAM_FRAME_BYTES);
+        geometryPool = new GeometryPool(POOL_VERTEX_CAPACITY, POOL_INDEX_CAPACITY);
+        multiDrawIndirect = GL.getCapabilities().OpenGL43;
+        instanceBuffer = new InstanceBuffer(streamBuffer);
 
         window.setClearColor(0.0f, 0.0f, 0.0f, 0.0f);
     }
 
     public void render(Window window, Camera camera, List<GameItem> gameItems, Vector3f ambientLight,
                        PointLight pointLight) {
+        render(window, camera, gameItems, null, ambientLight, pointLight);
+    }
+
+    /**
+     * Draws the items held by the index, culling them through its tree rather than testing every item. The index
+     * must be up to date. It pays off when most items are out of view and few of them move; the tree query is
+     * slower than the linear scan when most items are visible.
+     */
+    public void render(Window window, Camera camera, GameItemIndex index, Vector3f ambientLight,
+                       PointLight pointLight) {
+        render(window, camera, null, index, ambientLight, pointLight);
+    }
+
+    private void render(Window window, Camera camera, List<GameItem> gameItems, GameItemIndex index,
+                        Vector3f ambientLight, PointLight pointLight) {
+        renderScope.begin();
+        materialBuffer.nextFrame();
         clear();
 
         if (window.isResized()) {
@@ -67,49 +272,535 @@ public class Renderer {
 
         shaderProgram.bind();
 
+        int uniformCallsBefore = shaderProgram.getUniformCalls();
+        int skippedUniformCallsBefore = shaderProgram.getSkippedUniformCalls();
+        int bufferUploadsBefore = getUniformBufferUploads();
+
         Matrix4f projectionMatrix = transformation.getProjectionMatrix(FOV, window.getWidth(), window.getHeight(), Z_NEAR, Z_FAR);
-        shaderProgram.setUniform("projectionMatrix", projectionMatrix);
+        Matrix4f viewMatrix = transformation.getViewMatrix(camera); // Update view Matrix
+        UniformBlocks.writeCamera(cameraBuffer.getData(), projectionMatrix, viewMatrix);
+        cameraBuffer.upload();
 
-        shaderProgram.setUniform("texture_sampler", 0);
+        // Transform the light position to view coordinates
+        viewMatrix.transformPosition(pointLight.getPosition(), viewLightPosition);
+        UniformBlocks.writeLights(lightsBuffer.getData(), ambientLight, specularPower, pointLight, viewLightPosition);
+        lightsBuffer.upload();
 
-        Matrix4f viewMatrix = transformation.getViewMatrix(camera); // Update view Matrix
+        List<GameItem> renderedItems = gameItems;
+        int itemCount = index != null ? index.size() : gameItems.size();
+        if (frustumCullingEnabled) {
+            cullScope.begin();
+            frustumCuller.update(projectionMatrix, viewMatrix);
+            if (index != null) {
+                frustumCuller.cull(index, visibleItems);
+            } else {
+                frustumCuller.cull(gameItems, visibleItems);
+            }
+            renderedItems = visibleItems;
+            cullScope.end();
+        } else if (index != null) {
+            indexedItems.clear();
+            index.getItems(indexedItems);
+            renderedItems = indexedItems;
+        }
+        lastFrameVisibleItems = renderedItems.size();
+        lastFrameCulledItems = itemCount - renderedItems.size();
+        lastFrameOccludedItems = 0;
+        if (occlusionCullingEnabled) {
+            occlusionScope.begin();
+            occlusionCuller.begin(projectionMatrix, viewMatrix);
+            occlusionCuller.cull(renderedItems, unoccludedItems);
+            lastFrameOccludedItems = occlusionCuller.getLastOccluded();
+            renderedItems = unoccludedItems;
+            occlusionScope.end();
+        }
 
+        switch (renderMode) {
+            case IMMEDIATE:
+                renderItems(renderedItems, viewMatrix);
+                break;
+            case INSTANCED:
+                renderInstanced(renderedItems, viewMatrix);
+                break;
+            case SORTED:
+                renderSorted(renderedItems, viewMatrix);
+                break;
+            case INDIRECT:
+                renderIndirect(renderedItems, viewMatrix);
+                break;
+        }
+        lastFrameUniformCalls = shaderProgram.getUniformCalls() - uniformCallsBefore;
+        lastFrameSkippedUniformCalls = shaderProgram.getSkippedUniformCalls() - skippedUniformCallsBefore;
+        lastFrameUniformBufferUploads = getUniformBufferUploads() - bufferUploadsBefore;
 
-        // Update Light Uniforms
-        shaderProgram.setUniform("ambientLight", ambientLight);
-        shaderProgram.setUniform("specularPower", specularPower);
-        // Get a copy of the light object and transform its position to view coordinates
-        PointLight currPointLight = new PointLight(pointLight);
-        Vector3f lightPos = currPointLight.getPosition();
-        Vector4f aux = new Vector4f(lightPos, 1);
-        aux.mul(viewMatrix);
-        lightPos.x = aux.x;
-        lightPos.y = aux.y;
-        lightPos.z = aux.z;
-        shaderProgram.setUniform("pointLight", currPointLight);
+        // Restore state
+        glDisableVertexAttribArray(0);
+        glBindVertexArray(0);
 
+        shaderProgram.unbind();
+        streamBuffer.endFrame();
+        renderScope.end();
+    }
 
+    /**
+     * Draws every item with its own uniforms and draw call.
+     */
+    private void renderItems(List<GameItem> gameItems, Matrix4f viewMatrix) {
+        int triangles = 0;
+        int fullDetailTriangles = 0;
         for (GameItem gameItem : gameItems) {
-            Mesh mesh = gameItem.getMesh();
+            Mesh mesh = selectLod(gameItem, viewMatrix);
+            triangles += mesh.getTriangleCount();
+            fullDetailTriangles += gameItem.getMesh().getTriangleCount();
             Matrix4f modelViewMatrix = transformation.getModelViewMatrix(gameItem, viewMatrix);
-            shaderProgram.setUniform("modelViewMatrix", modelViewMatrix);
+            modelViewMatrixUniform.set(modelViewMatrix);
 //            shaderProgram.setUniform("colour", mesh.getColour());
 //            shaderProgram.setUniform("useColour", mesh.isTextured() ? 0 : 1);
-            shaderProgram.setUniform("material", mesh.getMaterial());
-            gameItem.getMesh().render();
+            materialIndexUniform.set(materialBuffer.getIndex(mesh.getMaterial()));
+            setVertexFormatUniforms(mesh);
+            Vector4fc tint = gameItem.getTint();
+            glVertexAttrib4f(InstanceBuffer.TINT_LOCATION, tint.x(), tint.y(), tint.z(), tint.w());
+            mesh.render();
         }
+        lastFrameTriangles = triangles;
+        lastFrameFullDetailTriangles = fullDetailTriangles;
+        lastFrameDrawCalls = gameItems.size();
+        lastFrameVaoBinds = gameItems.size();
+        // Material, texture and vertex array are set for every item
+        lastFrameStateChanges = gameItems.size() * 3;
+    }
 
-        // Restore state
-        glDisableVertexAttribArray(0);
+    /**
+     * Queues every item with a sort key of its pass, shader, material, texture, mesh and depth, then draws the
+     * sorted queue setting each piece of state only when it differs from the previous item.
+     */
+    private void renderSorted(List<GameItem> gameItems, Matrix4f viewMatrix) {
+        renderQueue.clear();
+        queuedMeshes.clear();
+        int triangles = 0;
+        int fullDetailTriangles = 0;
+        int shaderId = shaderProgram.getProgramId();
+        for (int i = 0; i < gameItems.size(); i++) {
+            GameItem gameItem = gameItems.get(i);
+            Mesh mesh = selectLod(gameItem, viewMatrix);
+            queuedMeshes.add(mesh);
+            triangles += mesh.getTriangleCount();
+            fullDetailTriangles += gameItem.getMesh().getTriangleCount();
+
+            Material material = mesh.getMaterial();
+            Texture texture = material.getTexture();
+            int textureId = texture != null ? texture.getId() : 0;
+            float depth = -viewMatrix.transformPosition(gameItem.getPosition(), viewPosition).z / Z_FAR;
+            boolean transparent = material.isTransparent() || gameItem.getTint().w() < 1;
+            long key = transparent
+                    ? RenderQueue.transparentKey(shaderId, material.getId(), textureId, mesh.getVaoId(), depth)
+                    : RenderQueue.opaqueKey(shaderId, material.getId(), textureId, mesh.getVaoId(), depth);
+            renderQueue.add(key, i);
+        }
+        renderQueue.sort();
+
+        int stateChanges = 0;
+        int currentPass = -1;
+        Material currentMaterial = null;
+        Texture currentTexture = null;
+        Mesh currentMesh = null;
+        int currentVao = 0;
+        int vaoBinds = 0;
+        for (int q = 0; q < renderQueue.size(); q++) {
+            int item = renderQueue.getItem(q);
+            GameItem gameItem = gameItems.get(item);
+            Mesh mesh = queuedMeshes.get(item);
+            Material material = mesh.getMaterial();
+
+            int pass = RenderQueue.getPass(renderQueue.getKey(q));
+            if (pass != currentPass) {
+                setPassState(pass);
+                currentPass = pass;
+                stateChanges++;
+            }
+            if (material != currentMaterial) {
+                materialIndexUniform.set(materialBuffer.getIndex(material));
+                currentMaterial = material;
+                stateChanges++;
+            }
+            Texture texture = material.getTexture();
+            if (q == 0 || texture != currentTexture) {
+                glActiveTexture(GL_TEXTURE0);
+                glBindTexture(GL_TEXTURE_2D, texture != null ? texture.getId() : 0);
+                currentTexture = texture;
+                stateChanges++;
+            }
+            if (mesh != currentMesh) {
+                // Pooled meshes share their vertex array
+                if (mesh.getVaoId() != currentVao) {
+                    mesh.bind();
+                    currentVao = mesh.getVaoId();
+                    vaoBinds++;
+                }
+                setVertexFormatUniforms(mesh);
+                currentMesh = mesh;
+                stateChanges++;
+            }
+
+            modelViewMatrixUniform.set(transformation.getModelViewMatrix(gameItem, viewMatrix));
+            Vector4fc tint = gameItem.getTint();
+            glVertexAttrib4f(InstanceBuffer.TINT_LOCATION, tint.x(), tint.y(), tint.z(), tint.w());
+            mesh.draw();
+        }
+        if (currentPass != RenderQueue.PASS_OPAQUE) {
+            setPassState(RenderQueue.PASS_OPAQUE);
+        }
         glBindVertexArray(0);
+        glBindTexture(GL_TEXTURE_2D, 0);
 
-        shaderProgram.unbind();
+        lastFrameTriangles = triangles;
+        lastFrameFullDetailTriangles = fullDetailTriangles;
+        lastFrameDrawCalls = renderQueue.size();
+        lastFrameVaoBinds = vaoBinds;
+        lastFrameStateChanges = stateChanges;
+    }
+
+    private void setPassState(int pass) {
+        if (pass == RenderQueue.PASS_TRANSPARENT) {
+            glEnable(GL_BLEND);
+            glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
+            // Transparent surfaces are depth tested but do not hide what is drawn behind them later
+            glDepthMask(false);
+        } else {
+            glDisable(GL_BLEND);
+            glDepthMask(true);
+        }
+    }
+
+    /**
+     * Groups the items by mesh, and so by material, and draws each group with a single instanced draw call.
+     * The model matrices, tints and material indices of all groups are uploaded to the instance buffer at once.
+     */
+    private void renderInstanced(List<GameItem> gameItems, Matrix4f viewMatrix) {
+        prepareInstances(gameItems, viewMatrix);
+        instancedUniform.set(1);
+        int firstInstance = 0;
+        for (Mesh mesh : instanceMeshes) {
+            int instanceCount = instanceGroups.get(mesh).size();
+            setVertexFormatUniforms(mesh);
+            mesh.renderInstanced(instanceBuffer, firstInstance, instanceCount);
+            firstInstance += instanceCount;
+        }
+        instancedUniform.set(0);
+
+        lastFrameDrawCalls = instanceMeshes.size();
+        lastFrameVaoBinds = instanceMeshes.size();
+        lastFrameStateChanges = instanceMeshes.size() * 2;
+    }
+
+    /**
+     * Draws the pooled meshes under the vertex array of the geometry pool, building one indirect draw command per
+     * mesh whose base instance points at its instances. Commands are submitted with one multi-draw per texture.
+     */
+    private void renderIndirect(List<GameItem> gameItems, Matrix4f viewMatrix) {
+        prepareInstances(gameItems, viewMatrix);
+        int pooledCount = 0;
+        while (pooledCount < instanceMeshes.size() && instanceMeshes.get(pooledCount).getPoolAllocation() != null) {
+            pooledCount++;
+        }
+
+        instancedUniform.set(1);
+        int drawCalls = 0;
+        int vaoBinds = 0;
+        int stateChanges = 0;
+        int firstInstance = 0;
+        if (pooledCount > 0) {
+            glBindVertexArray(geometryPool.getVaoId());
+            vaoBinds++;
+            setVertexFormatUniforms(instanceMeshes.get(0));
+            if (multiDrawIndirect) {
+                int commandOffset = streamBuffer.allocate(pooledCount * DRAW_COMMAND_BYTES, Integer.BYTES);
+                ByteBuffer commands = streamBuffer.getData();
+                for (int i = 0; i < pooledCount; i++) {
+                    Mesh mesh = instanceMeshes.get(i);
+                    GeometryPool.Allocation allocation = mesh.getPoolAllocation();
+                    int instanceCount = instanceGroups.get(mesh).size();
+                    int command = commandOffset + i * DRAW_COMMAND_BYTES;
+                    commands.putInt(command, allocation.getIndexCount())
+                            .putInt(command + 4, instanceCount)
+                            .putInt(command + 8, allocation.getFirstIndex())
+                            .putInt(command + 12, allocation.getBaseVertex())
+                            .putInt(command + 16, firstInstance);
+                    firstInstance += instanceCount;
+                }
+                streamBuffer.flush();
+
+                instanceBuffer.bind(0);
+                glBindBuffer(GL_DRAW_INDIRECT_BUFFER, streamBuffer.getBufferId());
+                int runStart = 0;
+                while (runStart < pooledCount) {
+                    int textureId = getTextureId(instanceMeshes.get(runStart));
+                    int runEnd = runStart + 1;
+                    while (runEnd < pooledCount && getTextureId(instanceMeshes.get(runEnd)) == textureId) {
+                        runEnd++;
+                    }
+                    glBindTexture(GL_TEXTURE_2D, textureId);
+                    glMultiDrawElementsIndirect(GL_TRIANGLES, GeometryPool.INDEX_TYPE,
+                            commandOffset + (long) runStart * DRAW_COMMAND_BYTES, runEnd - runStart, 0);
+                    drawCalls++;
+                    stateChanges++;
+                    runStart = runEnd;
+                }
+                glBindBuffer(GL_DRAW_INDIRECT_BUFFER, 0);
+            } else {
+                int currentTexture = -1;
+                for (int i = 0; i < pooledCount; i++) {
+                    Mesh mesh = instanceMeshes.get(i);
+                    int instanceCount = instanceGroups.get(mesh).size();
+                    if (getTextureId(mesh) != currentTexture) {
+                        currentTexture = getTextureId(mesh);
+                        glBindTexture(GL_TEXTURE_2D, currentTexture);
+                        stateChanges++;
+                    }
+                    instanceBuffer.bind(firstInstance);
+                    mesh.drawInstanced(instanceCount);
+                    drawCalls++;
+                    firstInstance += instanceCount;
+                }
+            }
+            instanceBuffer.unbind();
+            glBindVertexArray(0);
+            glBindTexture(GL_TEXTURE_2D, 0);
+        }
+        for (int i = pooledCount; i < instanceMeshes.size(); i++) {
+            Mesh mesh = instanceMeshes.get(i);
+            int instanceCount = instanceGroups.get(mesh).size();
+            setVertexFormatUniforms(mesh);
+            mesh.renderInstanced(instanceBuffer, firstInstance, instanceCount);
+            firstInstance += instanceCount;
+            drawCalls++;
+            vaoBinds++;
+            stateChanges += 2;
+        }
+        instancedUniform.set(0);
+
+        lastFrameDrawCalls = drawCalls;
+        lastFrameVaoBinds = vaoBinds;
+        lastFrameStateChanges = stateChanges + vaoBinds;
+    }
+
+    /**
+     * Groups the items by the LOD mesh they are drawn with, orders the groups by {@link #instanceOrder} and writes
+     * the instances of all groups, in that order, to the instance buffer.
+     */
+    private void prepareInstances(List<GameItem> gameItems, Matrix4f viewMatrix) {
+        for (List<GameItem> group : instanceGroups.values()) {
+            group.clear();
+        }
+        int triangles = 0;
+        int fullDetailTriangles = 0;
+        for (GameItem gameItem : gameItems) {
+            Mesh mesh = selectLod(gameItem, viewMatrix);
+            triangles += mesh.getTriangleCount();
+            fullDetailTriangles += gameItem.getMesh().getTriangleCount();
+            instanceGroups.computeIfAbsent(mesh, key -> new ArrayList<>()).add(gameItem);
+        }
+        // Forget meshes that were not drawn this frame, they may have been destroyed
+        instanceGroups.values().removeIf(List::isEmpty);
+        instanceMeshes.clear();
+        instanceMeshes.addAll(instanceGroups.keySet());
+        instanceMeshes.sort(instanceOrder);
+
+        instanceBuffer.begin(gameItems.size());
+        for (Mesh mesh : instanceMeshes) {
+            int materialIndex = materialBuffer.getIndex(mesh.getMaterial());
+            for (GameItem gameItem : instanceGroups.get(mesh)) {
+                instanceBuffer.put(transformation.getModelMatrix(gameItem), gameItem.getTint(), materialIndex);
+            }
+        }
+        instanceBuffer.upload();
+
+        lastFrameTriangles = triangles;
+        lastFrameFullDetailTriangles = fullDetailTriangles;
+    }
+
+    private static int getTextureId(Mesh mesh) {
+        Texture texture = mesh.getMaterial().getTexture();
+        return texture != null ? texture.getId() : 0;
+    }
+
+    private void setVertexFormatUniforms(Mesh mesh) {
+        float[] dequantization = mesh.getDequantization();
+        positionOffsetUniform.set(dequantization[0], dequantization[1], dequantization[2]);
+        positionScaleUniform.set(dequantization[3], dequantization[4], dequantization[5]);
+        octahedralNormalsUniform.set(mesh.getVertexFormat().hasOctahedralNormals() ? 1 : 0);
+    }
+
+    /**
+     * Returns the detail level of the item's mesh to draw this frame, from the size of its bounding sphere on screen.
+     */
+    private Mesh selectLod(GameItem gameItem, Matrix4f viewMatrix) {
+        Mesh mesh = gameItem.getMesh();
+        if (!lodEnabled || mesh.getLodCount() == 1) {
+            return mesh;
+        }
+        Bounds bounds = mesh.getBounds();
+        transformation.getModelMatrix(gameItem).transformPosition(bounds.getCenter(), viewPosition);
+        float distance = viewMatrix.transformPosition(viewPosition).length();
+        float screenSize = LodSelector.getScreenSize(bounds.getRadius() * gameItem.getScale(), distance, FOV);
+        int level = lodSelector.selectLevel(screenSize, gameItem.getLodLevel(), mesh.getLodCount());
+        gameItem.setLodLevel(level);
+        return mesh.getLod(level);
+    }
+
+    /**
+     * Triangles submitted in the last frame.
+     */
+    public int getLastFrameTriangles() {
+        return lastFrameTriangles;
+    }
+
+    /**
+     * Triangles the last frame would have submitted with every item at full detail.
+     */
+    public int getLastFrameFullDetailTriangles() {
+        return lastFrameFullDetailTriangles;
+    }
+
+    /**
+     * Items that passed frustum culling in the last frame, or all items when culling is disabled.
+     */
+    public int getLastFrameVisibleItems() {
+        return lastFrameVisibleItems;
+    }
+
+    /**
+     * Items rejected by frustum culling in the last frame.
+     */
+    public int getLastFrameCulledItems() {
+        return lastFrameCulledItems;
+    }
+
+    /**
+     * Items that passed frustum culling but were found hidden behind occluders in the last frame.
+     */
+    public int getLastFrameOccludedItems() {
+        return lastFrameOccludedItems;
+    }
+
+    /**
+     * The occlusion culler, for its occluder count and per frame cost.
+     */
+    public OcclusionCuller getOcclusionCuller() {
+        return occlusionCuller;
+    }
+
+    public int getLastFrameDrawCalls() {
+        return lastFrameDrawCalls;
+    }
+
+    public int getLastFrameVaoBinds() {
+        return lastFrameVaoBinds;
+    }
+
+    /**
+     * Shared buffers for static meshes, drawn together in {@link RenderMode#INDIRECT}.
+     */
+    public GeometryPool getGeometryPool() {
+        return geometryPool;
+    }
+
+    private int getUniformBufferUploads() {
+        return cameraBuffer.getUploads() + lightsBuffer.getUploads() + materialBuffer.getUploads();
+    }
+
+    /**
+     * glUniform calls made in the last frame.
+     */
+    public int getLastFrameUniformCalls() {
+        return lastFrameUniformCalls;
+    }
+
+    /**
+     * Uniform sets skipped in the last frame because the uniform already had the value.
+     */
+    public int getLastFrameSkippedUniformCalls() {
+        return lastFrameSkippedUniformCalls;
+    }
+
+    /**
+     * Uniform buffer updates sent in the last frame, unchanged blocks are not sent.
+     */
+    public int getLastFrameUniformBufferUploads() {
+        return lastFrameUniformBufferUploads;
+    }
+
+    /**
+     * Material, texture, vertex array and blend state changes in the last frame.
+     */
+    public int getLastFrameStateChanges() {
+        return lastFrameStateChanges;
+    }
+
+    /**
+     * Times the CPU waited for the GPU to release streaming buffer space.
+     */
+    public int getStreamStalls() {
+        return streamBuffer.getStalls();
+    }
+
+    /**
+     * Times the streaming ring buffer wrapped back to its start.
+     */
+    public int getStreamWraps() {
+        return streamBuffer.getWraps();
+    }
+
+    public RenderMode getRenderMode() {
+        return renderMode;
+    }
+
+    public void setRenderMode(RenderMode renderMode) {
+        this.renderMode = renderMode;
+    }
+
+    public boolean isLodEnabled() {
+        return lodEnabled;
+    }
+
+    public void setLodEnabled(boolean lodEnabled) {
+        this.lodEnabled = lodEnabled;
+    }
+
+    public boolean isFrustumCullingEnabled() {
+        return frustumCullingEnabled;
+    }
+
+    public void setFrustumCullingEnabled(boolean frustumCullingEnabled) {
+        this.frustumCullingEnabled = frustumCullingEnabled;
+    }
+
+    public boolean isOcclusionCullingEnabled() {
+        return occlusionCullingEnabled;
+    }
+
+    /**
+     * Enables culling of items hidden behind meshes marked with {@link Mesh#setOccluder(boolean)}.
+     */
+    public void setOcclusionCullingEnabled(boolean occlusionCullingEnabled) {
+        this.occlusionCullingEnabled = occlusionCullingEnabled;
     }
 
     public void cleanup() {
         if (shaderProgram != null) {
             shaderProgram.cleanup();
         }
+        if (streamBuffer != null) {
+            streamBuffer.cleanup();
+        }
+        if (geometryPool != null) {
+            geometryPool.cleanup();
+        }
+        if (cameraBuffer != null) {
+            cameraBuffer.cleanup();
+            lightsBuffer.cleanup();
+            materialBuffer.cleanup();
+        }
     }
 
     public void clear() {
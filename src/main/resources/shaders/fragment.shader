@@ -3,6 +3,8 @@
 in  vec2 outTexCoord;
 in vec3 mvVertexNormal;
 in vec3 mvVertexPos;
+in vec4 outTint;
+flat in int outMaterialIndex;
 
 out vec4 fragColor;
 
@@ -10,20 +12,18 @@ out vec4 fragColor;
 //uniform vec3 colour;
 //uniform int useColour;
 
-struct Attenuation
-{
-    float constant;
-    float linear;
-    float exponent;
-};
+// Must match UniformBlocks.MAX_MATERIALS
+#define MAX_MATERIALS 256
 
 struct PointLight
 {
     vec3 colour;
+    float intensity;
 // Light position is assumed to be in view coordinates
     vec3 position;
-    float intensity;
-    Attenuation att;
+    float attConstant;
+    float attLinear;
+    float attExponent;
 };
 
 struct Material
@@ -35,12 +35,20 @@ struct Material
     float reflectance;
 };
 
+// Uniform blocks, see UniformBlocks for the std140 offsets
+layout (std140) uniform Lights
+{
+    vec3 ambientLight;
+    float specularPower;
+    PointLight pointLight;
+};
+
+layout (std140) uniform Materials
+{
+    Material materials[MAX_MATERIALS];
+};
+
 uniform sampler2D texture_sampler;
-uniform vec3 ambientLight;
-uniform float specularPower;
-uniform Material material;
-uniform PointLight pointLight;
-uniform vec3 camera_pos;
 
 vec4 ambientC;
 vec4 diffuseC;
@@ -79,22 +87,22 @@ vec4 calcPointLight(PointLight light, vec3 position, vec3 normal)
     vec3 reflected_light = normalize(reflect(from_light_source, normal));
     float specularFactor = max( dot(camera_direction, reflected_light), 0.0);
     specularFactor = pow(specularFactor, specularPower);
-    specColour = speculrC * specularFactor * material.reflectance * vec4(light.colour, 1.0);
+    specColour = speculrC * specularFactor * materials[outMaterialIndex].reflectance * vec4(light.colour, 1.0);
 
     // Attenuation
     float distance = length(light_direction);
-    float attenuationInv = light.att.constant + light.att.linear * distance +
-    light.att.exponent * distance * distance;
+    float attenuationInv = light.attConstant + light.attLinear * distance +
+    light.attExponent * distance * distance;
     return (diffuseColour + specColour) / attenuationInv;
 }
 
 void main()
 {
-    setupColours(material, outTexCoord);
+    setupColours(materials[outMaterialIndex], outTexCoord);
 
     vec4 diffuseSpecularComp = calcPointLight(pointLight, mvVertexPos, mvVertexNormal);
 
-    fragColor = ambientC * vec4(ambientLight, 1) + diffuseSpecularComp;
+    fragColor = (ambientC * vec4(ambientLight, 1) + diffuseSpecularComp) * outTint;
 }
 
 
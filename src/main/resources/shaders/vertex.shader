@@ -3,19 +3,51 @@
 layout (location=0) in vec3 position;
 layout (location=1) in vec2 texCoord;
 layout (location=2) in vec3 vertexNormal;
+// Per instance attributes of instanced draws, the tint is a constant attribute otherwise
+layout (location=3) in mat4 instanceModelMatrix;
+layout (location=7) in vec4 instanceTint;
+layout (location=8) in float instanceMaterialIndex;
 
 out vec2 outTexCoord;
 out vec3 mvVertexNormal;
 out vec3 mvVertexPos;
+out vec4 outTint;
+flat out int outMaterialIndex;
+
+// Per frame data, see UniformBlocks
+layout (std140) uniform Camera
+{
+    mat4 projectionMatrix;
+    mat4 viewMatrix;
+};
 
 uniform mat4 modelViewMatrix;
-uniform mat4 projectionMatrix;
+uniform int instanced;
+uniform int materialIndex;
+// Dequantization of the vertex format, scale 1 and offset 0 for float positions
+uniform vec3 positionScale;
+uniform vec3 positionOffset;
+uniform int octahedralNormals;
+
+vec3 decodeOctahedral(vec2 e)
+{
+    vec3 n = vec3(e, 1.0 - abs(e.x) - abs(e.y));
+    float t = max(-n.z, 0.0);
+    n.x += n.x >= 0.0 ? -t : t;
+    n.y += n.y >= 0.0 ? -t : t;
+    return normalize(n);
+}
 
 void main()
 {
-    vec4 mvPos = modelViewMatrix * vec4(position, 1.0);
+    vec3 modelPos = position * positionScale + positionOffset;
+    vec3 normal = octahedralNormals == 1 ? decodeOctahedral(vertexNormal.xy) : vertexNormal;
+    mat4 mvMatrix = instanced == 1 ? viewMatrix * instanceModelMatrix : modelViewMatrix;
+    vec4 mvPos = mvMatrix * vec4(modelPos, 1.0);
     gl_Position = projectionMatrix * mvPos;
     outTexCoord = texCoord;
-    mvVertexNormal = normalize(modelViewMatrix * vec4(vertexNormal, 0.0)).xyz;
+    mvVertexNormal = normalize(mvMatrix * vec4(normal, 0.0)).xyz;
     mvVertexPos = mvPos.xyz;
+    outTint = instanceTint;
+    outMaterialIndex = instanced == 1 ? int(instanceMaterialIndex) : materialIndex;
 }
\ No newline at end of file
@@ -0,0 +1,31 @@
+package com.bean.engine;
+
+/**
+ * Paces a loop doing a fixed amount of busy work per frame in each mode, and prints the frame time spread and the
+ * CPU usage of the loop thread per mode.
+ * <p>
+ * Usage: <code>FramePacerBenchmark [fps] [seconds per mode] [work ms per frame]</code>, 60 3 4 by default.
+ */
+public class FramePacerBenchmark {
+
+    public static void main(String[] args) {
+        int fps = args.length > 0 ? Integer.parseInt(args[0]) : 60;
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 3;
+        long workNanos = (long) ((args.length > 2 ? Double.parseDouble(args[2]) : 4) * 1e6);
+        int frames = (int) (fps * seconds);
+        FramePacer pacer = new FramePacer(FramePacer.Mode.UNLIMITED, fps, frames);
+        for (FramePacer.Mode mode : FramePacer.Mode.values()) {
+            pacer.setMode(mode);
+            // Unlimited frames only take the work, run as many as the others take time
+            int count = mode == FramePacer.Mode.UNLIMITED ? (int) (seconds * 1e9 / workNanos) : frames;
+            for (int i = 0; i <= count; i++) {
+                long end = System.nanoTime() + workNanos;
+                while (System.nanoTime() < end) {
+                    Thread.onSpinWait();
+                }
+                pacer.sync();
+            }
+            System.out.println(pacer.report());
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.bean.engine;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class FramePacerTest {
+
+    private final FakeClock clock = new FakeClock();
+
+    @Test
+    public void pacesFramesToTheTarget() {
+        clock.overshoot = 200_000;
+        FramePacer pacer = new FramePacer(FramePacer.Mode.HYBRID, 200, FramePacer.DEFAULT_HISTORY, clock);
+        pacer.calibrate();
+        assertEquals(200_000, pacer.getSpinMarginNanos());
+        for (int i = 0; i < 21; i++) {
+            clock.work(1_000_000);
+            pacer.sync();
+        }
+        assertEquals(20, pacer.getFrames());
+        // Parks end a margin before the deadline, so the late wake ups land on it
+        assertEquals(5, pacer.getMeanFrameMillis(), 1e-9);
+        assertEquals(0, pacer.getMaxErrorMillis(), 1e-9);
+        // Only the frame work used the CPU
+        assertEquals(0.2, pacer.getCpuUsage(), 1e-9);
+    }
+
+    @Test
+    public void sleepingStaysOnSchedule() {
+        clock.overshoot = 1_000_000;
+        FramePacer pacer = new FramePacer(FramePacer.Mode.SLEEP, 100, FramePacer.DEFAULT_HISTORY, clock);
+        for (int i = 0; i < 5; i++) {
+            clock.work(2_000_000);
+            pacer.sync();
+        }
+        assertEquals(4, pacer.getFrames());
+        // The first wait wakes up late, the next frames are due from the original schedule
+        assertEquals(1, pacer.getErrorMillis(3), 1e-6);
+        assertEquals(0, pacer.getErrorMillis(0), 1e-6);
+        assertEquals(0.25, pacer.getMeanErrorMillis(), 1e-9);
+        assertEquals(pacer.getFrameTimeStdDevMillis() * pacer.getFrameTimeStdDevMillis(),
+                pacer.getFrameTimeVariance(), 1e-9);
+    }
+
+    @Test
+    public void spinMarginFollowsTheTimer() {
+        FramePacer pacer = new FramePacer(FramePacer.Mode.HYBRID, 100, FramePacer.DEFAULT_HISTORY, clock);
+        pacer.calibrate();
+        assertEquals(0, pacer.getSpinMarginNanos());
+
+        clock.overshoot = 2_000_000;
+        for (int i = 0; i < 40; i++) {
+            pacer.sync();
+        }
+        assertEquals(2_000_000, pacer.getSpinMarginNanos());
+        assertEquals(0, pacer.getErrorMillis(0), 1e-6);
+    }
+
+    @Test
+    public void unlimitedDoesNotWait() {
+        FramePacer pacer = new FramePacer(FramePacer.Mode.UNLIMITED, 1, FramePacer.DEFAULT_HISTORY, clock);
+        for (int i = 0; i < 10; i++) {
+            clock.work(1_000_000);
+            pacer.sync();
+        }
+        assertEquals(0, clock.parks);
+        assertEquals(0, clock.spins);
+        assertEquals(-999, pacer.getErrorMillis(0), 1e-6);
+    }
+
+    @Test
+    public void lateFramesStartANewSchedule() {
+        FramePacer pacer = new FramePacer(FramePacer.Mode.SLEEP, 100, FramePacer.DEFAULT_HISTORY, clock);
+        pacer.sync();
+        clock.work(50_000_000);
+        pacer.sync();
+        assertEquals(40, pacer.getErrorMillis(0), 1e-6);
+
+        // No burst of short frames to catch up
+        pacer.sync();
+        assertEquals(0, pacer.getErrorMillis(0), 1e-6);
+        assertEquals(2, pacer.getFrames());
+
+        pacer.setMode(FramePacer.Mode.SPIN);
+        assertEquals(0, pacer.getFrames());
+    }
+
+    @Test
+    public void noCpuUsageWithoutThreadCpuTime() {
+        clock.cpuTimeSupported = false;
+        FramePacer pacer = new FramePacer(FramePacer.Mode.SPIN, 100, FramePacer.DEFAULT_HISTORY, clock);
+        pacer.sync();
+        pacer.sync();
+        assertEquals(1, pacer.getFrames());
+        assertEquals(Double.NaN, pacer.getCpuUsage(), 0);
+    }
+
+    /**
+     * Time only advances through frame work, parks, which wake up late by <code>overshoot</code>, and spins.
+     */
+    private static class FakeClock implements FramePacer.Clock {
+
+        private static final long SPIN_NANOS = 1_000;
+
+        private long now = 1_000_000_000L;
+
+        private long cpu;
+
+        private long overshoot;
+
+        private boolean cpuTimeSupported = true;
+
+        private int parks;
+
+        private int spins;
+
+        private void work(long nanos) {
+            now += nanos;
+            cpu += nanos;
+        }
+
+        @Override
+        public long nanoTime() {
+            return now;
+        }
+
+        @Override
+        public void parkNanos(long nanos) {
+            now += nanos + overshoot;
+            parks++;
+        }
+
+        @Override
+        public void onSpinWait() {
+            now += SPIN_NANOS;
+            cpu += SPIN_NANOS;
+            spins++;
+        }
+
+        @Override
+        public long getThreadCpuTime() {
+            return cpuTimeSupported ? cpu : -1;
+        }
+    }
+}
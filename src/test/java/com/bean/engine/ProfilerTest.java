@@ -0,0 +1,79 @@
+package com.bean.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ProfilerTest {
+
+    private final Profiler profiler = new Profiler(4);
+
+    private static void spin(long nanos) {
+        long end = System.nanoTime() + nanos;
+        while (System.nanoTime() < end) {
+            Thread.onSpinWait();
+        }
+    }
+
+    @Test
+    public void sumsEntriesWithinAFrame() {
+        Profiler.Scope update = profiler.scope("update");
+        assertSame(update, profiler.scope("update"));
+        for (int i = 0; i < 3; i++) {
+            update.begin();
+            spin(1_000_000);
+            update.end();
+        }
+        profiler.endFrame();
+        assertTrue(update.getCpuMillis(0) >= 3);
+        assertTrue(Float.isNaN(update.getGpuMillis(0)));
+        assertFalse(update.isGpu());
+    }
+
+    @Test
+    public void keepsALimitedHistory() {
+        Profiler.Scope render = profiler.scope("render");
+        for (int frame = 0; frame < 6; frame++) {
+            if (frame % 2 == 0) {
+                render.begin();
+                spin(2_000_000);
+                render.end();
+            }
+            profiler.endFrame();
+        }
+        assertEquals(6, profiler.getFrame());
+        assertEquals(0, render.getCpuMillis(1), 0);
+        assertEquals(0, render.getCpuMillis(5), 0);
+        assertTrue(render.getCpuMillis(4) >= 2);
+        // Frames 2 to 5 are left, half of them idle
+        assertTrue(render.getMaxCpuMillis() >= 2);
+        assertEquals((render.getCpuMillis(2) + render.getCpuMillis(4)) / 4, render.getAverageCpuMillis(), 1e-4f);
+    }
+
+    @Test
+    public void writesOneRowPerFrame() throws Exception {
+        profiler.scope("input");
+        profiler.scope("swap");
+        for (int frame = 0; frame < 6; frame++) {
+            profiler.endFrame();
+        }
+        Path file = Files.createTempFile("profile", ".csv");
+        try {
+            profiler.writeCsv(file);
+            List<String> lines = Files.readAllLines(file);
+            assertEquals("frame,input_cpu_ms,input_gpu_ms,swap_cpu_ms,swap_gpu_ms", lines.get(0));
+            assertEquals(5, lines.size());
+            assertEquals("2,0.0,,0.0,", lines.get(1));
+        } finally {
+            Files.delete(file);
+        }
+        assertTrue(profiler.report().startsWith("input"));
+    }
+}
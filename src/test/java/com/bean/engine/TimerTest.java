@@ -0,0 +1,38 @@
+package com.bean.engine;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class TimerTest {
+
+    /**
+     * Time set by the test instead of read from GLFW.
+     */
+    private double now;
+
+    private final Timer timer = new Timer() {
+        @Override
+        public double getTime() {
+            return now;
+        }
+    };
+
+    @Test
+    public void ratesAreCountedPerSecondInTheThreadedLoop() {
+        // Frames as run by the threaded loop: 60 per second, with 30 ticks received from the simulation
+        for (int second = 0; second < 3; second++) {
+            for (int frame = 0; frame < 60; frame++) {
+                now += 1 / 60.0;
+                timer.getDelta();
+                if (frame % 2 == 0) {
+                    timer.updateUPS(1);
+                }
+                timer.updateFPS();
+                timer.update();
+            }
+        }
+        assertEquals(60, timer.getFPS(), 1);
+        assertEquals(30, timer.getUPS(), 1);
+    }
+}
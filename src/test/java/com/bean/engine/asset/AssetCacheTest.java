@@ -0,0 +1,60 @@
+package com.bean.engine.asset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class AssetCacheTest {
+
+    private final List<String> destroyed = new ArrayList<>();
+
+    @Test
+    public void sharesHandlesAndEvictsUnreferencedInLruOrder() {
+        AssetCache cache = new AssetCache(250);
+        AssetHandle<String> a = load(cache, "a", 100);
+        AssetHandle<String> b = load(cache, "b", 100);
+
+        // A second request shares the handle
+        assertSame(a, cache.acquire("a"));
+        assertEquals(2, a.getRefCount());
+        assertEquals(1, cache.getHits());
+
+        a.release();
+        a.release();
+        b.release();
+        assertEquals(0, cache.getEvictions());
+
+        // Touch "a" so that "b" becomes the least recently used entry
+        cache.acquire("a").release();
+        load(cache, "c", 100);
+
+        assertEquals(List.of("b"), destroyed);
+        assertEquals(1, cache.getEvictions());
+        assertEquals(200, cache.getUsedBytes());
+        assertNull(cache.acquire("b"));
+    }
+
+    @Test
+    public void keepsReferencedAssetsOverBudget() {
+        AssetCache cache = new AssetCache(50);
+        AssetHandle<String> a = load(cache, "a", 100);
+        assertEquals(0, cache.getEvictions());
+
+        a.release();
+        assertEquals(List.of("a"), destroyed);
+        assertEquals(0, cache.getUsedBytes());
+    }
+
+    private AssetHandle<String> load(AssetCache cache, String key, long byteSize) {
+        AssetHandle<String> handle = new AssetHandle<>(key, key, destroyed::add);
+        cache.add(handle);
+        handle.complete(key);
+        cache.loaded(handle, byteSize);
+        return handle;
+    }
+}
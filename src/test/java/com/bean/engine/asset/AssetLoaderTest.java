@@ -0,0 +1,111 @@
+package com.bean.engine.asset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class AssetLoaderTest {
+
+    private final List<String> released = new CopyOnWriteArrayList<>();
+
+    private final List<String> destroyed = new CopyOnWriteArrayList<>();
+
+    private AssetLoader loader;
+
+    @After
+    public void cleanup() {
+        loader.cleanup();
+    }
+
+    @Test
+    public void uploadsWithinTheByteBudget() throws InterruptedException {
+        // One worker, so uploads are queued in request order
+        loader = new AssetLoader(1, 150, 0, new AssetCache(Long.MAX_VALUE));
+        AssetHandle<String> a = load("a", 100);
+        AssetHandle<String> b = load("b", 100);
+        AssetHandle<String> c = load("c", 10);
+        awaitDecoded();
+
+        // The first upload of a frame always goes through, the second would exceed the budget
+        loader.processUploads();
+        assertEquals(1, loader.getCompletedUploads());
+        assertEquals(100, loader.getLastFrameUploadBytes());
+        loader.processUploads();
+        assertEquals(3, loader.getCompletedUploads());
+        assertTrue(a.isReady() && b.isReady() && c.isReady());
+        assertEquals(List.of("a", "b", "c"), released.stream().sorted().toList());
+        assertTrue(loader.isIdle());
+    }
+
+    @Test
+    public void evictsReleasedAssetsOverTheCacheBudget() throws InterruptedException {
+        AssetCache cache = new AssetCache(150);
+        loader = new AssetLoader(1, 0, 0, cache);
+        AssetHandle<String> a = load("a", 100);
+        AssetHandle<String> b = load("b", 100);
+        awaitDecoded();
+        loader.processUploads();
+
+        // Both are referenced, so the cache goes over budget rather than destroying them
+        assertEquals(200, cache.getUsedBytes());
+        a.release();
+        assertEquals(List.of("a"), destroyed);
+        assertEquals(100, cache.getUsedBytes());
+
+        // A new request for an evicted asset loads it again
+        AssetHandle<String> reloaded = load("a", 100);
+        awaitDecoded();
+        loader.processUploads();
+        assertTrue(reloaded.isReady());
+        b.release();
+        assertEquals(List.of("a", "b"), destroyed);
+    }
+
+    @Test
+    public void releasesDataDecodedDuringCleanup() throws InterruptedException {
+        loader = new AssetLoader(1, 0, 0, new AssetCache(Long.MAX_VALUE));
+        CountDownLatch decoding = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        AssetHandle<String> handle = loader.load("slow", "slow", () -> {
+            decoding.countDown();
+            // Like a decode that does not check for interruption
+            while (true) {
+                try {
+                    finish.await();
+                    return "slow";
+                } catch (InterruptedException ignored) {
+                }
+            }
+        }, decoded -> 1L, decoded -> decoded, released::add, destroyed::add);
+        decoding.await();
+
+        Thread stopper = new Thread(loader::cleanup);
+        stopper.start();
+        finish.countDown();
+        stopper.join();
+        for (int i = 0; i < 100 && released.isEmpty(); i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(List.of("slow"), released);
+        assertTrue(handle.isFailed());
+        assertEquals(0, loader.getPendingUploads());
+    }
+
+    private AssetHandle<String> load(String key, long byteSize) {
+        return loader.load(key, key, () -> key, decoded -> byteSize, decoded -> decoded, released::add,
+                destroyed::add);
+    }
+
+    private void awaitDecoded() throws InterruptedException {
+        for (int i = 0; i < 500 && loader.getPendingLoads() > 0; i++) {
+            Thread.sleep(2);
+        }
+        assertEquals(0, loader.getPendingLoads());
+    }
+}
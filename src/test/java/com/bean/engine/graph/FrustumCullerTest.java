@@ -0,0 +1,65 @@
+package com.bean.engine.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.FloatBuffer;
+
+import com.bean.engine.mesh.Bounds;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FrustumCullerTest {
+
+    private final FrustumCuller culler = new FrustumCuller();
+
+    private final Bounds cube = new Bounds(new Vector3f(-1), new Vector3f(1), (float) Math.sqrt(3));
+
+    @Before
+    public void setUp() {
+        // Camera at the origin looking down -z
+        Matrix4f projection = new Matrix4f().perspective((float) Math.toRadians(60), 1, 0.01f, 1000);
+        culler.update(projection, new Matrix4f());
+    }
+
+    @Test
+    public void keepsItemsInFrontOfTheCamera() {
+        assertTrue(culler.isVisible(cube, new Matrix4f().translate(0, 0, -5)));
+    }
+
+    @Test
+    public void cullsItemsBehindOrBesideTheCamera() {
+        assertFalse(culler.isVisible(cube, new Matrix4f().translate(0, 0, 5)));
+        assertFalse(culler.isVisible(cube, new Matrix4f().translate(50, 0, -5)));
+        assertFalse(culler.isVisible(cube, new Matrix4f().translate(0, 0, -2000)));
+    }
+
+    @Test
+    public void keepsItemsCrossingTheFrustum() {
+        assertTrue(culler.isVisible(cube, new Matrix4f().translate(3.5f, 0, -5)));
+        // Scaled up, a cube centered outside reaches into view
+        assertFalse(culler.isVisible(cube, new Matrix4f().translate(8, 0, -5)));
+        assertTrue(culler.isVisible(cube, new Matrix4f().translate(8, 0, -5).scale(4)));
+    }
+
+    @Test
+    public void boxTestRejectsWhatTheSphereCannot() {
+        Bounds rod = new Bounds(new Vector3f(-10, -0.1f, -0.1f), new Vector3f(10, 0.1f, 0.1f), 10);
+        // Half the view is 11.5 high at that distance: the sphere crosses the top plane but the rod lies above it
+        assertFalse(culler.isVisible(rod, new Matrix4f().translate(0, 13, -20)));
+        // Standing upright, the rod reaches down into view
+        assertTrue(culler.isVisible(rod, new Matrix4f().translate(0, 13, -20).rotateZ((float) Math.toRadians(90))));
+    }
+
+    @Test
+    public void boundsEncloseAllPositions() {
+        Bounds bounds = Bounds.of(FloatBuffer.wrap(new float[]{0, 0, 0, 2, 4, -2, 1, 0, 0}));
+        assertEquals(new Vector3f(0, 0, -2), bounds.getMin());
+        assertEquals(new Vector3f(2, 4, 0), bounds.getMax());
+        assertEquals(new Vector3f(1, 2, -1), bounds.getCenter());
+        assertEquals(Math.sqrt(6), bounds.getRadius(), 1e-6);
+    }
+}
@@ -0,0 +1,61 @@
+package com.bean.engine.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class MaterialSlotsTest {
+
+    private final MaterialSlots slots = new MaterialSlots(2);
+
+    @Test
+    public void keepsTheSlotOfEachId() {
+        assertEquals(0, slots.acquire(7));
+        assertEquals(1, slots.acquire(300));
+        assertEquals(0, slots.acquire(7));
+        assertEquals(2, slots.size());
+    }
+
+    @Test
+    public void uploadsOnlyNewVersions() {
+        int slot = slots.acquire(1);
+        assertTrue(slots.update(slot, 0));
+        assertFalse(slots.update(slot, 0));
+        assertTrue(slots.update(slot, 1));
+    }
+
+    @Test
+    public void reusesReleasedSlots() {
+        slots.acquire(1);
+        int slot = slots.acquire(2);
+        slots.update(slot, 0);
+        slots.release(2);
+        assertEquals(1, slots.size());
+        assertEquals(slot, slots.acquire(3));
+        // A new material is uploaded even when its version matches the previous one
+        assertTrue(slots.update(slot, 0));
+        assertEquals(0, slots.getReclaims());
+    }
+
+    @Test
+    public void reclaimsTheLeastRecentlyUsedSlot() {
+        slots.acquire(1);
+        slots.acquire(2);
+        slots.nextFrame();
+        slots.acquire(2);
+        slots.nextFrame();
+        assertEquals(0, slots.acquire(3));
+        assertEquals(1, slots.getReclaims());
+        // Material 1 lost its slot and takes the one of 2, the least recently used now
+        assertEquals(1, slots.acquire(1));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void failsWhenTheFrameUsesTooManyMaterials() {
+        slots.acquire(1);
+        slots.acquire(2);
+        slots.acquire(3);
+    }
+}
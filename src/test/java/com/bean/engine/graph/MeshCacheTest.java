@@ -0,0 +1,120 @@
+package com.bean.engine.graph;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import com.bean.engine.mesh.MeshData;
+import org.junit.Test;
+
+public class MeshCacheTest {
+
+    private static final String TRIANGLE = "v 0 0 0\nv 1 0 0\nv 0 1 0\nvt 0 0\nvn 0 0 1\nf 1/1/1 2/1/1 3/1/1\n";
+
+    @Test
+    public void roundTripsAndDetectsStaleSource() throws Exception {
+        Path source = Files.createTempFile("meshcache", ".obj");
+        Path cache = MeshCache.getCachePath(source.toString());
+        try {
+            Files.write(source, TRIANGLE.getBytes(StandardCharsets.US_ASCII));
+            MeshData meshData = OBJLoader.loadMeshData(source.toString());
+            MeshCache.write(source.toString(), meshData, 0);
+
+            assertNull(MeshCache.read(source.toString(), MeshCache.FLAG_OPTIMIZED));
+            MeshCache.CachedMesh cachedMesh = MeshCache.read(source.toString(), 0);
+            assertNotNull(cachedMesh);
+            assertArrayEquals(meshData.getPositions(), toArray(cachedMesh.getPositions()), 0f);
+            assertArrayEquals(meshData.getTextCoords(), toArray(cachedMesh.getTextCoords()), 0f);
+            assertArrayEquals(meshData.getNormals(), toArray(cachedMesh.getNormals()), 0f);
+            assertArrayEquals(meshData.getIndices(), toArray(cachedMesh.getIndices()));
+
+            // Same size, different content
+            Files.write(source, TRIANGLE.replace("v 1 0 0", "v 2 0 0").getBytes(StandardCharsets.US_ASCII));
+            assertNull(MeshCache.read(source.toString(), 0));
+
+            // The stale cache was not left mapped, so it can be replaced
+            MeshData rebuilt = OBJLoader.loadMeshData(source.toString());
+            MeshCache.write(source.toString(), rebuilt, 0);
+            assertArrayEquals(rebuilt.getPositions(),
+                    toArray(MeshCache.read(source.toString(), 0).getPositions()), 0f);
+
+            // A truncated cache is rejected from its header
+            Files.write(cache, new byte[16]);
+            assertNull(MeshCache.read(source.toString(), 0));
+        } finally {
+            Files.deleteIfExists(cache);
+            Files.delete(source);
+        }
+    }
+
+    @Test
+    public void cachesLodChainsPerLength() throws Exception {
+        // A flat grid, which simplifies well
+        StringBuilder grid = new StringBuilder("vt 0 0\nvn 0 0 1\n");
+        int size = 9;
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                grid.append("v ").append(x).append(' ').append(y).append(" 0\n");
+            }
+        }
+        for (int y = 0; y < size - 1; y++) {
+            for (int x = 0; x < size - 1; x++) {
+                int corner = y * size + x + 1;
+                grid.append("f ").append(corner).append("/1/1 ").append(corner + 1).append("/1/1 ")
+                        .append(corner + size).append("/1/1\n");
+                grid.append("f ").append(corner + 1).append("/1/1 ").append(corner + size + 1).append("/1/1 ")
+                        .append(corner + size).append("/1/1\n");
+            }
+        }
+        Path source = Files.createTempFile("meshcache", ".obj");
+        String fileName = source.toString();
+        try {
+            Files.write(source, grid.toString().getBytes(StandardCharsets.US_ASCII));
+            OBJLoader.PreparedMesh built = OBJLoader.prepareMesh(fileName, false, 3);
+            assertFalse(built.hasCachedLods());
+            assertEquals(2, built.getLodCount());
+            assertTrue(Files.exists(MeshCache.getLodCachePath(fileName, 3, 2)));
+
+            // Both the mesh and its levels are mapped on the next load, without simplifying again
+            OBJLoader.PreparedMesh mapped = OBJLoader.prepareMesh(fileName, false, 3);
+            assertTrue(mapped.hasCachedLods());
+            assertEquals(2, mapped.getLodCount());
+            assertEquals(built.getByteSize(), mapped.getByteSize());
+
+            // Levels are checked against the stamp of the source hashed by the caller
+            MeshCache.SourceStamp stamp = MeshCache.SourceStamp.of(fileName);
+            Path level = MeshCache.getLodCachePath(fileName, 3, 1);
+            assertNotNull(MeshCache.read(stamp, level, 0));
+            assertNull(MeshCache.read(new MeshCache.SourceStamp(stamp.getSize(), stamp.getHash() + 1), level, 0));
+
+            assertFalse(OBJLoader.prepareMesh(fileName, false, 2).hasCachedLods());
+        } finally {
+            Files.deleteIfExists(MeshCache.getCachePath(fileName));
+            Files.deleteIfExists(MeshCache.getLodCachePath(fileName, 3, 1));
+            Files.deleteIfExists(MeshCache.getLodCachePath(fileName, 3, 2));
+            Files.deleteIfExists(MeshCache.getLodCachePath(fileName, 2, 1));
+            Files.delete(source);
+        }
+    }
+
+    private static float[] toArray(FloatBuffer buffer) {
+        float[] array = new float[buffer.remaining()];
+        buffer.duplicate().get(array);
+        return array;
+    }
+
+    private static int[] toArray(IntBuffer buffer) {
+        int[] array = new int[buffer.remaining()];
+        buffer.duplicate().get(array);
+        return array;
+    }
+}
@@ -0,0 +1,158 @@
+package com.bean.engine.graph;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import com.bean.engine.mesh.MeshData;
+import org.junit.Test;
+
+public class OBJLoaderTest {
+
+    private static final String CUBE_OBJ = "src/main/resources/models/cube.obj";
+
+    @Test
+    public void keepsAttributesOfEveryFaceVertex() throws Exception {
+        MeshData meshData = OBJLoader.loadMeshData(CUBE_OBJ);
+
+        List<float[]> positions = new ArrayList<>();
+        List<float[]> textCoords = new ArrayList<>();
+        List<float[]> normals = new ArrayList<>();
+        List<String> faceVertices = new ArrayList<>();
+        for (String line : Files.readAllLines(Path.of(CUBE_OBJ))) {
+            String[] tokens = line.split("\\s+");
+            switch (tokens[0]) {
+                case "v":
+                    positions.add(new float[]{Float.parseFloat(tokens[1]), Float.parseFloat(tokens[2]), Float.parseFloat(tokens[3])});
+                    break;
+                case "vt":
+                    textCoords.add(new float[]{Float.parseFloat(tokens[1]), 1 - Float.parseFloat(tokens[2])});
+                    break;
+                case "vn":
+                    normals.add(new float[]{Float.parseFloat(tokens[1]), Float.parseFloat(tokens[2]), Float.parseFloat(tokens[3])});
+                    break;
+                case "f":
+                    faceVertices.addAll(List.of(tokens[1], tokens[2], tokens[3]));
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        int[] indices = meshData.getIndices();
+        assertEquals(faceVertices.size(), indices.length);
+        assertEquals(new HashSet<>(faceVertices).size(), meshData.getVertexCount());
+        for (int i = 0; i < indices.length; i++) {
+            String[] idx = faceVertices.get(i).split("/");
+            int vertex = indices[i];
+            assertArrayEquals(positions.get(Integer.parseInt(idx[0]) - 1),
+                    Arrays.copyOfRange(meshData.getPositions(), vertex * 3, vertex * 3 + 3), 0f);
+            assertArrayEquals(textCoords.get(Integer.parseInt(idx[1]) - 1),
+                    Arrays.copyOfRange(meshData.getTextCoords(), vertex * 2, vertex * 2 + 2), 0f);
+            assertArrayEquals(normals.get(Integer.parseInt(idx[2]) - 1),
+                    Arrays.copyOfRange(meshData.getNormals(), vertex * 3, vertex * 3 + 3), 0f);
+        }
+    }
+
+    @Test
+    public void parsesExponentsSignsAndRelativeIndices() throws Exception {
+        String obj = "# comment\r\n"
+                + "o triangle\n"
+                + "v -1.5e1 +2.25 0.000125\n"
+                + "v\t1 0 0\n"
+                + "v 0 1 0 1.0\n"
+                + "vt 0.25 0.75\n"
+                + "vn 0 0 1\n"
+                + "\n"
+                + "f -3/1/1 -2/1/1 -1/1/1";
+        Path file = Files.createTempFile("objloader", ".obj");
+        try {
+            Files.write(file, obj.getBytes(StandardCharsets.US_ASCII));
+            MeshData meshData = OBJLoader.loadMeshData(file.toString());
+
+            assertArrayEquals(new float[]{-15f, 2.25f, 0.000125f, 1, 0, 0, 0, 1, 0}, meshData.getPositions(), 0f);
+            assertArrayEquals(new int[]{0, 1, 2}, meshData.getIndices());
+            assertEquals(0.25f, meshData.getTextCoords()[0], 0f);
+            assertEquals(0.25f, meshData.getTextCoords()[1], 0f);
+            assertEquals(1f, meshData.getNormals()[2], 0f);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void parsesSignedExponents() {
+        String[] numbers = {"1.0e+5", "2E-2", "3e+0", "-4.5E+01", "6e7", "+7.25e-3"};
+        StringBuilder obj = new StringBuilder();
+        for (int i = 0; i < numbers.length; i += 3) {
+            obj.append("v ").append(numbers[i]).append(' ').append(numbers[i + 1]).append(' ')
+                    .append(numbers[i + 2]).append('\n');
+        }
+        obj.append("f 1 2 1\n");
+        byte[] bytes = obj.toString().getBytes(StandardCharsets.US_ASCII);
+
+        MeshData meshData = OBJLoader.parse(ByteBuffer.wrap(bytes), bytes.length, bytes.length);
+        float[] expected = new float[numbers.length];
+        for (int i = 0; i < numbers.length; i++) {
+            expected[i] = Float.parseFloat(numbers[i]);
+        }
+        assertArrayEquals(expected, meshData.getPositions(), 0f);
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void rejectsExponentsWithoutDigits() {
+        byte[] bytes = "v 1e+ 0 0\n".getBytes(StandardCharsets.US_ASCII);
+        OBJLoader.parse(ByteBuffer.wrap(bytes), bytes.length, bytes.length);
+    }
+
+    @Test
+    public void reportsFileLinesFromLaterChunks() {
+        StringBuilder obj = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            obj.append("v 0 0 0\n");
+        }
+        obj.append("v 1 x 0\n");
+        byte[] bytes = obj.toString().getBytes(StandardCharsets.US_ASCII);
+        try {
+            OBJLoader.parse(ByteBuffer.wrap(bytes), bytes.length, 64);
+            fail();
+        } catch (NumberFormatException excp) {
+            assertTrue(excp.getMessage(), excp.getMessage().endsWith("at line 201"));
+        }
+    }
+
+    @Test
+    public void parallelParseMatchesSequential() {
+        StringBuilder obj = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            obj.append("v ").append(i * 0.001f).append(' ').append(-i * 0.5f).append(' ').append(i % 7).append('\n');
+            obj.append("vt ").append(i % 11 * 0.1f).append(' ').append(i % 13 * 0.07f).append('\n');
+            obj.append("vn 0 ").append(i % 2).append(' ').append(1 - i % 2).append('\n');
+            if (i >= 2) {
+                // Mix absolute and relative indices so that relative ones cross chunk boundaries
+                obj.append("f ").append(i - 1).append('/').append(i - 1).append('/').append(i - 1)
+                        .append(" -2/-2/-2 -1//-1\n");
+            }
+        }
+        byte[] bytes = obj.toString().getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+
+        MeshData sequential = OBJLoader.parse(buffer, bytes.length, bytes.length);
+        MeshData parallel = OBJLoader.parse(buffer, bytes.length, 997);
+
+        assertArrayEquals(sequential.getPositions(), parallel.getPositions(), 0f);
+        assertArrayEquals(sequential.getTextCoords(), parallel.getTextCoords(), 0f);
+        assertArrayEquals(sequential.getNormals(), parallel.getNormals(), 0f);
+        assertArrayEquals(sequential.getIndices(), parallel.getIndices());
+    }
+}
@@ -0,0 +1,84 @@
+package com.bean.engine.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.bean.engine.mesh.Bounds;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.junit.Test;
+
+public class OcclusionCullerTest {
+
+    private static final Matrix4f PROJECTION = new Matrix4f().perspective((float) Math.toRadians(60), 2, 0.1f, 1000);
+
+    private final Bounds cube = new Bounds(new Vector3f(-1), new Vector3f(1), (float) Math.sqrt(3));
+
+    /**
+     * Camera at the origin looking down -z, behind a 10 by 10 wall 5 units away.
+     */
+    private OcclusionCuller cullerBehindWall(int bands) {
+        OcclusionCuller culler = new OcclusionCuller(64, 32, bands);
+        culler.begin(PROJECTION, new Matrix4f());
+        culler.addOccluder(cube, new Matrix4f().translate(0, 0, -5).scale(5, 5, 0.1f));
+        culler.rasterize();
+        return culler;
+    }
+
+    @Test
+    public void hidesItemsBehindOccluders() {
+        OcclusionCuller culler = cullerBehindWall(1);
+        assertTrue(culler.isOccluded(cube, new Matrix4f().translate(0, 0, -20)));
+        assertTrue(culler.isOccluded(cube, new Matrix4f().translate(2, -1, -10)));
+        assertEquals(1, culler.getLastOccluders());
+        assertEquals(12, culler.getLastOccluderTriangles());
+    }
+
+    @Test
+    public void keepsItemsInFrontBesideOrPartlyBehind() {
+        OcclusionCuller culler = cullerBehindWall(1);
+        assertFalse(culler.isOccluded(cube, new Matrix4f().translate(0, 0, -3)));
+        assertFalse(culler.isOccluded(cube, new Matrix4f().translate(40, 0, -20)));
+        // Far enough to the side to stick out of the wall
+        assertFalse(culler.isOccluded(cube, new Matrix4f().translate(21, 0, -20)));
+        // Crossing the near plane
+        assertFalse(culler.isOccluded(cube, new Matrix4f().translate(0, 0, 0.5f)));
+    }
+
+    @Test
+    public void occludersDoNotHideThemselves() {
+        OcclusionCuller culler = new OcclusionCuller(64, 32, 1);
+        culler.begin(PROJECTION, new Matrix4f());
+        Matrix4f model = new Matrix4f().translate(0, 0, -4);
+        culler.addOccluder(cube, model);
+        culler.rasterize();
+        assertFalse(culler.isOccluded(cube, model));
+        // The front face is 3 units away at the centre of the screen
+        assertEquals(3, culler.getDepth(32, 16), 1e-4);
+        assertEquals(Float.POSITIVE_INFINITY, culler.getDepth(0, 0), 0);
+    }
+
+    @Test
+    public void clipsOccludersAtTheNearPlane() {
+        OcclusionCuller culler = new OcclusionCuller(64, 32, 1);
+        culler.begin(PROJECTION, new Matrix4f());
+        // A floor running from behind the camera into the distance
+        culler.addOccluder(cube, new Matrix4f().translate(0, -1, -50).scale(100, 0.1f, 60));
+        culler.rasterize();
+        assertTrue(culler.getLastOccluderTriangles() > 12);
+        assertTrue(culler.isOccluded(cube, new Matrix4f().translate(0, -10, -30)));
+        assertFalse(culler.isOccluded(cube, new Matrix4f().translate(0, 2, -30)));
+    }
+
+    @Test
+    public void bandsDoNotChangeTheResult() {
+        OcclusionCuller single = cullerBehindWall(1);
+        OcclusionCuller banded = cullerBehindWall(5);
+        for (int y = 0; y < single.getHeight(); y++) {
+            for (int x = 0; x < single.getWidth(); x++) {
+                assertEquals(single.getDepth(x, y), banded.getDepth(x, y), 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.bean.engine.graph;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class RangeAllocatorTest {
+
+    private final RangeAllocator allocator = new RangeAllocator(100);
+
+    @Test
+    public void allocatesUntilFull() {
+        assertEquals(0, allocator.allocate(60));
+        assertEquals(60, allocator.allocate(40));
+        assertEquals(-1, allocator.allocate(1));
+        assertEquals(0, allocator.getFreeSpace());
+    }
+
+    @Test
+    public void mergesReleasedNeighbours() {
+        int a = allocator.allocate(20);
+        int b = allocator.allocate(20);
+        int c = allocator.allocate(20);
+        allocator.release(a, 20);
+        allocator.release(c, 20);
+        // 0 to 20 and 40 to 100 are free
+        assertEquals(60, allocator.getLargestFreeRange());
+        assertEquals(80, allocator.getFreeSpace());
+        allocator.release(b, 20);
+        assertEquals(100, allocator.getLargestFreeRange());
+        assertEquals(0, allocator.getFragmentation(), 0);
+    }
+
+    @Test
+    public void prefersTheSmallestFittingRange() {
+        allocator.allocate(10);
+        int hole = allocator.allocate(10);
+        allocator.allocate(10);
+        allocator.release(hole, 10);
+        assertEquals(hole, allocator.allocate(8));
+        assertEquals(2f / 72, allocator.getFragmentation(), 1e-6f);
+    }
+
+    @Test
+    public void resetKeepsCompactedPrefix() {
+        allocator.allocate(30);
+        allocator.reset(30, 200);
+        assertEquals(170, allocator.getFreeSpace());
+        assertEquals(30, allocator.allocate(170));
+    }
+}
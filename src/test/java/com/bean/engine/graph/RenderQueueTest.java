@@ -0,0 +1,77 @@
+package com.bean.engine.graph;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class RenderQueueTest {
+
+    @Test
+    public void sortsLikeArraysSortAndKeepsItems() {
+        Random random = new Random(42);
+        RenderQueue queue = new RenderQueue(4);
+        long[] expected = new long[1000];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = RenderQueue.opaqueKey(1, random.nextInt(8), random.nextInt(4), random.nextInt(16),
+                    random.nextFloat());
+            queue.add(expected[i], i);
+        }
+        long[] keysByItem = expected.clone();
+        Arrays.sort(expected);
+
+        queue.sort();
+        long[] sorted = new long[queue.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = queue.getKey(i);
+            assertEquals(keysByItem[queue.getItem(i)], sorted[i]);
+        }
+        assertArrayEquals(expected, sorted);
+    }
+
+    @Test
+    public void groupsOpaqueItemsByStateThenFrontToBack() {
+        RenderQueue queue = new RenderQueue(4);
+        queue.add(RenderQueue.opaqueKey(1, 2, 1, 1, 0.1f), 0);
+        queue.add(RenderQueue.opaqueKey(1, 1, 1, 1, 0.9f), 1);
+        queue.add(RenderQueue.opaqueKey(1, 2, 1, 1, 0.05f), 2);
+        queue.add(RenderQueue.opaqueKey(1, 1, 1, 1, 0.2f), 3);
+        queue.sort();
+        assertItems(queue, 3, 1, 2, 0);
+    }
+
+    @Test
+    public void drawsTransparentItemsLastAndBackToFront() {
+        RenderQueue queue = new RenderQueue(4);
+        queue.add(RenderQueue.transparentKey(1, 1, 1, 1, 0.2f), 0);
+        queue.add(RenderQueue.opaqueKey(1, 9, 9, 9, 0.9f), 1);
+        queue.add(RenderQueue.transparentKey(1, 9, 1, 1, 0.8f), 2);
+        queue.sort();
+        assertItems(queue, 1, 2, 0);
+        assertEquals(RenderQueue.PASS_OPAQUE, RenderQueue.getPass(queue.getKey(0)));
+        assertEquals(RenderQueue.PASS_TRANSPARENT, RenderQueue.getPass(queue.getKey(2)));
+    }
+
+    @Test
+    public void reusesQueueAcrossFrames() {
+        RenderQueue queue = new RenderQueue(4);
+        queue.add(RenderQueue.opaqueKey(1, 1, 1, 1, 0.5f), 0);
+        queue.clear();
+        queue.add(RenderQueue.opaqueKey(1, 1, 1, 1, 0.5f), 7);
+        queue.sort();
+        assertEquals(1, queue.size());
+        assertEquals(7, queue.getItem(0));
+        assertTrue(queue.getKey(0) > 0);
+    }
+
+    private static void assertItems(RenderQueue queue, int... items) {
+        assertEquals(items.length, queue.size());
+        for (int i = 0; i < items.length; i++) {
+            assertEquals("position " + i, items[i], queue.getItem(i));
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.bean.engine.graph;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class RingAllocatorTest {
+
+    private final RingAllocator ring = new RingAllocator(100, 3);
+
+    @Test
+    public void alignsAllocations() {
+        assertEquals(0, ring.allocate(10, 16));
+        assertEquals(16, ring.allocate(10, 16));
+        assertEquals(26, ring.allocate(4, 1));
+        assertEquals(24, ring.getFrameBytes());
+    }
+
+    @Test
+    public void framesInFlightKeepTheirSpace() {
+        assertEquals(0, ring.allocate(40, 4));
+        ring.endFrame();
+        assertEquals(40, ring.allocate(40, 4));
+        ring.endFrame();
+        // Does not fit at the end, and the start is held by the first frame
+        assertEquals(-1, ring.allocate(40, 4));
+        ring.retireOldest();
+        assertEquals(0, ring.allocate(40, 4));
+        assertEquals(1, ring.getWraps());
+        // The second frame still holds 40 to 80
+        assertEquals(-1, ring.allocate(1, 1));
+        ring.retireOldest();
+        assertEquals(40, ring.allocate(60, 4));
+    }
+
+    @Test
+    public void frameCannotOverwriteItself() {
+        assertEquals(0, ring.allocate(60, 4));
+        assertEquals(-1, ring.allocate(60, 4));
+        assertEquals(60, ring.allocate(40, 4));
+    }
+
+    @Test
+    public void wrapsWhenIdle() {
+        ring.allocate(90, 4);
+        ring.endFrame();
+        ring.retireOldest();
+        assertEquals(0, ring.allocate(20, 4));
+        assertEquals(1, ring.getWraps());
+    }
+
+    @Test
+    public void emptyFramesHoldNoSpace() {
+        assertEquals(0, ring.allocate(40, 4));
+        ring.endFrame();
+        ring.endFrame();
+        ring.retireOldest();
+        // Only the empty frame is in flight, so the whole ring is free
+        assertEquals(1, ring.getFramesInFlight());
+        assertEquals(0, ring.getBytesInFlight());
+        assertEquals(40, ring.allocate(60, 4));
+        assertEquals(0, ring.allocate(40, 4));
+        assertEquals(1, ring.getWraps());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void limitsFramesInFlight() {
+        for (int i = 0; i < 4; i++) {
+            ring.allocate(10, 4);
+            ring.endFrame();
+        }
+    }
+}
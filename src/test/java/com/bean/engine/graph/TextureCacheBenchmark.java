@@ -0,0 +1,77 @@
+package com.bean.engine.graph;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Compares loading many textures from PNG (decode + CPU mip chain) against loading them from the
+ * {@link TextureCache}. Both paths read every pixel of every level once, as the GL upload would.
+ * Needs the LWJGL natives of the current platform.
+ * <p>
+ * Usage: <code>TextureCacheBenchmark [image] [count]</code>
+ */
+public class TextureCacheBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String image = args.length > 0 ? args[0] : "src/main/resources/textures/grassblock.png";
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        Path dir = Files.createTempDirectory("texturecache");
+        try {
+            List<String> files = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                Path copy = dir.resolve("texture" + i + ".png");
+                Files.copy(Path.of(image), copy, StandardCopyOption.REPLACE_EXISTING);
+                files.add(copy.toString());
+            }
+
+            long checksum = 0;
+            long start = System.nanoTime();
+            for (String file : files) {
+                TextureData textureData = Texture.decode(file).generateMipChain();
+                checksum += touch(textureData);
+                textureData.free();
+            }
+            long coldNanos = System.nanoTime() - start;
+
+            for (String file : files) {
+                Texture.load(file).free();
+            }
+
+            start = System.nanoTime();
+            for (String file : files) {
+                TextureData textureData = TextureCache.read(file);
+                checksum += touch(textureData);
+                textureData.free();
+            }
+            long cachedNanos = System.nanoTime() - start;
+
+            System.out.println(String.format("%d x %s (checksum %d)", count, image, checksum));
+            System.out.println(String.format("PNG decode + mips: %8.2f ms total, %6.3f ms per texture",
+                    coldNanos / 1e6, coldNanos / 1e6 / count));
+            System.out.println(String.format("Texture cache:     %8.2f ms total, %6.3f ms per texture (%.1fx)",
+                    cachedNanos / 1e6, cachedNanos / 1e6 / count, (double) coldNanos / cachedNanos));
+        } finally {
+            try (Stream<Path> paths = Files.walk(dir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private static long touch(TextureData textureData) {
+        long sum = 0;
+        for (int level = 0; level < textureData.getLevelCount(); level++) {
+            ByteBuffer pixels = textureData.getLevel(level);
+            for (int i = pixels.position(); i < pixels.limit(); i += 4) {
+                sum += pixels.get(i);
+            }
+        }
+        return sum;
+    }
+}
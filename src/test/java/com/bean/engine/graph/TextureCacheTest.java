@@ -0,0 +1,52 @@
+package com.bean.engine.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+public class TextureCacheTest {
+
+    @Test
+    public void rebuildsStaleCaches() throws Exception {
+        Path source = Files.createTempFile("texturecache", ".png");
+        Path cache = TextureCache.getCachePath(source.toString());
+        try {
+            Files.write(source, new byte[]{1, 2, 3});
+            TextureCache.write(source.toString(), texture((byte) 7));
+            TextureData cached = TextureCache.read(source.toString());
+            assertNotNull(cached);
+            assertEquals(2, cached.getWidth());
+            assertEquals(7, cached.getLevel(0).get(15));
+
+            // Same size, different content
+            Files.write(source, new byte[]{1, 2, 4});
+            assertNull(TextureCache.read(source.toString()));
+
+            // The stale cache was not left mapped, so it can be replaced
+            TextureCache.write(source.toString(), texture((byte) 9));
+            assertEquals(9, TextureCache.read(source.toString()).getLevel(0).get(15));
+
+            // A truncated cache is rejected from its header
+            Files.write(cache, new byte[16]);
+            assertNull(TextureCache.read(source.toString()));
+        } finally {
+            Files.deleteIfExists(cache);
+            Files.delete(source);
+        }
+    }
+
+    private static TextureData texture(byte value) {
+        ByteBuffer pixels = ByteBuffer.allocate(2 * 2 * 4);
+        while (pixels.hasRemaining()) {
+            pixels.put(value);
+        }
+        pixels.flip();
+        return new TextureData(2, 2, new ByteBuffer[]{pixels}, null);
+    }
+}
@@ -0,0 +1,68 @@
+package com.bean.engine.graph;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+import org.junit.Test;
+
+public class UniformBlocksTest {
+
+    @Test
+    public void writesMaterialWithStd140Offsets() {
+        Material material = new Material(new Vector4f(0.1f, 0.2f, 0.3f, 0.4f), new Vector4f(0.5f, 0.6f, 0.7f, 0.8f),
+                new Vector4f(1, 1, 1, 1), null, 0.25f);
+        ByteBuffer buffer = allocate(2 * UniformBlocks.MATERIAL_SIZE);
+        UniformBlocks.writeMaterial(buffer, UniformBlocks.MATERIAL_SIZE, material);
+
+        int base = UniformBlocks.MATERIAL_SIZE;
+        assertEquals(0.1f, buffer.getFloat(base), 0);
+        assertEquals(0.8f, buffer.getFloat(base + 28), 0);
+        assertEquals(1f, buffer.getFloat(base + 44), 0);
+        assertEquals(0, buffer.getInt(base + 48));
+        assertEquals(0.25f, buffer.getFloat(base + 52), 0);
+        assertEquals(0f, buffer.getFloat(0), 0);
+    }
+
+    @Test
+    public void packsLightScalarsAfterVectors() {
+        PointLight light = new PointLight(new Vector3f(1, 0.5f, 0.25f), new Vector3f(9, 9, 9), 2f,
+                new PointLight.Attenuation(0.1f, 0.2f, 0.3f));
+        ByteBuffer buffer = allocate(UniformBlocks.LIGHTS_SIZE);
+        UniformBlocks.writeLights(buffer, new Vector3f(0.3f, 0.3f, 0.3f), 10f, light, new Vector3f(1, 2, 3));
+
+        assertEquals(0.3f, buffer.getFloat(8), 0);
+        assertEquals(10f, buffer.getFloat(12), 0);
+        assertEquals(0.25f, buffer.getFloat(24), 0);
+        assertEquals(2f, buffer.getFloat(28), 0);
+        assertEquals(3f, buffer.getFloat(40), 0);
+        assertEquals(0.1f, buffer.getFloat(44), 0);
+        assertEquals(0.3f, buffer.getFloat(52), 0);
+    }
+
+    @Test
+    public void writesViewMatrixAfterProjection() {
+        ByteBuffer buffer = allocate(UniformBlocks.CAMERA_SIZE);
+        UniformBlocks.writeCamera(buffer, new Matrix4f().scale(2), new Matrix4f().translate(4, 5, 6));
+        assertEquals(2f, buffer.getFloat(0), 0);
+        // Column major, translation in the last column
+        assertEquals(4f, buffer.getFloat(64 + 48), 0);
+        assertEquals(6f, buffer.getFloat(64 + 56), 0);
+    }
+
+    @Test
+    public void settersBumpMaterialVersion() {
+        Material material = new Material();
+        int version = material.getVersion();
+        material.setReflectance(0.5f);
+        assertEquals(version + 1, material.getVersion());
+    }
+
+    private static ByteBuffer allocate(int size) {
+        return ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+    }
+}
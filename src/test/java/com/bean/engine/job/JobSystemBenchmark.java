@@ -0,0 +1,80 @@
+package com.bean.engine.job;
+
+import org.joml.Matrix4f;
+
+/**
+ * Measures how a per-item update, animating a transform and computing its model matrix, scales with the number of
+ * job threads, and checks that every thread count produces the same matrices.
+ * <p>
+ * Usage: <code>JobSystemBenchmark [count...]</code>, 10000 100000 1000000 by default. Thread counts double from 1
+ * up to the number of cores.
+ */
+public class JobSystemBenchmark {
+
+    private static final int TICKS = 20;
+
+    private static final int GRAIN = 1024;
+
+    public static void main(String[] args) {
+        int[] counts = args.length > 0 ? new int[args.length] : new int[]{10_000, 100_000, 1_000_000};
+        for (int i = 0; i < args.length; i++) {
+            counts[i] = Integer.parseInt(args[i]);
+        }
+        int cores = Runtime.getRuntime().availableProcessors();
+        // Warm up the JIT on the smallest size first
+        run(counts[0], 1);
+        for (int count : counts) {
+            double serialMillis = 0;
+            double checksum = 0;
+            for (int threads = 1; ; threads = Math.min(threads * 2, cores)) {
+                double[] result = run(count, threads);
+                if (threads == 1) {
+                    serialMillis = result[0];
+                    checksum = result[1];
+                }
+                System.out.println(String.format("%,9d items, %2d threads: %8.3f ms per tick, %5.2fx%s", count, threads,
+                        result[0], serialMillis / result[0], result[1] == checksum ? "" : ", RESULTS DIFFER"));
+                if (threads == cores) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the average milliseconds per tick and a checksum of the matrices.
+     */
+    private static double[] run(int count, int threads) {
+        float[] positions = new float[count * 3];
+        float[] rotations = new float[count];
+        float[] matrices = new float[count * 16];
+        for (int i = 0; i < count; i++) {
+            positions[i * 3] = i % 100;
+            positions[i * 3 + 1] = (i / 100) % 100;
+            positions[i * 3 + 2] = i / 10_000;
+        }
+        JobSystem jobSystem = new JobSystem(threads);
+        long start = System.nanoTime();
+        for (int tick = 0; tick < TICKS; tick++) {
+            float time = tick / 30f;
+            jobSystem.parallelFor(count, GRAIN, (from, to) -> {
+                Matrix4f matrix = new Matrix4f();
+                for (int i = from; i < to; i++) {
+                    rotations[i] += 1.5f;
+                    float bob = (float) Math.sin(time + i * 0.01f) * 0.1f;
+                    matrix.translation(positions[i * 3], positions[i * 3 + 1] + bob, positions[i * 3 + 2])
+                            .rotateY((float) Math.toRadians(rotations[i]))
+                            .scale(0.5f)
+                            .get(matrices, i * 16);
+                }
+            });
+        }
+        double millis = (System.nanoTime() - start) / 1e6 / TICKS;
+        jobSystem.shutdown();
+        double checksum = 0;
+        for (float value : matrices) {
+            checksum += value;
+        }
+        return new double[]{millis, checksum};
+    }
+}
@@ -0,0 +1,86 @@
+package com.bean.engine.job;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class JobSystemTest {
+
+    private final JobSystem jobSystem = new JobSystem(4);
+
+    @After
+    public void tearDown() {
+        jobSystem.shutdown();
+    }
+
+    @Test
+    public void visitsEveryIndexOnce() {
+        AtomicIntegerArray visits = new AtomicIntegerArray(10_000);
+        jobSystem.parallelFor(visits.length(), 100, (from, to) -> {
+            if (to - from > 100) {
+                fail("Range of " + (to - from) + " indices");
+            }
+            for (int i = from; i < to; i++) {
+                visits.incrementAndGet(i);
+            }
+        });
+        for (int i = 0; i < visits.length(); i++) {
+            assertEquals(1, visits.get(i));
+        }
+    }
+
+    @Test
+    public void resultsDoNotDependOnThreads() {
+        float[] parallel = update(jobSystem);
+        JobSystem single = new JobSystem(1);
+        try {
+            assertArrayEquals(update(single), parallel, 0);
+        } finally {
+            single.shutdown();
+        }
+    }
+
+    private static float[] update(JobSystem jobSystem) {
+        float[] values = new float[50_000];
+        for (int tick = 0; tick < 3; tick++) {
+            jobSystem.parallelFor(values.length, 512, (from, to) -> {
+                for (int i = from; i < to; i++) {
+                    values[i] = (float) Math.sin(values[i] + i * 0.001);
+                }
+            });
+        }
+        return values;
+    }
+
+    @Test
+    public void runsNestedLoops() {
+        AtomicIntegerArray visits = new AtomicIntegerArray(64 * 64);
+        jobSystem.parallelFor(64, 1, (from, to) -> {
+            for (int row = from; row < to; row++) {
+                int offset = row * 64;
+                jobSystem.parallelFor(64, 8, (columnFrom, columnTo) -> {
+                    for (int column = columnFrom; column < columnTo; column++) {
+                        visits.incrementAndGet(offset + column);
+                    }
+                });
+            }
+        });
+        for (int i = 0; i < visits.length(); i++) {
+            assertEquals(1, visits.get(i));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rethrowsJobExceptions() {
+        jobSystem.parallelFor(1000, 10, (from, to) -> {
+            if (from <= 500 && 500 < to) {
+                throw new IllegalStateException("Index 500");
+            }
+        });
+    }
+}
@@ -0,0 +1,85 @@
+package com.bean.engine.job;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class TaskGraphTest {
+
+    private final JobSystem jobSystem = new JobSystem(4);
+
+    @After
+    public void tearDown() {
+        jobSystem.shutdown();
+    }
+
+    @Test
+    public void runsTasksAfterTheirDependencies() {
+        AtomicInteger clock = new AtomicInteger();
+        int[] finished = new int[5];
+        int[] started = new int[5];
+        TaskGraph graph = new TaskGraph();
+        Runnable[] work = new Runnable[5];
+        for (int i = 0; i < work.length; i++) {
+            int task = i;
+            work[i] = () -> {
+                started[task] = clock.incrementAndGet();
+                finished[task] = clock.incrementAndGet();
+            };
+        }
+        // 0 and 1 are independent, 2 needs both, 3 needs 0, 4 needs 2 and 3
+        TaskGraph.Task a = graph.add("a", work[0]);
+        TaskGraph.Task b = graph.add("b", work[1]);
+        TaskGraph.Task c = graph.add("c", work[2], a, b);
+        TaskGraph.Task d = graph.add("d", work[3], a);
+        graph.add("e", work[4], c, d);
+
+        for (int run = 0; run < 100; run++) {
+            graph.run(jobSystem);
+            assertTrue(started[2] > finished[0] && started[2] > finished[1]);
+            assertTrue(started[3] > finished[0]);
+            assertTrue(started[4] > finished[2] && started[4] > finished[3]);
+        }
+        assertEquals(1000, clock.get());
+    }
+
+    @Test
+    public void skipsRemainingTasksAfterAFailure() {
+        AtomicInteger runs = new AtomicInteger();
+        TaskGraph graph = new TaskGraph();
+        TaskGraph.Task failing = graph.add("failing", () -> {
+            throw new IllegalArgumentException("Task failed");
+        });
+        graph.add("dependent", runs::incrementAndGet, failing);
+        try {
+            graph.run(jobSystem);
+            fail("Exception not rethrown");
+        } catch (IllegalArgumentException excp) {
+            assertEquals("Task failed", excp.getMessage());
+        }
+        assertEquals(0, runs.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTasksOfOtherGraphs() {
+        TaskGraph other = new TaskGraph();
+        TaskGraph.Task task = other.add("other", () -> { });
+        new TaskGraph().add("task", () -> { }, task);
+    }
+
+    @Test
+    public void keepsTasksInOrder() {
+        TaskGraph graph = new TaskGraph();
+        graph.add("first", () -> { });
+        graph.add("second", () -> { });
+        List<TaskGraph.Task> tasks = graph.getTasks();
+        assertEquals("first", tasks.get(0).getName());
+        assertEquals("second", tasks.get(1).getName());
+    }
+}
@@ -0,0 +1,102 @@
+package com.bean.engine.mesh;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import com.bean.engine.graph.FrustumCuller;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+
+/**
+ * Compares a tick over a list of standalone {@link GameItem}s, each holding its state in its own objects, with the
+ * same tick streaming over the arrays of a store: each item is rotated, gets its model matrix and is frustum culled. The
+ * store is also run with only one item in a hundred rotating, where the other model matrices come from its cache.
+ * <p>
+ * Usage: <code>EntityStoreBenchmark [count...]</code>, 10000 100000 1000000 by default.
+ */
+public class EntityStoreBenchmark {
+
+    private static final int TICKS = 20;
+
+    private static final Bounds BOUNDS = new Bounds(new Vector3f(-1), new Vector3f(1), (float) Math.sqrt(3));
+
+    public static void main(String[] args) {
+        int[] counts = args.length > 0 ? new int[args.length] : new int[]{10_000, 100_000, 1_000_000};
+        for (int i = 0; i < args.length; i++) {
+            counts[i] = Integer.parseInt(args[i]);
+        }
+        FrustumCuller culler = new FrustumCuller();
+        culler.update(new Matrix4f().setPerspective((float) Math.toRadians(60), 16 / 9f, 0.1f, 1000),
+                new Matrix4f().lookAt(50, 50, -20, 50, 50, 50, 0, 1, 0));
+        // Warm up the JIT on the smallest size first
+        runObjects(counts[0], culler);
+        runStore(counts[0], culler, 1);
+        runStore(counts[0], culler, 100);
+        for (int count : counts) {
+            double[] objects = runObjects(count, culler);
+            double[] store = runStore(count, culler, 1);
+            double[] mostlyStatic = runStore(count, culler, 100);
+            System.out.println(String.format("%,9d items: objects %8.3f ms per tick, store %8.3f ms per tick, "
+                            + "%5.2fx%s, 1%% moving %8.3f ms per tick", count, objects[0], store[0],
+                    objects[0] / store[0], objects[1] == store[1] ? "" : ", RESULTS DIFFER", mostlyStatic[0]));
+        }
+    }
+
+    /**
+     * Returns the average milliseconds per tick and the visible items of the last tick.
+     */
+    private static double[] runObjects(int count, FrustumCuller culler) {
+        List<GameItem> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            GameItem item = new GameItem(null);
+            item.setPosition(i % 100, (i / 100) % 100, i / 10_000);
+            items.add(item);
+        }
+        // Items added and removed over time end up scattered in the heap relative to their order
+        Collections.shuffle(items, new Random(1));
+        Matrix4f matrix = new Matrix4f();
+        int visible = 0;
+        long start = System.nanoTime();
+        for (int tick = 0; tick < TICKS; tick++) {
+            visible = 0;
+            for (GameItem item : items) {
+                Vector3fc rotation = item.getRotation();
+                item.setRotation(rotation.x(), rotation.y() + 1.5f, rotation.z());
+                if (culler.isVisible(BOUNDS, item.getModelMatrix(matrix))) {
+                    visible++;
+                }
+            }
+        }
+        return new double[]{(System.nanoTime() - start) / 1e6 / TICKS, visible};
+    }
+
+    /**
+     * Rotates one item in <code>movingEvery</code>.
+     */
+    private static double[] runStore(int count, FrustumCuller culler, int movingEvery) {
+        EntityStore store = new EntityStore(count);
+        for (int i = 0; i < count; i++) {
+            store.create(null).setPosition(i % 100, (i / 100) % 100, i / 10_000);
+        }
+        float[] rotations = store.getRotations();
+        Matrix4f matrix = new Matrix4f();
+        int visible = 0;
+        long start = System.nanoTime();
+        for (int tick = 0; tick < TICKS; tick++) {
+            visible = 0;
+            for (int i = 0; i < count; i++) {
+                if (i % movingEvery == 0) {
+                    rotations[i * 3 + 1] += 1.5f;
+                    store.touch(i);
+                }
+                if (culler.isVisible(BOUNDS, store.getModelMatrix(i, matrix))) {
+                    visible++;
+                }
+            }
+        }
+        return new double[]{(System.nanoTime() - start) / 1e6 / TICKS, visible};
+    }
+}
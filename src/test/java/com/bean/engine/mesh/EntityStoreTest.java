@@ -0,0 +1,132 @@
+package com.bean.engine.mesh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import com.bean.engine.graph.Transformation;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.junit.Test;
+
+public class EntityStoreTest {
+
+    private final EntityStore store = new EntityStore(2);
+
+    @Test
+    public void removalMovesTheLastEntity() {
+        GameItem first = store.create(null);
+        GameItem second = store.create(null);
+        GameItem third = store.create(null);
+        third.setPosition(3, 0, 0);
+        long firstHandle = first.getHandle();
+
+        assertTrue(store.remove(first));
+        assertEquals(2, store.size());
+        assertEquals(List.of(third, second), store.getItems());
+        assertEquals(3, store.getPositions()[0], 0);
+        assertEquals(new Vector3f(3, 0, 0), third.getPosition());
+        assertSame(third, store.get(third.getHandle()));
+        assertFalse(store.remove(firstHandle));
+    }
+
+    @Test
+    public void reusedSlotsRejectOldHandles() {
+        GameItem removed = store.create(null);
+        long handle = removed.getHandle();
+        store.remove(removed);
+        GameItem added = store.create(null);
+
+        // Same slot, next generation
+        assertEquals(handle & 0xFFFFFFFFL, added.getHandle() & 0xFFFFFFFFL);
+        assertFalse(store.isAlive(handle));
+        assertNull(store.get(handle));
+        assertEquals(-1, store.indexOf(handle));
+        assertFalse(removed.isAlive());
+        assertTrue(added.isAlive());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void removedViewsThrow() {
+        GameItem item = store.create(null);
+        store.remove(item);
+        item.getPosition();
+    }
+
+    @Test
+    public void viewsWriteTheArrays() {
+        for (int i = 0; i < 10; i++) {
+            store.create(null);
+        }
+        GameItem item = store.getItem(7);
+        int version = item.getVersion();
+        item.setPosition(1, 2, 3);
+        item.setRotation(10, 20, 30);
+        item.setScale(4);
+
+        assertEquals(version + 3, item.getVersion());
+        assertEquals(2, store.getPositions()[7 * 3 + 1], 0);
+        assertEquals(30, store.getRotations()[7 * 3 + 2], 0);
+        assertEquals(4, store.getScales()[7], 0);
+        assertEquals(1, store.getMeshCount());
+        assertNull(store.getMesh(7));
+
+        Matrix4f expected = Transformation.modelMatrix(1, 2, 3, 10, 20, 30, 4, new Matrix4f());
+        assertEquals(expected, store.getModelMatrix(7, new Matrix4f()));
+        float[] matrices = new float[store.size() * 16];
+        store.computeModelMatrices(matrices);
+        assertEquals(expected, new Matrix4f().set(matrices, 7 * 16));
+    }
+
+    @Test
+    public void onlyRecomputesMovedModelMatrices() {
+        for (int i = 0; i < 100; i++) {
+            store.create(null).setPosition(i, 0, 0);
+        }
+        assertEquals(100, store.updateModelMatrices());
+        assertEquals(0, store.updateModelMatrices());
+
+        GameItem item = store.getItem(42);
+        item.setRotation(0, 90, 0);
+        item.setTint(1, 0, 0, 1);
+        assertEquals(1, store.updateModelMatrices());
+        long updates = store.getModelMatrixUpdates();
+        Matrix4f expected = Transformation.modelMatrix(42, 0, 0, 0, 90, 0, 1, new Matrix4f());
+        assertEquals(expected, item.getModelMatrix(new Matrix4f()));
+        assertEquals(updates, store.getModelMatrixUpdates());
+
+        // Direct writes are only seen once touched
+        store.getScales()[42] = 2;
+        assertEquals(expected, item.getModelMatrix(new Matrix4f()));
+        store.touch(42);
+        assertEquals(expected.scale(2), item.getModelMatrix(new Matrix4f()));
+
+        // Cached matrices follow entities moved by removals
+        store.remove(store.getItem(0));
+        assertEquals(Transformation.modelMatrix(99, 0, 0, 0, 0, 0, 1, new Matrix4f()),
+                store.getModelMatrix(0, new Matrix4f()));
+        assertEquals(0, store.updateModelMatrices());
+    }
+
+    @Test
+    public void freesMeshIdsNoLongerUsed() {
+        GameItem first = store.create(null);
+        GameItem second = store.create(null);
+        assertEquals(1, store.getMeshCount());
+
+        store.remove(first);
+        assertEquals(1, store.getMeshCount());
+        store.remove(second);
+        assertEquals(0, store.getMeshCount());
+
+        // The freed id is taken again rather than growing the table
+        store.create(null);
+        assertEquals(1, store.getMeshCount());
+        assertEquals(1, store.getMeshes().size());
+        assertEquals(0, store.getMeshIds()[0]);
+    }
+}
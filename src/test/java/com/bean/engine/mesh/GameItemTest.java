@@ -0,0 +1,54 @@
+package com.bean.engine.mesh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.bean.engine.graph.Transformation;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+import org.junit.Test;
+
+public class GameItemTest {
+
+    @Test
+    public void standaloneItemsKeepTheirOwnState() {
+        GameItem item = new GameItem(null);
+        assertNull(item.getStore());
+        assertEquals(GameItem.NO_HANDLE, item.getHandle());
+        assertTrue(item.isAlive());
+        assertEquals(new Vector4f(1, 1, 1, 1), item.getTint());
+        assertEquals(1, item.getScale(), 0);
+
+        int version = item.getVersion();
+        item.setPosition(1, 2, 3);
+        item.setRotation(new Vector3f(10, 20, 30));
+        item.setScale(4);
+        item.setTint(1, 0, 0, 1);
+        item.setLodLevel(2);
+
+        assertEquals(version + 3, item.getVersion());
+        assertEquals(new Vector3f(1, 2, 3), item.getPosition());
+        assertEquals(new Vector3f(10, 20, 30), item.getRotation());
+        assertEquals(new Vector4f(1, 0, 0, 1), item.getTint());
+        assertEquals(2, item.getLodLevel());
+        Matrix4f expected = Transformation.modelMatrix(1, 2, 3, 10, 20, 30, 4, new Matrix4f());
+        assertEquals(expected, item.getModelMatrix(new Matrix4f()));
+
+        item.setPosition(5, 0, 0);
+        assertEquals(Transformation.modelMatrix(5, 0, 0, 10, 20, 30, 4, new Matrix4f()),
+                item.getModelMatrix(new Matrix4f()));
+    }
+
+    @Test
+    public void entityGettersAreRefreshedOnEachCall() {
+        GameItem item = new EntityStore().create(null);
+        item.setPosition(1, 0, 0);
+        Object first = item.getPosition();
+        item.setPosition(2, 0, 0);
+        assertSame(first, item.getPosition());
+        assertEquals(new Vector3f(2, 0, 0), first);
+    }
+}
@@ -0,0 +1,40 @@
+package com.bean.engine.mesh;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class LodSelectorTest {
+
+    private final LodSelector selector = new LodSelector(new float[]{0.5f, 0.25f}, 0.1f);
+
+    @Test
+    public void selectsLevelFromScreenSize() {
+        assertEquals(0, selector.selectLevel(0.8f, 0, 3));
+        assertEquals(1, selector.selectLevel(0.3f, 0, 3));
+        assertEquals(2, selector.selectLevel(0.1f, 0, 3));
+        assertEquals(0, selector.selectLevel(0.8f, 2, 3));
+    }
+
+    @Test
+    public void keepsLevelInsideHysteresisMargin() {
+        assertEquals(0, selector.selectLevel(0.48f, 0, 3));
+        assertEquals(1, selector.selectLevel(0.52f, 1, 3));
+        assertEquals(0, selector.selectLevel(0.56f, 1, 3));
+    }
+
+    @Test
+    public void clampsToAvailableLevels() {
+        assertEquals(1, selector.selectLevel(0.01f, 0, 2));
+        assertEquals(0, selector.selectLevel(0.01f, 0, 1));
+    }
+
+    @Test
+    public void screenSizeShrinksWithDistance() {
+        float fov = (float) Math.toRadians(60);
+        float near = LodSelector.getScreenSize(1, 2, fov);
+        float far = LodSelector.getScreenSize(1, 4, fov);
+        assertEquals(near / 2, far, 1e-6f);
+        assertEquals(Float.POSITIVE_INFINITY, LodSelector.getScreenSize(1, 0.5f, fov), 0);
+    }
+}
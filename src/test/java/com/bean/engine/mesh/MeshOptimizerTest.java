@@ -0,0 +1,89 @@
+package com.bean.engine.mesh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class MeshOptimizerTest {
+
+    private static final int GRID = 64;
+
+    @Test
+    public void improvesCacheLocalityOfShuffledGrid() {
+        MeshData grid = shuffledGrid();
+        MeshOptimizer.CacheStatistics before = MeshOptimizer.analyzeVertexCache(grid.getIndices(),
+                grid.getVertexCount(), MeshOptimizer.DEFAULT_CACHE_SIZE);
+
+        MeshData optimized = MeshOptimizer.optimize(grid);
+        MeshOptimizer.CacheStatistics after = MeshOptimizer.analyzeVertexCache(optimized.getIndices(),
+                optimized.getVertexCount(), MeshOptimizer.DEFAULT_CACHE_SIZE);
+
+        assertTrue("ACMR before " + before, before.getAcmr() > 2.5f);
+        assertTrue("ACMR after " + after, after.getAcmr() < 0.9f);
+        assertTrue("ATVR after " + after, after.getAtvr() < 1.8f);
+        assertEquals(triangles(grid), triangles(optimized));
+    }
+
+    @Test
+    public void numbersVerticesInOrderOfFirstUse() {
+        MeshData optimized = MeshOptimizer.optimizeVertexFetch(shuffledGrid());
+        int next = 0;
+        for (int index : optimized.getIndices()) {
+            assertTrue(index <= next);
+            if (index == next) {
+                next++;
+            }
+        }
+        assertEquals(optimized.getVertexCount(), next);
+    }
+
+    private static MeshData shuffledGrid() {
+        int side = GRID + 1;
+        float[] positions = new float[side * side * 3];
+        for (int y = 0; y < side; y++) {
+            for (int x = 0; x < side; x++) {
+                positions[(y * side + x) * 3] = x;
+                positions[(y * side + x) * 3 + 1] = y;
+            }
+        }
+        List<int[]> triangles = new ArrayList<>();
+        for (int y = 0; y < GRID; y++) {
+            for (int x = 0; x < GRID; x++) {
+                int v = y * side + x;
+                triangles.add(new int[]{v, v + 1, v + side});
+                triangles.add(new int[]{v + 1, v + side + 1, v + side});
+            }
+        }
+        Collections.shuffle(triangles, new Random(42));
+        int[] indices = new int[triangles.size() * 3];
+        for (int i = 0; i < triangles.size(); i++) {
+            System.arraycopy(triangles.get(i), 0, indices, i * 3, 3);
+        }
+        return new MeshData(positions, new float[side * side * 2], new float[side * side * 3], indices);
+    }
+
+    /**
+     * Triangles as sorted position strings, independent of triangle order and vertex numbering.
+     */
+    private static List<String> triangles(MeshData meshData) {
+        int[] indices = meshData.getIndices();
+        float[] positions = meshData.getPositions();
+        List<String> result = new ArrayList<>();
+        for (int t = 0; t < indices.length; t += 3) {
+            StringBuilder triangle = new StringBuilder();
+            for (int k = 0; k < 3; k++) {
+                int v = indices[t + k];
+                triangle.append(positions[v * 3]).append(',').append(positions[v * 3 + 1]).append(';');
+            }
+            result.add(triangle.toString());
+        }
+        Collections.sort(result);
+        return result;
+    }
+}
@@ -0,0 +1,90 @@
+package com.bean.engine.mesh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class MeshSimplifierTest {
+
+    private static final int GRID = 32;
+
+    @Test
+    public void simplifiesFlatGridWithoutFlippingTriangles() {
+        MeshData grid = grid();
+        MeshData simplified = MeshSimplifier.simplify(grid, grid.getIndices().length / 10, 0.01f);
+
+        assertTrue("triangles " + simplified.getTriangleCount(),
+                simplified.getTriangleCount() < grid.getTriangleCount() / 4);
+        int[] indices = simplified.getIndices();
+        float[] positions = simplified.getPositions();
+        for (int i = 0; i < indices.length; i += 3) {
+            assertTrue("triangle " + i / 3 + " is flipped", normalZ(positions, indices[i], indices[i + 1], indices[i + 2]) > 0);
+        }
+    }
+
+    @Test
+    public void keepsBorderVertices() {
+        MeshData simplified = MeshSimplifier.simplify(grid(), 0, 0.01f);
+        float[] positions = simplified.getPositions();
+        int borderVertices = 0;
+        for (int v = 0; v < simplified.getVertexCount(); v++) {
+            float x = positions[v * 3];
+            float y = positions[v * 3 + 1];
+            if (x == 0 || y == 0 || x == GRID || y == GRID) {
+                borderVertices++;
+            }
+        }
+        assertEquals(GRID * 4, borderVertices);
+    }
+
+    @Test
+    public void buildsChainOfDecreasingLevels() {
+        List<MeshData> chain = MeshSimplifier.buildLodChain(grid(), 4);
+        assertTrue(chain.size() > 1);
+        for (int level = 1; level < chain.size(); level++) {
+            assertTrue(chain.get(level).getTriangleCount() < chain.get(level - 1).getTriangleCount());
+        }
+    }
+
+    private static float normalZ(float[] positions, int i0, int i1, int i2) {
+        float ux = positions[i1 * 3] - positions[i0 * 3];
+        float uy = positions[i1 * 3 + 1] - positions[i0 * 3 + 1];
+        float vx = positions[i2 * 3] - positions[i0 * 3];
+        float vy = positions[i2 * 3 + 1] - positions[i0 * 3 + 1];
+        return ux * vy - uy * vx;
+    }
+
+    private static MeshData grid() {
+        int side = GRID + 1;
+        float[] positions = new float[side * side * 3];
+        float[] textCoords = new float[side * side * 2];
+        float[] normals = new float[side * side * 3];
+        for (int y = 0; y < side; y++) {
+            for (int x = 0; x < side; x++) {
+                int v = y * side + x;
+                positions[v * 3] = x;
+                positions[v * 3 + 1] = y;
+                textCoords[v * 2] = (float) x / GRID;
+                textCoords[v * 2 + 1] = (float) y / GRID;
+                normals[v * 3 + 2] = 1;
+            }
+        }
+        int[] indices = new int[GRID * GRID * 6];
+        int i = 0;
+        for (int y = 0; y < GRID; y++) {
+            for (int x = 0; x < GRID; x++) {
+                int v = y * side + x;
+                indices[i++] = v;
+                indices[i++] = v + 1;
+                indices[i++] = v + side;
+                indices[i++] = v + 1;
+                indices[i++] = v + side + 1;
+                indices[i++] = v + side;
+            }
+        }
+        return new MeshData(positions, textCoords, normals, indices);
+    }
+}
@@ -0,0 +1,90 @@
+package com.bean.engine.mesh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+
+import com.bean.engine.graph.Camera;
+import org.joml.Vector3f;
+import org.junit.Test;
+
+public class TransformSnapshotTest {
+
+    private final GameItem item = new GameItem(null);
+
+    private final Camera camera = new Camera();
+
+    private final TransformSnapshot previous = new TransformSnapshot();
+
+    private final TransformSnapshot latest = new TransformSnapshot();
+
+    @Test
+    public void interpolatesIntoSeparateViews() {
+        item.setPosition(0, 0, 0);
+        item.setRotation(0, 350, 0);
+        item.setScale(1);
+        previous.capture(List.of(item), camera);
+        item.setPosition(2, 4, 0);
+        item.setRotation(0, 10, 0);
+        item.setScale(3);
+        camera.setPosition(10, 0, 0);
+        latest.capture(List.of(item), camera);
+        // Changes after capture are not seen
+        item.setPosition(100, 100, 100);
+
+        EntityStore views = new EntityStore();
+        Camera renderCamera = new Camera();
+        latest.interpolate(previous, 0.25f, views, renderCamera);
+        assertEquals(1, views.size());
+        GameItem view = views.getItem(0);
+        assertNotSame(item, view);
+        assertEquals(new Vector3f(0.5f, 1, 0), view.getPosition());
+        // The short way round, through 360
+        assertEquals(355, view.getRotation().y(), 1e-4);
+        assertEquals(1.5f, view.getScale(), 1e-6);
+        assertEquals(new Vector3f(2.5f, 0, 0), renderCamera.getPosition());
+    }
+
+    @Test
+    public void doesNotInterpolateNewItems() {
+        previous.capture(List.of(), camera);
+        item.setPosition(2, 0, 0);
+        latest.capture(List.of(item), camera);
+        EntityStore views = new EntityStore();
+        latest.interpolate(previous, 0.5f, views, new Camera());
+        GameItem view = views.getItem(0);
+        assertEquals(new Vector3f(2, 0, 0), view.getPosition());
+
+        // Unchanged views keep their version, so spatial indices skip them
+        int version = view.getVersion();
+        latest.interpolate(previous, 0.5f, views, new Camera());
+        assertEquals(version, view.getVersion());
+        latest.capture(List.of(), camera);
+        latest.interpolate(previous, 0.5f, views, new Camera());
+        assertEquals(0, views.size());
+        assertFalse(view.isAlive());
+    }
+
+    @Test
+    public void capturesStores() {
+        EntityStore store = new EntityStore();
+        GameItem first = store.create(null);
+        first.setPosition(1, 2, 3);
+        GameItem second = store.create(null);
+        second.setScale(2);
+        second.setTint(1, 0, 0, 1);
+        latest.capture(store, camera);
+        store.remove(first);
+
+        assertEquals(2, latest.size());
+        assertSame(second, latest.getItem(1));
+        EntityStore views = new EntityStore();
+        latest.interpolate(latest, 1, views, new Camera());
+        assertEquals(new Vector3f(1, 2, 3), views.getItem(0).getPosition());
+        assertEquals(2, views.getItem(1).getScale(), 0);
+        assertEquals(0, views.getItem(1).getTint().y(), 0);
+    }
+}
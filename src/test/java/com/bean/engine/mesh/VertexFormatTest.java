@@ -0,0 +1,93 @@
+package com.bean.engine.mesh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import org.junit.Test;
+
+public class VertexFormatTest {
+
+    private static final int GL_UNSIGNED_SHORT = 0x1403;
+
+    private static final int GL_UNSIGNED_INT = 0x1405;
+
+    private static final float[] POSITIONS = {-1.5f, 0.25f, 3f, 2f, -4f, 0.5f, 0.1f, 0.2f, 0.3f};
+
+    private static final float[] TEXT_COORDS = {0f, 1f, 0.5f, 0.25f, 0.3f, 0.9f};
+
+    private static final float[] NORMALS = {0f, 0f, 1f, 0.6f, 0f, -0.8f, -0.48f, 0.6f, -0.64f};
+
+    @Test
+    public void compactFormatsHalveTheVertexSize() {
+        assertEquals(32, VertexFormat.FLOAT.getBytesPerVertex());
+        assertTrue(VertexFormat.COMPACT.getBytesPerVertex() < 24);
+        assertEquals(16, VertexFormat.QUANTIZED.getBytesPerVertex());
+    }
+
+    @Test
+    public void quantizedVerticesDecodeCloseToSource() {
+        VertexFormat format = VertexFormat.QUANTIZED;
+        float[] dequantization = format.getDequantization(FloatBuffer.wrap(POSITIONS));
+        ByteBuffer encoded = ByteBuffer.allocate(3 * format.getBytesPerVertex()).order(ByteOrder.nativeOrder());
+        format.encodeVertices(FloatBuffer.wrap(POSITIONS), FloatBuffer.wrap(TEXT_COORDS), FloatBuffer.wrap(NORMALS),
+                dequantization, encoded);
+
+        for (int v = 0; v < 3; v++) {
+            int base = v * format.getBytesPerVertex();
+            for (int axis = 0; axis < 3; axis++) {
+                float unorm = (encoded.getShort(base + axis * 2) & 0xFFFF) / 65535f;
+                float position = unorm * dequantization[axis + 3] + dequantization[axis];
+                assertEquals(POSITIONS[v * 3 + axis], position, dequantization[axis + 3] / 65535f);
+            }
+            assertEquals(TEXT_COORDS[v * 2], fromHalf(encoded.getShort(base + 8)), 1e-3f);
+            assertEquals(TEXT_COORDS[v * 2 + 1], fromHalf(encoded.getShort(base + 10)), 1e-3f);
+            float[] normal = decodeOctahedral(encoded.getShort(base + 12) / 32767f, encoded.getShort(base + 14) / 32767f);
+            for (int axis = 0; axis < 3; axis++) {
+                assertEquals(NORMALS[v * 3 + axis], normal[axis], 1e-3f);
+            }
+        }
+    }
+
+    @Test
+    public void halfConversionRoundsToNearest() {
+        assertEquals(0x3C00, VertexFormat.toHalf(1f) & 0xFFFF);
+        assertEquals(0xC000, VertexFormat.toHalf(-2f) & 0xFFFF);
+        assertEquals(0x7BFF, VertexFormat.toHalf(65504f) & 0xFFFF);
+        assertEquals(0x7C00, VertexFormat.toHalf(1e6f) & 0xFFFF);
+        assertEquals(0x0001, VertexFormat.toHalf(6e-8f) & 0xFFFF);
+        assertEquals(0.1f, fromHalf(VertexFormat.toHalf(0.1f)), 1e-4f);
+    }
+
+    @Test
+    public void smallMeshesUseShortIndices() {
+        assertEquals(GL_UNSIGNED_SHORT, VertexFormat.getIndexType(65535));
+        assertEquals(GL_UNSIGNED_INT, VertexFormat.getIndexType(65536));
+
+        ByteBuffer encoded = ByteBuffer.allocate(6).order(ByteOrder.nativeOrder());
+        VertexFormat.encodeIndices(IntBuffer.wrap(new int[]{0, 65535, 7}), GL_UNSIGNED_SHORT, encoded);
+        assertEquals(65535, encoded.getShort(2) & 0xFFFF);
+        assertEquals(7, encoded.getShort(4));
+    }
+
+    private static float fromHalf(short half) {
+        int exponent = (half >> 10) & 0x1F;
+        int mantissa = half & 0x3FF;
+        float magnitude = exponent == 0 ? mantissa / 1024f * (float) Math.pow(2, -14)
+                : (1 + mantissa / 1024f) * (float) Math.pow(2, exponent - 15);
+        return (half & 0x8000) != 0 ? -magnitude : magnitude;
+    }
+
+    private static float[] decodeOctahedral(float x, float y) {
+        float z = 1 - Math.abs(x) - Math.abs(y);
+        float t = Math.max(-z, 0);
+        x += x >= 0 ? -t : t;
+        y += y >= 0 ? -t : t;
+        float length = (float) Math.sqrt(x * x + y * y + z * z);
+        return new float[]{x / length, y / length, z / length};
+    }
+}
@@ -0,0 +1,147 @@
+package com.bean.engine.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+
+/**
+ * Compares {@link DynamicAabbTree} queries and updates against a linear scan over the same boxes, with items spread
+ * over a world that grows with their count so the density stays constant.
+ * <p>
+ * Usage: <code>DynamicAabbTreeBenchmark [count...]</code>, 10000 100000 1000000 by default
+ */
+public class DynamicAabbTreeBenchmark {
+
+    private static final int QUERIES = 200;
+
+    private static final float DENSITY = 0.01f;
+
+    public static void main(String[] args) {
+        int[] counts = args.length > 0 ? new int[args.length] : new int[]{10_000, 100_000, 1_000_000};
+        for (int i = 0; i < args.length; i++) {
+            counts[i] = Integer.parseInt(args[i]);
+        }
+        // Warm up the JIT on the smallest size first
+        run(counts[0], false);
+        for (int count : counts) {
+            run(count, true);
+        }
+    }
+
+    private static void run(int count, boolean print) {
+        Random random = new Random(1);
+        float worldSize = (float) Math.cbrt(count / DENSITY);
+        float[] boxes = new float[count * 6];
+        for (int i = 0; i < count; i++) {
+            float x = worldSize * random.nextFloat();
+            float y = worldSize * random.nextFloat();
+            float z = worldSize * random.nextFloat();
+            float size = 0.5f + random.nextFloat();
+            boxes[i * 6] = x;
+            boxes[i * 6 + 1] = y;
+            boxes[i * 6 + 2] = z;
+            boxes[i * 6 + 3] = x + size;
+            boxes[i * 6 + 4] = y + size;
+            boxes[i * 6 + 5] = z + size;
+        }
+
+        long start = System.nanoTime();
+        DynamicAabbTree<Integer> tree = new DynamicAabbTree<>(0.2f, count);
+        int[] proxies = new int[count];
+        for (int i = 0; i < count; i++) {
+            int b = i * 6;
+            proxies[i] = tree.add(i, boxes[b], boxes[b + 1], boxes[b + 2], boxes[b + 3], boxes[b + 4], boxes[b + 5]);
+        }
+        long buildNanos = System.nanoTime() - start;
+
+        // Every item takes a small step, one in ten jumps far enough to leave its fat box
+        start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            float step = i % 10 == 0 ? 1 : 0.01f;
+            int b = i * 6;
+            for (int axis = 0; axis < 6; axis++) {
+                boxes[b + axis] += step;
+            }
+            tree.move(proxies[i], boxes[b], boxes[b + 1], boxes[b + 2], boxes[b + 3], boxes[b + 4], boxes[b + 5]);
+        }
+        long updateNanos = System.nanoTime() - start;
+
+        List<Integer> out = new ArrayList<>();
+        float[][] centers = new float[QUERIES][];
+        for (int q = 0; q < QUERIES; q++) {
+            centers[q] = new float[]{worldSize * random.nextFloat(), worldSize * random.nextFloat(),
+                    worldSize * random.nextFloat()};
+        }
+        float halfExtent = 5;
+        long treeHits = 0;
+        start = System.nanoTime();
+        for (float[] c : centers) {
+            out.clear();
+            tree.queryAabb(c[0] - halfExtent, c[1] - halfExtent, c[2] - halfExtent,
+                    c[0] + halfExtent, c[1] + halfExtent, c[2] + halfExtent, out);
+            treeHits += out.size();
+        }
+        long treeAabbNanos = System.nanoTime() - start;
+
+        long scanHits = 0;
+        start = System.nanoTime();
+        for (float[] c : centers) {
+            for (int b = 0; b < boxes.length; b += 6) {
+                if (boxes[b] <= c[0] + halfExtent && boxes[b + 3] >= c[0] - halfExtent
+                        && boxes[b + 1] <= c[1] + halfExtent && boxes[b + 4] >= c[1] - halfExtent
+                        && boxes[b + 2] <= c[2] + halfExtent && boxes[b + 5] >= c[2] - halfExtent) {
+                    scanHits++;
+                }
+            }
+        }
+        long scanAabbNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (float[] c : centers) {
+            out.clear();
+            tree.nearest(c[0], c[1], c[2], 8, out);
+        }
+        long nearestNanos = System.nanoTime() - start;
+
+        Matrix4f projectionView = new Matrix4f().perspective((float) Math.toRadians(60), 16f / 9, 0.1f, 100);
+        projectionView.lookAt(0, 0, 0, worldSize, worldSize, worldSize, 0, 1, 0);
+        FrustumIntersection frustum = new FrustumIntersection(projectionView);
+        int frustumRuns = 100;
+        start = System.nanoTime();
+        for (int run = 0; run < frustumRuns; run++) {
+            out.clear();
+            tree.queryFrustum(frustum, out);
+        }
+        long treeFrustumNanos = (System.nanoTime() - start) / frustumRuns;
+        int visible = out.size();
+        start = System.nanoTime();
+        int scanVisible = 0;
+        for (int run = 0; run < frustumRuns; run++) {
+            scanVisible = 0;
+            for (int b = 0; b < boxes.length; b += 6) {
+                if (frustum.testAab(boxes[b], boxes[b + 1], boxes[b + 2], boxes[b + 3], boxes[b + 4], boxes[b + 5])) {
+                    scanVisible++;
+                }
+            }
+        }
+        long scanFrustumNanos = (System.nanoTime() - start) / frustumRuns;
+
+        if (!print) {
+            return;
+        }
+        System.out.println(String.format("%,d items, height %d", count, tree.getHeight()));
+        System.out.println(String.format("  build:   %9.2f ms", buildNanos / 1e6));
+        System.out.println(String.format("  update:  %9.2f ms for all items, %d reinserted",
+                updateNanos / 1e6, tree.getReinserts()));
+        System.out.println(String.format("  aabb:    %9.4f ms per query, scan %9.4f ms (%.0fx), %d / %d hits",
+                treeAabbNanos / 1e6 / QUERIES, scanAabbNanos / 1e6 / QUERIES,
+                (double) scanAabbNanos / treeAabbNanos, treeHits, scanHits));
+        System.out.println(String.format("  nearest: %9.4f ms per query (k = 8)", nearestNanos / 1e6 / QUERIES));
+        System.out.println(String.format("  frustum: %9.4f ms per query, scan %9.4f ms (%.0fx), %d / %d visible",
+                treeFrustumNanos / 1e6, scanFrustumNanos / 1e6, (double) scanFrustumNanos / treeFrustumNanos,
+                visible, scanVisible));
+    }
+}
@@ -0,0 +1,162 @@
+package com.bean.engine.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DynamicAabbTreeTest {
+
+    private static final int COUNT = 2000;
+
+    private final DynamicAabbTree<Integer> tree = new DynamicAabbTree<>(0.1f);
+
+    private final float[][] boxes = new float[COUNT][];
+
+    private final int[] proxies = new int[COUNT];
+
+    private final Random random = new Random(42);
+
+    @Before
+    public void setUp() {
+        for (int i = 0; i < COUNT; i++) {
+            boxes[i] = randomBox();
+            proxies[i] = add(i);
+        }
+    }
+
+    @Test
+    public void staysBalanced() {
+        assertEquals(COUNT, tree.size());
+        // A perfectly balanced tree of 2000 leaves has height 11
+        assertTrue("height " + tree.getHeight(), tree.getHeight() <= 22);
+    }
+
+    @Test
+    public void queriesMatchLinearScan() {
+        checkQueries();
+    }
+
+    @Test
+    public void queriesMatchLinearScanAfterMovesAndRemovals() {
+        for (int i = 0; i < COUNT; i++) {
+            float[] box = boxes[i];
+            float dx = random.nextFloat() < 0.5f ? 0.05f : 20 * (random.nextFloat() - 0.5f);
+            for (int axis = 0; axis < 3; axis++) {
+                box[axis] += dx;
+                box[axis + 3] += dx;
+            }
+            tree.move(proxies[i], box[0], box[1], box[2], box[3], box[4], box[5]);
+        }
+        for (int i = 0; i < COUNT; i += 3) {
+            tree.remove(proxies[i]);
+            boxes[i] = null;
+        }
+        for (int i = 0; i < COUNT; i += 6) {
+            boxes[i] = randomBox();
+            proxies[i] = add(i);
+        }
+        assertTrue(tree.getReinserts() > 0 && tree.getReinserts() < COUNT);
+        assertTrue("height " + tree.getHeight(), tree.getHeight() <= 22);
+        checkQueries();
+    }
+
+    @Test
+    public void smallMovesDoNotReinsert() {
+        float[] box = boxes[0];
+        assertEquals(false, tree.move(proxies[0], box[0] + 0.05f, box[1], box[2], box[3] + 0.05f, box[4], box[5]));
+        assertEquals(true, tree.move(proxies[0], box[0] + 1, box[1], box[2], box[3] + 1, box[4], box[5]));
+    }
+
+    private void checkQueries() {
+        for (int query = 0; query < 20; query++) {
+            float[] q = randomBox();
+            q[3] += 10;
+            q[4] += 10;
+            q[5] += 10;
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < COUNT; i++) {
+                float[] b = boxes[i];
+                if (b != null && b[0] <= q[3] && b[3] >= q[0] && b[1] <= q[4] && b[4] >= q[1]
+                        && b[2] <= q[5] && b[5] >= q[2]) {
+                    expected.add(i);
+                }
+            }
+            List<Integer> actual = new ArrayList<>();
+            tree.queryAabb(q[0], q[1], q[2], q[3], q[4], q[5], actual);
+            assertEquals(new HashSet<>(expected), new HashSet<>(actual));
+            assertEquals(expected.size(), actual.size());
+
+            float radius = 8;
+            expected.clear();
+            for (int i = 0; i < COUNT; i++) {
+                if (boxes[i] != null && distanceSquared(boxes[i], q[0], q[1], q[2]) <= radius * radius) {
+                    expected.add(i);
+                }
+            }
+            actual.clear();
+            tree.querySphere(q[0], q[1], q[2], radius, actual);
+            assertEquals(new HashSet<>(expected), new HashSet<>(actual));
+
+            expected.clear();
+            for (int i = 0; i < COUNT; i++) {
+                if (boxes[i] != null) {
+                    expected.add(i);
+                }
+            }
+            expected.sort(Comparator.comparingDouble(i -> distanceSquared(boxes[i], q[0], q[1], q[2])));
+            actual.clear();
+            tree.nearest(q[0], q[1], q[2], 10, actual);
+            assertEquals(10, actual.size());
+            for (int i = 0; i < 10; i++) {
+                assertEquals(distanceSquared(boxes[expected.get(i)], q[0], q[1], q[2]),
+                        distanceSquared(boxes[actual.get(i)], q[0], q[1], q[2]), 0);
+            }
+        }
+
+        FrustumIntersection frustum = new FrustumIntersection(new Matrix4f()
+                .perspective((float) Math.toRadians(60), 1, 0.1f, 60)
+                .lookAt(-60, 0, 0, 0, 0, 0, 0, 1, 0));
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < COUNT; i++) {
+            float[] b = boxes[i];
+            if (b != null && frustum.testAab(b[0], b[1], b[2], b[3], b[4], b[5])) {
+                expected.add(i);
+            }
+        }
+        List<Integer> actual = new ArrayList<>();
+        tree.queryFrustum(frustum, actual);
+        assertTrue(expected.size() > 0 && expected.size() < tree.size());
+        assertEquals(new HashSet<>(expected), new HashSet<>(actual));
+        assertEquals(expected.size(), actual.size());
+    }
+
+    private int add(int i) {
+        float[] b = boxes[i];
+        return tree.add(i, b[0], b[1], b[2], b[3], b[4], b[5]);
+    }
+
+    private float[] randomBox() {
+        float x = 100 * (random.nextFloat() - 0.5f);
+        float y = 100 * (random.nextFloat() - 0.5f);
+        float z = 100 * (random.nextFloat() - 0.5f);
+        float size = 0.1f + 2 * random.nextFloat();
+        return new float[]{x, y, z, x + size, y + size, z + size};
+    }
+
+    private static float distanceSquared(float[] b, float x, float y, float z) {
+        float dx = Math.max(0, Math.max(b[0] - x, x - b[3]));
+        float dy = Math.max(0, Math.max(b[1] - y, y - b[4]));
+        float dz = Math.max(0, Math.max(b[2] - z, z - b[5]));
+        return dx * dx + dy * dy + dz * dz;
+    }
+}
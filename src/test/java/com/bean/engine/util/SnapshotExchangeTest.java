@@ -0,0 +1,77 @@
+package com.bean.engine.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class SnapshotExchangeTest {
+
+    /**
+     * Written field by field, so a slot shared by both threads would show mismatched values.
+     */
+    private static class Sample {
+
+        long first;
+
+        long second;
+    }
+
+    @Test
+    public void receivesTheLastPublishedSnapshot() {
+        SnapshotExchange<Sample> exchange = new SnapshotExchange<>(Sample::new);
+        assertFalse(exchange.receive());
+        for (long value = 1; value <= 3; value++) {
+            exchange.getWriteSlot().first = value;
+            exchange.publish();
+        }
+        assertTrue(exchange.receive());
+        assertEquals(3, exchange.getLatest().first);
+        assertFalse(exchange.receive());
+
+        exchange.getWriteSlot().first = 4;
+        exchange.publish();
+        assertTrue(exchange.receive());
+        assertEquals(4, exchange.getLatest().first);
+        assertEquals(3, exchange.getPrevious().first);
+        assertEquals(4, exchange.getPublished());
+        assertEquals(2, exchange.getReceived());
+    }
+
+    @Test
+    public void readerNeverSeesASlotBeingWritten() throws Exception {
+        SnapshotExchange<Sample> exchange = new SnapshotExchange<>(Sample::new);
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            for (long value = 1; running.get(); value++) {
+                Sample sample = exchange.getWriteSlot();
+                sample.first = value;
+                sample.second = value;
+                exchange.publish();
+            }
+        });
+        writer.start();
+        long last = 0;
+        try {
+            for (int i = 0; i < 200_000; i++) {
+                if (exchange.receive()) {
+                    Sample latest = exchange.getLatest();
+                    Sample previous = exchange.getPrevious();
+                    long value = latest.first;
+                    assertTrue(value > last);
+                    assertEquals(value, latest.second);
+                    assertEquals(last, previous.first);
+                    assertEquals(last, previous.second);
+                    last = value;
+                }
+            }
+        } finally {
+            running.set(false);
+            writer.join();
+        }
+        assertTrue(last > 0);
+    }
+}